@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.metsci.glimpse.util.io.datapipe.ReadableDataChannel;
+import com.metsci.glimpse.util.io.datapipe.ReadableDataMappedFile;
+import com.metsci.glimpse.util.io.datapipe.ReadableDataPipe;
+import com.metsci.glimpse.util.io.datapipe.ReadableDataStream;
+import com.metsci.glimpse.util.io.datapipe.WritableDataChannel;
+import com.metsci.glimpse.util.io.datapipe.WritableDataPipe;
+import com.metsci.glimpse.util.io.datapipe.WritableDataStream;
+
+/**
+ * Writes and reads a temporary file of float and double blocks through each
+ * {@link ReadableDataPipe} and {@link WritableDataPipe} implementation. Reads
+ * are mostly served from the page cache, so they measure decoding and copying
+ * overhead rather than disk speed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataPipeBenchmark
+{
+    @Param({"16"})
+    public int fileSizeMegabytes;
+
+    @Param({"64", "4096"})
+    public int blockLength;
+
+    // "mappedViews" reads the mapped file as buffer views instead of copying into arrays
+    @Param({"stream", "channel", "mapped", "mappedViews"})
+    public String pipe;
+
+    protected File file;
+    protected int numBlocks;
+
+    protected float[] floats;
+    protected double[] doubles;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException
+    {
+        long blockBytes = 4 + blockLength * 12L;
+        numBlocks = (int) Math.max(1, (fileSizeMegabytes * 1024L * 1024L) / blockBytes);
+
+        floats = new float[blockLength];
+        doubles = new double[blockLength];
+        for (int i = 0; i < blockLength; i++)
+        {
+            floats[i] = i * 0.5f;
+            doubles[i] = i * 0.25;
+        }
+
+        file = File.createTempFile("datapipe", ".bin");
+        file.deleteOnExit();
+
+        write(new WritableDataChannel(new FileOutputStream(file).getChannel()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    protected ReadableDataPipe openReadable() throws IOException
+    {
+        if (pipe.equals("stream"))
+            return new ReadableDataStream(new DataInputStream(new BufferedInputStream(new FileInputStream(file))));
+        else if (pipe.equals("channel"))
+            return new ReadableDataChannel(new FileInputStream(file).getChannel());
+        else
+            return new ReadableDataMappedFile(file);
+    }
+
+    protected WritableDataPipe openWritable(File file) throws IOException
+    {
+        if (pipe.equals("stream"))
+            return new WritableDataStream(new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file))));
+        else
+            return new WritableDataChannel(new FileOutputStream(file).getChannel());
+    }
+
+    protected void write(WritableDataPipe out) throws IOException
+    {
+        try
+        {
+            for (int block = 0; block < numBlocks; block++)
+            {
+                out.writeInt(blockLength);
+                out.writeFloatArray(floats);
+                out.writeDoubleArray(doubles);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    @Benchmark
+    public double readArrays() throws IOException
+    {
+        if (pipe.equals("mappedViews")) return readViews(new ReadableDataMappedFile(file));
+
+        ReadableDataPipe in = openReadable();
+        try
+        {
+            double checksum = 0;
+            for (int block = 0; block < numBlocks; block++)
+            {
+                in.readInt();
+                in.readFloatArray(floats);
+                in.readDoubleArray(doubles);
+                checksum += floats[blockLength - 1] + doubles[blockLength - 1];
+            }
+            return checksum;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    protected double readViews(ReadableDataMappedFile in) throws IOException
+    {
+        try
+        {
+            double checksum = 0;
+            for (int block = 0; block < numBlocks; block++)
+            {
+                in.readInt();
+
+                // views like these can be handed to glBufferData without copying
+                FloatBuffer floatView = in.readFloatBuffer(blockLength);
+                DoubleBuffer doubleView = in.readDoubleBuffer(blockLength);
+                checksum += floatView.get(blockLength - 1) + doubleView.get(blockLength - 1);
+            }
+            return checksum;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the same file through each writer ("mapped" and "mappedViews" use the
+     * channel writer, since there is no mapped writer).
+     */
+    @Benchmark
+    public long writeArrays() throws IOException
+    {
+        File out = File.createTempFile("datapipe", ".out");
+        try
+        {
+            write(openWritable(out));
+            return out.length();
+        }
+        finally
+        {
+            out.delete();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.metsci.glimpse.util.math.fast.FastAtan;
+import com.metsci.glimpse.util.math.fast.FastExp;
+import com.metsci.glimpse.util.math.fast.FastLog;
+import com.metsci.glimpse.util.math.fast.FastSin;
+
+/**
+ * The {@link com.metsci.glimpse.util.math.fast} lookup tables compared with the
+ * corresponding {@link Math} functions, over a block of {@link #BLOCK} arguments.
+ * Larger tables are more accurate but fall out of cache sooner.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FastMathBenchmark
+{
+    public static final int BLOCK = 1024;
+
+    @Param({"1000", "100000"})
+    public int samples;
+
+    protected double[] args;
+    protected double[] positiveArgs;
+
+    protected FastExp fastExp;
+    protected FastLog fastLog;
+    protected FastSin fastSin;
+    protected FastAtan fastAtan;
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(0);
+
+        args = new double[BLOCK];
+        positiveArgs = new double[BLOCK];
+        for (int i = 0; i < BLOCK; i++)
+        {
+            args[i] = random.nextDouble() * 2 - 1;
+            positiveArgs[i] = random.nextDouble() * 1000 + 1e-3;
+        }
+
+        fastExp = new FastExp(-1, 1, samples);
+        fastLog = new FastLog(samples);
+        fastSin = new FastSin(-1, 1, samples);
+        fastAtan = new FastAtan(samples);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public double mathExp()
+    {
+        double sum = 0;
+        for (int i = 0; i < BLOCK; i++) sum += Math.exp(args[i]);
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public double fastExp()
+    {
+        double sum = 0;
+        for (int i = 0; i < BLOCK; i++) sum += fastExp.evaluate(args[i]);
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public double mathLog()
+    {
+        double sum = 0;
+        for (int i = 0; i < BLOCK; i++) sum += Math.log(positiveArgs[i]);
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public double fastLog()
+    {
+        double sum = 0;
+        for (int i = 0; i < BLOCK; i++) sum += fastLog.evaluate(positiveArgs[i]);
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public double mathSin()
+    {
+        double sum = 0;
+        for (int i = 0; i < BLOCK; i++) sum += Math.sin(args[i]);
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public double fastSin()
+    {
+        double sum = 0;
+        for (int i = 0; i < BLOCK; i++) sum += fastSin.evaluate(args[i]);
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public double mathAtan2()
+    {
+        double sum = 0;
+        for (int i = 0; i < BLOCK; i++) sum += Math.atan2(args[i], args[BLOCK - 1 - i]);
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public double fastAtan2()
+    {
+        double sum = 0;
+        for (int i = 0; i < BLOCK; i++) sum += fastAtan.atan2(args[i], args[BLOCK - 1 - i]);
+        return sum;
+    }
+}
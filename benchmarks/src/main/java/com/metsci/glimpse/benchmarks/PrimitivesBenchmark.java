@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.metsci.glimpse.util.primitives.DoublesArray;
+import com.metsci.glimpse.util.primitives.algorithms.Sorting;
+import com.metsci.glimpse.util.primitives.sorted.ContinuousIndex;
+import com.metsci.glimpse.util.primitives.sorted.ContinuousIndexArray;
+import com.metsci.glimpse.util.primitives.sorted.SortedLongsArray;
+
+/**
+ * Lookups in {@link SortedLongsArray}, growth of {@link DoublesArray}, and the
+ * {@link com.metsci.glimpse.util.primitives.algorithms.GenericSorting} sorts (through
+ * {@link Sorting}) compared with {@link Arrays#sort(long[])}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrimitivesBenchmark
+{
+    @Param({"1000", "100000"})
+    public int size;
+
+    protected SortedLongsArray times;
+    protected SortedLongsArray queries;
+    protected ContinuousIndex index;
+    protected ContinuousIndexArray indices;
+
+    protected double[] values;
+    protected DoublesArray doubles;
+
+    protected int next;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        Random random = new Random(0);
+
+        // irregularly spaced timestamps, like a recorded track
+        long[] t = new long[size];
+        long time = 0;
+        for (int i = 0; i < size; i++)
+        {
+            time += 1 + random.nextInt(1000);
+            t[i] = time;
+        }
+        times = new SortedLongsArray(t);
+
+        long[] q = new long[size];
+        for (int i = 0; i < size; i++)
+        {
+            q[i] = (long) (random.nextDouble() * time);
+        }
+        Arrays.sort(q);
+        queries = new SortedLongsArray(q);
+
+        index = new ContinuousIndex();
+        indices = new ContinuousIndexArray(size);
+
+        values = new double[size];
+        for (int i = 0; i < size; i++)
+        {
+            values[i] = random.nextDouble();
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public ContinuousIndex continuousIndexOf()
+    {
+        long x = queries.a[next];
+        next = (next + 1 == size ? 0 : next + 1);
+
+        times.continuousIndexOf(x, index);
+        return index;
+    }
+
+    @Benchmark
+    public ContinuousIndexArray continuousIndicesOfSorted()
+    {
+        times.continuousIndicesOf(queries, indices);
+        return indices;
+    }
+
+    @Benchmark
+    public DoublesArray doublesAppend()
+    {
+        DoublesArray array = new DoublesArray();
+        for (int i = 0; i < size; i++)
+        {
+            array.append(values[i]);
+        }
+        return array;
+    }
+
+    /**
+     * Inserts at random positions, which shifts on average half the array per insert.
+     */
+    @Benchmark
+    public DoublesArray doublesInsert()
+    {
+        DoublesArray array = new DoublesArray();
+        for (int i = 0; i < size; i++)
+        {
+            array.insert((int) (values[i] * array.n), values[i]);
+        }
+        return array;
+    }
+
+    /**
+     * Holds the arrays to be sorted, which are reset before every invocation.
+     */
+    @State(Scope.Thread)
+    public static class SortState
+    {
+        @Param({"1000", "100000"})
+        public int sortSize;
+
+        protected long[] unsorted;
+        protected long[] values;
+        protected int[] aux;
+
+        @Setup(Level.Trial)
+        public void setup()
+        {
+            Random random = new Random(0);
+
+            unsorted = new long[sortSize];
+            for (int i = 0; i < sortSize; i++)
+            {
+                unsorted[i] = random.nextLong();
+            }
+
+            values = new long[sortSize];
+            aux = new int[sortSize];
+        }
+
+        @Setup(Level.Invocation)
+        public void reset()
+        {
+            System.arraycopy(unsorted, 0, values, 0, sortSize);
+            for (int i = 0; i < sortSize; i++)
+            {
+                aux[i] = i;
+            }
+        }
+    }
+
+    @Benchmark
+    public long[] genericMergesort(SortState state)
+    {
+        Sorting.mergesort(state.values, state.aux, 0, state.sortSize);
+        return state.values;
+    }
+
+    @Benchmark
+    public long[] genericQuicksort(SortState state)
+    {
+        Sorting.quicksort(state.values, state.aux, 0, state.sortSize);
+        return state.values;
+    }
+
+    @Benchmark
+    public long[] arraysSort(SortState state)
+    {
+        Arrays.sort(state.values);
+        return state.values;
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.metsci.glimpse.util.primitives.LongsArray;
+import com.metsci.glimpse.util.quadtree.QuadTreeLongs2;
+import com.metsci.glimpse.util.quadtree.QuadTreeXys;
+import com.metsci.glimpse.util.quadtree.Xy;
+
+/**
+ * Add, search, nearest-neighbor, and remove throughput for {@link QuadTreeXys} and
+ * {@link QuadTreeLongs2}, and build time for {@link QuadTreeXys}.
+ *
+ * Points are uniformly distributed in the unit square. Each search covers a window
+ * sized to contain about {@code searchHits} points on average.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuadTreeBenchmark
+{
+    @Param({"10000", "1000000"})
+    public int size;
+
+    @Param({"100"})
+    public int searchHits;
+
+    @Param({"100"})
+    public int maxBucketSize;
+
+    protected Point[] points;
+    protected long[] xBits;
+    protected long[] yBits;
+    protected float[] windowsX;
+    protected float[] windowsY;
+    protected float windowSize;
+
+    protected QuadTreeXys<Point> xysTree;
+    protected QuadTreeLongs2 longsTree;
+
+    // Replacements for the points in the left half of the square, all in the right half
+    protected Point[] churnPoints;
+    protected QuadTreeXys<Point> churnedXysTree;
+
+    protected int next;
+
+    // Reused across invocations, to measure the allocation-free nearest-neighbor queries
+    protected LongsArray nearestLongs = new LongsArray();
+    protected ArrayList<Point> nearestXys = new ArrayList<Point>();
+
+    protected static class Point implements Xy
+    {
+        protected final float x;
+        protected final float y;
+
+        public Point(float x, float y)
+        {
+            this.x = x;
+            this.y = y;
+        }
+
+        public float x()
+        {
+            return x;
+        }
+
+        public float y()
+        {
+            return y;
+        }
+    }
+
+    /**
+     * Stores each point as the raw float bits of its coordinates.
+     */
+    protected static class FloatBitsQuadTree extends QuadTreeLongs2
+    {
+        public FloatBitsQuadTree(int maxBucketSize)
+        {
+            super(maxBucketSize);
+        }
+
+        @Override
+        protected float x(long v1, long v2)
+        {
+            return Float.intBitsToFloat((int) v1);
+        }
+
+        @Override
+        protected float y(long v1, long v2)
+        {
+            return Float.intBitsToFloat((int) v2);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setupData()
+    {
+        Random random = new Random(0);
+
+        points = new Point[size];
+        xBits = new long[size];
+        yBits = new long[size];
+        for (int i = 0; i < size; i++)
+        {
+            points[i] = new Point(random.nextFloat(), random.nextFloat());
+            xBits[i] = Float.floatToIntBits(points[i].x);
+            yBits[i] = Float.floatToIntBits(points[i].y);
+        }
+
+        churnPoints = new Point[size];
+        for (int i = 0; i < size; i++)
+        {
+            churnPoints[i] = new Point(0.5f + 0.5f * random.nextFloat(), random.nextFloat());
+        }
+
+        windowSize = (float) Math.sqrt(Math.min(1.0, searchHits / (double) size));
+        windowsX = new float[1024];
+        windowsY = new float[1024];
+        for (int i = 0; i < windowsX.length; i++)
+        {
+            windowsX[i] = random.nextFloat() * (1 - windowSize);
+            windowsY[i] = random.nextFloat() * (1 - windowSize);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setupTrees()
+    {
+        xysTree = new QuadTreeXys<Point>(maxBucketSize);
+        longsTree = new FloatBitsQuadTree(maxBucketSize);
+        for (int i = 0; i < size; i++)
+        {
+            xysTree.add(points[i]);
+            longsTree.add(xBits[i], yBits[i]);
+        }
+
+        // Same size as xysTree, but every point that started out in the left half has
+        // been removed, and replaced by a point in the right half
+        churnedXysTree = new QuadTreeXys<Point>(maxBucketSize);
+        churnedXysTree.addAll(Arrays.asList(points));
+        for (int i = 0; i < size; i++)
+        {
+            if (points[i].x < 0.5f)
+            {
+                churnedXysTree.remove(points[i]);
+                churnedXysTree.add(churnPoints[i]);
+            }
+        }
+
+        next = 0;
+    }
+
+    protected int nextIndex()
+    {
+        int i = next;
+        next = (i + 1 == size ? 0 : i + 1);
+        return i;
+    }
+
+    protected int nextWindow()
+    {
+        return (next++) & (windowsX.length - 1);
+    }
+
+    /**
+     * Removes a point and adds it back, so the tree size stays constant.
+     */
+    @Benchmark
+    public void xysRemoveAdd()
+    {
+        Point p = points[nextIndex()];
+        xysTree.remove(p);
+        xysTree.add(p);
+    }
+
+    @Benchmark
+    public int xysSearch()
+    {
+        int w = nextWindow();
+        float x = windowsX[w];
+        float y = windowsY[w];
+        return xysTree.search(x, x + windowSize, y, y + windowSize).size();
+    }
+
+    /**
+     * Same searches as {@link #xysSearch()}, on a tree that has seen 50% churn.
+     */
+    @Benchmark
+    public int xysSearchAfterChurn()
+    {
+        int w = nextWindow();
+        float x = windowsX[w];
+        float y = windowsY[w];
+        return churnedXysTree.search(x, x + windowSize, y, y + windowSize).size();
+    }
+
+    @Benchmark
+    public int xysSearchPresized()
+    {
+        int w = nextWindow();
+        float x = windowsX[w];
+        float y = windowsY[w];
+        Collection<Point> results = new ArrayList<Point>(2 * searchHits);
+        return xysTree.search(x, x + windowSize, y, y + windowSize, results);
+    }
+
+    @Benchmark
+    public void longsRemoveAdd()
+    {
+        int i = nextIndex();
+        longsTree.remove(xBits[i], yBits[i]);
+        longsTree.add(xBits[i], yBits[i]);
+    }
+
+    @Benchmark
+    public int longsSearch()
+    {
+        int w = nextWindow();
+        float x = windowsX[w];
+        float y = windowsY[w];
+        return longsTree.search(x, x + windowSize, y, y + windowSize).n();
+    }
+
+    @Benchmark
+    public int longsSearchPresized()
+    {
+        int w = nextWindow();
+        float x = windowsX[w];
+        float y = windowsY[w];
+        return longsTree.search(x, x + windowSize, y, y + windowSize, new LongsArray(new long[4 * searchHits], 0));
+    }
+
+    /**
+     * Nearest point to the center of a search window, within half a window width,
+     * as for picking under the mouse cursor.
+     */
+    @Benchmark
+    public int longsNearest()
+    {
+        int w = nextWindow();
+        float x = windowsX[w] + 0.5f * windowSize;
+        float y = windowsY[w] + 0.5f * windowSize;
+        nearestLongs.n = 0;
+        return longsTree.searchNearest(x, y, 1, 0.5f * windowSize, nearestLongs);
+    }
+
+    @Benchmark
+    public int xysNearest()
+    {
+        int w = nextWindow();
+        float x = windowsX[w] + 0.5f * windowSize;
+        float y = windowsY[w] + 0.5f * windowSize;
+        nearestXys.clear();
+        return xysTree.searchNearest(x, y, 8, nearestXys);
+    }
+
+    /**
+     * Same query as {@link #longsNearest()}, done the old way: a box search followed
+     * by a scan for the closest hit.
+     */
+    @Benchmark
+    public long longsNearestByBox()
+    {
+        int w = nextWindow();
+        float r = 0.5f * windowSize;
+        float x = windowsX[w] + r;
+        float y = windowsY[w] + r;
+
+        LongsArray hits = (LongsArray) longsTree.search(x - r, x + r, y - r, y + r);
+
+        long best = -1;
+        double bestDistSq = (double) r * r;
+        for (int i = 0; i < hits.n; i += 2)
+        {
+            double dx = Float.intBitsToFloat((int) hits.a[i]) - x;
+            double dy = Float.intBitsToFloat((int) hits.a[i+1]) - y;
+            double distSq = dx*dx + dy*dy;
+            if (distSq <= bestDistSq)
+            {
+                bestDistSq = distSq;
+                best = hits.a[i];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Builds a complete tree from scratch.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public QuadTreeXys<Point> xysBuild()
+    {
+        QuadTreeXys<Point> tree = new QuadTreeXys<Point>(maxBucketSize);
+        for (int i = 0; i < size; i++)
+        {
+            tree.add(points[i]);
+        }
+        return tree;
+    }
+
+    /**
+     * Builds the same tree as {@link #xysBuild()}, using the bulk loader.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public QuadTreeXys<Point> xysBulkBuild()
+    {
+        QuadTreeXys<Point> tree = new QuadTreeXys<Point>(maxBucketSize);
+        tree.addAll(Arrays.asList(points));
+        return tree;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.metsci.glimpse.util.primitives.algorithms.ParallelSorting;
+import com.metsci.glimpse.util.primitives.algorithms.RadixSorting;
+import com.metsci.glimpse.util.primitives.algorithms.Sorting;
+
+/**
+ * Time to sort keys along with their original indices, using {@link Sorting}, {@link RadixSorting},
+ * and {@link ParallelSorting}.
+ *
+ * The timestamp keys are millisecond times spread over one day, as when indexing a recorded day
+ * of data. The random keys use all 64 bits, so the radix sort cannot skip any passes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+public class SortingBenchmark
+{
+    @Param({"1000000", "10000000"})
+    public int size;
+
+    @Param({"timestamps", "random"})
+    public String keys;
+
+    protected long[] originalLongs;
+    protected double[] originalDoubles;
+
+    protected long[] longs;
+    protected double[] doubles;
+    protected int[] indices;
+
+    protected ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setupData()
+    {
+        Random random = new Random(0);
+        long start = 1356998400000L;
+
+        originalLongs = new long[size];
+        originalDoubles = new double[size];
+        for (int i = 0; i < size; i++)
+        {
+            originalLongs[i] = ("timestamps".equals(keys) ? start + random.nextInt(24 * 60 * 60 * 1000) : random.nextLong());
+            originalDoubles[i] = ("timestamps".equals(keys) ? originalLongs[i] : random.nextGaussian());
+        }
+
+        longs = new long[size];
+        doubles = new double[size];
+        indices = new int[size];
+
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+
+    @Setup(Level.Invocation)
+    public void reset()
+    {
+        System.arraycopy(originalLongs, 0, longs, 0, size);
+        System.arraycopy(originalDoubles, 0, doubles, 0, size);
+        for (int i = 0; i < size; i++) indices[i] = i;
+    }
+
+    @Benchmark
+    public int[] genericMergesort()
+    {
+        Sorting.mergesort(longs, indices, 0, size);
+        return indices;
+    }
+
+    @Benchmark
+    public int[] genericQuicksort()
+    {
+        Sorting.quicksort(longs, indices, 0, size);
+        return indices;
+    }
+
+    @Benchmark
+    public int[] radixsortLongs()
+    {
+        RadixSorting.radixsort(longs, indices);
+        return indices;
+    }
+
+    @Benchmark
+    public int[] parallelMergesortLongs()
+    {
+        ParallelSorting.mergesort(longs, indices, executor);
+        return indices;
+    }
+
+    @Benchmark
+    public int[] radixsortDoubles()
+    {
+        RadixSorting.radixsort(doubles, indices);
+        return indices;
+    }
+
+    @Benchmark
+    public int[] parallelMergesortDoubles()
+    {
+        ParallelSorting.mergesort(doubles, indices, executor);
+        return indices;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.benchmarks;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.metsci.glimpse.util.units.time.format.TimeStampFormatStandard;
+
+/**
+ * Format and parse times for {@link TimeStampFormatStandard}, comparing the general
+ * BigDecimal/Calendar/regex implementations against the integer-timestamp fast paths.
+ *
+ * The formats are the ones the time axis uses for its labels, plus ISO-8601. Run with
+ * the GC profiler (as {@link BenchmarkRunner} does) to compare allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimeStampFormatBenchmark
+{
+    @Param({"%y-%M-%dT%H:%m:%SZ", "%H:%m:%S3", "%d %N3 %y", "%H:%m"})
+    public String format;
+
+    @Param({"UTC", "America/New_York"})
+    public String timeZone;
+
+    protected TimeStampFormatStandard timeStampFormat;
+    protected long[] posixMillis;
+    protected String[] strings;
+    protected StringBuilder buffer;
+    protected char[] chars;
+
+    protected int next;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        timeStampFormat = new TimeStampFormatStandard(format, timeZone);
+
+        // Times within a few decades of now
+        Random random = new Random(0);
+        posixMillis = new long[1024];
+        strings = new String[posixMillis.length];
+        for (int i = 0; i < posixMillis.length; i++)
+        {
+            posixMillis[i] = 1300000000000L + (long) (random.nextDouble() * 1000000000000L);
+            strings[i] = timeStampFormat.format(BigDecimal.valueOf(posixMillis[i], 3));
+        }
+
+        buffer = new StringBuilder();
+        chars = new char[64];
+        next = 0;
+    }
+
+    protected int nextIndex()
+    {
+        return (next++) & (posixMillis.length - 1);
+    }
+
+    @Benchmark
+    public String formatBigDecimal()
+    {
+        return timeStampFormat.format(BigDecimal.valueOf(posixMillis[nextIndex()], 3));
+    }
+
+    @Benchmark
+    public int formatMillis()
+    {
+        buffer.setLength(0);
+        return timeStampFormat.formatPosixMillis(posixMillis[nextIndex()], buffer).length();
+    }
+
+    @Benchmark
+    public int formatMillisChars()
+    {
+        return timeStampFormat.formatPosixMillis(posixMillis[nextIndex()], chars, 0);
+    }
+
+    @Benchmark
+    public BigDecimal parseBigDecimal()
+    {
+        return timeStampFormat.parse(strings[nextIndex()]);
+    }
+
+    @Benchmark
+    public long parseMillis()
+    {
+        return timeStampFormat.parsePosixMillis(strings[nextIndex()]);
+    }
+}
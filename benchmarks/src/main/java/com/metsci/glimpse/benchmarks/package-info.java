@@ -0,0 +1,13 @@
+/**
+ * JMH benchmark suites for the Glimpse utility classes: primitive arrays, sorting,
+ * quadtrees, fast math lookup tables, and data pipes. None of the suites require a
+ * display.
+ *
+ * The benchmarks module is only built when the {@code benchmarks} profile is active. Build
+ * with {@code mvn -P benchmarks package} from the top-level directory, and run
+ * {@code java -jar benchmarks/target/benchmarks.jar}. By
+ * default every suite is run with the GC profiler, which reports allocation rates
+ * alongside throughput. Sizes can be overridden with JMH's {@code -p} option, for
+ * example {@code -p size=1000,1000000}.
+ */
+package com.metsci.glimpse.benchmarks;
@@ -0,0 +1,434 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.examples.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.metsci.glimpse.util.quadtree.ConcurrentQuadTreeXys;
+import com.metsci.glimpse.util.quadtree.QuadTreeXys;
+import com.metsci.glimpse.util.quadtree.Xy;
+
+/**
+ * Stress test and throughput comparison for {@link ConcurrentQuadTreeXys}.
+ *
+ * The stress test runs a feed thread which adds points in batches and removes the
+ * oldest batches, as a track feed with a limited history would, while several reader
+ * threads search the tree. Every batch is the same size, so a reader which sees part
+ * of a batch, or a result count that disagrees with the snapshot size, has observed
+ * an inconsistent snapshot. The final tree is then checked against a {@link QuadTreeXys}
+ * holding the same points.
+ *
+ * The throughput test runs the same workload against a {@link QuadTreeXys} guarded by
+ * a lock (the way TrackPainter used to share its index) and against the concurrent tree,
+ * and reports points added and searches completed per second.
+ *
+ * Usage: ConcurrentQuadTreeBenchmark [readerThreads] [seconds] [batchSize] [historyBatches]
+ */
+public class ConcurrentQuadTreeBenchmark
+{
+    protected static final int maxBucketSize = 100;
+
+    public static void main( String[] args ) throws Exception
+    {
+        int readerThreads = args.length > 0 ? Integer.parseInt( args[0] ) : 3;
+        double seconds = args.length > 1 ? Double.parseDouble( args[1] ) : 5;
+        int batchSize = args.length > 2 ? Integer.parseInt( args[2] ) : 50;
+        int historyBatches = args.length > 3 ? Integer.parseInt( args[3] ) : 2000;
+
+        System.out.printf( "%d reader threads, %.1f s, %d points per batch, %d batches of history%n", readerThreads, seconds, batchSize, historyBatches );
+
+        stress( readerThreads, seconds, batchSize, historyBatches );
+
+        System.out.printf( "%-28s %14s %14s %16s%n", "index", "adds/s", "searches/s", "max search (ms)" );
+        for ( int pass = 0; pass < 2; pass++ )
+        {
+            report( "QuadTreeXys + lock", throughput( new LockedIndex( ), readerThreads, seconds, batchSize, historyBatches ) );
+            report( "ConcurrentQuadTreeXys", throughput( new ConcurrentIndex( ), readerThreads, seconds, batchSize, historyBatches ) );
+        }
+    }
+
+    protected static class TestPoint implements Xy
+    {
+        public final int batch;
+        public final float x;
+        public final float y;
+
+        public TestPoint( int batch, float x, float y )
+        {
+            this.batch = batch;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public float x( )
+        {
+            return x;
+        }
+
+        @Override
+        public float y( )
+        {
+            return y;
+        }
+    }
+
+    protected static List<TestPoint> newBatch( Random random, int batch, int batchSize )
+    {
+        // points cluster around a few moving centers, roughly like tracks
+        List<TestPoint> points = new ArrayList<TestPoint>( batchSize );
+        for ( int i = 0; i < batchSize; i++ )
+        {
+            float cx = ( float ) ( 500 * Math.sin( batch * 0.001 + i ) );
+            float cy = ( float ) ( 500 * Math.cos( batch * 0.0013 + i ) );
+            points.add( new TestPoint( batch, cx + ( float ) random.nextGaussian( ) * 20, cy + ( float ) random.nextGaussian( ) * 20 ) );
+        }
+        return points;
+    }
+
+    protected static void stress( int readerThreads, double seconds, final int batchSize, final int historyBatches ) throws Exception
+    {
+        final ConcurrentQuadTreeXys<TestPoint> tree = new ConcurrentQuadTreeXys<TestPoint>( maxBucketSize );
+        final QuadTreeXys<TestPoint> reference = new QuadTreeXys<TestPoint>( maxBucketSize );
+
+        final AtomicBoolean running = new AtomicBoolean( true );
+        final AtomicReference<String> failure = new AtomicReference<String>( );
+        final AtomicLong snapshotsChecked = new AtomicLong( );
+
+        Thread feed = new Thread( )
+        {
+            @Override
+            public void run( )
+            {
+                Random random = new Random( 0 );
+                List<List<TestPoint>> history = new ArrayList<List<TestPoint>>( );
+
+                for ( int batch = 0; running.get( ); batch++ )
+                {
+                    List<TestPoint> points = newBatch( random, batch, batchSize );
+                    history.add( points );
+
+                    tree.startBatch( );
+                    try
+                    {
+                        for ( TestPoint p : points ) tree.add( p );
+                        if ( history.size( ) > historyBatches )
+                        {
+                            for ( TestPoint p : history.remove( 0 ) ) tree.remove( p );
+                        }
+                    }
+                    finally
+                    {
+                        tree.endBatch( );
+                    }
+                }
+
+                for ( List<TestPoint> points : history )
+                {
+                    for ( TestPoint p : points ) reference.add( p );
+                }
+            }
+        };
+
+        List<Thread> readers = new ArrayList<Thread>( );
+        for ( int t = 0; t < readerThreads; t++ )
+        {
+            final long seed = t + 1;
+            readers.add( new Thread( )
+            {
+                @Override
+                public void run( )
+                {
+                    Random random = new Random( seed );
+                    Map<Integer, int[]> counts = new HashMap<Integer, int[]>( );
+
+                    while ( running.get( ) )
+                    {
+                        ConcurrentQuadTreeXys.Snapshot<TestPoint> snapshot = tree.snapshot( );
+
+                        Collection<TestPoint> all = snapshot.search( -Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, Float.MAX_VALUE );
+                        if ( all.size( ) != snapshot.size( ) )
+                        {
+                            failure.compareAndSet( null, "search found " + all.size( ) + " points, snapshot has " + snapshot.size( ) );
+                        }
+
+                        counts.clear( );
+                        for ( TestPoint p : all )
+                        {
+                            int[] count = counts.get( p.batch );
+                            if ( count == null ) counts.put( p.batch, count = new int[1] );
+                            count[0]++;
+                        }
+                        for ( Map.Entry<Integer, int[]> entry : counts.entrySet( ) )
+                        {
+                            if ( entry.getValue( )[0] != batchSize )
+                            {
+                                failure.compareAndSet( null, "saw " + entry.getValue( )[0] + " of " + batchSize + " points from batch " + entry.getKey( ) );
+                            }
+                        }
+
+                        // a few small searches against the same snapshot must agree with a brute-force filter
+                        for ( int i = 0; i < 8; i++ )
+                        {
+                            float x0 = random.nextFloat( ) * 1200 - 600;
+                            float y0 = random.nextFloat( ) * 1200 - 600;
+                            float x1 = x0 + random.nextFloat( ) * 200;
+                            float y1 = y0 + random.nextFloat( ) * 200;
+
+                            int expected = 0;
+                            for ( TestPoint p : all )
+                            {
+                                if ( x0 <= p.x && p.x <= x1 && y0 <= p.y && p.y <= y1 ) expected++;
+                            }
+
+                            int found = snapshot.search( x0, x1, y0, y1 ).size( );
+                            if ( found != expected )
+                            {
+                                failure.compareAndSet( null, "box search found " + found + " points, expected " + expected );
+                            }
+                        }
+
+                        snapshotsChecked.incrementAndGet( );
+                    }
+                }
+            } );
+        }
+
+        feed.start( );
+        for ( Thread reader : readers ) reader.start( );
+
+        Thread.sleep( ( long ) ( seconds * 1000 ) );
+        running.set( false );
+
+        feed.join( );
+        for ( Thread reader : readers ) reader.join( );
+
+        // the final tree must agree with a single-threaded tree holding the same points
+        Random random = new Random( 42 );
+        for ( int i = 0; i < 1000 && failure.get( ) == null; i++ )
+        {
+            float x0 = random.nextFloat( ) * 1200 - 600;
+            float y0 = random.nextFloat( ) * 1200 - 600;
+            float x1 = x0 + random.nextFloat( ) * 300;
+            float y1 = y0 + random.nextFloat( ) * 300;
+
+            int expected = reference.search( x0, x1, y0, y1 ).size( );
+            int found = tree.search( x0, x1, y0, y1 ).size( );
+            if ( found != expected )
+            {
+                failure.compareAndSet( null, "final tree found " + found + " points, reference found " + expected );
+            }
+        }
+
+        if ( failure.get( ) != null ) throw new AssertionError( failure.get( ) );
+
+        System.out.printf( "stress test passed: %d snapshots checked, %d points in final tree%n", snapshotsChecked.get( ), tree.size( ) );
+    }
+
+    protected static interface Index
+    {
+        void update( List<TestPoint> added, List<TestPoint> removed );
+
+        int search( float xMin, float xMax, float yMin, float yMax, Collection<TestPoint> results );
+    }
+
+    protected static class LockedIndex implements Index
+    {
+        protected final ReentrantLock lock = new ReentrantLock( );
+        protected final QuadTreeXys<TestPoint> tree = new QuadTreeXys<TestPoint>( maxBucketSize );
+
+        @Override
+        public void update( List<TestPoint> added, List<TestPoint> removed )
+        {
+            lock.lock( );
+            try
+            {
+                for ( TestPoint p : added ) tree.add( p );
+                if ( removed != null ) for ( TestPoint p : removed ) tree.remove( p );
+            }
+            finally
+            {
+                lock.unlock( );
+            }
+        }
+
+        @Override
+        public int search( float xMin, float xMax, float yMin, float yMax, Collection<TestPoint> results )
+        {
+            lock.lock( );
+            try
+            {
+                return tree.search( xMin, xMax, yMin, yMax, results );
+            }
+            finally
+            {
+                lock.unlock( );
+            }
+        }
+    }
+
+    protected static class ConcurrentIndex implements Index
+    {
+        protected final ConcurrentQuadTreeXys<TestPoint> tree = new ConcurrentQuadTreeXys<TestPoint>( maxBucketSize );
+
+        @Override
+        public void update( List<TestPoint> added, List<TestPoint> removed )
+        {
+            tree.startBatch( );
+            try
+            {
+                for ( TestPoint p : added ) tree.add( p );
+                if ( removed != null ) for ( TestPoint p : removed ) tree.remove( p );
+            }
+            finally
+            {
+                tree.endBatch( );
+            }
+        }
+
+        @Override
+        public int search( float xMin, float xMax, float yMin, float yMax, Collection<TestPoint> results )
+        {
+            return tree.search( xMin, xMax, yMin, yMax, results );
+        }
+    }
+
+    protected static class Result
+    {
+        public long adds;
+        public long searches;
+        public long maxSearchNanos;
+        public double seconds;
+    }
+
+    protected static Result throughput( final Index index, int readerThreads, double seconds, final int batchSize, final int historyBatches ) throws Exception
+    {
+        final AtomicBoolean running = new AtomicBoolean( true );
+        final AtomicLong adds = new AtomicLong( );
+        final AtomicLong searches = new AtomicLong( );
+        final AtomicLong maxSearchNanos = new AtomicLong( );
+        final CountDownLatch started = new CountDownLatch( 1 + readerThreads );
+
+        // prefill the history so that both indexes start at the same size
+        final Random feedRandom = new Random( 0 );
+        final List<List<TestPoint>> history = new ArrayList<List<TestPoint>>( );
+        for ( int batch = 0; batch < historyBatches; batch++ )
+        {
+            List<TestPoint> points = newBatch( feedRandom, batch, batchSize );
+            history.add( points );
+            index.update( points, null );
+        }
+
+        Thread feed = new Thread( )
+        {
+            @Override
+            public void run( )
+            {
+                started.countDown( );
+                for ( int batch = historyBatches; running.get( ); batch++ )
+                {
+                    List<TestPoint> points = newBatch( feedRandom, batch, batchSize );
+                    history.add( points );
+                    index.update( points, history.remove( 0 ) );
+                    adds.addAndGet( points.size( ) );
+                }
+            }
+        };
+
+        List<Thread> readers = new ArrayList<Thread>( );
+        for ( int t = 0; t < readerThreads; t++ )
+        {
+            final long seed = t + 1;
+            readers.add( new Thread( )
+            {
+                @Override
+                public void run( )
+                {
+                    Random random = new Random( seed );
+                    Collection<TestPoint> results = new ArrayList<TestPoint>( );
+                    long maxNanos = 0;
+
+                    started.countDown( );
+                    while ( running.get( ) )
+                    {
+                        // selection-sized boxes, like a SpatialSelectionAxisListener drag
+                        float x0 = random.nextFloat( ) * 1200 - 600;
+                        float y0 = random.nextFloat( ) * 1200 - 600;
+                        float x1 = x0 + random.nextFloat( ) * 150;
+                        float y1 = y0 + random.nextFloat( ) * 150;
+
+                        long start = System.nanoTime( );
+                        results.clear( );
+                        index.search( x0, x1, y0, y1, results );
+                        maxNanos = Math.max( maxNanos, System.nanoTime( ) - start );
+
+                        searches.incrementAndGet( );
+                    }
+
+                    synchronized ( maxSearchNanos )
+                    {
+                        maxSearchNanos.set( Math.max( maxSearchNanos.get( ), maxNanos ) );
+                    }
+                }
+            } );
+        }
+
+        feed.start( );
+        for ( Thread reader : readers ) reader.start( );
+        started.await( );
+
+        long start = System.nanoTime( );
+        Thread.sleep( ( long ) ( seconds * 1000 ) );
+        running.set( false );
+        long nanos = System.nanoTime( ) - start;
+
+        feed.join( );
+        for ( Thread reader : readers ) reader.join( );
+
+        Result result = new Result( );
+        result.adds = adds.get( );
+        result.searches = searches.get( );
+        result.maxSearchNanos = maxSearchNanos.get( );
+        result.seconds = nanos / 1e9;
+        return result;
+    }
+
+    protected static void report( String name, Result result )
+    {
+        System.out.printf( "%-28s %14.0f %14.0f %16.2f%n", name, result.adds / result.seconds, result.searches / result.seconds, result.maxSearchNanos / 1e6 );
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.examples.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.media.opengl.GL;
+
+/**
+ * Creates {@link GL} instances which do no rendering, but instead count the OpenGL calls
+ * made by painters. This allows the CPU-side cost of painting (number of draw calls, state
+ * changes, and bytes copied to the device) to be measured without an OpenGL context.
+ */
+public class CountingGL implements InvocationHandler
+{
+    protected GL gl;
+
+    protected Map<String, Integer> callCounts;
+    protected long uploadedBytes;
+    protected int nextHandle;
+
+    public CountingGL( )
+    {
+        this.callCounts = new TreeMap<String, Integer>( );
+        this.nextHandle = 1;
+        this.gl = ( GL ) Proxy.newProxyInstance( GL.class.getClassLoader( ), new Class<?>[] { GL.class }, this );
+    }
+
+    public GL getGL( )
+    {
+        return gl;
+    }
+
+    /**
+     * @return the number of glDrawArrays, glMultiDrawArrays, and glBegin calls
+     */
+    public int getDrawCallCount( )
+    {
+        return getCallCount( "glDrawArrays" ) + getCallCount( "glMultiDrawArrays" ) + getCallCount( "glBegin" );
+    }
+
+    /**
+     * @return the number of bytes passed to glBufferData and glBufferSubData
+     */
+    public long getUploadedBytes( )
+    {
+        return uploadedBytes;
+    }
+
+    public int getCallCount( String method )
+    {
+        Integer count = callCounts.get( method );
+        return count == null ? 0 : count;
+    }
+
+    public Map<String, Integer> getCallCounts( )
+    {
+        return callCounts;
+    }
+
+    public void reset( )
+    {
+        callCounts.clear( );
+        uploadedBytes = 0;
+    }
+
+    @Override
+    public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable
+    {
+        String name = method.getName( );
+
+        Integer count = callCounts.get( name );
+        callCounts.put( name, count == null ? 1 : count + 1 );
+
+        if ( name.equals( "glBufferData" ) && args[2] != null )
+        {
+            uploadedBytes += ( ( Number ) args[1] ).longValue( );
+        }
+        else if ( name.equals( "glBufferSubData" ) )
+        {
+            uploadedBytes += ( ( Number ) args[2] ).longValue( );
+        }
+        else if ( ( name.equals( "glGenBuffers" ) || name.equals( "glGenTextures" ) ) && args[1] instanceof int[] )
+        {
+            int n = ( Integer ) args[0];
+            int[] handles = ( int[] ) args[1];
+            int offset = ( Integer ) args[2];
+            for ( int i = 0; i < n; i++ )
+            {
+                handles[offset + i] = nextHandle++;
+            }
+        }
+
+        return defaultValue( method.getReturnType( ) );
+    }
+
+    protected static Object defaultValue( Class<?> type )
+    {
+        if ( type == Boolean.TYPE ) return Boolean.FALSE;
+        if ( type == Integer.TYPE ) return 0;
+        if ( type == Long.TYPE ) return 0L;
+        if ( type == Float.TYPE ) return 0f;
+        if ( type == Double.TYPE ) return 0d;
+        if ( type == Short.TYPE ) return ( short ) 0;
+        if ( type == Byte.TYPE ) return ( byte ) 0;
+        if ( type == Character.TYPE ) return ( char ) 0;
+        return null;
+    }
+}
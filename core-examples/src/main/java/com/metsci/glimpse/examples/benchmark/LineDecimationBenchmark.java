@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.examples.benchmark;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import com.metsci.glimpse.painter.plot.MinMaxPyramid;
+import com.metsci.glimpse.painter.plot.XYLinePainter;
+import com.sun.opengl.util.BufferUtil;
+
+/**
+ * Checks the min/max decimation used by {@link XYLinePainter} against a brute-force
+ * scan of every pixel column, and times both, along with building the pyramid all at
+ * once and by appending.
+ *
+ * The series is a random walk with uniformly spaced x values. Each viewport shows a
+ * random range covering between 0.1% and 100% of the series.
+ *
+ * Usage: LineDecimationBenchmark [samples] [pixels] [viewports]
+ */
+public class LineDecimationBenchmark
+{
+    public static void main( String[] args )
+    {
+        int n = args.length > 0 ? Integer.parseInt( args[0] ) : 10000000;
+        int pixels = args.length > 1 ? Integer.parseInt( args[1] ) : 1920;
+        int numViewports = args.length > 2 ? Integer.parseInt( args[2] ) : 100;
+
+        Random random = new Random( 0 );
+        FloatBuffer data = BufferUtil.newFloatBuffer( 2 * n );
+        float y = 0;
+        for ( int i = 0; i < n; i++ )
+        {
+            y += ( float ) random.nextGaussian( );
+            data.put( i ).put( y );
+        }
+
+        long start = System.nanoTime( );
+        MinMaxPyramid pyramid = new MinMaxPyramid( 2, 0, 1 );
+        pyramid.reset( data, n );
+        System.out.printf( "Build: %.1f ms%n", ( System.nanoTime( ) - start ) * 1e-6 );
+
+        start = System.nanoTime( );
+        MinMaxPyramid appended = new MinMaxPyramid( 2, 0, 1 );
+        for ( int size = 0; size < n; )
+        {
+            size = Math.min( n, size + 1 + random.nextInt( 10000 ) );
+            appended.append( data, size );
+        }
+        System.out.printf( "Build by appending: %.1f ms%n", ( System.nanoTime( ) - start ) * 1e-6 );
+
+        float[] out = new float[2 * MinMaxPyramid.maxDecimatedSize( pixels )];
+        float[] expected = new float[2 * ( n + 4 * pixels )];
+        long pyramidNanos = 0;
+        long bruteNanos = 0;
+        long decimatedSamples = 0;
+        for ( int v = 0; v < numViewports; v++ )
+        {
+            double width = n * Math.pow( 10, -3 * random.nextDouble( ) );
+            double xMin = random.nextDouble( ) * ( n - width );
+            double pixelsPerValue = pixels / width;
+
+            start = System.nanoTime( );
+            int count = pyramid.decimate( data, 0, xMin, pixelsPerValue, pixels, out );
+            pyramidNanos += System.nanoTime( ) - start;
+            decimatedSamples += count;
+
+            start = System.nanoTime( );
+            int expectedCount = bruteForce( data, n, xMin, pixelsPerValue, pixels, expected );
+            bruteNanos += System.nanoTime( ) - start;
+
+            int appendedCount = appended.decimate( data, 0, xMin, pixelsPerValue, pixels, new float[out.length] );
+
+            if ( count != expectedCount || appendedCount != count ) throw new AssertionError( "Viewport " + v + ": " + count + " samples, expected " + expectedCount + ", appended " + appendedCount );
+            for ( int i = 0; i < 2 * count; i++ )
+            {
+                if ( out[i] != expected[i] ) throw new AssertionError( "Viewport " + v + ": mismatch at " + ( i / 2 ) );
+            }
+        }
+
+        System.out.printf( "Decimated to %d samples per viewport on average%n", decimatedSamples / numViewports );
+        System.out.printf( "Pyramid: %.1f us per viewport%n", pyramidNanos * 1e-3 / numViewports );
+        System.out.printf( "Brute force: %.1f us per viewport%n", bruteNanos * 1e-3 / numViewports );
+    }
+
+    /**
+     * Scans every visible sample, keeping the first, min, max, and last of each column.
+     */
+    protected static int bruteForce( FloatBuffer data, int n, double xMin, double pixelsPerValue, int pixels, float[] out )
+    {
+        double xMax = xMin + pixels / pixelsPerValue;
+        int first = 0;
+        while ( first < n && data.get( 2 * first ) < xMin )
+        {
+            first++;
+        }
+        int last = first - 1;
+        while ( last + 1 < n && data.get( 2 * ( last + 1 ) ) <= xMax )
+        {
+            last++;
+        }
+
+        int count = 0;
+        if ( first > 0 ) count = put( data, first - 1, out, count );
+
+        int a = first;
+        while ( a <= last )
+        {
+            int column = ( int ) Math.floor( ( data.get( 2 * a ) - xMin ) * pixelsPerValue );
+            int b = a + 1;
+            int iMin = a;
+            int iMax = a;
+            while ( b <= last && ( int ) Math.floor( ( data.get( 2 * b ) - xMin ) * pixelsPerValue ) == column )
+            {
+                if ( data.get( 2 * b + 1 ) < data.get( 2 * iMin + 1 ) ) iMin = b;
+                if ( data.get( 2 * b + 1 ) > data.get( 2 * iMax + 1 ) ) iMax = b;
+                b++;
+            }
+
+            if ( b - a <= 4 )
+            {
+                for ( int i = a; i < b; i++ )
+                {
+                    count = put( data, i, out, count );
+                }
+            }
+            else
+            {
+                int i1 = Math.min( iMin, iMax );
+                int i2 = Math.max( iMin, iMax );
+                count = put( data, a, out, count );
+                if ( i1 != a ) count = put( data, i1, out, count );
+                if ( i2 != i1 && i2 != b - 1 ) count = put( data, i2, out, count );
+                if ( b - 1 != a ) count = put( data, b - 1, out, count );
+            }
+
+            a = b;
+        }
+
+        if ( last + 1 < n ) count = put( data, last + 1, out, count );
+
+        return count;
+    }
+
+    protected static int put( FloatBuffer data, int i, float[] out, int count )
+    {
+        out[2 * count] = data.get( 2 * i );
+        out[2 * count + 1] = data.get( 2 * i + 1 );
+        return count + 1;
+    }
+}
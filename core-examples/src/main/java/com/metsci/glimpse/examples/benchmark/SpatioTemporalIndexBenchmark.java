@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.examples.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Random;
+
+import com.metsci.glimpse.util.quadtree.ConcurrentQuadTreeXys;
+import com.metsci.glimpse.util.quadtree.ConcurrentQuadTreeXyts;
+import com.metsci.glimpse.util.quadtree.Xyt;
+
+/**
+ * Compares time-window box queries on a long track history, answered the way TrackPainter
+ * used to (a spatial search followed by a time filter) and with {@link ConcurrentQuadTreeXyts}.
+ *
+ * Tracks random-walk around the unit square, reporting once per minute. Each query covers
+ * a box a few percent of the square on a side, over a random window of {@code windowMinutes}.
+ *
+ * Usage: SpatioTemporalIndexBenchmark [tracks] [hours] [windowMinutes] [sliceMinutes]
+ */
+public class SpatioTemporalIndexBenchmark
+{
+    protected static final long minute = 60 * 1000L;
+
+    public static void main( String[] args )
+    {
+        int numTracks = args.length > 0 ? Integer.parseInt( args[0] ) : 500;
+        int hours = args.length > 1 ? Integer.parseInt( args[1] ) : 72;
+        int windowMinutes = args.length > 2 ? Integer.parseInt( args[2] ) : 1;
+        int sliceMinutes = args.length > 3 ? Integer.parseInt( args[3] ) : 10;
+
+        ConcurrentQuadTreeXys<TestPoint> spatial = new ConcurrentQuadTreeXys<TestPoint>( 1000 );
+        ConcurrentQuadTreeXyts<TestPoint> spatioTemporal = new ConcurrentQuadTreeXyts<TestPoint>( 1000, sliceMinutes * minute );
+
+        Random random = new Random( 0 );
+        float[] xs = new float[numTracks];
+        float[] ys = new float[numTracks];
+        for ( int i = 0; i < numTracks; i++ )
+        {
+            xs[i] = random.nextFloat( );
+            ys[i] = random.nextFloat( );
+        }
+
+        int numMinutes = hours * 60;
+        spatial.startBatch( );
+        spatioTemporal.startBatch( );
+        try
+        {
+            for ( int m = 0; m < numMinutes; m++ )
+            {
+                for ( int i = 0; i < numTracks; i++ )
+                {
+                    xs[i] = wrap( xs[i] + ( float ) random.nextGaussian( ) * 0.002f );
+                    ys[i] = wrap( ys[i] + ( float ) random.nextGaussian( ) * 0.002f );
+
+                    TestPoint p = new TestPoint( xs[i], ys[i], m * minute + random.nextInt( ( int ) minute ) );
+                    spatial.add( p );
+                    spatioTemporal.add( p );
+                }
+            }
+        }
+        finally
+        {
+            spatioTemporal.endBatch( );
+            spatial.endBatch( );
+        }
+
+        System.out.printf( "%d points (%d tracks, %d hours), %d minute windows, %d minute slices%n", spatial.size( ), numTracks, hours, windowMinutes, sliceMinutes );
+        System.out.printf( "%-28s %14s %14s%n", "index", "us/query", "hits/query" );
+
+        int numQueries = 2000;
+        for ( int pass = 0; pass < 3; pass++ )
+        {
+            long[] tMins = new long[numQueries];
+            float[] xMins = new float[numQueries];
+            float[] yMins = new float[numQueries];
+            for ( int q = 0; q < numQueries; q++ )
+            {
+                tMins[q] = ( long ) ( random.nextDouble( ) * ( numMinutes - windowMinutes ) * minute );
+                xMins[q] = random.nextFloat( ) * 0.95f;
+                yMins[q] = random.nextFloat( ) * 0.95f;
+            }
+
+            Collection<TestPoint> results = new ArrayList<TestPoint>( );
+
+            long start = System.nanoTime( );
+            long hitsFiltered = 0;
+            for ( int q = 0; q < numQueries; q++ )
+            {
+                long tMin = tMins[q];
+                long tMax = tMin + windowMinutes * minute - 1;
+
+                results.clear( );
+                spatial.search( xMins[q], xMins[q] + 0.05f, yMins[q], yMins[q] + 0.05f, results );
+                for ( TestPoint p : results )
+                {
+                    if ( tMin <= p.t && p.t <= tMax ) hitsFiltered++;
+                }
+            }
+            long nanosFiltered = System.nanoTime( ) - start;
+
+            start = System.nanoTime( );
+            long hits = 0;
+            for ( int q = 0; q < numQueries; q++ )
+            {
+                long tMin = tMins[q];
+                long tMax = tMin + windowMinutes * minute - 1;
+
+                results.clear( );
+                hits += spatioTemporal.search( tMin, tMax, xMins[q], xMins[q] + 0.05f, yMins[q], yMins[q] + 0.05f, results );
+            }
+            long nanos = System.nanoTime( ) - start;
+
+            if ( hits != hitsFiltered ) throw new AssertionError( "Spatio-temporal index found " + hits + " points, filtered search found " + hitsFiltered );
+
+            System.out.printf( "%-28s %14.1f %14.1f%n", "search + time filter", nanosFiltered / 1e3 / numQueries, hitsFiltered / ( double ) numQueries );
+            System.out.printf( "%-28s %14.1f %14.1f%n", "ConcurrentQuadTreeXyts", nanos / 1e3 / numQueries, hits / ( double ) numQueries );
+        }
+    }
+
+    protected static float wrap( float v )
+    {
+        return v - ( float ) Math.floor( v );
+    }
+
+    protected static class TestPoint implements Xyt
+    {
+        public final float x;
+        public final float y;
+        public final long t;
+
+        public TestPoint( float x, float y, long t )
+        {
+            this.x = x;
+            this.y = y;
+            this.t = t;
+        }
+
+        @Override
+        public float x( )
+        {
+            return x;
+        }
+
+        @Override
+        public float y( )
+        {
+            return y;
+        }
+
+        @Override
+        public long t( )
+        {
+            return t;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.examples.benchmark;
+
+import javax.media.opengl.GL;
+
+import com.metsci.glimpse.axis.Axis2D;
+import com.metsci.glimpse.context.GlimpseBounds;
+import com.metsci.glimpse.painter.track.TrackPainter;
+
+/**
+ * Streams points into a large number of small tracks and reports, for each frame, the
+ * number of draw calls issued and bytes of vertex data uploaded by {@link TrackPainter}.
+ * Painting is done with a {@link CountingGL}, so no display is required and the reported
+ * times reflect only the CPU-side cost of painting.
+ *
+ * Usage: TrackPainterBenchmark [numTracks] [numFrames] [numStyles]
+ */
+public class TrackPainterBenchmark
+{
+    public static void main( String[] args )
+    {
+        int numTracks = args.length > 0 ? Integer.parseInt( args[0] ) : 5000;
+        int numFrames = args.length > 1 ? Integer.parseInt( args[1] ) : 200;
+        int numStyles = args.length > 2 ? Integer.parseInt( args[2] ) : 8;
+
+        TrackPainter painter = new TrackPainter( );
+        CountingGL counter = new CountingGL( );
+        GL gl = counter.getGL( );
+
+        GlimpseBounds bounds = new GlimpseBounds( 0, 0, 1000, 1000 );
+        Axis2D axis = new Axis2D( );
+
+        // tracks share a small number of display styles, so they can be batched
+        for ( int trackId = 0; trackId < numTracks; trackId++ )
+        {
+            float shade = ( trackId % numStyles ) / ( float ) numStyles;
+            painter.setLineColor( trackId, shade, 1 - shade, 0.5f, 1.0f );
+            painter.setLineWidth( trackId, 1.5f );
+            painter.setShowPoints( trackId, false );
+        }
+
+        long totalNanos = 0;
+        long totalDrawCalls = 0;
+        long totalBytes = 0;
+
+        System.out.printf( "%8s %12s %12s %14s %10s %12s%n", "frame", "draw calls", "buffer binds", "bytes uploaded", "buffers", "paint (ms)" );
+
+        for ( int frame = 0; frame < numFrames; frame++ )
+        {
+            // add one new point to every track
+            for ( int trackId = 0; trackId < numTracks; trackId++ )
+            {
+                double angle = trackId * 0.01 + frame * 0.05;
+                painter.addPoint( trackId, frame, Math.cos( angle ) * frame, Math.sin( angle ) * frame, frame );
+            }
+
+            counter.reset( );
+
+            long start = System.nanoTime( );
+            painter.paintTo( gl, bounds, axis );
+            long nanos = System.nanoTime( ) - start;
+
+            totalNanos += nanos;
+            totalDrawCalls += counter.getDrawCallCount( );
+            totalBytes += counter.getUploadedBytes( );
+
+            if ( frame % 20 == 0 || frame == numFrames - 1 )
+            {
+                System.out.printf( "%8d %12d %12d %14d %10d %12.3f%n", frame, counter.getDrawCallCount( ), counter.getCallCount( "glBindBuffer" ), counter.getUploadedBytes( ), painter.getVertexBufferCount( ), nanos / 1e6 );
+            }
+        }
+
+        System.out.println( );
+        System.out.printf( "tracks: %d, styles: %d, frames: %d%n", numTracks, numStyles, numFrames );
+        System.out.printf( "average draw calls per frame: %.1f%n", totalDrawCalls / ( double ) numFrames );
+        System.out.printf( "average bytes uploaded per frame: %.1f%n", totalBytes / ( double ) numFrames );
+        System.out.printf( "average paint time per frame (ms): %.3f%n", totalNanos / 1e6 / numFrames );
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Command line benchmarks which measure the cost of common painter operations.
+ */
+package com.metsci.glimpse.examples.benchmark;
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.examples.screenshot;
+
+import java.io.File;
+
+import com.metsci.glimpse.examples.basic.HeatMapExample;
+import com.metsci.glimpse.gl.Jogular;
+import com.metsci.glimpse.plot.ColorAxisPlot2D;
+import com.metsci.glimpse.support.screenshot.FrameCapture;
+import com.metsci.glimpse.support.screenshot.FrameCapture.Format;
+
+/**
+ * Renders an animated pan across a heat map entirely offscreen, saving each frame
+ * as a numbered image. No window is created, so this runs headless, on a software
+ * OpenGL implementation if necessary.
+ *
+ * Frames are read back and written asynchronously by {@link FrameCapture}, so the
+ * render loop is only held up when image encoding falls behind.
+ */
+public class FrameSequenceExample
+{
+    public static void main( String[] args ) throws Exception
+    {
+        Jogular.initJogl( );
+
+        int frameCount = 300;
+        File outputDir = new File( "FrameSequenceExample" );
+        outputDir.mkdirs( );
+
+        ColorAxisPlot2D plot = new HeatMapExample( ).getLayout( );
+
+        FrameCapture capture = new FrameCapture( Format.PNG );
+
+        long start = System.nanoTime( );
+        try
+        {
+            for ( int i = 0; i < frameCount; i++ )
+            {
+                // pan the x axis halfway across the heat map over the course of the sequence
+                double minX = i * 500.0 / frameCount;
+                plot.setMinX( minX );
+                plot.setMaxX( minX + 500.0 );
+
+                File frameFile = new File( outputDir, String.format( "frame-%04d.png", i ) );
+                capture.captureFrame( plot, frameFile, 800, 800 );
+            }
+
+            capture.flush( );
+        }
+        finally
+        {
+            capture.dispose( );
+        }
+
+        double seconds = ( System.nanoTime( ) - start ) * 1e-9;
+        System.out.printf( "Wrote %d frames in %.1f s (%.1f fps), capture blocked for %.1f s waiting on writers%n", capture.getWrittenCount( ), seconds, frameCount / seconds, capture.getBlockedTimeMillis( ) / 1000.0 );
+    }
+}
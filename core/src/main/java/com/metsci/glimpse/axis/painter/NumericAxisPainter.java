@@ -29,10 +29,14 @@ package com.metsci.glimpse.axis.painter;
 import static com.metsci.glimpse.support.font.FontUtils.getDefaultPlain;
 
 import java.awt.Font;
+import java.util.Arrays;
 
 import javax.media.opengl.GLContext;
 
+import com.metsci.glimpse.axis.Axis1D;
+import com.metsci.glimpse.axis.painter.label.AxisLabelCache;
 import com.metsci.glimpse.axis.painter.label.AxisLabelHandler;
+import com.metsci.glimpse.axis.painter.label.GridAxisLabelHandler;
 import com.metsci.glimpse.painter.base.GlimpsePainter1D;
 import com.metsci.glimpse.support.color.GlimpseColor;
 import com.metsci.glimpse.support.settings.AbstractLookAndFeel;
@@ -69,12 +73,14 @@ public abstract class NumericAxisPainter extends GlimpsePainter1D
     protected float[] axisLabelColor = GlimpseColor.getBlack( );
 
     protected AxisLabelHandler ticks;
+    protected AxisLabelCache labelCache;
 
     protected boolean fontSet = false;
 
     public NumericAxisPainter( AxisLabelHandler ticks )
     {
         this.ticks = ticks;
+        this.labelCache = new AxisLabelCache( );
         this.setFont( getDefaultPlain( 12 ), false );
     }
 
@@ -170,6 +176,47 @@ public abstract class NumericAxisPainter extends GlimpsePainter1D
         return ticks;
     }
 
+    /**
+     * @return the cache of tick positions, labels, and label bounds (for hit/miss counts)
+     */
+    public AxisLabelCache getLabelCache( )
+    {
+        return labelCache;
+    }
+
+    /**
+     * Brings the label cache up to date with the axis. Tick positions are asked for
+     * every frame, since they are cheap, and since the handler's settings can change
+     * without notice; the labels and their bounds are reused whenever the axis, the
+     * tick positions, and the handler's label settings (see {@link #getLabelCacheKey()})
+     * are unchanged.
+     */
+    protected AxisLabelCache updateLabelCache( Axis1D axis )
+    {
+        double[] tickPositions = ticks.getTickPositions( axis );
+        if ( !labelCache.lookup( axis, getLabelCacheKey( ), textRenderer, tickPositions ) )
+        {
+            labelCache.store( tickPositions, ticks.getTickLabels( axis, tickPositions ) );
+        }
+        return labelCache;
+    }
+
+    /**
+     * The label handler settings which the cached labels depend on. For a {@link GridAxisLabelHandler},
+     * these are the unit converter and the handler's modification count. Other handlers give no
+     * notice when their labels change, so their labels are recomputed every frame.
+     */
+    protected Object getLabelCacheKey( )
+    {
+        if ( ticks instanceof GridAxisLabelHandler )
+        {
+            GridAxisLabelHandler handler = ( GridAxisLabelHandler ) ticks;
+            return Arrays.asList( handler, handler.getAxisUnitConverter( ), handler.getModCount( ) );
+        }
+
+        return new Object( );
+    }
+
     @Override
     public void setLookAndFeel( LookAndFeel laf )
     {
@@ -186,5 +233,6 @@ public abstract class NumericAxisPainter extends GlimpsePainter1D
     {
         if ( textRenderer != null ) textRenderer.dispose( );
         textRenderer = null;
+        labelCache.dispose( );
     }
 }
@@ -33,6 +33,7 @@ import java.awt.geom.Rectangle2D;
 import javax.media.opengl.GL;
 
 import com.metsci.glimpse.axis.Axis1D;
+import com.metsci.glimpse.axis.painter.label.AxisLabelCache;
 import com.metsci.glimpse.axis.painter.label.AxisLabelHandler;
 import com.metsci.glimpse.axis.painter.label.AxisUnitConverter;
 import com.metsci.glimpse.support.color.GlimpseColor;
@@ -58,8 +59,9 @@ public class NumericRotatedYAxisPainter extends NumericYAxisPainter
     @Override
     protected void paintTicks( GL gl, Axis1D axis, int width, int height )
     {
-        double[] yTicks = ticks.getTickPositions( axis );
-        String[] yLabels = ticks.getTickLabels( axis, yTicks );
+        AxisLabelCache cache = updateLabelCache( axis );
+        double[] yTicks = cache.getTicks( );
+        String[] yLabels = cache.getLabels( );
 
         AxisUnitConverter converter = ticks.getAxisUnitConverter( );
 
@@ -124,7 +126,7 @@ public class NumericRotatedYAxisPainter extends NumericYAxisPainter
         {
             double yTick = yTicks[i];
             String yLabel = yLabels[i];
-            Rectangle2D tickTextBounds = textRenderer.getBounds( yLabel );
+            Rectangle2D tickTextBounds = cache.getLabelBounds( i );
 
             int iTickText = getTickTextPositionX( width, ( int ) tickTextBounds.getHeight( ) );
             int jTickText = ( int ) round( axis.valueToScreenPixel( converter.fromAxisUnits( yTick ) ) + tickTextBounds.getWidth( ) / 2 );
@@ -33,6 +33,7 @@ import java.awt.geom.Rectangle2D;
 import javax.media.opengl.GL;
 
 import com.metsci.glimpse.axis.Axis1D;
+import com.metsci.glimpse.axis.painter.label.AxisLabelCache;
 import com.metsci.glimpse.axis.painter.label.AxisLabelHandler;
 import com.metsci.glimpse.axis.painter.label.AxisUnitConverter;
 import com.metsci.glimpse.context.GlimpseBounds;
@@ -71,8 +72,9 @@ public class NumericXAxisPainter extends NumericAxisPainter
 
     protected void paintTicks( GL gl, Axis1D axis, int width, int height )
     {
-        double[] xTicks = ticks.getTickPositions( axis );
-        String[] xLabels = ticks.getTickLabels( axis, xTicks );
+        AxisLabelCache cache = updateLabelCache( axis );
+        double[] xTicks = cache.getTicks( );
+        String[] xLabels = cache.getLabels( );
 
         AxisUnitConverter converter = ticks.getAxisUnitConverter( );
 
@@ -139,8 +141,8 @@ public class NumericXAxisPainter extends NumericAxisPainter
             {
                 double xTick = xTicks[i];
                 String xLabel = xLabels[i];
-                Rectangle2D tickTextBounds = textRenderer.getBounds( xLabel );
-                Rectangle2D dashTextBounds = textRenderer.getBounds( "-" );
+                Rectangle2D tickTextBounds = cache.getLabelBounds( i );
+                Rectangle2D dashTextBounds = cache.getTextBounds( textRenderer, "-" );
                 double dashTextWidth = xTick < 0 ? dashTextBounds.getWidth( ) : 0;
                 double absTextWidth = tickTextBounds.getWidth( ) - dashTextWidth;
 
@@ -167,7 +169,7 @@ public class NumericXAxisPainter extends NumericAxisPainter
             if ( showLabel )
             {
                 String label = ticks.getAxisLabel( axis );
-                Rectangle2D axisLabelBounds = textRenderer.getBounds( label );
+                Rectangle2D axisLabelBounds = cache.getTextBounds( textRenderer, label );
                 int iAxisLabel = round( 0.5f * ( width - ( int ) axisLabelBounds.getWidth( ) ) );
                 int jAxisLabel = getAxisLabelPositionY( height, ( int ) axisLabelBounds.getHeight( ) );
 
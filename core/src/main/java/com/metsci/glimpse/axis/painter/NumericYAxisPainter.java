@@ -33,6 +33,7 @@ import java.awt.geom.Rectangle2D;
 import javax.media.opengl.GL;
 
 import com.metsci.glimpse.axis.Axis1D;
+import com.metsci.glimpse.axis.painter.label.AxisLabelCache;
 import com.metsci.glimpse.axis.painter.label.AxisLabelHandler;
 import com.metsci.glimpse.axis.painter.label.AxisUnitConverter;
 import com.metsci.glimpse.context.GlimpseBounds;
@@ -70,8 +71,9 @@ public class NumericYAxisPainter extends NumericAxisPainter
 
     protected void paintTicks( GL gl, Axis1D axis, int width, int height )
     {
-        double[] yTicks = ticks.getTickPositions( axis );
-        String[] yLabels = ticks.getTickLabels( axis, yTicks );
+        AxisLabelCache cache = updateLabelCache( axis );
+        double[] yTicks = cache.getTicks( );
+        String[] yLabels = cache.getLabels( );
 
         AxisUnitConverter converter = ticks.getAxisUnitConverter( );
 
@@ -140,7 +142,7 @@ public class NumericYAxisPainter extends NumericAxisPainter
             {
                 double yTick = yTicks[i];
                 String yLabel = yLabels[i];
-                Rectangle2D tickTextBounds = textRenderer.getBounds( yLabel );
+                Rectangle2D tickTextBounds = cache.getLabelBounds( i );
                 int iTickText = getTickTextPositionX( width, ( int ) tickTextBounds.getWidth( ) );
                 int jTickText = ( int ) round( axis.valueToScreenPixel( converter.fromAxisUnits( yTick ) ) - 0.35 * tickTextBounds.getHeight( ) );
 
@@ -176,7 +178,7 @@ public class NumericYAxisPainter extends NumericAxisPainter
             try
             {
                 String label = ticks.getAxisLabel( axis );
-                Rectangle2D labelSize = textRenderer.getBounds( label );
+                Rectangle2D labelSize = labelCache.getTextBounds( textRenderer, label );
                 int iAxisLabel = getAxisLabelPositionX( width, ( int ) labelSize.getHeight( ) );
                 int jAxisLabel = round( 0.5f * ( height - ( int ) labelSize.getWidth( ) ) );
 
@@ -35,6 +35,7 @@ import java.util.TimeZone;
 import javax.media.opengl.GLContext;
 
 import com.metsci.glimpse.axis.Axis1D;
+import com.metsci.glimpse.axis.painter.label.AxisLabelCache;
 import com.metsci.glimpse.painter.base.GlimpsePainter1D;
 import com.metsci.glimpse.plot.timeline.data.Epoch;
 import com.metsci.glimpse.support.color.GlimpseColor;
@@ -79,6 +80,9 @@ public abstract class TimeAxisPainter extends GlimpsePainter1D
     protected TextRenderer textRenderer;
     protected Font font;
 
+    protected AxisLabelCache labelCache;
+    protected TickLabels tickLabels;
+
     protected Epoch epoch;
     protected final TimeZone timeZone;
     protected final TimeStampFormat minuteSecondFormat;
@@ -114,6 +118,7 @@ public abstract class TimeAxisPainter extends GlimpsePainter1D
     {
         this.font = FontUtils.getBitstreamVeraSansPlain( 12.0f );
         this.textRenderer = new TextRenderer( font );
+        this.labelCache = new AxisLabelCache( );
 
         this.timeZone = timeZone;
 
@@ -148,11 +153,13 @@ public abstract class TimeAxisPainter extends GlimpsePainter1D
     public void setPixelsBetweenTicks( int pixels )
     {
         this.pixelsBetweenTicks = pixels;
+        this.labelCache.invalidate( );
     }
 
     public void setEpoch( Epoch epoch )
     {
         this.epoch = epoch;
+        this.labelCache.invalidate( );
     }
 
     public Epoch getEpoch( )
@@ -209,6 +216,93 @@ public abstract class TimeAxisPainter extends GlimpsePainter1D
         this.textRenderer = new TextRenderer( font, antialias, false );
     }
 
+    /**
+     * @return the cache of tick times, labels, and label bounds (for hit/miss counts)
+     */
+    public AxisLabelCache getLabelCache( )
+    {
+        return labelCache;
+    }
+
+    /**
+     * The tick times, and the formatted tick and hover labels, for one axis state.
+     * Computing these involves Calendar arithmetic and string formatting for every
+     * tick, so they are kept from frame to frame until the axis moves.
+     */
+    protected static class TickLabels
+    {
+        public double axisLengthPixels;
+        public List<TimeStamp> tickTimes;
+        public double tickInterval;
+        public String[] tickLabels;
+
+        // null if the tick interval is too large for hover labels
+        public List<TimeStruct> hoverStructs;
+        public String[] hoverLabels;
+    }
+
+    protected TickLabels updateTickLabels( Axis1D axis, double axisLengthPixels )
+    {
+        if ( labelCache.lookup( axis, epoch, textRenderer, null ) && tickLabels != null && tickLabels.axisLengthPixels == axisLengthPixels )
+        {
+            return tickLabels;
+        }
+
+        TickLabels labels = new TickLabels( );
+        labels.axisLengthPixels = axisLengthPixels;
+        labels.tickTimes = tickTimes( axis, axisLengthPixels );
+        labels.tickInterval = tickInterval( labels.tickTimes );
+
+        TimeStampFormat tickFormat = tickLabelFormat( labels.tickInterval );
+        labels.tickLabels = new String[labels.tickTimes.size( )];
+        for ( int i = 0; i < labels.tickLabels.length; i++ )
+        {
+            labels.tickLabels[i] = labels.tickTimes.get( i ).toString( tickFormat );
+        }
+
+        TimeStructFactory hoverFactory = hoverLabelFactory( labels.tickInterval );
+        if ( hoverFactory != null )
+        {
+            TimeStampFormat hoverFormat = hoverLabelFormat( labels.tickInterval );
+            labels.hoverStructs = timeStructs( axis, labels.tickTimes, hoverFactory );
+            labels.hoverLabels = new String[labels.hoverStructs.size( )];
+            for ( int i = 0; i < labels.hoverLabels.length; i++ )
+            {
+                labels.hoverLabels[i] = labels.hoverStructs.get( i ).textCenter.toString( hoverFormat );
+            }
+        }
+
+        tickLabels = labels;
+        return labels;
+    }
+
+    protected TimeStampFormat tickLabelFormat( double tickInterval )
+    {
+        if ( tickInterval <= Time.fromMinutes( 1 ) ) return minuteSecondFormat;
+        else if ( tickInterval <= Time.fromHours( 12 ) ) return hourMinuteFormat;
+        else if ( tickInterval <= Time.fromDays( 10 ) ) return dayFormat;
+        else if ( tickInterval <= Time.fromDays( 60 ) ) return monthFormat;
+        else return yearFormat;
+    }
+
+    protected TimeStampFormat hoverLabelFormat( double tickInterval )
+    {
+        if ( tickInterval <= Time.fromMinutes( 1 ) ) return hourDayMonthFormat;
+        else if ( tickInterval <= Time.fromHours( 12 ) ) return dayMonthYearFormat;
+        else if ( tickInterval <= Time.fromDays( 10 ) ) return monthYearFormat;
+        else if ( tickInterval <= Time.fromDays( 60 ) ) return yearFormat;
+        else return null;
+    }
+
+    protected TimeStructFactory hoverLabelFactory( double tickInterval )
+    {
+        if ( tickInterval <= Time.fromMinutes( 1 ) ) return hourStructFactory;
+        else if ( tickInterval <= Time.fromHours( 12 ) ) return dayStructFactory;
+        else if ( tickInterval <= Time.fromDays( 10 ) ) return monthStructFactory;
+        else if ( tickInterval <= Time.fromDays( 60 ) ) return yearStructFactory;
+        else return null;
+    }
+
     protected double tickInterval( List<TimeStamp> list )
     {
         if ( list == null || list.size( ) < 2 )
@@ -600,5 +694,7 @@ public abstract class TimeAxisPainter extends GlimpsePainter1D
     {
         if ( textRenderer != null ) textRenderer.dispose( );
         textRenderer = null;
+        labelCache.dispose( );
+        tickLabels = null;
     }
 }
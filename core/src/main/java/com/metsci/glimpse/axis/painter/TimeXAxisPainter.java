@@ -39,7 +39,6 @@ import com.metsci.glimpse.context.GlimpseBounds;
 import com.metsci.glimpse.context.GlimpseContext;
 import com.metsci.glimpse.plot.timeline.data.Epoch;
 import com.metsci.glimpse.support.color.GlimpseColor;
-import com.metsci.glimpse.util.units.time.Time;
 import com.metsci.glimpse.util.units.time.TimeStamp;
 import com.metsci.glimpse.util.units.time.format.TimeStampFormat;
 
@@ -89,12 +88,11 @@ public class TimeXAxisPainter extends TimeAxisPainter
 
         gl.glColor4fv( tickColor, 0 );
 
-        List<TimeStamp> tickTimes = tickTimes( axis, width );
-        double tickInterval = tickInterval( tickTimes );
+        TickLabels labels = updateTickLabels( axis, width );
 
         // Tick marks
         gl.glBegin( GL.GL_LINES );
-        for ( TimeStamp t : tickTimes )
+        for ( TimeStamp t : labels.tickTimes )
         {
             double x = axis.valueToScreenPixel( fromTimeStamp( t ) );
             gl.glVertex2d( x, height );
@@ -108,43 +106,11 @@ public class TimeXAxisPainter extends TimeAxisPainter
         textRenderer.beginRendering( width, height );
         try
         {
-            if ( tickInterval <= Time.fromMinutes( 1 ) )
-            {
-                // Time labels
-                double jTimeText = printTickLabels( tickTimes, axis, minuteSecondFormat, width, height );
-
-                // Date labels
-                printHoverLabels( tickTimes, axis, hourDayMonthFormat, hourStructFactory, jTimeText, width, height );
-            }
-            else if ( tickInterval <= Time.fromHours( 12 ) )
-            {
-                // Time labels
-                double jTimeText = printTickLabels( tickTimes, axis, hourMinuteFormat, width, height );
-
-                // Date labels
-                printHoverLabels( tickTimes, axis, dayMonthYearFormat, dayStructFactory, jTimeText, width, height );
-            }
-            else if ( tickInterval <= Time.fromDays( 10 ) )
-            {
-                // Date labels
-                double jTimeText = printTickLabels( tickTimes, axis, dayFormat, width, height );
-
-                // Year labels
-                printHoverLabels( tickTimes, axis, monthYearFormat, monthStructFactory, jTimeText, width, height );
-            }
-            else if ( tickInterval <= Time.fromDays( 60 ) )
-            {
-                // Date labels
-                double jTimeText = printTickLabels( tickTimes, axis, monthFormat, width, height );
-
-                // Year labels
-                printHoverLabels( tickTimes, axis, yearFormat, yearStructFactory, jTimeText, width, height );
-            }
-            else
-            {
-                // Date labels
-                printTickLabels( tickTimes, axis, yearFormat, width, height );
-            }
+            // Time or date labels
+            double jTimeText = printTickLabels( labels, axis, width, height );
+
+            // Date or year labels
+            if ( labels.hoverStructs != null ) printHoverLabels( labels, axis, jTimeText, width, height );
         }
         finally
         {
@@ -152,19 +118,20 @@ public class TimeXAxisPainter extends TimeAxisPainter
         }
     }
 
-    private void printHoverLabels( List<TimeStamp> tickTimes, Axis1D axis, TimeStampFormat format, TimeStructFactory factory, double jTimeText, int width, int height )
+    private void printHoverLabels( TickLabels labels, Axis1D axis, double jTimeText, int width, int height )
     {
         // text heights vary slightly, making the labels appear unevenly spaced in height
         // just use the height of a fixed sample character
-        Rectangle2D fixedBounds = textRenderer.getBounds( "M" );
+        Rectangle2D fixedBounds = labelCache.getTextBounds( textRenderer, "M" );
         double textHeight = fixedBounds.getHeight( );
 
         // Date labels
-        List<TimeStruct> timeStruts = timeStructs( axis, tickTimes, factory );
-        for ( TimeStruct time : timeStruts )
+        List<TimeStruct> timeStruts = labels.hoverStructs;
+        for ( int k = 0; k < timeStruts.size( ); k++ )
         {
-            String text = time.textCenter.toString( format );
-            Rectangle2D textBounds = textRenderer.getBounds( text );
+            TimeStruct time = timeStruts.get( k );
+            String text = labels.hoverLabels[k];
+            Rectangle2D textBounds = labelCache.getTextBounds( textRenderer, text );
             double textWidth = textBounds.getWidth( );
 
             int iMin = axis.valueToScreenPixel( fromTimeStamp( time.start ) );
@@ -179,19 +146,21 @@ public class TimeXAxisPainter extends TimeAxisPainter
         }
     }
 
-    private double printTickLabels( List<TimeStamp> tickTimes, Axis1D axis, TimeStampFormat format, int width, int height )
+    private double printTickLabels( TickLabels labels, Axis1D axis, int width, int height )
     {
         // text heights vary slightly, making the labels appear unevenly spaced in height
         // just use the height of a fixed sample character
-        Rectangle2D fixedBounds = textRenderer.getBounds( "M" );
+        Rectangle2D fixedBounds = labelCache.getTextBounds( textRenderer, "M" );
         double textHeight = fixedBounds.getHeight( );
 
         // Time labels
         int jTimeText = Integer.MAX_VALUE;
-        for ( TimeStamp t : tickTimes )
+        List<TimeStamp> tickTimes = labels.tickTimes;
+        for ( int k = 0; k < tickTimes.size( ); k++ )
         {
-            String string = t.toString( format );
-            Rectangle2D textBounds = textRenderer.getBounds( string );
+            TimeStamp t = tickTimes.get( k );
+            String string = labels.tickLabels[k];
+            Rectangle2D textBounds = labelCache.getTextBounds( textRenderer, string );
 
             double textWidth = textBounds.getWidth( );
             int i = ( int ) Math.round( axis.valueToScreenPixel( fromTimeStamp( t ) ) - 0.5 * textWidth );
@@ -37,7 +37,6 @@ import com.metsci.glimpse.context.GlimpseBounds;
 import com.metsci.glimpse.context.GlimpseContext;
 import com.metsci.glimpse.plot.timeline.data.Epoch;
 import com.metsci.glimpse.support.color.GlimpseColor;
-import com.metsci.glimpse.util.units.time.Time;
 import com.metsci.glimpse.util.units.time.TimeStamp;
 import com.metsci.glimpse.util.units.time.format.TimeStampFormat;
 
@@ -91,12 +90,11 @@ public class TimeYAxisPainter extends TimeAxisPainter
 
         gl.glColor4fv( tickColor, 0 );
 
-        List<TimeStamp> tickTimes = tickTimes( axis, height );
-        double tickInterval = tickInterval( tickTimes );
+        TickLabels labels = updateTickLabels( axis, height );
 
         // Tick marks
         gl.glBegin( GL.GL_LINES );
-        for ( TimeStamp t : tickTimes )
+        for ( TimeStamp t : labels.tickTimes )
         {
             double y = axis.valueToScreenPixel( fromTimeStamp( t ) );
             gl.glVertex2d( width, y );
@@ -106,53 +104,22 @@ public class TimeYAxisPainter extends TimeAxisPainter
 
         GlimpseColor.setColor( textRenderer, textColor );
 
-            if ( tickInterval <= Time.fromMinutes( 1 ) )
-            {
-                // Time labels
-                double jTimeText = printTickLabels( tickTimes, axis, minuteSecondFormat, width, height );
-
-                // Date labels
-                printHoverLabels( gl, tickTimes, axis, hourDayMonthFormat, hourStructFactory, jTimeText, width, height );
-            }
-            else if ( tickInterval <= Time.fromHours( 12 ) )
-            {
-                // Time labels
-                double jTimeText = printTickLabels( tickTimes, axis, hourMinuteFormat, width, height );
-
-                // Date labels
-                printHoverLabels( gl, tickTimes, axis, dayMonthYearFormat, dayStructFactory, jTimeText, width, height );
-            }
-            else if ( tickInterval <= Time.fromDays( 10 ) )
-            {
-                // Date labels
-                double jTimeText = printTickLabels( tickTimes, axis, dayFormat, width, height );
+        // Time or date labels
+        double iTimeText = printTickLabels( labels, axis, width, height );
 
-                // Year labels
-                printHoverLabels( gl, tickTimes, axis, monthYearFormat, monthStructFactory, jTimeText, width, height );
-            }
-            else if ( tickInterval <= Time.fromDays( 60 ) )
-            {
-                // Date labels
-                double jTimeText = printTickLabels( tickTimes, axis, monthFormat, width, height );
-
-                // Year labels
-                printHoverLabels( gl, tickTimes, axis, yearFormat, yearStructFactory, jTimeText, width, height );
-            }
-            else
-            {
-                // Date labels
-                printTickLabels( tickTimes, axis, yearFormat, width, height );
-            }
+        // Date or year labels
+        if ( labels.hoverStructs != null ) printHoverLabels( gl, labels, axis, iTimeText, width, height );
     }
 
-    private void printHoverLabels( GL gl, List<TimeStamp> tickTimes, Axis1D axis, TimeStampFormat format, TimeStructFactory factory, double iTimeText, int width, int height )
+    private void printHoverLabels( GL gl, TickLabels labels, Axis1D axis, double iTimeText, int width, int height )
     {
         // Date labels
-        List<TimeStruct> days = timeStructs( axis, tickTimes, factory );
-        for ( TimeStruct day : days )
+        List<TimeStruct> days = labels.hoverStructs;
+        for ( int k = 0; k < days.size( ); k++ )
         {
-            String text = day.textCenter.toString( format );
-            Rectangle2D textBounds = textRenderer.getBounds( text );
+            TimeStruct day = days.get( k );
+            String text = labels.hoverLabels[k];
+            Rectangle2D textBounds = labelCache.getTextBounds( textRenderer, text );
 
             // Text will be drawn rotated 90 degrees, so height
             // is the *width* of the bounds rectangle
@@ -191,7 +158,7 @@ public class TimeYAxisPainter extends TimeAxisPainter
         }
     }
 
-    private double printTickLabels( List<TimeStamp> tickTimes, Axis1D axis, TimeStampFormat format, int width, int height )
+    private double printTickLabels( TickLabels labels, Axis1D axis, int width, int height )
     {
 
         int iTimeText = Integer.MAX_VALUE;
@@ -199,10 +166,12 @@ public class TimeYAxisPainter extends TimeAxisPainter
         try
         {
 
-        for ( TimeStamp t : tickTimes )
+        List<TimeStamp> tickTimes = labels.tickTimes;
+        for ( int k = 0; k < tickTimes.size( ); k++ )
         {
-            String string = t.toString( format );
-            Rectangle2D textBounds = textRenderer.getBounds( string );
+            TimeStamp t = tickTimes.get( k );
+            String string = labels.tickLabels[k];
+            Rectangle2D textBounds = labelCache.getTextBounds( textRenderer, string );
 
             double textHeight = textBounds.getHeight( );
             int j = ( int ) Math.round( axis.valueToScreenPixel( fromTimeStamp( t ) ) - 0.5 * Math.max( 1, textHeight - 2 ) );
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.axis.painter.label;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.metsci.glimpse.axis.Axis1D;
+import com.metsci.glimpse.axis.listener.AxisListener1D;
+import com.sun.opengl.util.j2d.TextRenderer;
+
+/**
+ * Keeps an axis painter's tick positions, tick labels, and label bounds from one
+ * frame to the next, so that they are only recomputed when the axis has actually
+ * moved.<p>
+ *
+ * The cached values are keyed on the axis (its min, max, and pixel size), a source
+ * object (any piece of painter state the labels depend on, compared with
+ * {@link Object#equals(Object)}), and the {@link TextRenderer} used to measure the
+ * labels. Once the cache
+ * has been used with an axis, it listens to that axis, and drops its values as soon
+ * as the axis bounds change.<p>
+ *
+ * Text bounds are cached separately, by string, and survive changes to the axis.
+ * A label that appears in several consecutive frames while the user pans is only
+ * laid out once.
+ */
+public class AxisLabelCache implements AxisListener1D
+{
+    protected static final int maxTextBoundsCacheSize = 1024;
+
+    protected Axis1D axis;
+    protected double axisMin;
+    protected double axisMax;
+    protected int axisSizePixels;
+    protected Object source;
+    protected TextRenderer textRenderer;
+    protected volatile boolean valid;
+
+    protected double[] ticks;
+    protected String[] labels;
+    protected Rectangle2D[] labelBounds;
+
+    protected final Map<String, Rectangle2D> textBounds;
+
+    protected long hitCount;
+    protected long missCount;
+
+    public AxisLabelCache( )
+    {
+        this.textBounds = new HashMap<String, Rectangle2D>( );
+        this.ticks = new double[0];
+        this.labels = new String[0];
+        this.labelBounds = new Rectangle2D[0];
+    }
+
+    /**
+     * Checks whether the cached values are still good for the given axis, source,
+     * and text renderer. If they are not, the new key is remembered, and the caller
+     * is expected to recompute the values and hand them to {@link #store(double[], String[])}.
+     *
+     * @param ticks if non-null, the tick positions that the cached values must match
+     * @return true if the cached values can be reused
+     */
+    public boolean lookup( Axis1D axis, Object source, TextRenderer textRenderer, double[] ticks )
+    {
+        if ( textRenderer != this.textRenderer )
+        {
+            setTextRenderer( textRenderer );
+            this.valid = false;
+        }
+
+        if ( axis != this.axis )
+        {
+            if ( this.axis != null ) this.axis.removeAxisListener( this );
+            if ( axis != null ) axis.addAxisListener( this );
+            this.axis = axis;
+            this.valid = false;
+        }
+
+        boolean hit = this.valid && ( source == null ? this.source == null : source.equals( this.source ) ) && matches( axis ) && ( ticks == null || Arrays.equals( ticks, this.ticks ) );
+
+        if ( hit )
+        {
+            this.hitCount++;
+        }
+        else
+        {
+            this.missCount++;
+            this.source = source;
+            this.axisMin = axis.getMin( );
+            this.axisMax = axis.getMax( );
+            this.axisSizePixels = axis.getSizePixels( );
+            this.valid = true;
+        }
+
+        return hit;
+    }
+
+    /**
+     * Sets the cached tick positions and labels, after a call to {@link #lookup(Axis1D, Object, TextRenderer, double[])}
+     * returned false. Label bounds are measured lazily, by {@link #getLabelBounds(int)}.
+     */
+    public void store( double[] ticks, String[] labels )
+    {
+        this.ticks = ticks;
+        this.labels = labels;
+        this.labelBounds = new Rectangle2D[labels.length];
+    }
+
+    public double[] getTicks( )
+    {
+        return ticks;
+    }
+
+    public String[] getLabels( )
+    {
+        return labels;
+    }
+
+    /**
+     * @return the bounds of the i-th label, according to the current text renderer
+     */
+    public Rectangle2D getLabelBounds( int i )
+    {
+        Rectangle2D bounds = labelBounds[i];
+        if ( bounds == null )
+        {
+            bounds = getTextBounds( textRenderer, labels[i] );
+            labelBounds[i] = bounds;
+        }
+        return bounds;
+    }
+
+    /**
+     * Same as {@link TextRenderer#getBounds(String)}, but remembers the result. The
+     * returned rectangle is shared, and must not be modified.
+     */
+    public Rectangle2D getTextBounds( TextRenderer textRenderer, String text )
+    {
+        if ( textRenderer != this.textRenderer )
+        {
+            setTextRenderer( textRenderer );
+            this.valid = false;
+        }
+
+        Rectangle2D bounds = textBounds.get( text );
+        if ( bounds == null )
+        {
+            // Labels change as the axis moves; keep the cache from growing without bound
+            if ( textBounds.size( ) >= maxTextBoundsCacheSize ) textBounds.clear( );
+
+            bounds = textRenderer.getBounds( text );
+            textBounds.put( text, bounds );
+        }
+        return bounds;
+    }
+
+    protected void setTextRenderer( TextRenderer textRenderer )
+    {
+        this.textBounds.clear( );
+        this.textRenderer = textRenderer;
+    }
+
+    /**
+     * Forces the next lookup to miss. Painters call this when a setting that affects
+     * their labels changes, without changing the axis.
+     */
+    public void invalidate( )
+    {
+        this.valid = false;
+    }
+
+    /**
+     * Stops listening to the axis, and drops all cached values.
+     */
+    public void dispose( )
+    {
+        if ( this.axis != null ) this.axis.removeAxisListener( this );
+        this.axis = null;
+        this.source = null;
+        this.textRenderer = null;
+        this.textBounds.clear( );
+        this.store( new double[0], new String[0] );
+        this.valid = false;
+    }
+
+    public long getHitCount( )
+    {
+        return hitCount;
+    }
+
+    public long getMissCount( )
+    {
+        return missCount;
+    }
+
+    public void resetCounts( )
+    {
+        this.hitCount = 0;
+        this.missCount = 0;
+    }
+
+    @Override
+    public void axisUpdated( Axis1D axis )
+    {
+        // Axes notify their listeners for selection and mouse changes too, which
+        // don't move the ticks
+        if ( axis == this.axis && !matches( axis ) ) this.valid = false;
+    }
+
+    protected boolean matches( Axis1D axis )
+    {
+        return axis.getMin( ) == axisMin && axis.getMax( ) == axisMax && axis.getSizePixels( ) == axisSizePixels;
+    }
+}
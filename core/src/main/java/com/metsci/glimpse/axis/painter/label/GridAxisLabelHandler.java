@@ -63,6 +63,9 @@ public class GridAxisLabelHandler implements AxisLabelHandler
 
     protected AxisUnitConverter converter;
 
+    // incremented whenever a setting which may change the tick labels changes
+    protected int modCount;
+
     public GridAxisLabelHandler( )
     {
         this.tickNumberFormatter = NumberFormat.getNumberInstance( );
@@ -100,6 +103,18 @@ public class GridAxisLabelHandler implements AxisLabelHandler
     public void setAxisUnitConverter( AxisUnitConverter converter )
     {
         this.converter = converter;
+        this.modCount++;
+    }
+
+    /**
+     * Returns a count which changes whenever a setting that may change the tick labels
+     * changes. Axis painters compare it between frames to decide whether their cached
+     * labels are still good. Subclasses with their own label settings should increment
+     * {@code modCount} when those settings change.
+     */
+    public int getModCount( )
+    {
+        return this.modCount;
     }
 
     @Override
@@ -170,6 +185,7 @@ public class GridAxisLabelHandler implements AxisLabelHandler
     public void setTickSpacing( int spacing )
     {
         this.tickSpacing = spacing;
+        this.modCount++;
     }
 
     public void setMinorTickCount( int count )
@@ -29,13 +29,27 @@ package com.metsci.glimpse.gl.attribute;
 import static com.metsci.glimpse.gl.util.GLUtils.*;
 
 import java.nio.FloatBuffer;
+import java.util.Collection;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.ReentrantLock;
 
 import javax.media.opengl.GL;
 
+import com.metsci.glimpse.support.repaint.DirtyListener;
 import com.sun.opengl.util.BufferUtil;
 
 
+/**
+ * A host buffer of vertex attribute values, mirrored in a device buffer.
+ *
+ * Besides being rewritten wholesale with {@link #mutate(Mutator)}, the buffer can be
+ * used as a stream: {@link #append(float[], int, int)} adds vertices at the end and
+ * {@link #trim(int)} drops them from the front. Only the range of the buffer touched
+ * since the last upload is copied to the device. A linear buffer grows geometrically
+ * as vertices are appended. A circular buffer has a fixed capacity, and appending to
+ * a full circular buffer overwrites the oldest vertices, so it holds a sliding window
+ * over the most recent vertices without ever moving any of them.
+ */
 public class GLFloatBuffer
 {
     protected ReentrantLock lock = new ReentrantLock();
@@ -46,19 +60,57 @@ public class GLFloatBuffer
     protected int glHandle;
     protected boolean dirty;
 
+    // range of the host buffer (in floats) changed since the last upload, if not all of it is dirty
+    protected int dirtyFrom;
+    protected int dirtyTo;
+
+    // size of the device buffer in floats, or -1 if it has not been allocated
+    protected int deviceCapacity;
+    protected int usage;
+
+    // a circular buffer holds count vertices starting at start, wrapping around at
+    // maxVertices; the vertex at index 0 is repeated at index maxVertices so that a
+    // line strip can be drawn across the wrap
+    protected boolean circular;
+    protected int start;
+    protected int count;
+
     protected GLVertexAttribute boundType;
     protected int boundGenericIndex;
 
+    protected final Collection<DirtyListener> dirtyListeners = new CopyOnWriteArrayList<DirtyListener>( );
+
     public GLFloatBuffer( int length, int elementSize )
+    {
+        this( length, elementSize, false );
+    }
+
+    /**
+     * @param length the initial capacity in vertices, which is fixed for a circular buffer
+     * @param circular whether appending to a full buffer overwrites the oldest vertices
+     */
+    public GLFloatBuffer( int length, int elementSize, boolean circular )
     {
         if( elementSize > 4 || elementSize < 1 )
             throw new IllegalArgumentException( "length must be 1, 2, 3, or 4" );
 
+        if( circular && length < 1 )
+            throw new IllegalArgumentException( "circular buffer length must be positive" );
+
         this.glHandle = -1;
         this.dirty = true;
+        this.dirtyFrom = Integer.MAX_VALUE;
+        this.dirtyTo = 0;
+        this.deviceCapacity = -1;
+        this.usage = GL.GL_STATIC_DRAW;
 
         this.elementSize = elementSize;
-        this.data = BufferUtil.newFloatBuffer( length * elementSize );
+        this.circular = circular;
+        this.data = BufferUtil.newFloatBuffer( ( circular ? length + 1 : length ) * elementSize );
+
+        // a circular buffer always spans its whole capacity, and uses start and count to
+        // keep track of its vertices; a linear buffer holds the vertices up to its limit
+        if( !circular ) this.data.limit( 0 );
 
         this.boundType = null;
         this.boundGenericIndex = -1;
@@ -72,16 +124,81 @@ public class GLFloatBuffer
     public void makeDirty( )
     {
         dirty = true;
+        notifyDirtyListeners();
+    }
+
+    /**
+     * Marks a range of vertices as changed, so that only they are uploaded.
+     *
+     * @param fromVertex the first changed vertex, inclusive
+     * @param toVertex the last changed vertex, exclusive
+     */
+    public void makeDirty( int fromVertex, int toVertex )
+    {
+        addDirtyRange( fromVertex, toVertex );
+        notifyDirtyListeners();
     }
 
+    /**
+     * Widens the range of vertices to upload without notifying listeners. Used by
+     * {@link #append(float[], int, int)} and {@link #trim(int)}, which touch vertices
+     * one at a time but notify listeners only once per call.
+     */
+    protected void addDirtyRange( int fromVertex, int toVertex )
+    {
+        dirtyFrom = Math.min( dirtyFrom, fromVertex * elementSize );
+        dirtyTo = Math.max( dirtyTo, toVertex * elementSize );
+    }
+
+    /**
+     * Adds a listener which is notified whenever the buffer is marked dirty, including
+     * by mutate( ), append( ), and trim( ). Used by
+     * {@link com.metsci.glimpse.painter.shape.ShadedPointPainter} to mark itself dirty
+     * when the data in its buffers changes.
+     */
+    public void addDirtyListener( DirtyListener listener )
+    {
+        this.dirtyListeners.add( listener );
+    }
+
+    public void removeDirtyListener( DirtyListener listener )
+    {
+        this.dirtyListeners.remove( listener );
+    }
+
+    protected void notifyDirtyListeners( )
+    {
+        for( DirtyListener listener : dirtyListeners )
+        {
+            listener.markDirty( );
+        }
+    }
+
+    /**
+     * @return the number of vertices held; for a circular buffer, these start at
+     *         {@link #getFirstVertex()} and may wrap around (see {@link #drawArrays(GL, int)})
+     */
     public int getNumVertices( )
     {
-        return data.limit() / elementSize;
+        return circular ? count : data.limit() / elementSize;
     }
 
     public int getMaxVertices( )
     {
-        return data.capacity() / elementSize;
+        return data.capacity() / elementSize - ( circular ? 1 : 0 );
+    }
+
+    public boolean isCircular( )
+    {
+        return circular;
+    }
+
+    /**
+     * @return the index of the oldest vertex, which is always 0 for a linear buffer
+     */
+    public int getFirstVertex( )
+    {
+        return circular ? start : 0;
     }
 
     public void bind( GLVertexAttribute type, GL gl )
@@ -143,19 +260,37 @@ public class GLFloatBuffer
         {
             if( glHandle == -1 )
             {
+                // a new device buffer needs a full upload, but the data itself hasn't
+                // changed, so there is nothing to tell listeners
                 glHandle = genBuffer( gl );
-                makeDirty();
+                dirty = true;
             }
 
             gl.glBindBuffer( GL.GL_ARRAY_BUFFER, glHandle );
 
-            if( isDirty() )
+            if( isDirty() && usage == GL.GL_STATIC_DRAW )
             {
                 gl.glBufferData( GL.GL_ARRAY_BUFFER, data.limit() * BufferUtil.SIZEOF_FLOAT, data.rewind(),
                                  GL.GL_STATIC_DRAW );
-                dirty = false;
+                deviceCapacity = data.limit();
+            }
+            else if( isDirty() || ( usage != GL.GL_STATIC_DRAW && deviceCapacity != data.capacity() ) || dirtyTo > deviceCapacity )
+            {
+                // streamed buffers get device space for the whole host buffer, so that
+                // later appends can be uploaded without reallocating
+                gl.glBufferData( GL.GL_ARRAY_BUFFER, data.capacity() * BufferUtil.SIZEOF_FLOAT, null, usage );
+                deviceCapacity = data.capacity();
+                upload( gl, 0, data.limit() );
+            }
+            else if( dirtyFrom < dirtyTo )
+            {
+                upload( gl, dirtyFrom, Math.min( dirtyTo, data.limit() ) );
             }
 
+            dirty = false;
+            dirtyFrom = Integer.MAX_VALUE;
+            dirtyTo = 0;
+
             return !isDirty();
         }
         finally
@@ -164,6 +299,206 @@ public class GLFloatBuffer
         }
     }
 
+    protected void upload( GL gl, int from, int to )
+    {
+        if( to <= from )
+            return;
+
+        FloatBuffer range = data.duplicate();
+        range.limit( to ).position( from );
+        gl.glBufferSubData( GL.GL_ARRAY_BUFFER, from * BufferUtil.SIZEOF_FLOAT, ( to - from ) * BufferUtil.SIZEOF_FLOAT, range );
+    }
+
+    /**
+     * Draws the vertices held, from oldest to newest. A circular buffer which has
+     * wrapped around takes two draw calls; for line strips, the first call ends with
+     * the repeated copy of vertex 0, so the strip stays connected across the wrap.
+     */
+    public void drawArrays( GL gl, int mode )
+    {
+        lock.lock();
+        try
+        {
+            int first = getFirstVertex();
+            int n = getNumVertices();
+            int max = getMaxVertices();
+
+            if( !circular || first + n <= max )
+            {
+                if( n > 0 ) gl.glDrawArrays( mode, first, n );
+            }
+            else
+            {
+                boolean strip = ( mode == GL.GL_LINE_STRIP );
+                gl.glDrawArrays( mode, first, max - first + ( strip ? 1 : 0 ) );
+                gl.glDrawArrays( mode, 0, first + n - max );
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds vertices after the newest vertex. A linear buffer grows if necessary, to twice
+     * its capacity or the size needed, whichever is larger. A full circular buffer drops
+     * its oldest vertices to make room.
+     *
+     * @param values vertex values, interleaved; the number of values must be a multiple
+     *               of the element size
+     */
+    public void append( float[] values, int offset, int length )
+    {
+        if( length % elementSize != 0 )
+            throw new IllegalArgumentException( "length must be a multiple of the element size" );
+
+        lock.lock();
+        try
+        {
+            usage = GL.GL_DYNAMIC_DRAW;
+
+            int vertices = length / elementSize;
+            if( circular )
+            {
+                int max = getMaxVertices();
+
+                // only the last max vertices survive
+                if( vertices > max )
+                {
+                    offset += ( vertices - max ) * elementSize;
+                    vertices = max;
+                }
+
+                for( int v = 0; v < vertices; v++ )
+                {
+                    if( count == max )
+                    {
+                        verticesRemoved( start, start + 1 );
+                        start = ( start + 1 ) % max;
+                        count--;
+                    }
+
+                    int index = ( start + count ) % max;
+                    for( int i = 0; i < elementSize; i++ )
+                    {
+                        data.put( index * elementSize + i, values[offset + v * elementSize + i] );
+                    }
+
+                    if( index == 0 )
+                    {
+                        for( int i = 0; i < elementSize; i++ )
+                        {
+                            data.put( max * elementSize + i, data.get( i ) );
+                        }
+                        addDirtyRange( max, max + 1 );
+                    }
+
+                    count++;
+                    addDirtyRange( index, index + 1 );
+                    verticesAdded( index, index + 1 );
+                }
+            }
+            else
+            {
+                int oldLimit = data.limit();
+                int newLimit = oldLimit + length;
+                if( newLimit > data.capacity() )
+                {
+                    FloatBuffer newData = BufferUtil.newFloatBuffer( Math.max( newLimit, 2 * data.capacity() ) );
+                    data.rewind();
+                    newData.put( data );
+                    data = newData;
+                }
+
+                data.limit( newLimit ).position( oldLimit );
+                data.put( values, offset, length );
+                data.rewind();
+
+                addDirtyRange( oldLimit / elementSize, newLimit / elementSize );
+                verticesAdded( oldLimit / elementSize, newLimit / elementSize );
+            }
+
+            if( vertices > 0 ) notifyDirtyListeners();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops the oldest vertices. A circular buffer just moves its start forward. A linear
+     * buffer has to move the remaining vertices to the front, which changes their indices
+     * and requires them to be uploaded again; use a circular buffer for sliding windows.
+     */
+    public void trim( int vertices )
+    {
+        lock.lock();
+        try
+        {
+            usage = GL.GL_DYNAMIC_DRAW;
+
+            vertices = Math.min( vertices, getNumVertices() );
+            if( vertices <= 0 )
+                return;
+
+            if( circular )
+            {
+                int max = getMaxVertices();
+                int end = start + vertices;
+                verticesRemoved( start, Math.min( end, max ) );
+                if( end > max ) verticesRemoved( 0, end - max );
+
+                start = end % max;
+                count -= vertices;
+
+                if( count == 0 )
+                    start = 0;
+            }
+            else
+            {
+                data.position( vertices * elementSize );
+                data.compact();
+                data.flip();
+
+                addDirtyRange( 0, data.limit() / elementSize );
+                verticesMoved();
+            }
+
+            // a circular buffer uploads nothing when trimmed, but draws fewer vertices
+            notifyDirtyListeners();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Called, with the lock held, when the vertices from fromVertex (inclusive) to toVertex
+     * (exclusive) are about to be dropped or overwritten by {@link #append(float[], int, int)}
+     * or {@link #trim(int)}.
+     */
+    protected void verticesRemoved( int fromVertex, int toVertex )
+    {
+    }
+
+    /**
+     * Called, with the lock held, after {@link #append(float[], int, int)} writes the vertices
+     * from fromVertex (inclusive) to toVertex (exclusive).
+     */
+    protected void verticesAdded( int fromVertex, int toVertex )
+    {
+    }
+
+    /**
+     * Called, with the lock held, after {@link #trim(int)} moves the vertices of a linear buffer.
+     */
+    protected void verticesMoved( )
+    {
+    }
+
     public boolean dispose( GL gl )
     {
         lock.lock();
@@ -191,6 +526,7 @@ public class GLFloatBuffer
         {
             mutator.mutate( data, elementSize );
             data.flip();
+            resetWindow();
             makeDirty();
         }
         finally
@@ -199,6 +535,29 @@ public class GLFloatBuffer
         }
     }
 
+    /**
+     * After a mutator has rewritten a circular buffer, its vertices start at index 0.
+     */
+    protected void resetWindow( )
+    {
+        if( !circular )
+            return;
+
+        int max = getMaxVertices();
+        start = 0;
+        count = Math.min( data.limit() / elementSize, max );
+
+        data.limit( data.capacity() );
+        data.rewind();
+        if( count > 0 )
+        {
+            for( int i = 0; i < elementSize; i++ )
+            {
+                data.put( max * elementSize + i, data.get( i ) );
+            }
+        }
+    }
+
     public static interface Mutator
     {
         public void mutate( FloatBuffer data, int length );
@@ -43,7 +43,15 @@ public class GLFloatBuffer2D extends GLFloatBuffer
 
     public GLFloatBuffer2D( int length, boolean indexEnabled )
     {
-        super( length, 2 );
+        this( length, indexEnabled, false );
+    }
+
+    /**
+     * @see GLFloatBuffer#GLFloatBuffer(int, int, boolean)
+     */
+    public GLFloatBuffer2D( int length, boolean indexEnabled, boolean circular )
+    {
+        super( length, 2, circular );
         this.indexEnabled = indexEnabled;
     }
 
@@ -158,9 +166,11 @@ public class GLFloatBuffer2D extends GLFloatBuffer
                 }
             };
 
-            for( int i = 0; i < data.limit()/2; i++ )
+            int first = getFirstVertex();
+            int max = getMaxVertices();
+            for( int i = 0; i < getNumVertices(); i++ )
             {
-                xyIndex.add( i );
+                xyIndex.add( circular ? ( first + i ) % max : i );
             }
         }
         finally
@@ -169,6 +179,43 @@ public class GLFloatBuffer2D extends GLFloatBuffer
         }
     }
 
+    @Override
+    protected void verticesRemoved( int fromVertex, int toVertex )
+    {
+        if( xyIndex == null )
+            return;
+
+        for( int i = fromVertex; i < toVertex; i++ )
+        {
+            xyIndex.remove( i );
+        }
+    }
+
+    @Override
+    protected void verticesAdded( int fromVertex, int toVertex )
+    {
+        if( !indexEnabled )
+            return;
+
+        if( xyIndex == null )
+        {
+            // builds the index over all vertices, including the new ones
+            createIndex();
+            return;
+        }
+
+        for( int i = fromVertex; i < toVertex; i++ )
+        {
+            xyIndex.add( i );
+        }
+    }
+
+    @Override
+    protected void verticesMoved( )
+    {
+        createIndex();
+    }
+
     public boolean isIndexEnabled()
     {
         return indexEnabled;
@@ -223,8 +270,17 @@ public class GLFloatBuffer2D extends GLFloatBuffer
         }
     }
 
+    /**
+     * For a circular buffer, the whole index is rebuilt, as with {@link #mutate(Mutator)}.
+     */
     public void mutateIndexed( IndexedMutator mutator )
     {
+        if( circular )
+        {
+            mutate( mutator );
+            return;
+        }
+
         lock.lock();
         try
         {
@@ -247,6 +303,7 @@ public class GLFloatBuffer2D extends GLFloatBuffer
         {
             mutator.mutate( data, elementSize );
             data.flip();
+            resetWindow();
             createIndex();
 
             makeDirty();
@@ -0,0 +1,367 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.gl.attribute;
+
+import java.nio.Buffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.media.opengl.GL;
+
+import com.sun.opengl.util.BufferUtil;
+
+/**
+ * Packs many small, independently sized blocks of vertex data into a small number
+ * of large device buffers (pages). Allocating one device buffer per block becomes
+ * expensive when there are thousands of blocks: each requires its own buffer bind
+ * and vertex pointer setup when drawn. Blocks allocated from the same page can
+ * instead be drawn together with a single {@code glMultiDrawArrays} call.
+ *
+ * Free space within each page is tracked by a free list sorted by offset. Adjacent
+ * free blocks are merged when a region is freed, regions may grow in place when
+ * followed by free space, and pages which become completely empty are released.
+ *
+ * All methods must be called on the gl display() thread.
+ */
+public class GLVertexArena
+{
+    public static final int DEFAULT_PAGE_SIZE = 1 << 18;
+
+    // number of floats per vertex
+    protected int elementSize;
+    // the default size of each page (in vertices)
+    protected int pageSize;
+
+    protected List<Page> pages;
+
+    // statistics gathered since the last call to resetCounters( )
+    protected long uploadedBytes;
+    protected int uploadCount;
+
+    public GLVertexArena( int elementSize )
+    {
+        this( elementSize, DEFAULT_PAGE_SIZE );
+    }
+
+    public GLVertexArena( int elementSize, int pageSize )
+    {
+        if ( elementSize > 4 || elementSize < 1 ) throw new IllegalArgumentException( "elementSize must be 1, 2, 3, or 4" );
+        if ( pageSize < 1 ) throw new IllegalArgumentException( "pageSize must be positive" );
+
+        this.elementSize = elementSize;
+        this.pageSize = pageSize;
+        this.pages = new ArrayList<Page>( );
+    }
+
+    /**
+     * Allocates space for the given number of vertices. Allocations larger than the
+     * page size are given their own page.
+     */
+    public Region allocate( GL gl, int vertices )
+    {
+        if ( vertices < 1 ) throw new IllegalArgumentException( "vertices must be positive" );
+
+        // first fit, favoring earlier pages so that later pages tend to empty out
+        for ( Page page : pages )
+        {
+            Region region = page.allocate( vertices );
+            if ( region != null ) return region;
+        }
+
+        Page page = new Page( gl, Math.max( pageSize, vertices ) );
+        pages.add( page );
+
+        return page.allocate( vertices );
+    }
+
+    /**
+     * Attempts to grow a region without moving it, which is possible when the region is
+     * followed by enough free space in its page. Existing data in the region is preserved.
+     *
+     * @return true if the region now has at least the requested capacity
+     */
+    public boolean extend( Region region, int capacity )
+    {
+        if ( region.capacity >= capacity ) return true;
+
+        return region.page.extend( region, capacity );
+    }
+
+    /**
+     * Returns the space used by a region to the free list of its page.
+     * The region must not be used after it has been freed.
+     */
+    public void free( GL gl, Region region )
+    {
+        Page page = region.page;
+        page.free( region );
+
+        // release empty pages, but keep one page around to avoid repeatedly
+        // allocating and deleting a device buffer as a single block is replaced
+        if ( page.used == 0 && ( pages.size( ) > 1 || page.capacity > pageSize ) )
+        {
+            page.dispose( gl );
+            pages.remove( page );
+        }
+    }
+
+    /**
+     * Copies vertices from the host buffer (starting at its current position) into a region.
+     *
+     * @param vertexOffset the first vertex within the region to write
+     * @param vertexCount the number of vertices to write
+     */
+    public void upload( GL gl, Region region, int vertexOffset, int vertexCount, Buffer data )
+    {
+        if ( vertexCount <= 0 ) return;
+        if ( vertexOffset < 0 || vertexOffset + vertexCount > region.capacity ) throw new IndexOutOfBoundsException( "vertices [" + vertexOffset + ", " + ( vertexOffset + vertexCount ) + ") outside region of capacity " + region.capacity );
+
+        int vertexBytes = elementSize * BufferUtil.SIZEOF_FLOAT;
+        int bytes = vertexCount * vertexBytes;
+
+        gl.glBindBuffer( GL.GL_ARRAY_BUFFER, region.page.glHandle );
+        gl.glBufferSubData( GL.GL_ARRAY_BUFFER, ( region.offset + vertexOffset ) * vertexBytes, bytes, data );
+
+        uploadedBytes += bytes;
+        uploadCount++;
+    }
+
+    public List<Page> getPages( )
+    {
+        return pages;
+    }
+
+    public int getPageCount( )
+    {
+        return pages.size( );
+    }
+
+    /**
+     * @return the total number of vertices allocated across all pages
+     */
+    public long getAllocatedVertices( )
+    {
+        long total = 0;
+        for ( Page page : pages )
+            total += page.used;
+        return total;
+    }
+
+    /**
+     * @return the total capacity (in vertices) of all pages
+     */
+    public long getCapacityVertices( )
+    {
+        long total = 0;
+        for ( Page page : pages )
+            total += page.capacity;
+        return total;
+    }
+
+    public long getUploadedBytes( )
+    {
+        return uploadedBytes;
+    }
+
+    public int getUploadCount( )
+    {
+        return uploadCount;
+    }
+
+    public void resetCounters( )
+    {
+        uploadedBytes = 0;
+        uploadCount = 0;
+    }
+
+    public void dispose( GL gl )
+    {
+        for ( Page page : pages )
+        {
+            page.dispose( gl );
+        }
+
+        pages.clear( );
+    }
+
+    /**
+     * A single device buffer holding the vertices of many regions.
+     */
+    public class Page
+    {
+        protected int glHandle;
+        protected int capacity;
+        protected int used;
+
+        // mapping from offset to length of each free block
+        protected TreeMap<Integer, Integer> freeBlocks;
+
+        protected Page( GL gl, int capacity )
+        {
+            this.capacity = capacity;
+            this.freeBlocks = new TreeMap<Integer, Integer>( );
+            this.freeBlocks.put( 0, capacity );
+
+            int[] handle = new int[1];
+            gl.glGenBuffers( 1, handle, 0 );
+            this.glHandle = handle[0];
+
+            gl.glBindBuffer( GL.GL_ARRAY_BUFFER, glHandle );
+            gl.glBufferData( GL.GL_ARRAY_BUFFER, capacity * elementSize * BufferUtil.SIZEOF_FLOAT, null, GL.GL_DYNAMIC_DRAW );
+        }
+
+        public int getBufferHandle( )
+        {
+            return glHandle;
+        }
+
+        public int getCapacity( )
+        {
+            return capacity;
+        }
+
+        public int getUsed( )
+        {
+            return used;
+        }
+
+        public int getFreeBlockCount( )
+        {
+            return freeBlocks.size( );
+        }
+
+        protected Region allocate( int vertices )
+        {
+            if ( capacity - used < vertices ) return null;
+
+            for ( Map.Entry<Integer, Integer> entry : freeBlocks.entrySet( ) )
+            {
+                int offset = entry.getKey( );
+                int length = entry.getValue( );
+
+                if ( length >= vertices )
+                {
+                    freeBlocks.remove( offset );
+                    if ( length > vertices ) freeBlocks.put( offset + vertices, length - vertices );
+
+                    used += vertices;
+                    return new Region( this, offset, vertices );
+                }
+            }
+
+            return null;
+        }
+
+        protected boolean extend( Region region, int newCapacity )
+        {
+            int end = region.offset + region.capacity;
+            int needed = newCapacity - region.capacity;
+
+            Integer length = freeBlocks.get( end );
+            if ( length == null || length < needed ) return false;
+
+            freeBlocks.remove( end );
+            if ( length > needed ) freeBlocks.put( end + needed, length - needed );
+
+            region.capacity = newCapacity;
+            used += needed;
+            return true;
+        }
+
+        protected void free( Region region )
+        {
+            int offset = region.offset;
+            int length = region.capacity;
+
+            // merge with the free block immediately before the region
+            Map.Entry<Integer, Integer> before = freeBlocks.lowerEntry( offset );
+            if ( before != null && before.getKey( ) + before.getValue( ) == offset )
+            {
+                freeBlocks.remove( before.getKey( ) );
+                offset = before.getKey( );
+                length += before.getValue( );
+            }
+
+            // merge with the free block immediately after the region
+            Integer after = freeBlocks.remove( region.offset + region.capacity );
+            if ( after != null )
+            {
+                length += after;
+            }
+
+            freeBlocks.put( offset, length );
+            used -= region.capacity;
+
+            region.capacity = 0;
+        }
+
+        protected void dispose( GL gl )
+        {
+            gl.glDeleteBuffers( 1, new int[] { glHandle }, 0 );
+        }
+    }
+
+    /**
+     * A contiguous block of vertices within a page.
+     */
+    public static class Region
+    {
+        protected Page page;
+        protected int offset;
+        protected int capacity;
+
+        protected Region( Page page, int offset, int capacity )
+        {
+            this.page = page;
+            this.offset = offset;
+            this.capacity = capacity;
+        }
+
+        public Page getPage( )
+        {
+            return page;
+        }
+
+        /**
+         * @return the index (in vertices) of the first vertex of this region within its page
+         */
+        public int getOffset( )
+        {
+            return offset;
+        }
+
+        /**
+         * @return the number of vertices which fit in this region
+         */
+        public int getCapacity( )
+        {
+            return capacity;
+        }
+    }
+}
@@ -32,7 +32,10 @@ import static com.metsci.glimpse.gl.shader.ShaderArgQualifier.*;
 import static java.util.logging.Level.INFO;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import javax.media.opengl.GL;
@@ -50,6 +53,10 @@ import com.metsci.glimpse.util.io.StreamOpener;
  * by a {@link com.metsci.glimpse.painter.base.GlimpsePainter} which
  * desires shaders to be active during its rendering.
  *
+ * Uniform variables are found by parsing the shader source, and the
+ * results are shared through the {@link ShaderArgCache}. Only uniforms
+ * whose values have changed are pushed when the pipeline is used.
+ *
  * @author osborn
  */
 public abstract class Shader
@@ -59,8 +66,13 @@ public abstract class Shader
     private final String name;
     private final ShaderType type;
 
+    // uniform statistics for all shaders, since the last call to resetMetrics( )
+    private static final AtomicLong uniformUpdateCount = new AtomicLong();
+    private static final AtomicLong uniformSkipCount = new AtomicLong();
+
     private final ShaderSource[] sources;
     private final ShaderArg[] args;
+    private final Map<String, ShaderArg> argsByName;
 
     private int[] glShaderHandles;
     private int[] glArgHandles;
@@ -113,6 +125,11 @@ public abstract class Shader
             this.args = verify( type, source );
         }
             
+        // the first arg declared with a given name wins
+        this.argsByName = new HashMap<String, ShaderArg>();
+        for( int i = args.length - 1; i >= 0; i-- )
+            argsByName.put( args[i].getName(), args[i] );
+
         this.name = name;
         this.type = type;
         this.sources = source;
@@ -129,18 +146,35 @@ public abstract class Shader
             throw new GLException( "Shader source code not present." );
 
         // TODO: Make this work with multiple source files
-        List<ShaderArg> args = source[0].extractArgs();
+        List<ShaderArg> args = ShaderArgCache.getInstance().getArgs( source[0] );
         return args.toArray( new ShaderArg[0] );
     }
 
     protected ShaderArg getArg( String name )
     {
-        // TODO: Hello, Map!
-        for( int i = 0; i < args.length; i++ )
-            if( args[i].getName().contentEquals( name ) )
-                return args[i];
+        return argsByName.get( name );
+    }
+
+    /**
+     * @return the number of uniform values pushed to OpenGL by all shaders
+     */
+    public static long getUniformUpdateCount( )
+    {
+        return uniformUpdateCount.get();
+    }
 
-        return null;
+    /**
+     * @return the number of uniform value pushes skipped by all shaders because the value had not changed
+     */
+    public static long getUniformSkipCount( )
+    {
+        return uniformSkipCount.get();
+    }
+
+    public static void resetMetrics( )
+    {
+        uniformUpdateCount.set( 0 );
+        uniformSkipCount.set( 0 );
     }
 
     public String getName( )
@@ -230,6 +264,9 @@ public abstract class Shader
             if( arg.getQual() == UNIFORM )
             {
                 glArgHandles[i] = gl.glGetUniformLocation( glProgramHandle, arg.getName() );
+
+                // a newly linked program starts with default uniform values
+                arg.makeDirty();
             }
             else if( arg.getInOut() == IN )
             {
@@ -245,14 +282,26 @@ public abstract class Shader
      */
     protected void updateArgValues( GL gl )
     {
+        int updated = 0;
+        int skipped = 0;
+
         for( int i = 0; i < args.length; i++ )
         {
             ShaderArg arg = args[i];
             if( arg.getQual() == UNIFORM )
             {
-                arg.update( gl, glArgHandles[i] );
+                if( arg.update( gl, glArgHandles[i] ) )
+                    updated++;
+                else
+                    skipped++;
             }
         }
+
+        if( updated > 0 )
+            uniformUpdateCount.addAndGet( updated );
+
+        if( skipped > 0 )
+            uniformSkipCount.addAndGet( skipped );
     }
 
     public void dispose( GLContext context )
@@ -28,6 +28,7 @@ package com.metsci.glimpse.gl.shader;
 
 import static com.metsci.glimpse.util.logging.LoggerUtils.logFine;
 
+import java.util.Arrays;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
@@ -36,6 +37,10 @@ import javax.media.opengl.GL;
 /**
  * A wrapper for a shader variable declared in an GLSL source file.
  *
+ * Values are only pushed to OpenGL when they differ from the last value pushed.
+ * Array values are compared by content, so an array may be modified in place
+ * and passed to {@link #setValue(Object)} again.
+ *
  * @author osborn
  */
 public class ShaderArg
@@ -53,7 +58,8 @@ public class ShaderArg
 
     private Object lastPushedValue;
     private Object currentValue;
-    private boolean dirty;
+    // read without holding the lock, so that clean args can be skipped cheaply
+    private volatile boolean dirty;
 
     public ShaderArg( String name, ShaderArgType type, ShaderArgQualifier qual, ShaderArgInOut inout )
     {
@@ -90,9 +96,22 @@ public class ShaderArg
         return dirty;
     }
 
+    /**
+     * Forces the current value to be pushed on the next update, for example
+     * because the program holding the variable has been relinked.
+     */
     public void makeDirty( )
     {
-        dirty = true;
+        lock.lock();
+        try
+        {
+            lastPushedValue = null;
+            dirty = true;
+        }
+        finally
+        {
+            lock.unlock();
+        }
     }
 
     public void setValue( Object val )
@@ -101,9 +120,7 @@ public class ShaderArg
         try
         {
             currentValue = val;
-            if( lastPushedValue != null )
-                if( !currentValue.equals( lastPushedValue ) )
-                    makeDirty();
+            dirty = lastPushedValue == null || !valueEquals( currentValue, lastPushedValue );
         }
         finally
         {
@@ -111,17 +128,22 @@ public class ShaderArg
         }
     }
 
-    protected void update( GL gl, int glArgHandle )
+    /**
+     * Pushes the current value to OpenGL, if it has changed since it was last pushed.
+     *
+     * @return true if the value was pushed
+     */
+    protected boolean update( GL gl, int glArgHandle )
     {
+        if( !dirty )
+            return false;
+
         lock.lock();
         try
         {
-            if( lastPushedValue != null )
-                if( currentValue.equals( lastPushedValue ) )
-                {
-                    dirty = false;
-                    return;
-                }
+            // leave the arg dirty until it has a value
+            if( currentValue == null )
+                return false;
 
             switch( type )
             {
@@ -160,14 +182,35 @@ public class ShaderArg
                     throw new UnsupportedOperationException( "Unsupported type." );
                 }
             }
-            lastPushedValue = currentValue;
+            lastPushedValue = copyValue( currentValue );
             dirty = false;
+            return true;
         }
         finally
         {
             lock.unlock();
         }
     }
+
+    private static boolean valueEquals( Object a, Object b )
+    {
+        if( a == null || b == null )
+            return a == b;
+
+        if( a instanceof float[] && b instanceof float[] )
+            return Arrays.equals( (float[]) a, (float[]) b );
+
+        return a.equals( b );
+    }
+
+    // arrays are copied, since the caller may modify them after they are pushed
+    private static Object copyValue( Object value )
+    {
+        if( value instanceof float[] )
+            return ( (float[]) value ).clone();
+
+        return value;
+    }
     private int getIntValue( )
     {
         return ( (Number) currentValue ).intValue();
@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.gl.shader;
+
+import static com.metsci.glimpse.util.logging.LoggerUtils.logFine;
+import static com.metsci.glimpse.util.logging.LoggerUtils.logWarning;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * A process-wide cache of the {@link ShaderArg}s declared by shader sources, so that
+ * each distinct source is only run through the GLSL argument parser once. Sources are
+ * keyed by a hash of their text.
+ *
+ * If a cache directory is set, parsed args are also written to (and read back from)
+ * one small text file per source, so the parser can be skipped across runs.
+ *
+ * The cache holds only arg declarations: each call to {@link #getArgs(ShaderSource)}
+ * returns new {@code ShaderArg} instances, which carry their own values.
+ *
+ * @see Shader
+ */
+public class ShaderArgCache
+{
+    private static final Logger logger = Logger.getLogger( ShaderArgCache.class.getName() );
+
+    private static final String FILE_HEADER = "glimpse-shader-args 1";
+    private static final String FILE_SUFFIX = ".args";
+    private static final String NULL_FIELD = "-";
+
+    private static final ShaderArgCache instance = new ShaderArgCache();
+
+    public static ShaderArgCache getInstance( )
+    {
+        return instance;
+    }
+
+    private final ConcurrentMap<String, ShaderArg[]> cache;
+    private volatile File directory;
+
+    // statistics since the last call to resetMetrics( )
+    private final AtomicLong parseCount;
+    private final AtomicLong parseNanos;
+    private final AtomicLong memoryHitCount;
+    private final AtomicLong diskHitCount;
+
+    public ShaderArgCache( )
+    {
+        this.cache = new ConcurrentHashMap<String, ShaderArg[]>();
+
+        this.parseCount = new AtomicLong();
+        this.parseNanos = new AtomicLong();
+        this.memoryHitCount = new AtomicLong();
+        this.diskHitCount = new AtomicLong();
+    }
+
+    /**
+     * Sets the directory in which parsed args are stored between runs, or null to keep them only in memory.
+     * The directory is created if it does not exist.
+     */
+    public void setDirectory( File directory )
+    {
+        this.directory = directory;
+    }
+
+    public File getDirectory( )
+    {
+        return directory;
+    }
+
+    /**
+     * @return new instances of the args declared by the source, or null if the source
+     *         has no main function or cannot be parsed
+     */
+    public List<ShaderArg> getArgs( ShaderSource source )
+    {
+        String key = hash( source.getSource() );
+
+        ShaderArg[] declarations = cache.get( key );
+        if( declarations != null )
+        {
+            memoryHitCount.incrementAndGet();
+        }
+        else
+        {
+            declarations = read( key );
+            if( declarations != null )
+            {
+                diskHitCount.incrementAndGet();
+            }
+            else
+            {
+                long start = System.nanoTime();
+                List<ShaderArg> parsed = source.extractArgs();
+                parseNanos.addAndGet( System.nanoTime() - start );
+                parseCount.incrementAndGet();
+
+                // failures are not cached, so they are logged each time
+                if( parsed == null )
+                    return null;
+
+                declarations = parsed.toArray( new ShaderArg[parsed.size()] );
+                write( key, declarations );
+            }
+
+            cache.putIfAbsent( key, declarations );
+        }
+
+        List<ShaderArg> args = new ArrayList<ShaderArg>( declarations.length );
+        for( ShaderArg arg: declarations )
+            args.add( new ShaderArg( arg.getName(), arg.getType(), arg.getQual(), arg.getInOut() ) );
+
+        return args;
+    }
+
+    /**
+     * Removes all args from memory (but not from the cache directory).
+     */
+    public void clear( )
+    {
+        cache.clear();
+    }
+
+    /**
+     * @return the number of sources run through the parser
+     */
+    public long getParseCount( )
+    {
+        return parseCount.get();
+    }
+
+    /**
+     * @return the total time spent parsing sources, in milliseconds
+     */
+    public double getParseTimeMillis( )
+    {
+        return parseNanos.get() / 1e6;
+    }
+
+    /**
+     * @return the number of lookups answered from memory
+     */
+    public long getMemoryHitCount( )
+    {
+        return memoryHitCount.get();
+    }
+
+    /**
+     * @return the number of lookups answered from the cache directory
+     */
+    public long getDiskHitCount( )
+    {
+        return diskHitCount.get();
+    }
+
+    public void resetMetrics( )
+    {
+        parseCount.set( 0 );
+        parseNanos.set( 0 );
+        memoryHitCount.set( 0 );
+        diskHitCount.set( 0 );
+    }
+
+    private ShaderArg[] read( String key )
+    {
+        File dir = directory;
+        if( dir == null )
+            return null;
+
+        File file = new File( dir, key + FILE_SUFFIX );
+        if( !file.isFile() )
+            return null;
+
+        try
+        {
+            BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( file ), "UTF-8" ) );
+            try
+            {
+                if( !FILE_HEADER.equals( reader.readLine() ) )
+                    return null;
+
+                List<ShaderArg> args = new ArrayList<ShaderArg>();
+
+                String line = null;
+                while( ( line = reader.readLine() ) != null )
+                {
+                    String[] fields = line.split( "\t" );
+                    if( fields.length != 4 )
+                        return null;
+
+                    String name = NULL_FIELD.equals( fields[0] ) ? null : fields[0];
+                    ShaderArgType type = NULL_FIELD.equals( fields[1] ) ? null : ShaderArgType.valueOf( fields[1] );
+                    ShaderArgQualifier qual = NULL_FIELD.equals( fields[2] ) ? null : ShaderArgQualifier.valueOf( fields[2] );
+                    ShaderArgInOut inout = NULL_FIELD.equals( fields[3] ) ? null : ShaderArgInOut.valueOf( fields[3] );
+
+                    args.add( new ShaderArg( name, type, qual, inout ) );
+                }
+
+                return args.toArray( new ShaderArg[args.size()] );
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch( IOException e )
+        {
+            logFine( logger, "Unable to read shader args from %s: %s", file, e );
+            return null;
+        }
+        catch( IllegalArgumentException e )
+        {
+            // written by a version with different arg types, parse the source again
+            logFine( logger, "Unable to read shader args from %s: %s", file, e );
+            return null;
+        }
+    }
+
+    private void write( String key, ShaderArg[] args )
+    {
+        File dir = directory;
+        if( dir == null )
+            return;
+
+        File file = new File( dir, key + FILE_SUFFIX );
+
+        try
+        {
+            if( !dir.isDirectory() && !dir.mkdirs() )
+                throw new IOException( "Unable to create directory " + dir );
+
+            // write to a temporary file first, so readers never see a partial file
+            File temp = File.createTempFile( key, ".tmp", dir );
+            Writer writer = new OutputStreamWriter( new FileOutputStream( temp ), "UTF-8" );
+            try
+            {
+                writer.write( FILE_HEADER );
+                writer.write( "\n" );
+
+                for( ShaderArg arg: args )
+                {
+                    writer.write( arg.getName() == null ? NULL_FIELD : arg.getName() );
+                    writer.write( "\t" );
+                    writer.write( arg.getType() == null ? NULL_FIELD : arg.getType().name() );
+                    writer.write( "\t" );
+                    writer.write( arg.getQual() == null ? NULL_FIELD : arg.getQual().name() );
+                    writer.write( "\t" );
+                    writer.write( arg.getInOut() == null ? NULL_FIELD : arg.getInOut().name() );
+                    writer.write( "\n" );
+                }
+            }
+            finally
+            {
+                writer.close();
+            }
+
+            if( !temp.renameTo( file ) )
+            {
+                // another process may have written the same file first
+                temp.delete();
+            }
+        }
+        catch( IOException e )
+        {
+            logWarning( logger, "Unable to write shader args to %s", e, file );
+        }
+    }
+
+    private static String hash( String source )
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance( "SHA-1" );
+            byte[] bytes = digest.digest( source.getBytes( "UTF-8" ) );
+
+            StringBuilder b = new StringBuilder( 2 * bytes.length );
+            for( byte v: bytes )
+                b.append( Character.forDigit( ( v >> 4 ) & 0xF, 16 ) ).append( Character.forDigit( v & 0xF, 16 ) );
+
+            return b.toString();
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new RuntimeException( e );
+        }
+        catch( UnsupportedEncodingException e )
+        {
+            throw new RuntimeException( e );
+        }
+    }
+}
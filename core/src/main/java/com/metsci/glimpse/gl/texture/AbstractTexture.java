@@ -28,11 +28,15 @@ package com.metsci.glimpse.gl.texture;
 
 import static com.metsci.glimpse.gl.util.GLUtils.*;
 
+import java.util.Collection;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.ReentrantLock;
 
 import javax.media.opengl.GL;
 import javax.media.opengl.GLContext;
 
+import com.metsci.glimpse.support.repaint.DirtyListener;
+
 /**
  * An abstract {@link Texture} implementation which wraps an OpenGL
  * integer texture handle but makes no assumptions about the
@@ -51,6 +55,8 @@ public abstract class AbstractTexture implements Texture
 
     protected int[] dim;
 
+    protected final Collection<DirtyListener> dirtyListeners = new CopyOnWriteArrayList<DirtyListener>( );
+
 
     public AbstractTexture( int n0 )
     {
@@ -76,6 +82,30 @@ public abstract class AbstractTexture implements Texture
     public void makeDirty( )
     {
         dirty = true;
+        notifyDirtyListeners( );
+    }
+
+    /**
+     * Adds a listener which is notified whenever the texture is marked dirty, including
+     * by mutate( ). Used by {@link com.metsci.glimpse.painter.texture.ShadedTexturePainter}
+     * to mark itself dirty when the data in its textures changes.
+     */
+    public void addDirtyListener( DirtyListener listener )
+    {
+        this.dirtyListeners.add( listener );
+    }
+
+    public void removeDirtyListener( DirtyListener listener )
+    {
+        this.dirtyListeners.remove( listener );
+    }
+
+    protected void notifyDirtyListeners( )
+    {
+        for ( DirtyListener listener : dirtyListeners )
+        {
+            listener.markDirty( );
+        }
     }
 
     public boolean isDirty( )
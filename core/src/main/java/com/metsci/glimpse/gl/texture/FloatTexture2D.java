@@ -49,6 +49,17 @@ public class FloatTexture2D extends AbstractTexture implements DrawableTexture
     protected double[] min;
     protected double[] max;
 
+    // set once glTexImage2D has defined the texture storage at the current size
+    protected boolean texImageDefined;
+
+    // when set, only the texels in [dirtyMinX,dirtyMaxX) x [dirtyMinY,dirtyMaxY)
+    // have changed since the last upload
+    protected boolean dirtyRegion;
+    protected int dirtyMinX;
+    protected int dirtyMinY;
+    protected int dirtyMaxX;
+    protected int dirtyMaxY;
+
     public FloatTexture2D( double[] min, double[] max, int n0, int n1, boolean centers )
     {
         super( n0, n1 );
@@ -60,6 +71,59 @@ public class FloatTexture2D extends AbstractTexture implements DrawableTexture
         this.centers = centers;
     }
 
+    @Override
+    public void makeDirty( )
+    {
+        super.makeDirty( );
+        dirtyRegion = false;
+    }
+
+    /**
+     * Marks a rectangle of texels as modified. If no full upload is pending, the
+     * next call to prepare( ) uses glTexSubImage2D to send only the union of the
+     * rectangles marked since the last upload.
+     */
+    public void makeDirty( int x, int y, int sizeX, int sizeY )
+    {
+        int minX = Math.max( 0, x );
+        int minY = Math.max( 0, y );
+        int maxX = Math.min( dim[0], x + sizeX );
+        int maxY = Math.min( dim[1], y + sizeY );
+
+        if( minX >= maxX || minY >= maxY )
+            return;
+
+        // the entire texture is already scheduled for upload
+        if( dirty && !dirtyRegion )
+            return;
+
+        if( dirtyRegion )
+        {
+            dirtyMinX = Math.min( dirtyMinX, minX );
+            dirtyMinY = Math.min( dirtyMinY, minY );
+            dirtyMaxX = Math.max( dirtyMaxX, maxX );
+            dirtyMaxY = Math.max( dirtyMaxY, maxY );
+        }
+        else
+        {
+            dirtyMinX = minX;
+            dirtyMinY = minY;
+            dirtyMaxX = maxX;
+            dirtyMaxY = maxY;
+        }
+
+        dirtyRegion = true;
+        dirty = true;
+        notifyDirtyListeners( );
+    }
+
+    @Override
+    protected void allocate_genHandles( GL gl )
+    {
+        super.allocate_genHandles( gl );
+        texImageDefined = false;
+    }
+
     @Override
     public void draw( GL gl, int texUnit )
     {
@@ -133,8 +197,28 @@ public class FloatTexture2D extends AbstractTexture implements DrawableTexture
     @Override
     protected void prepare_setData( GL gl )
     {
-        gl.glTexImage2D( GL.GL_TEXTURE_2D, 0, GL.GL_LUMINANCE32F_ARB, dim[0], dim[1], 0, GL.GL_LUMINANCE, GL.GL_FLOAT,
-                         data.rewind() );
+        if( dirtyRegion && texImageDefined )
+        {
+            int sizeX = dirtyMaxX - dirtyMinX;
+            int sizeY = dirtyMaxY - dirtyMinY;
+
+            data.limit( data.capacity() );
+            data.position( dirtyMinY * dim[0] + dirtyMinX );
+
+            gl.glPixelStorei( GL.GL_UNPACK_ROW_LENGTH, dim[0] );
+            gl.glTexSubImage2D( GL.GL_TEXTURE_2D, 0, dirtyMinX, dirtyMinY, sizeX, sizeY, GL.GL_LUMINANCE, GL.GL_FLOAT, data );
+            gl.glPixelStorei( GL.GL_UNPACK_ROW_LENGTH, 0 );
+
+            data.rewind();
+        }
+        else
+        {
+            gl.glTexImage2D( GL.GL_TEXTURE_2D, 0, GL.GL_LUMINANCE32F_ARB, dim[0], dim[1], 0, GL.GL_LUMINANCE, GL.GL_FLOAT,
+                             data.rewind() );
+            texImageDefined = true;
+        }
+
+        dirtyRegion = false;
     }
 
     @Override
@@ -159,6 +243,25 @@ public class FloatTexture2D extends AbstractTexture implements DrawableTexture
         }
     }
 
+    /**
+     * Like {@link #mutate(MutatorFloat2D)}, but the mutator promises to modify
+     * only the given rectangle of texels, so only that region is re-uploaded.
+     */
+    public void mutate( MutatorFloat2D mutator, int x, int y, int sizeX, int sizeY )
+    {
+        lock.lock();
+        try
+        {
+            data.rewind();
+            mutator.mutate( data, min, max, dim.clone() );
+            makeDirty( x, y, sizeX, sizeY );
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
     public static interface MutatorFloat2D
     {
         public void mutate( FloatBuffer data, double[] min, double[] max, int[] dim );
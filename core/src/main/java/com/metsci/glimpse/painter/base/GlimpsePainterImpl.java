@@ -26,6 +26,8 @@
  */
 package com.metsci.glimpse.painter.base;
 
+import java.util.Collection;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -36,6 +38,7 @@ import javax.media.opengl.glu.GLU;
 import com.metsci.glimpse.context.GlimpseBounds;
 import com.metsci.glimpse.context.GlimpseContext;
 import com.metsci.glimpse.gl.util.GLErrorUtils;
+import com.metsci.glimpse.support.repaint.DirtyListener;
 import com.metsci.glimpse.support.settings.LookAndFeel;
 
 public abstract class GlimpsePainterImpl implements GlimpsePainter
@@ -50,6 +53,8 @@ public abstract class GlimpsePainterImpl implements GlimpsePainter
     protected boolean displayOn = true;
     protected boolean doErrorHandling = true;
 
+    protected final Collection<DirtyListener> dirtyListeners = new CopyOnWriteArrayList<DirtyListener>( );
+
     protected abstract void paintTo( GlimpseContext context, GlimpseBounds bounds );
 
     public void setErrorHandling( boolean doErrorHandling )
@@ -60,6 +65,7 @@ public abstract class GlimpsePainterImpl implements GlimpsePainter
     public void setVisible( boolean show )
     {
         this.displayOn = show;
+        this.markDirty( );
     }
 
     public boolean isVisible( )
@@ -67,6 +73,33 @@ public abstract class GlimpsePainterImpl implements GlimpsePainter
         return displayOn;
     }
 
+    /**
+     * Adds a listener which is notified when the painter's data or display settings
+     * change. Used by {@link com.metsci.glimpse.support.repaint.RepaintManager} to
+     * repaint canvases only when something they display has changed.
+     */
+    public void addDirtyListener( DirtyListener listener )
+    {
+        this.dirtyListeners.add( listener );
+    }
+
+    public void removeDirtyListener( DirtyListener listener )
+    {
+        this.dirtyListeners.remove( listener );
+    }
+
+    /**
+     * Notifies listeners that this painter must be repainted. Subclasses should
+     * call this method whenever their data or display settings change.
+     */
+    protected void markDirty( )
+    {
+        for ( DirtyListener listener : dirtyListeners )
+        {
+            listener.markDirty( );
+        }
+    }
+
     @Override
     public void setLookAndFeel( LookAndFeel laf )
     {
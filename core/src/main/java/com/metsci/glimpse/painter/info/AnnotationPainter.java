@@ -297,6 +297,7 @@ public class AnnotationPainter extends GlimpseDataPainter2D
         {
             Annotation annotation = new Annotation( text, x, y );
             this.annotations.add( annotation );
+            markDirty( );
             return annotation;
         }
         finally
@@ -312,6 +313,7 @@ public class AnnotationPainter extends GlimpseDataPainter2D
         {
             Annotation annotation = new Annotation( text, x, y, offset_x, offset_y, centerX, centerY, font, color );
             this.annotations.add( annotation );
+            markDirty( );
             return annotation;
         }
         finally
@@ -327,6 +329,7 @@ public class AnnotationPainter extends GlimpseDataPainter2D
         {
             Annotation annotation = new Annotation( textRenderer, text, x, y, offset_x, offset_y, centerX, centerY, color );
             this.annotations.add( annotation );
+            markDirty( );
             return annotation;
         }
         finally
@@ -341,6 +344,7 @@ public class AnnotationPainter extends GlimpseDataPainter2D
         try
         {
             this.annotations.add( annotation );
+            markDirty( );
             return annotation;
         }
         finally
@@ -360,6 +364,8 @@ public class AnnotationPainter extends GlimpseDataPainter2D
         {
             this.lock.unlock( );
         }
+
+        markDirty( );
     }
 
     public void displayTime( long time )
@@ -374,6 +380,8 @@ public class AnnotationPainter extends GlimpseDataPainter2D
         {
             this.lock.unlock( );
         }
+
+        markDirty( );
     }
 
     public void displayTimeRange( long minTime, long maxTime )
@@ -388,6 +396,8 @@ public class AnnotationPainter extends GlimpseDataPainter2D
         {
             this.lock.unlock( );
         }
+
+        markDirty( );
     }
 
     @Override
@@ -396,6 +406,12 @@ public class AnnotationPainter extends GlimpseDataPainter2D
         int width = bounds.getWidth( );
         int height = bounds.getHeight( );
 
+        // annotations are drawn in insertion order, so that overlapping annotations stack
+        // the same way every frame; a TextRenderer is only begun and ended when the next
+        // visible annotation needs a different renderer (or the GLUT path)
+        TextRenderer activeRenderer = null;
+        float[] activeColor = null;
+
         this.lock.lock( );
         try
         {
@@ -404,30 +420,41 @@ public class AnnotationPainter extends GlimpseDataPainter2D
                 if ( !inTimeRange( annotation ) )
                     continue;
 
-                float[] textColor = DEFAULT_COLOR;
-                if ( annotation.color != null ) textColor = annotation.color;
-
-                if ( annotation.getTextRenderer( ) != null )
+                TextRenderer textRenderer = annotation.getTextRenderer( );
+                if ( textRenderer != null )
                 {
-                    TextRenderer textRenderer = annotation.getTextRenderer( );
+                    if ( isOffscreen( textRenderer, annotation, axis, width, height ) )
+                        continue;
 
-                    Rectangle2D textBounds = textRenderer.getBounds( annotation.text );
-                    int x = ( int ) ( axis.getAxisX( ).valueToScreenPixel( annotation.x ) - ( annotation.centerX ? textBounds.getWidth( ) / 2 : 0 ) );
-                    int y = ( int ) ( axis.getAxisY( ).valueToScreenPixel( annotation.y ) - ( annotation.centerY ? textBounds.getHeight( ) / 2 : 0 ) );
-
-                    textRenderer.beginRendering( width, height );
-                    try
+                    if ( textRenderer != activeRenderer )
                     {
-                        textRenderer.setColor( textColor[0], textColor[1], textColor[2], textColor[3] );
-                        textRenderer.draw( annotation.text, x + annotation.offset_x, y + annotation.offset_y );
+                        if ( activeRenderer != null ) activeRenderer.endRendering( );
+                        activeRenderer = null;
+
+                        textRenderer.beginRendering( width, height );
+                        activeRenderer = textRenderer;
+                        activeColor = null;
                     }
-                    finally
+
+                    // only flush the renderer's batch when the color actually changes
+                    float[] textColor = getColor( annotation );
+                    if ( activeColor == null || !sameColor( activeColor, textColor ) )
                     {
-                        textRenderer.endRendering( );
+                        textRenderer.setColor( textColor[0], textColor[1], textColor[2], textColor[3] );
+                        activeColor = textColor;
                     }
+
+                    Rectangle2D textBounds = textRenderer.getBounds( annotation.text );
+                    int x = getTextX( annotation, textBounds, axis );
+                    int y = getTextY( annotation, textBounds, axis );
+                    textRenderer.draw( annotation.text, x + annotation.offset_x, y + annotation.offset_y );
                 }
                 else
                 {
+                    if ( activeRenderer != null ) activeRenderer.endRendering( );
+                    activeRenderer = null;
+
+                    float[] textColor = getColor( annotation );
                     gl.glColor3fv( textColor, 0 );
 
                     float posX = annotation.x;
@@ -454,10 +481,52 @@ public class AnnotationPainter extends GlimpseDataPainter2D
         }
         finally
         {
-            this.lock.unlock( );
+            try
+            {
+                if ( activeRenderer != null ) activeRenderer.endRendering( );
+            }
+            finally
+            {
+                this.lock.unlock( );
+            }
         }
     }
 
+    protected boolean isOffscreen( TextRenderer textRenderer, Annotation annotation, Axis2D axis, int width, int height )
+    {
+        Rectangle2D textBounds = textRenderer.getBounds( annotation.text );
+        int x = getTextX( annotation, textBounds, axis ) + annotation.offset_x;
+        int y = getTextY( annotation, textBounds, axis ) + annotation.offset_y;
+
+        // text bounds are relative to the baseline, with y increasing downward
+        double minX = x + textBounds.getMinX( );
+        double maxX = x + textBounds.getMaxX( );
+        double minY = y - textBounds.getMaxY( );
+        double maxY = y - textBounds.getMinY( );
+
+        return maxX < 0 || minX > width || maxY < 0 || minY > height;
+    }
+
+    protected int getTextX( Annotation annotation, Rectangle2D textBounds, Axis2D axis )
+    {
+        return ( int ) ( axis.getAxisX( ).valueToScreenPixel( annotation.x ) - ( annotation.centerX ? textBounds.getWidth( ) / 2 : 0 ) );
+    }
+
+    protected int getTextY( Annotation annotation, Rectangle2D textBounds, Axis2D axis )
+    {
+        return ( int ) ( axis.getAxisY( ).valueToScreenPixel( annotation.y ) - ( annotation.centerY ? textBounds.getHeight( ) / 2 : 0 ) );
+    }
+
+    protected float[] getColor( Annotation annotation )
+    {
+        return annotation.color != null ? annotation.color : DEFAULT_COLOR;
+    }
+
+    protected static boolean sameColor( float[] a, float[] b )
+    {
+        return a == b || ( a[0] == b[0] && a[1] == b[1] && a[2] == b[2] && a[3] == b[3] );
+    }
+
     protected boolean inTimeRange( Annotation annotation )
     {
         return ( annotation.getStartTime( ) <= maxTime && annotation.getEndTime( ) >= minTime ) ||
@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.painter.plot;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Multi-resolution min/max index over the y values of an x-y series stored
+ * interleaved in a {@link FloatBuffer}, used to decimate very long series down
+ * to a few vertices per pixel column before they are drawn.
+ *
+ * Level 0 holds the index of the min and max sample of each block of
+ * {@link #BASE_BLOCK_SIZE} samples; each level above combines {@link #FANOUT}
+ * blocks of the level below. Only complete blocks are stored, so appending
+ * samples only has to fill in the blocks that the new samples complete.
+ *
+ * The buffer itself is not retained: callers pass it to each method, so it can be
+ * reallocated as the series grows. This class is not thread safe.
+ */
+public class MinMaxPyramid
+{
+    public static final int BASE_BLOCK_SHIFT = 4;
+    public static final int BASE_BLOCK_SIZE = 1 << BASE_BLOCK_SHIFT;
+
+    public static final int FANOUT_SHIFT = 2;
+    public static final int FANOUT = 1 << FANOUT_SHIFT;
+
+    protected final int stride;
+    protected final int xOffset;
+    protected final int yOffset;
+
+    // minIndex[level][block] and maxIndex[level][block] are sample indices
+    protected int[][] minIndex;
+    protected int[][] maxIndex;
+    protected int numLevels;
+
+    // number of samples covered
+    protected int size;
+
+    /**
+     * @param stride number of floats per sample
+     * @param xOffset offset of the x coordinate within a sample
+     * @param yOffset offset of the y coordinate within a sample
+     */
+    public MinMaxPyramid( int stride, int xOffset, int yOffset )
+    {
+        this.stride = stride;
+        this.xOffset = xOffset;
+        this.yOffset = yOffset;
+
+        this.minIndex = new int[0][];
+        this.maxIndex = new int[0][];
+        this.numLevels = 0;
+        this.size = 0;
+    }
+
+    public int getSize( )
+    {
+        return size;
+    }
+
+    /**
+     * Discards the existing levels and rebuilds them over the first {@code size} samples.
+     */
+    public void reset( FloatBuffer data, int size )
+    {
+        this.numLevels = 0;
+        this.size = 0;
+        append( data, size );
+    }
+
+    /**
+     * Extends the levels to cover the first {@code newSize} samples. Samples
+     * below the previous size must not have changed since the last call.
+     */
+    public void append( FloatBuffer data, int newSize )
+    {
+        int oldSize = this.size;
+        if ( newSize < oldSize ) throw new IllegalArgumentException( "Size may not decrease: old = " + oldSize + ", new = " + newSize );
+
+        int oldBlocks = oldSize >> BASE_BLOCK_SHIFT;
+        int newBlocks = newSize >> BASE_BLOCK_SHIFT;
+
+        for ( int level = 0; newBlocks > 0; level++ )
+        {
+            if ( level == numLevels ) addLevel( newBlocks );
+            ensureLevelCapacity( level, newBlocks );
+
+            int[] mins = minIndex[level];
+            int[] maxs = maxIndex[level];
+
+            for ( int b = oldBlocks; b < newBlocks; b++ )
+            {
+                if ( level == 0 )
+                {
+                    int from = b << BASE_BLOCK_SHIFT;
+                    int iMin = from;
+                    int iMax = from;
+                    float yMin = y( data, from );
+                    float yMax = yMin;
+                    for ( int i = from + 1; i < from + BASE_BLOCK_SIZE; i++ )
+                    {
+                        float v = y( data, i );
+                        if ( v < yMin )
+                        {
+                            yMin = v;
+                            iMin = i;
+                        }
+                        if ( v > yMax )
+                        {
+                            yMax = v;
+                            iMax = i;
+                        }
+                    }
+                    mins[b] = iMin;
+                    maxs[b] = iMax;
+                }
+                else
+                {
+                    int[] childMins = minIndex[level - 1];
+                    int[] childMaxs = maxIndex[level - 1];
+                    int from = b << FANOUT_SHIFT;
+                    int iMin = childMins[from];
+                    int iMax = childMaxs[from];
+                    for ( int c = from + 1; c < from + FANOUT; c++ )
+                    {
+                        if ( y( data, childMins[c] ) < y( data, iMin ) ) iMin = childMins[c];
+                        if ( y( data, childMaxs[c] ) > y( data, iMax ) ) iMax = childMaxs[c];
+                    }
+                    mins[b] = iMin;
+                    maxs[b] = iMax;
+                }
+            }
+
+            oldBlocks >>= FANOUT_SHIFT;
+            newBlocks >>= FANOUT_SHIFT;
+        }
+
+        this.size = newSize;
+    }
+
+    protected void addLevel( int capacity )
+    {
+        // arrays left over from before a reset are reused
+        if ( numLevels == minIndex.length )
+        {
+            int[][] newMinIndex = new int[numLevels + 1][];
+            int[][] newMaxIndex = new int[numLevels + 1][];
+            System.arraycopy( minIndex, 0, newMinIndex, 0, numLevels );
+            System.arraycopy( maxIndex, 0, newMaxIndex, 0, numLevels );
+            newMinIndex[numLevels] = new int[capacity];
+            newMaxIndex[numLevels] = new int[capacity];
+            this.minIndex = newMinIndex;
+            this.maxIndex = newMaxIndex;
+        }
+
+        numLevels++;
+    }
+
+    protected void ensureLevelCapacity( int level, int numBlocks )
+    {
+        int[] mins = minIndex[level];
+        if ( mins.length < numBlocks )
+        {
+            int newCapacity = Math.max( numBlocks, 2 * mins.length );
+
+            int[] newMins = new int[newCapacity];
+            System.arraycopy( mins, 0, newMins, 0, mins.length );
+            minIndex[level] = newMins;
+
+            int[] newMaxs = new int[newCapacity];
+            System.arraycopy( maxIndex[level], 0, newMaxs, 0, mins.length );
+            maxIndex[level] = newMaxs;
+        }
+    }
+
+    protected final float x( FloatBuffer data, int i )
+    {
+        return data.get( i * stride + xOffset );
+    }
+
+    protected final float y( FloatBuffer data, int i )
+    {
+        return data.get( i * stride + yOffset );
+    }
+
+    /**
+     * Finds the samples with the smallest and largest y values among samples
+     * {@code from} (inclusive) through {@code to} (exclusive), which must be
+     * non-empty and within the covered size.
+     *
+     * @param result receives the index of the min sample in element 0, and the
+     *               index of the max sample in element 1
+     */
+    public void findMinMax( FloatBuffer data, int from, int to, int[] result )
+    {
+        int iMin = from;
+        int iMax = from;
+        float yMin = y( data, from );
+        float yMax = yMin;
+
+        int i = from + 1;
+        while ( i < to )
+        {
+            // use the coarsest complete block that starts at i and ends by to
+            int level = -1;
+            int blockShift = BASE_BLOCK_SHIFT;
+            while ( level + 1 < numLevels && ( i & ( ( 1 << blockShift ) - 1 ) ) == 0 && i + ( 1 << blockShift ) <= to )
+            {
+                level++;
+                blockShift += FANOUT_SHIFT;
+            }
+
+            if ( level < 0 )
+            {
+                float v = y( data, i );
+                if ( v < yMin )
+                {
+                    yMin = v;
+                    iMin = i;
+                }
+                if ( v > yMax )
+                {
+                    yMax = v;
+                    iMax = i;
+                }
+                i++;
+            }
+            else
+            {
+                blockShift -= FANOUT_SHIFT;
+                int b = i >> blockShift;
+                int bMin = minIndex[level][b];
+                int bMax = maxIndex[level][b];
+                float v = y( data, bMin );
+                if ( v < yMin )
+                {
+                    yMin = v;
+                    iMin = bMin;
+                }
+                v = y( data, bMax );
+                if ( v > yMax )
+                {
+                    yMax = v;
+                    iMax = bMax;
+                }
+                i += 1 << blockShift;
+            }
+        }
+
+        result[0] = iMin;
+        result[1] = iMax;
+    }
+
+    /**
+     * Returns the index of the first sample, among samples {@code from} (inclusive)
+     * through {@code to} (exclusive), whose x is not less than {@code x}, or {@code to}
+     * if there is none. Requires x values to be in nondecreasing order.
+     */
+    public int searchX( FloatBuffer data, int from, int to, double x )
+    {
+        int lo = from;
+        int hi = to;
+        while ( lo < hi )
+        {
+            int mid = ( lo + hi ) >>> 1;
+            if ( x( data, mid ) < x ) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Decimates the visible part of the series to at most four samples per pixel
+     * column: the first, last, min, and max samples of the column, in their original
+     * order. Columns with four or fewer samples keep all of them. One sample on either
+     * side of the visible range is kept as well, so lines run off the edges as before.
+     *
+     * A line strip through the decimated samples rasterizes to the same pixels as
+     * one through the full series, provided the columns line up with the pixels
+     * they are drawn into. Requires x values to be in nondecreasing order.
+     *
+     * @param from the first sample of the series; earlier samples are ignored
+     * @param xMin x value at the left edge of the viewport
+     * @param pixelsPerValue viewport pixels per unit of x
+     * @param numPixels viewport width in pixels
+     * @param out receives x,y pairs; must have room for {@code maxDecimatedSize( numPixels )} samples
+     * @return the number of samples written to {@code out}
+     */
+    public int decimate( FloatBuffer data, int from, double xMin, double pixelsPerValue, int numPixels, float[] out )
+    {
+        int n = size;
+        if ( n <= from || numPixels <= 0 ) return 0;
+
+        double xMax = xMin + numPixels / pixelsPerValue;
+        int first = searchX( data, from, n, xMin );
+        int last = searchX( data, first, n, xMax ) - 1;
+        while ( last + 1 < n && x( data, last + 1 ) <= xMax )
+        {
+            last++;
+        }
+
+        int count = 0;
+        if ( first > from ) count = put( data, first - 1, out, count );
+
+        int[] minMax = new int[2];
+        int a = first;
+        while ( a <= last )
+        {
+            int column = column( x( data, a ), xMin, pixelsPerValue );
+
+            // find the end of this column
+            int lo = a + 1;
+            int hi = last + 1;
+            while ( lo < hi )
+            {
+                int mid = ( lo + hi ) >>> 1;
+                if ( column( x( data, mid ), xMin, pixelsPerValue ) <= column ) lo = mid + 1;
+                else hi = mid;
+            }
+            int b = lo;
+
+            if ( b - a <= 4 )
+            {
+                for ( int i = a; i < b; i++ )
+                {
+                    count = put( data, i, out, count );
+                }
+            }
+            else
+            {
+                findMinMax( data, a, b, minMax );
+                int i1 = Math.min( minMax[0], minMax[1] );
+                int i2 = Math.max( minMax[0], minMax[1] );
+
+                count = put( data, a, out, count );
+                if ( i1 != a ) count = put( data, i1, out, count );
+                if ( i2 != i1 && i2 != b - 1 ) count = put( data, i2, out, count );
+                if ( b - 1 != a ) count = put( data, b - 1, out, count );
+            }
+
+            a = b;
+        }
+
+        if ( last + 1 < n ) count = put( data, last + 1, out, count );
+
+        return count;
+    }
+
+    /**
+     * @return the largest number of samples {@link #decimate} can produce for a viewport this wide
+     */
+    public static int maxDecimatedSize( int numPixels )
+    {
+        // the rounding in column() can put a few samples just outside the viewport
+        return 4 * ( numPixels + 2 ) + 2;
+    }
+
+    protected static int column( float x, double xMin, double pixelsPerValue )
+    {
+        return ( int ) Math.floor( ( x - xMin ) * pixelsPerValue );
+    }
+
+    protected int put( FloatBuffer data, int i, float[] out, int count )
+    {
+        out[2 * count] = x( data, i );
+        out[2 * count + 1] = y( data, i );
+        return count + 1;
+    }
+}
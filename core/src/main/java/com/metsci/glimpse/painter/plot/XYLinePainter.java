@@ -32,6 +32,7 @@ import java.util.concurrent.locks.ReentrantLock;
 import javax.media.opengl.GL;
 import javax.media.opengl.GLContext;
 
+import com.metsci.glimpse.axis.Axis1D;
 import com.metsci.glimpse.axis.Axis2D;
 import com.metsci.glimpse.context.GlimpseBounds;
 import com.metsci.glimpse.painter.base.GlimpseDataPainter2D;
@@ -40,7 +41,19 @@ import com.sun.opengl.util.BufferUtil;
 
 /**
  * Plots a simple x-y lineplot. Provides options for modifying
- * line thickness and color.
+ * line thickness and color.</p>
+ *
+ * When the x values are in nondecreasing order and points, per-vertex colors,
+ * and stippling are all turned off, long series are decimated before they are
+ * drawn: only the first, last, min, and max samples in each pixel column of the
+ * visible range are uploaded, using a {@link MinMaxPyramid} built when the data
+ * is set. The full series is only uploaded if it is actually drawn.</p>
+ *
+ * Series can also be streamed, with {@link #appendData(float[], float[])} and
+ * {@link #trimData(int)}, or with {@link #setMaxDataSize(int)} to keep a sliding
+ * window over the most recent samples. Only the appended samples are uploaded.
+ * Trimmed samples stay in the buffers, and are skipped when drawing, until they
+ * take up half the buffer; only then are the remaining samples moved down.
  *
  * @author ulman
  */
@@ -59,6 +72,10 @@ public class XYLinePainter extends GlimpseDataPainter2D
 
     protected int dataSize = 0;
 
+    // samples before dataStart have been trimmed, but not yet removed from the buffers
+    protected int dataStart = 0;
+    protected int maxDataSize = 0;
+
     protected int[] colorHandle = null;
     protected FloatBuffer colorBuffer = null;
     protected boolean useColorDevice = false;
@@ -72,6 +89,25 @@ public class XYLinePainter extends GlimpseDataPainter2D
     protected volatile boolean newData = false;
     protected volatile boolean bufferInitialized = false;
 
+    // samples appended since the last upload start at appendedFrom
+    protected int appendedFrom = Integer.MAX_VALUE;
+    protected int deviceCapacity = 0;
+
+    protected volatile boolean levelOfDetail = true;
+    protected boolean sortedX = true;
+    protected MinMaxPyramid pyramid = new MinMaxPyramid( 2, 0, 1 );
+    protected int dataVersion = 0;
+
+    // decimated vertices for the current viewport
+    protected int[] lodHandle = null;
+    protected float[] lodArray = null;
+    protected FloatBuffer lodBuffer = null;
+    protected int lodSize = 0;
+    protected int lodDataVersion = -1;
+    protected double lodMin = Double.NaN;
+    protected double lodPixelsPerValue = Double.NaN;
+    protected int lodPixels = -1;
+
     public XYLinePainter( )
     {
         this.dataBufferLock = new ReentrantLock( );
@@ -118,17 +154,25 @@ public class XYLinePainter extends GlimpseDataPainter2D
             }
 
             // copy data from the provided arrays into the host memory buffer
+            boolean sorted = true;
             for ( int i = 0; i < dataSize; i++ )
             {
                 this.dataBuffer.put( dataX[i] ).put( dataY[i] );
+                sorted &= ( i == 0 || dataX[i - 1] <= dataX[i] );
             }
 
+            this.dataStart = 0;
+            this.sortedX = sorted;
+            this.pyramid.reset( dataBuffer, dataSize );
+            this.dataVersion++;
             this.newData = true;
         }
         finally
         {
             this.dataBufferLock.unlock( );
         }
+
+        markDirty( );
     }
 
     public void setData( double[] dataX, double[] dataY )
@@ -144,17 +188,230 @@ public class XYLinePainter extends GlimpseDataPainter2D
             }
 
             // copy data from the provided arrays into the host memory buffer
+            boolean sorted = true;
+            float prevX = 0;
             for ( int i = 0; i < dataSize; i++ )
             {
-                this.dataBuffer.put( ( float ) dataX[i] ).put( ( float ) dataY[i] );
+                float x = ( float ) dataX[i];
+                this.dataBuffer.put( x ).put( ( float ) dataY[i] );
+                sorted &= ( i == 0 || prevX <= x );
+                prevX = x;
             }
 
+            this.dataStart = 0;
+            this.sortedX = sorted;
+            this.pyramid.reset( dataBuffer, dataSize );
+            this.dataVersion++;
             this.newData = true;
         }
         finally
         {
             this.dataBufferLock.unlock( );
         }
+
+        markDirty( );
+    }
+
+    /**
+     * Adds samples to the end of the series. Only the part of the decimation pyramid
+     * covering the new samples is rebuilt.</p>
+     *
+     * Per-vertex colors set previously do not cover the new samples, so they are
+     * dropped, and the line is drawn in the line color.
+     */
+    public void appendData( float[] dataX, float[] dataY )
+    {
+        this.dataBufferLock.lock( );
+        try
+        {
+            int appendSize = Math.min( dataX.length, dataY.length );
+            int oldSize = ensureDataCapacity( appendSize );
+
+            boolean sorted = sortedX;
+            float prevX = oldSize > 0 ? dataBuffer.get( 2 * ( oldSize - 1 ) ) : Float.NEGATIVE_INFINITY;
+            for ( int i = 0; i < appendSize; i++ )
+            {
+                this.dataBuffer.put( dataX[i] ).put( dataY[i] );
+                sorted &= ( prevX <= dataX[i] );
+                prevX = dataX[i];
+            }
+
+            appendFinished( oldSize + appendSize, sorted );
+        }
+        finally
+        {
+            this.dataBufferLock.unlock( );
+        }
+
+        markDirty( );
+    }
+
+    /**
+     * @see #appendData(float[], float[])
+     */
+    public void appendData( double[] dataX, double[] dataY )
+    {
+        this.dataBufferLock.lock( );
+        try
+        {
+            int appendSize = Math.min( dataX.length, dataY.length );
+            int oldSize = ensureDataCapacity( appendSize );
+
+            boolean sorted = sortedX;
+            float prevX = oldSize > 0 ? dataBuffer.get( 2 * ( oldSize - 1 ) ) : Float.NEGATIVE_INFINITY;
+            for ( int i = 0; i < appendSize; i++ )
+            {
+                float x = ( float ) dataX[i];
+                this.dataBuffer.put( x ).put( ( float ) dataY[i] );
+                sorted &= ( prevX <= x );
+                prevX = x;
+            }
+
+            appendFinished( oldSize + appendSize, sorted );
+        }
+        finally
+        {
+            this.dataBufferLock.unlock( );
+        }
+
+        markDirty( );
+    }
+
+    /**
+     * Drops the oldest samples from the series. They are skipped when drawing, and
+     * only removed from the buffers once they make up half of them.
+     */
+    public void trimData( int trimSize )
+    {
+        this.dataBufferLock.lock( );
+        try
+        {
+            trimData0( trimSize );
+        }
+        finally
+        {
+            this.dataBufferLock.unlock( );
+        }
+
+        markDirty( );
+    }
+
+    /**
+     * Limits the series to the most recent samples: whenever appending makes it longer
+     * than maxDataSize, the oldest samples are trimmed. Zero (the default) means no limit.
+     */
+    public void setMaxDataSize( int maxDataSize )
+    {
+        this.dataBufferLock.lock( );
+        try
+        {
+            this.maxDataSize = maxDataSize;
+            if ( maxDataSize > 0 && dataSize - dataStart > maxDataSize ) trimData0( dataSize - dataStart - maxDataSize );
+        }
+        finally
+        {
+            this.dataBufferLock.unlock( );
+        }
+
+        markDirty( );
+    }
+
+    /**
+     * @return the number of samples in the series
+     */
+    public int getDataSize( )
+    {
+        this.dataBufferLock.lock( );
+        try
+        {
+            return dataSize - dataStart;
+        }
+        finally
+        {
+            this.dataBufferLock.unlock( );
+        }
+    }
+
+    protected void trimData0( int trimSize )
+    {
+        if ( trimSize <= 0 ) return;
+
+        this.dataStart = Math.min( dataStart + trimSize, dataSize );
+        this.dataVersion++;
+
+        if ( dataStart >= dataSize - dataStart ) compactData( );
+    }
+
+    /**
+     * Moves the untrimmed samples to the front of the buffers. The cost is proportional
+     * to the number of samples moved, but happens at most once per that many samples
+     * trimmed. Must be called with the data lock held.
+     */
+    protected void compactData( )
+    {
+        if ( dataStart == 0 ) return;
+
+        int newSize = dataSize - dataStart;
+
+        dataBuffer.limit( dataSize * 2 ).position( dataStart * 2 );
+        dataBuffer.compact( );
+        dataBuffer.clear( );
+
+        if ( useColorHost && colorBuffer != null )
+        {
+            colorBuffer.limit( dataSize * 4 ).position( dataStart * 4 );
+            colorBuffer.compact( );
+            colorBuffer.clear( );
+        }
+
+        this.dataSize = newSize;
+        this.dataStart = 0;
+        this.pyramid.reset( dataBuffer, dataSize );
+        this.dataVersion++;
+        this.newData = true;
+    }
+
+    /**
+     * Grows the host buffer, if necessary, to fit appendSize more samples, and positions
+     * it just after the existing samples. Must be called with the data lock held.
+     *
+     * @return the number of existing samples
+     */
+    protected int ensureDataCapacity( int appendSize )
+    {
+        // reclaim trimmed space before growing
+        if ( dataBuffer != null && dataBuffer.capacity( ) < ( dataSize + appendSize ) * 2 ) compactData( );
+
+        int oldSize = dataSize;
+        int newSize = oldSize + appendSize;
+
+        if ( dataBuffer == null || dataBuffer.capacity( ) < newSize * 2 )
+        {
+            int oldCapacity = dataBuffer == null ? 0 : dataBuffer.capacity( );
+            FloatBuffer newBuffer = BufferUtil.newFloatBuffer( Math.max( newSize * 2, oldCapacity * 2 ) );
+            if ( dataBuffer != null )
+            {
+                dataBuffer.rewind( ).limit( oldSize * 2 );
+                newBuffer.put( dataBuffer );
+                dataBuffer.clear( );
+            }
+            this.dataBuffer = newBuffer;
+        }
+
+        this.dataBuffer.clear( ).position( oldSize * 2 );
+        return oldSize;
+    }
+
+    protected void appendFinished( int newSize, boolean sorted )
+    {
+        this.appendedFrom = Math.min( appendedFrom, dataSize );
+        this.dataSize = newSize;
+        this.sortedX = sorted;
+        this.useColorHost = false;
+        this.pyramid.append( dataBuffer, newSize );
+        this.dataVersion++;
+
+        if ( maxDataSize > 0 && dataSize - dataStart > maxDataSize ) trimData0( dataSize - dataStart - maxDataSize );
     }
 
     public void setColor( float[] dataZ, ColorMap scale )
@@ -169,20 +426,26 @@ public class XYLinePainter extends GlimpseDataPainter2D
 
             float[] color = new float[4];
 
-            // copy data from the provided arrays into the host memory buffer
-            for ( int i = 0; i < dataSize; i++ )
+            // copy data from the provided arrays into the host memory buffer,
+            // lined up with the untrimmed samples
+            this.colorBuffer.position( dataStart * 4 );
+            for ( int i = dataStart; i < dataSize; i++ )
             {
-                scale.toColor( dataZ[i], color );
+                scale.toColor( dataZ[i - dataStart], color );
 
                 this.colorBuffer.put( color[0] ).put( color[1] ).put( color[2] ).put( color[3] );
             }
 
+            this.newData = true;
+
             this.useColorHost = true;
         }
         finally
         {
             this.dataBufferLock.unlock( );
         }
+
+        markDirty( );
     }
 
     public void setColor( double[] dataZ, ColorMap scale )
@@ -197,41 +460,51 @@ public class XYLinePainter extends GlimpseDataPainter2D
 
             float[] color = new float[4];
 
-            // copy data from the provided arrays into the host memory buffer
-            for ( int i = 0; i < dataSize; i++ )
+            // copy data from the provided arrays into the host memory buffer,
+            // lined up with the untrimmed samples
+            this.colorBuffer.position( dataStart * 4 );
+            for ( int i = dataStart; i < dataSize; i++ )
             {
-                scale.toColor( ( float ) dataZ[i], color );
+                scale.toColor( ( float ) dataZ[i - dataStart], color );
 
                 this.colorBuffer.put( color[0] ).put( color[1] ).put( color[2] ).put( color[3] );
             }
 
+            this.newData = true;
+
             this.useColorHost = true;
         }
         finally
         {
             this.dataBufferLock.unlock( );
         }
+
+        markDirty( );
     }
 
     public void setLineStipple( boolean activate )
     {
         this.stippleOn = activate;
+        markDirty( );
     }
 
     public void setLineStipple( int stippleFactor, short stipplePattern )
     {
         this.stippleFactor = stippleFactor;
         this.stipplePattern = stipplePattern;
+        markDirty( );
     }
 
     public void setLineThickness( float lineThickness )
     {
         this.lineThickness = lineThickness;
+        markDirty( );
     }
 
     public void setLineColor( float[] rgba )
     {
         this.lineColor = rgba;
+        markDirty( );
     }
 
     public void setLineColor( float r, float g, float b, float a )
@@ -240,21 +513,81 @@ public class XYLinePainter extends GlimpseDataPainter2D
         this.lineColor[1] = g;
         this.lineColor[2] = b;
         this.lineColor[3] = a;
+        markDirty( );
     }
 
     public void setPointSize( float pointSize )
     {
         this.pointSize = pointSize;
+        markDirty( );
     }
 
     public void showPoints( boolean show )
     {
         this.showPoints = show;
+        markDirty( );
     }
 
     public void showLines( boolean show )
     {
         this.showLines = show;
+        markDirty( );
+    }
+
+    /**
+     * Allows long series to be decimated to a few samples per pixel column before they
+     * are drawn (enabled by default). Decimation only happens when the x values are in
+     * nondecreasing order and points, per-vertex colors, and stippling are turned off.
+     */
+    public void setLevelOfDetail( boolean levelOfDetail )
+    {
+        this.levelOfDetail = levelOfDetail;
+        markDirty( );
+    }
+
+    /**
+     * Whether the line would look the same drawn through the decimated samples.
+     * Must be called with the data lock held.
+     */
+    protected boolean isDecimationApplicable( Axis1D axisX )
+    {
+        // with points or colors, every sample shows; with stippling, the
+        // pattern depends on where every vertex falls
+        return levelOfDetail && sortedX && showLines && !showPoints && !useColorHost && !stippleOn && dataSize - dataStart > MinMaxPyramid.maxDecimatedSize( axisX.getSizePixels( ) );
+    }
+
+    /**
+     * Rebuilds and uploads the decimated samples, if the data or the x axis has changed
+     * since they were last built. Must be called with the data lock held.
+     */
+    protected void updateDecimatedBuffer( GL gl, Axis1D axisX )
+    {
+        double xMin = axisX.getMin( );
+        double pixelsPerValue = axisX.getPixelsPerValue( );
+        int pixels = axisX.getSizePixels( );
+
+        if ( lodDataVersion == dataVersion && lodMin == xMin && lodPixelsPerValue == pixelsPerValue && lodPixels == pixels ) return;
+
+        int maxSize = MinMaxPyramid.maxDecimatedSize( pixels );
+        if ( lodArray == null || lodArray.length < maxSize * 2 )
+        {
+            this.lodArray = new float[maxSize * 2];
+            this.lodBuffer = BufferUtil.newFloatBuffer( maxSize * 2 );
+        }
+
+        this.lodSize = pyramid.decimate( dataBuffer, dataStart, xMin, pixelsPerValue, pixels, lodArray );
+        this.lodBuffer.clear( );
+        this.lodBuffer.put( lodArray, 0, lodSize * 2 ).rewind( );
+
+        gl.glBindBuffer( GL.GL_ARRAY_BUFFER, lodHandle[0] );
+        gl.glBufferData( GL.GL_ARRAY_BUFFER, lodSize * 2 * BYTES_PER_FLOAT, lodBuffer, GL.GL_STREAM_DRAW );
+
+        glHandleError( gl );
+
+        this.lodDataVersion = dataVersion;
+        this.lodMin = xMin;
+        this.lodPixelsPerValue = pixelsPerValue;
+        this.lodPixels = pixels;
     }
 
     @Override
@@ -264,13 +597,14 @@ public class XYLinePainter extends GlimpseDataPainter2D
         {
             context.getGL( ).glDeleteBuffers( 1, colorHandle, 0 );
             context.getGL( ).glDeleteBuffers( 1, bufferHandle, 0 );
+            context.getGL( ).glDeleteBuffers( 1, lodHandle, 0 );
         }
     }
 
     @Override
     public void paintTo( GL gl, GlimpseBounds bounds, Axis2D axis )
     {
-        if ( dataSize == 0 ) return;
+        if ( dataSize == dataStart ) return;
 
         if ( !bufferInitialized )
         {
@@ -280,13 +614,34 @@ public class XYLinePainter extends GlimpseDataPainter2D
             colorHandle = new int[1];
             gl.glGenBuffers( 1, colorHandle, 0 );
 
+            lodHandle = new int[1];
+            gl.glGenBuffers( 1, lodHandle, 0 );
+
             bufferInitialized = true;
         }
 
-        if ( newData )
+        Axis1D axisX = axis.getAxisX( );
+        boolean decimate = false;
+        int firstVertex = 0;
+        int vertexCount = 0;
+
+        this.dataBufferLock.lock( );
+        try
         {
-            this.dataBufferLock.lock( );
-            try
+            decimate = isDecimationApplicable( axisX );
+            if ( decimate )
+            {
+                // the full series stays on the host until it is needed
+                updateDecimatedBuffer( gl, axisX );
+                vertexCount = lodSize;
+            }
+            else
+            {
+                firstVertex = dataStart;
+                vertexCount = dataSize - dataStart;
+            }
+
+            if ( !decimate && newData )
             {
                 gl.glPixelStorei( GL.GL_UNPACK_ALIGNMENT, 1 );
 
@@ -308,24 +663,51 @@ public class XYLinePainter extends GlimpseDataPainter2D
                     glHandleError( gl );
                 }
 
+                deviceCapacity = dataSize;
+                appendedFrom = Integer.MAX_VALUE;
                 newData = false;
             }
-            finally
+            else if ( !decimate && appendedFrom < dataSize )
             {
-                this.dataBufferLock.unlock( );
+                gl.glBindBuffer( GL.GL_ARRAY_BUFFER, bufferHandle[0] );
+
+                if ( dataSize > deviceCapacity )
+                {
+                    // grow the device buffer along with the host buffer, so that
+                    // most appends can be uploaded without reallocating
+                    int capacity = dataBuffer.capacity( ) / 2;
+                    gl.glBufferData( GL.GL_ARRAY_BUFFER, capacity * 2 * BYTES_PER_FLOAT, null, GL.GL_DYNAMIC_DRAW );
+                    deviceCapacity = capacity;
+                    appendedFrom = 0;
+                }
+
+                // copy only the appended samples from the host memory buffer to the device
+                FloatBuffer appended = dataBuffer.duplicate( );
+                appended.limit( dataSize * 2 ).position( appendedFrom * 2 );
+                gl.glBufferSubData( GL.GL_ARRAY_BUFFER, appendedFrom * 2 * BYTES_PER_FLOAT, ( dataSize - appendedFrom ) * 2 * BYTES_PER_FLOAT, appended );
+
+                glHandleError( gl );
+
+                // appending drops per-vertex colors
+                useColorDevice = useColorHost;
+                appendedFrom = Integer.MAX_VALUE;
             }
         }
+        finally
+        {
+            this.dataBufferLock.unlock( );
+        }
 
         gl.glShadeModel( GL.GL_FLAT );
 
-        if ( useColorDevice )
+        if ( useColorDevice && !decimate )
         {
             gl.glBindBuffer( GL.GL_ARRAY_BUFFER, colorHandle[0] );
             gl.glColorPointer( 4, GL.GL_FLOAT, 0, 0 );
             gl.glEnableClientState( GL.GL_COLOR_ARRAY );
         }
 
-        gl.glBindBuffer( GL.GL_ARRAY_BUFFER, bufferHandle[0] );
+        gl.glBindBuffer( GL.GL_ARRAY_BUFFER, decimate ? lodHandle[0] : bufferHandle[0] );
         gl.glVertexPointer( 2, GL.GL_FLOAT, 0, 0 );
         gl.glEnableClientState( GL.GL_VERTEX_ARRAY );
 
@@ -340,13 +722,13 @@ public class XYLinePainter extends GlimpseDataPainter2D
                 gl.glLineStipple( stippleFactor, stipplePattern );
             }
 
-            gl.glDrawArrays( GL.GL_LINE_STRIP, 0, dataSize );
+            gl.glDrawArrays( GL.GL_LINE_STRIP, firstVertex, vertexCount );
         }
 
         if ( showPoints )
         {
             gl.glPointSize( pointSize );
-            gl.glDrawArrays( GL.GL_POINTS, 0, dataSize );
+            gl.glDrawArrays( GL.GL_POINTS, firstVertex, vertexCount );
         }
     }
 }
@@ -34,6 +34,8 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.Iterator;
@@ -44,7 +46,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
 import java.util.Set;
-import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -55,13 +56,17 @@ import com.metsci.glimpse.axis.Axis2D;
 import com.metsci.glimpse.context.GlimpseBounds;
 import com.metsci.glimpse.context.GlimpseContext;
 import com.metsci.glimpse.painter.base.GlimpsePainter2D;
+import com.metsci.glimpse.support.polygon.EarClippingTessellator;
+import com.metsci.glimpse.support.polygon.ParallelTessellator;
 import com.metsci.glimpse.support.polygon.Polygon;
 import com.metsci.glimpse.support.polygon.Polygon.Interior;
 import com.metsci.glimpse.support.polygon.Polygon.Loop;
 import com.metsci.glimpse.support.polygon.Polygon.Loop.LoopBuilder;
-import com.metsci.glimpse.support.polygon.PolygonTessellator;
 import com.metsci.glimpse.support.polygon.PolygonTessellator.TessellationException;
-import com.metsci.glimpse.support.polygon.SimpleVertexAccumulator;
+import com.metsci.glimpse.support.polygon.SimplifiedPolygon;
+import com.metsci.glimpse.support.queue.UpdateQueue;
+import com.metsci.glimpse.util.quadtree.QuadTreeXys;
+import com.metsci.glimpse.util.quadtree.Xy;
 
 /**
  * Paints large collections of arbitrary polygons (including concave polygons).
@@ -72,6 +77,11 @@ import com.metsci.glimpse.support.polygon.SimpleVertexAccumulator;
  */
 public class PolygonPainter extends GlimpsePainter2D
 {
+    // the group id used by commands which apply to all groups
+    protected static final int ALL_GROUPS = Integer.MIN_VALUE;
+    // the maximum number of polygons per leaf in the spatial index used for viewport culling
+    protected static final int QUAD_TREE_BIN_MAX = 1000;
+
     protected static final Comparator<IdPolygon> startTimeComparator = new Comparator<IdPolygon>( )
     {
         @Override
@@ -158,7 +168,12 @@ public class PolygonPainter extends GlimpsePainter2D
 
     protected byte halftone[] = { ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0xAA, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55, ( byte ) 0x55 };
 
-    protected PolygonTessellator tessellator;
+    // stateless, so polygons may be tessellated concurrently by any number of user threads
+    protected EarClippingTessellator tessellator;
+    // tessellates polygons in parallel during bulk loads (created when first needed)
+    protected ParallelTessellator parallelTessellator;
+    // true if parallelTessellator was created by this painter, and should be disposed with it
+    protected boolean ownsParallelTessellator;
 
     protected int dataBufferSize = 0;
     protected FloatBuffer dataBuffer = null;
@@ -174,26 +189,47 @@ public class PolygonPainter extends GlimpsePainter2D
 
     protected ReentrantLock updateLock;
 
+    // if true, updates are queued and applied by the display thread
+    protected volatile boolean queueUpdates = false;
+    // the largest on-screen error, in pixels, allowed when drawing simplified polygons
+    protected volatile float simplifyTolerance = 0.5f;
+    // lock-free queue of updates waiting to be applied
+    protected UpdateQueue<GroupCommand> updateQueue;
+    // reused by the display thread when draining updateQueue
+    protected List<GroupCommand> drainedCommands;
+
     protected IdPolygon globalSelectionStart;
     protected IdPolygon globalSelectionEnd;
 
     public PolygonPainter( )
     {
-        this.tessellator = new PolygonTessellator( glu );
+        this.tessellator = new EarClippingTessellator( );
 
         this.groups = new LinkedHashMap<Integer, Group>( );
         this.updatedGroups = new LinkedHashSet<Group>( );
         this.loadedGroups = new LinkedHashMap<Integer, LoadedGroup>( );
 
         this.updateLock = new ReentrantLock( );
+
+        this.updateQueue = new UpdateQueue<GroupCommand>( );
+        this.drainedCommands = new ArrayList<GroupCommand>( );
     }
 
-    public void addPolygon( int groupId, int polygonId, float[] dataX, float[] dataY, float z )
+    /**
+     * If true, calls which modify polygon groups do not acquire {@code updateLock}. Instead,
+     * they append an update command to a lock-free queue which is drained by the display
+     * thread once per frame. Repeated style changes to the same group are coalesced.
+     */
+    public void setQueueUpdates( boolean queueUpdates )
     {
         this.updateLock.lock( );
         try
         {
-            addPolygon( groupId, new IdPolygon( groupId, polygonId, buildPolygon( dataX, dataY ), z ) );
+            // apply any commands which are already queued so that they are not
+            // reordered with respect to updates made after queueing is turned off
+            if ( !queueUpdates ) applyQueuedCommands( );
+
+            this.queueUpdates = queueUpdates;
         }
         finally
         {
@@ -201,336 +237,285 @@ public class PolygonPainter extends GlimpsePainter2D
         }
     }
 
-    public void addPolygon( int groupId, int polygonId, Polygon geometry, float z )
+    public boolean isQueueUpdates( )
     {
-        this.updateLock.lock( );
-        try
-        {
-            addPolygon( groupId, new IdPolygon( groupId, polygonId, geometry, z ) );
+        return this.queueUpdates;
+    }
 
-        }
-        finally
-        {
-            this.updateLock.unlock( );
-        }
+    /**
+     * @return the queue which holds pending updates when {@link #setQueueUpdates(boolean)} is enabled
+     */
+    public UpdateQueue<?> getUpdateQueue( )
+    {
+        return this.updateQueue;
     }
 
-    public void addPolygon( int groupId, int polygonId, Shape shape, float z )
+    public void addPolygon( int groupId, int polygonId, float[] dataX, float[] dataY, float z )
     {
-        this.updateLock.lock( );
-        try
-        {
-            addPolygon( groupId, new IdPolygon( groupId, polygonId, buildPolygon( shape ), z ) );
+        addPolygon( groupId, new IdPolygon( groupId, polygonId, buildPolygon( dataX, dataY ), z ) );
+    }
 
-        }
-        finally
-        {
-            this.updateLock.unlock( );
-        }
+    public void addPolygon( int groupId, int polygonId, Polygon geometry, float z )
+    {
+        addPolygon( groupId, new IdPolygon( groupId, polygonId, geometry, z ) );
+    }
+
+    public void addPolygon( int groupId, int polygonId, Shape shape, float z )
+    {
+        addPolygon( groupId, new IdPolygon( groupId, polygonId, buildPolygon( shape ), z ) );
     }
 
     public void addPolygon( int groupId, int polygonId, long startTime, long endTime, float[] dataX, float[] dataY, float z )
     {
-        this.updateLock.lock( );
-        try
-        {
-            addPolygon( groupId, new IdPolygon( groupId, polygonId, startTime, endTime, buildPolygon( dataX, dataY ), z ) );
-        }
-        finally
-        {
-            this.updateLock.unlock( );
-        }
+        addPolygon( groupId, new IdPolygon( groupId, polygonId, startTime, endTime, buildPolygon( dataX, dataY ), z ) );
     }
 
     public void addPolygon( int groupId, int polygonId, long startTime, long endTime, Polygon geometry, float z )
     {
-        this.updateLock.lock( );
-        try
-        {
-            addPolygon( groupId, new IdPolygon( groupId, polygonId, startTime, endTime, geometry, z ) );
-        }
-        finally
-        {
-            this.updateLock.unlock( );
-        }
+        addPolygon( groupId, new IdPolygon( groupId, polygonId, startTime, endTime, geometry, z ) );
     }
 
     public void addPolygon( int groupId, int polygonId, long startTime, long endTime, Shape shape, float z )
     {
-        this.updateLock.lock( );
-        try
-        {
-            addPolygon( groupId, new IdPolygon( groupId, polygonId, startTime, endTime, buildPolygon( shape ), z ) );
-        }
-        finally
-        {
-            this.updateLock.unlock( );
-        }
+        addPolygon( groupId, new IdPolygon( groupId, polygonId, startTime, endTime, buildPolygon( shape ), z ) );
     }
 
-    public void displayTimeRange( int groupId, double startTime, double endTime )
+    /**
+     * Adds a polygon along with its previously computed fill triangles, skipping tessellation.
+     * The triangles are (x,y) float pairs, as produced by {@link EarClippingTessellator#tessellate(Polygon)}
+     * or {@link ParallelTessellator#tessellate(List)}, and may be cached between loads of the same data.
+     */
+    public void addPolygon( int groupId, int polygonId, Polygon geometry, float[] triangles, float z )
     {
-        displayTimeRange( groupId, ( long ) Math.ceil( startTime ), ( long ) Math.floor( endTime ) );
+        addPolygon( groupId, new IdPolygon( groupId, polygonId, Long.MIN_VALUE, Long.MAX_VALUE, geometry, triangles, z ) );
     }
 
-    public void displayTimeRange( double startTime, double endTime )
+    /**
+     * @see #addPolygon(int, int, Polygon, float[], float)
+     */
+    public void addPolygon( int groupId, int polygonId, long startTime, long endTime, Polygon geometry, float[] triangles, float z )
     {
-        displayTimeRange( ( long ) Math.ceil( startTime ), ( long ) Math.floor( endTime ) );
+        addPolygon( groupId, new IdPolygon( groupId, polygonId, startTime, endTime, geometry, triangles, z ) );
     }
 
-    public void displayTimeRange( int groupId, long startTime, long endTime )
+    /**
+     * Adds many polygons to a group at once, tessellating them in parallel.
+     */
+    public void addPolygons( int groupId, int[] polygonIds, List<Polygon> geometries, float z ) throws InterruptedException
     {
-        IdPolygon startPoint = createSearchBoundStart( startTime );
-        IdPolygon endPoint = createSearchBoundEnd( endTime );
+        addPolygons( groupId, polygonIds, null, null, geometries, z );
+    }
 
-        this.updateLock.lock( );
-        try
-        {
-            Group group = getOrCreateGroup( groupId );
+    /**
+     * Adds many polygons to a group at once, tessellating them in parallel.
+     *
+     * @param startTimes the start time of each polygon (or null if the polygons are not time dependent)
+     * @param endTimes the end time of each polygon (or null if the polygons are not time dependent)
+     */
+    public void addPolygons( int groupId, int[] polygonIds, long[] startTimes, long[] endTimes, List<Polygon> geometries, float z ) throws InterruptedException
+    {
+        checkPolygonArgs( polygonIds, startTimes, endTimes, geometries );
 
-            group.setTimeRange( startPoint, endPoint );
+        float[][] triangles = getParallelTessellator( ).tessellate( geometries );
 
-            this.updatedGroups.add( group );
-            this.newData = true;
-        }
-        finally
+        for ( int i = 0; i < polygonIds.length; i++ )
         {
-            this.updateLock.unlock( );
+            long startTime = startTimes == null ? Long.MIN_VALUE : startTimes[i];
+            long endTime = endTimes == null ? Long.MAX_VALUE : endTimes[i];
+
+            addPolygon( groupId, new IdPolygon( groupId, polygonIds[i], startTime, endTime, geometries.get( i ), triangles[i], z ) );
         }
     }
 
-    public void displayTimeRange( long startTime, long endTime )
+    protected static void checkPolygonArgs( int[] polygonIds, long[] startTimes, long[] endTimes, List<Polygon> geometries )
     {
-        globalSelectionStart = createSearchBoundStart( startTime );
-        globalSelectionEnd = createSearchBoundEnd( endTime );
+        int n = geometries.size( );
 
-        this.updateLock.lock( );
-        try
-        {
-            for ( Group group : groups.values( ) )
-            {
-                group.setTimeRange( globalSelectionStart, globalSelectionEnd );
-            }
+        if ( polygonIds.length != n )
+            throw new IllegalArgumentException( String.format( "Number of polygon ids (%d) does not match number of geometries (%d).", polygonIds.length, n ) );
 
-            this.updatedGroups.addAll( groups.values( ) );
-            this.newData = true;
-        }
-        finally
-        {
-            this.updateLock.unlock( );
-        }
+        if ( startTimes != null && startTimes.length != n )
+            throw new IllegalArgumentException( String.format( "Number of start times (%d) does not match number of geometries (%d).", startTimes.length, n ) );
+
+        if ( endTimes != null && endTimes.length != n )
+            throw new IllegalArgumentException( String.format( "Number of end times (%d) does not match number of geometries (%d).", endTimes.length, n ) );
     }
 
-    // create a dummy IdPolygon representing the end of a search time window
-    protected IdPolygon createSearchBoundEnd( long time )
+    /**
+     * Sets the tessellator used by {@link #addPolygons(int, int[], List, float)}, allowing
+     * one pool of tessellation threads to be shared by many painters. The caller remains
+     * responsible for disposing it: {@link #dispose(GLContext)} only disposes a tessellator
+     * which the painter created itself.
+     */
+    public synchronized void setParallelTessellator( ParallelTessellator parallelTessellator )
     {
-        return new IdPolygon( Integer.MAX_VALUE, Integer.MAX_VALUE, time, time, null, 0 );
+        if ( this.ownsParallelTessellator ) this.parallelTessellator.dispose( );
+
+        this.parallelTessellator = parallelTessellator;
+        this.ownsParallelTessellator = false;
     }
 
-    // create a dummy IdPolygon representing the start of a search time window
-    protected IdPolygon createSearchBoundStart( long time )
+    protected synchronized ParallelTessellator getParallelTessellator( )
     {
-        return new IdPolygon( Integer.MIN_VALUE, Integer.MIN_VALUE, time, time, null, 0 );
+        if ( parallelTessellator == null )
+        {
+            parallelTessellator = new ParallelTessellator( );
+            ownsParallelTessellator = true;
+        }
+
+        return parallelTessellator;
     }
 
-    public void setLineColor( int groupId, float[] rgba )
+    /**
+     * Adds a polygon along with its simplified levels of detail. When zoomed out, the coarsest
+     * level which stays within {@link #getSimplifyTolerance()} pixels of the original is drawn.
+     * Simplified polygons may be cached between loads of the same data, like triangles.
+     */
+    public void addPolygon( int groupId, int polygonId, SimplifiedPolygon geometry, float z )
     {
-        this.updateLock.lock( );
-        try
-        {
-            Group group = getOrCreateGroup( groupId );
+        addPolygon( groupId, new IdPolygon( groupId, polygonId, Long.MIN_VALUE, Long.MAX_VALUE, geometry, z ) );
+    }
 
-            group.setLineColor( rgba );
+    /**
+     * @see #addPolygon(int, int, SimplifiedPolygon, float)
+     */
+    public void addPolygon( int groupId, int polygonId, long startTime, long endTime, SimplifiedPolygon geometry, float z )
+    {
+        addPolygon( groupId, new IdPolygon( groupId, polygonId, startTime, endTime, geometry, z ) );
+    }
 
-            this.updatedGroups.add( group );
-            this.newData = true;
-        }
-        finally
-        {
-            this.updateLock.unlock( );
-        }
+    /**
+     * Adds many polygons to a group at once, tessellating and simplifying them in parallel.
+     *
+     * @see #addPolygon(int, int, SimplifiedPolygon, float)
+     */
+    public void addSimplifiedPolygons( int groupId, int[] polygonIds, List<Polygon> geometries, float z ) throws InterruptedException
+    {
+        addSimplifiedPolygons( groupId, polygonIds, null, null, geometries, z );
     }
 
-    public void setLineColor( int groupId, float r, float g, float b, float a )
+    /**
+     * Adds many polygons to a group at once, tessellating and simplifying them in parallel.
+     *
+     * @param startTimes the start time of each polygon (or null if the polygons are not time dependent)
+     * @param endTimes the end time of each polygon (or null if the polygons are not time dependent)
+     * @see #addPolygon(int, int, SimplifiedPolygon, float)
+     */
+    public void addSimplifiedPolygons( int groupId, int[] polygonIds, long[] startTimes, long[] endTimes, List<Polygon> geometries, float z ) throws InterruptedException
     {
-        this.updateLock.lock( );
-        try
-        {
-            Group group = getOrCreateGroup( groupId );
+        checkPolygonArgs( polygonIds, startTimes, endTimes, geometries );
 
-            group.setLineColor( r, g, b, a );
+        SimplifiedPolygon[] simplified = getParallelTessellator( ).simplify( geometries );
 
-            this.updatedGroups.add( group );
-            this.newData = true;
-        }
-        finally
+        for ( int i = 0; i < polygonIds.length; i++ )
         {
-            this.updateLock.unlock( );
+            long startTime = startTimes == null ? Long.MIN_VALUE : startTimes[i];
+            long endTime = endTimes == null ? Long.MAX_VALUE : endTimes[i];
+
+            addPolygon( groupId, new IdPolygon( groupId, polygonIds[i], startTime, endTime, simplified[i], z ) );
         }
     }
 
-    public void setLineWidth( int groupId, float width )
+    /**
+     * Sets the largest distance, in pixels, between the outline of a simplified polygon
+     * and its original outline. Zero draws all polygons at full resolution. Only polygons
+     * added as {@link SimplifiedPolygon}s are simplified.
+     */
+    public void setSimplifyTolerance( float pixels )
     {
-        this.updateLock.lock( );
-        try
-        {
-            Group group = getOrCreateGroup( groupId );
+        this.simplifyTolerance = pixels;
+    }
 
-            group.setLineWidth( width );
+    public float getSimplifyTolerance( )
+    {
+        return this.simplifyTolerance;
+    }
 
-            this.updatedGroups.add( group );
-            this.newData = true;
-        }
-        finally
-        {
-            this.updateLock.unlock( );
-        }
+    public void displayTimeRange( int groupId, double startTime, double endTime )
+    {
+        displayTimeRange( groupId, ( long ) Math.ceil( startTime ), ( long ) Math.floor( endTime ) );
     }
 
-    public void setShowLines( int groupId, boolean show )
+    public void displayTimeRange( double startTime, double endTime )
     {
-        this.updateLock.lock( );
-        try
-        {
-            Group group = getOrCreateGroup( groupId );
+        displayTimeRange( ( long ) Math.ceil( startTime ), ( long ) Math.floor( endTime ) );
+    }
 
-            group.setShowLines( show );
+    public void displayTimeRange( int groupId, long startTime, long endTime )
+    {
+        submit( new DisplayGroupTimeRange( groupId, createSearchBoundStart( startTime ), createSearchBoundEnd( endTime ) ) );
+    }
 
-            this.updatedGroups.add( group );
-            this.newData = true;
-        }
-        finally
-        {
-            this.updateLock.unlock( );
-        }
+    public void displayTimeRange( long startTime, long endTime )
+    {
+        submit( new DisplayTimeRange( createSearchBoundStart( startTime ), createSearchBoundEnd( endTime ) ) );
     }
 
-    public void setPolyDotted( int groupId, byte[] stipple )
+    // create a dummy IdPolygon representing the end of a search time window
+    protected IdPolygon createSearchBoundEnd( long time )
     {
-        this.updateLock.lock( );
-        try
-        {
-            Group group = getOrCreateGroup( groupId );
+        return new IdPolygon( Integer.MAX_VALUE, Integer.MAX_VALUE, time, time, ( Polygon ) null, 0 );
+    }
 
-            group.setPolyStipple( true );
-            group.setPolyStipple( stipple );
+    // create a dummy IdPolygon representing the start of a search time window
+    protected IdPolygon createSearchBoundStart( long time )
+    {
+        return new IdPolygon( Integer.MIN_VALUE, Integer.MIN_VALUE, time, time, ( Polygon ) null, 0 );
+    }
 
-            this.updatedGroups.add( group );
-            this.newData = true;
-        }
-        finally
-        {
-            this.updateLock.unlock( );
-        }
+    public void setLineColor( int groupId, float[] rgba )
+    {
+        submit( new SetLineColor( groupId, rgba ) );
     }
 
-    public void setPolyDotted( int groupId, boolean dotted )
+    public void setLineColor( int groupId, float r, float g, float b, float a )
     {
-        this.updateLock.lock( );
-        try
-        {
-            Group group = getOrCreateGroup( groupId );
+        submit( new SetLineColor( groupId, r, g, b, a ) );
+    }
 
-            group.setPolyStipple( dotted );
+    public void setLineWidth( int groupId, float width )
+    {
+        submit( new SetLineWidth( groupId, width ) );
+    }
 
-            this.updatedGroups.add( group );
-            this.newData = true;
-        }
-        finally
-        {
-            this.updateLock.unlock( );
-        }
+    public void setShowLines( int groupId, boolean show )
+    {
+        submit( new SetShowLines( groupId, show ) );
     }
 
-    public void setLineDotted( int groupId, boolean dotted )
+    public void setPolyDotted( int groupId, byte[] stipple )
     {
-        this.updateLock.lock( );
-        try
-        {
-            Group group = getOrCreateGroup( groupId );
+        submit( new SetPolyDottedPattern( groupId, stipple ) );
+    }
 
-            group.setLineStipple( dotted );
+    public void setPolyDotted( int groupId, boolean dotted )
+    {
+        submit( new SetPolyDotted( groupId, dotted ) );
+    }
 
-            this.updatedGroups.add( group );
-            this.newData = true;
-        }
-        finally
-        {
-            this.updateLock.unlock( );
-        }
+    public void setLineDotted( int groupId, boolean dotted )
+    {
+        submit( new SetLineDotted( groupId, dotted ) );
     }
 
     public void setLineDotted( int groupId, int stippleFactor, short stipplePattern )
     {
-        this.updateLock.lock( );
-        try
-        {
-            Group group = getOrCreateGroup( groupId );
-
-            group.setLineStipple( true );
-            group.setLineStipple( stippleFactor, stipplePattern );
-
-            this.updatedGroups.add( group );
-            this.newData = true;
-        }
-        finally
-        {
-            this.updateLock.unlock( );
-        }
+        submit( new SetLineDottedPattern( groupId, stippleFactor, stipplePattern ) );
     }
 
     public void setFill( int groupId, boolean show )
     {
-        this.updateLock.lock( );
-        try
-        {
-            Group group = getOrCreateGroup( groupId );
-
-            group.setShowPoly( show );
-
-            this.updatedGroups.add( group );
-            this.newData = true;
-        }
-        finally
-        {
-            this.updateLock.unlock( );
-        }
+        submit( new SetFill( groupId, show ) );
     }
 
     public void setFillColor( int groupId, float[] rgba )
     {
-        this.updateLock.lock( );
-        try
-        {
-            Group group = getOrCreateGroup( groupId );
-
-            group.setFillColor( rgba );
-
-            this.updatedGroups.add( group );
-            this.newData = true;
-        }
-        finally
-        {
-            this.updateLock.unlock( );
-        }
+        submit( new SetFillColor( groupId, rgba ) );
     }
 
     public void setFillColor( int groupId, float r, float g, float b, float a )
     {
-        this.updateLock.lock( );
-        try
-        {
-            Group group = getOrCreateGroup( groupId );
-
-            group.setFillColor( r, g, b, a );
-
-            this.updatedGroups.add( group );
-            this.newData = true;
-        }
-        finally
-        {
-            this.updateLock.unlock( );
-        }
+        submit( new SetFillColor( groupId, r, g, b, a ) );
     }
 
     /**
@@ -538,21 +523,7 @@ public class PolygonPainter extends GlimpsePainter2D
      */
     public void deleteAll( )
     {
-        this.updateLock.lock( );
-        try
-        {
-            for ( Group group : groups.values( ) )
-            {
-                group.delete( );
-            }
-
-            this.updatedGroups.addAll( groups.values( ) );
-            this.newData = true;
-        }
-        finally
-        {
-            this.updateLock.unlock( );
-        }
+        submit( new DeleteAll( ) );
     }
 
     /**
@@ -561,42 +532,64 @@ public class PolygonPainter extends GlimpsePainter2D
      */
     public void deleteGroup( int groupId )
     {
-        this.updateLock.lock( );
-        try
-        {
-            if ( !groups.containsKey( groupId ) ) return;
+        submit( new DeleteGroup( groupId ) );
+    }
 
-            Group group = groups.get( groupId );
+    /**
+     * Clears an individual Polygon group, deleting all the polygons its contains but
+     * retaining its display settings.
+     * @param groupId the id of the group to clear
+     */
+    public void clearGroup( int groupId )
+    {
+        submit( new ClearGroup( groupId ) );
+    }
 
-            group.delete( );
+    public void deletePolygon( int groupId, int polygonId )
+    {
+        throw new UnsupportedOperationException( "Deletion of single polygons is not currently supported. Use deleteGroup() to remove an entire group." );
+    }
+
+    protected void addPolygon( int groupId, IdPolygon polygon )
+    {
+        submit( new AddPolygon( groupId, polygon ) );
+    }
 
-            this.updatedGroups.add( group );
-            this.newData = true;
+    // applies the command immediately or queues it for the display thread
+    protected void submit( GroupCommand command )
+    {
+        if ( this.queueUpdates )
+        {
+            this.updateQueue.add( command );
+
+            // if queueing was turned off while the command was being added, it may have
+            // missed the final drain, so apply it now rather than at the next repaint
+            if ( !this.queueUpdates ) applyQueuedCommandsNow( );
         }
-        finally
+        else
         {
-            this.updateLock.unlock( );
+            this.updateLock.lock( );
+            try
+            {
+                // commands queued by callers which saw queueing still enabled come first
+                applyQueuedCommands( );
+                command.apply( );
+            }
+            finally
+            {
+                this.updateLock.unlock( );
+            }
         }
+
+        markDirty( );
     }
 
-    /**
-     * Clears an individual Polygon group, deleting all the polygons its contains but
-     * retaining its display settings.
-     * @param groupId the id of the group to clear
-     */
-    public void clearGroup( int groupId )
+    protected void applyQueuedCommandsNow( )
     {
         this.updateLock.lock( );
         try
         {
-            if ( !groups.containsKey( groupId ) ) return;
-
-            Group group = groups.get( groupId );
-
-            group.clear( );
-
-            this.updatedGroups.add( group );
-            this.newData = true;
+            applyQueuedCommands( );
         }
         finally
         {
@@ -604,26 +597,22 @@ public class PolygonPainter extends GlimpsePainter2D
         }
     }
 
-    public void deletePolygon( int groupId, int polygonId )
+    // must be called while holding updateLock
+    protected void applyQueuedCommands( )
     {
-        throw new UnsupportedOperationException( "Deletion of single polygons is not currently supported. Use deleteGroup() to remove an entire group." );
-    }
+        if ( this.updateQueue.isEmpty( ) ) return;
 
-    protected void addPolygon( int groupId, IdPolygon polygon )
-    {
-        this.updateLock.lock( );
+        this.updateQueue.drain( this.drainedCommands );
         try
         {
-            Group group = getOrCreateGroup( groupId );
-
-            group.add( polygon );
-
-            this.updatedGroups.add( group );
-            this.newData = true;
+            for ( GroupCommand command : this.drainedCommands )
+            {
+                command.apply( );
+            }
         }
         finally
         {
-            this.updateLock.unlock( );
+            this.drainedCommands.clear( );
         }
     }
 
@@ -678,12 +667,15 @@ public class PolygonPainter extends GlimpsePainter2D
         // to render the polygon updates without synchronizing on updateLock
         // because the changes have been copied from the Group to its
         // corresponding LoadedGroup).
-        if ( this.newData )
+        if ( this.newData || !this.updateQueue.isEmpty( ) )
         {
             // groups are modified by the user and protected by updateLock
             this.updateLock.lock( );
             try
             {
+                // apply any updates submitted while queued updates are enabled
+                applyQueuedCommands( );
+
                 // loop through all Groups with updates
                 for ( Group group : updatedGroups )
                 {
@@ -711,6 +703,9 @@ public class PolygonPainter extends GlimpsePainter2D
                     // copy settings from the Group to the LoadedGroup
                     loaded.loadSettings( group );
 
+                    boolean lineSelectionLoaded = false;
+                    boolean fillSelectionLoaded = false;
+
                     if ( group.isDataInserted( ) )
                     {
                         ///////////////////////////////////////
@@ -746,7 +741,8 @@ public class PolygonPainter extends GlimpsePainter2D
                             loaded.glLineBufferHandle = bufferHandle[0];
 
                             // load the offset and count values for all selected polygons
-                            loaded.loadLineSelectionIntoBuffer( group.selectedPolygons, group.selectedLinePrimitiveCount, 0 );
+                            loaded.loadLineSelection( group.selectedPolygons );
+                            lineSelectionLoaded = true;
 
                             // copy data from the host buffer into the device buffer
                             gl.glBindBuffer( GL.GL_ARRAY_BUFFER, loaded.glLineBufferHandle );
@@ -767,9 +763,6 @@ public class PolygonPainter extends GlimpsePainter2D
                             ensureDataBufferSize( insertVertices );
                             loaded.loadLineVerticesIntoBuffer( group, dataBuffer, loaded.glLineBufferCurrentSize, insertOffset, insertCount );
 
-                            // load the offset and count values for the newly selected polygons
-                            loaded.loadLineSelectionIntoBuffer( group.newSelectedPolygons, group.selectedLinePrimitiveCount );
-
                             // update the device buffer with the new data
                             gl.glBindBuffer( GL.GL_ARRAY_BUFFER, loaded.glLineBufferHandle );
                             glHandleError( gl, "glBindBuffer Line Error  (Case 2)" );
@@ -812,7 +805,8 @@ public class PolygonPainter extends GlimpsePainter2D
                             loaded.glFillBufferHandle = bufferHandle[0];
 
                             // load the offset and count values for all selected polygons
-                            loaded.loadFillSelectionIntoBuffer( group.selectedPolygons, group.selectedFillPrimitiveCount, 0 );
+                            loaded.loadFillSelection( group.selectedPolygons );
+                            fillSelectionLoaded = true;
 
                             // copy data from the host buffer into the device buffer
                             gl.glBindBuffer( GL.GL_ARRAY_BUFFER, loaded.glFillBufferHandle );
@@ -833,9 +827,6 @@ public class PolygonPainter extends GlimpsePainter2D
                             ensureDataBufferSize( insertVertices );
                             loaded.loadFillVerticesIntoBuffer( group, dataBuffer, loaded.glFillBufferCurrentSize, insertOffset, insertCount );
 
-                            // load the offset and count values for the newly selected polygons
-                            loaded.loadFillSelectionIntoBuffer( group.newSelectedPolygons, group.selectedFillPrimitiveCount );
-
                             // update the device buffer with the new data
                             gl.glBindBuffer( GL.GL_ARRAY_BUFFER, loaded.glFillBufferHandle );
                             glHandleError( gl, "glBindBuffer Fill Error  (Case 2)" );
@@ -844,12 +835,17 @@ public class PolygonPainter extends GlimpsePainter2D
                         }
 
                         loaded.glFillBufferCurrentSize = group.getTotalFillVertices( );
+
+                        // add the new polygons to the spatial index used for viewport culling
+                        loaded.addToIndex( group, group.getOffsetInsertPolygons( ), group.getCountInsertPolygons( ) );
                     }
 
-                    if ( group.selectionChanged && loaded.glLineBufferInitialized && loaded.glFillBufferInitialized )
+                    // apply the polygons entering and leaving the selection (including newly inserted
+                    // polygons) to the offset and count buffers, unless they were just rebuilt above
+                    if ( ( group.selectionChanged || group.isDataInserted( ) ) && loaded.glLineBufferInitialized && loaded.glFillBufferInitialized )
                     {
-                        loaded.loadLineSelectionIntoBuffer( group.selectedPolygons, group.selectedLinePrimitiveCount, 0 );
-                        loaded.loadFillSelectionIntoBuffer( group.selectedPolygons, group.selectedFillPrimitiveCount, 0 );
+                        if ( !lineSelectionLoaded ) loaded.updateLineSelection( group.selectedPolygons, group.newSelectedPolygons, group.newDeselectedPolygons );
+                        if ( !fillSelectionLoaded ) loaded.updateFillSelection( group.selectedPolygons, group.newSelectedPolygons, group.newDeselectedPolygons );
                     }
 
                     group.reset( );
@@ -878,10 +874,20 @@ public class PolygonPainter extends GlimpsePainter2D
 
         gl.glEnableClientState( GL.GL_VERTEX_ARRAY );
 
+        // the simplification tolerance in axis units, limited by whichever axis is more zoomed in
+        double pixelsPerValue = Math.max( axis.getAxisX( ).getPixelsPerValue( ), axis.getAxisY( ).getPixelsPerValue( ) );
+        double tolerance = simplifyTolerance / pixelsPerValue;
+        if ( Double.isNaN( tolerance ) || Double.isInfinite( tolerance ) ) tolerance = 0;
+
         for ( LoadedGroup loaded : loadedGroups.values( ) )
         {
             if ( !loaded.glFillBufferInitialized || !loaded.glLineBufferInitialized ) continue;
 
+            // pad the visible area so outlines just outside it are not clipped early
+            double padX = loaded.lineWidth / axis.getAxisX( ).getPixelsPerValue( );
+            double padY = loaded.lineWidth / axis.getAxisY( ).getPixelsPerValue( );
+            loaded.updateVisiblePrimitives( axis.getMinX( ) - padX, axis.getMaxX( ) + padX, axis.getMinY( ) - padY, axis.getMaxY( ) + padY, tolerance );
+
             if ( loaded.fillOn )
             {
                 gl.glColor4fv( loaded.fillColor, 0 );
@@ -895,22 +901,25 @@ public class PolygonPainter extends GlimpsePainter2D
                 gl.glBindBuffer( GL.GL_ARRAY_BUFFER, loaded.glFillBufferHandle );
                 gl.glVertexPointer( 3, GL.GL_FLOAT, 0, 0 );
 
-                loaded.glFillOffsetBuffer.rewind( );
-                loaded.glFillCountBuffer.rewind( );
+                // draw only the primitives overlapping the viewport, at their simplified levels of
+                // detail, unless the viewport contains the whole group at full resolution
+                IntBuffer fillOffsetBuffer = loaded.culled ? loaded.glVisibleFillOffsetBuffer : loaded.glFillOffsetBuffer;
+                IntBuffer fillCountBuffer = loaded.culled ? loaded.glVisibleFillCountBuffer : loaded.glFillCountBuffer;
+                int fillPrimitives = loaded.culled ? loaded.glVisibleFillPrimitives : loaded.glTotalFillPrimitives;
 
                 // A count > 65535 causes problems on some ATI cards, so we must loop through the
                 // groups of primitives and split them up where necessary.  An alternate way would be
                 // to construct the count and offset arrays so that groups are less then 65535 in size.
                 // There is some evidence on web forums that this may provide performance benefits as well
                 // when dynamic data is being used.
-                for ( int i = 0; i < loaded.glTotalFillPrimitives; i++ )
+                for ( int i = 0; i < fillPrimitives; i++ )
                 {
-                    int fillCountTotal = loaded.glFillCountBuffer.get( i );
+                    int fillCountTotal = fillCountBuffer.get( i );
                     int fillCountRemaining = fillCountTotal;
                     while ( fillCountRemaining > 0 )
                     {
                         int fillCount = Math.min( 60000, fillCountRemaining ); // divisible by 3
-                        int offset = loaded.glFillOffsetBuffer.get( i ) + ( fillCountTotal - fillCountRemaining );
+                        int offset = fillOffsetBuffer.get( i ) + ( fillCountTotal - fillCountRemaining );
                         gl.glDrawArrays( GL.GL_TRIANGLES, offset, fillCount );
                         fillCountRemaining -= fillCount;
                     }
@@ -939,22 +948,23 @@ public class PolygonPainter extends GlimpsePainter2D
                 gl.glBindBuffer( GL.GL_ARRAY_BUFFER, loaded.glLineBufferHandle );
                 gl.glVertexPointer( 3, GL.GL_FLOAT, 0, 0 );
 
-                loaded.glLineOffsetBuffer.rewind( );
-                loaded.glLineCountBuffer.rewind( );
+                IntBuffer lineOffsetBuffer = loaded.culled ? loaded.glVisibleLineOffsetBuffer : loaded.glLineOffsetBuffer;
+                IntBuffer lineCountBuffer = loaded.culled ? loaded.glVisibleLineCountBuffer : loaded.glLineCountBuffer;
+                int linePrimitives = loaded.culled ? loaded.glVisibleLinePrimitives : loaded.glTotalLinePrimitives;
 
                 // A count > 65535 causes problems on some ATI cards, so we must loop through the
                 // groups of primitives and split them up where necessary.  An alternate way would be
                 // to construct the count and offset arrays so that groups are less then 65535 in size.
                 // There is some evidence on web forums that this may provide performance benefits as well
                 // when dynamic data is being used.
-                for ( int i = 0; i < loaded.glTotalLinePrimitives; i++ )
+                for ( int i = 0; i < linePrimitives; i++ )
                 {
-                    int fillCountTotal = loaded.glLineCountBuffer.get( i );
+                    int fillCountTotal = lineCountBuffer.get( i );
                     int fillCountRemaining = fillCountTotal;
                     while ( fillCountRemaining > 0 )
                     {
                         int fillCount = Math.min( 60000, fillCountRemaining ); // divisible by 2
-                        int offset = loaded.glLineOffsetBuffer.get( i ) + ( fillCountTotal - fillCountRemaining );
+                        int offset = lineOffsetBuffer.get( i ) + ( fillCountTotal - fillCountRemaining );
                         gl.glDrawArrays( GL.GL_LINE_LOOP, offset, fillCount );
                         fillCountRemaining -= fillCount;
                     }
@@ -1050,10 +1060,389 @@ public class PolygonPainter extends GlimpsePainter2D
         }
         finally
         {
-            this.updateLock.unlock( );
+            this.updateLock.unlock( );
+        }
+
+        synchronized ( this )
+        {
+            if ( ownsParallelTessellator )
+            {
+                parallelTessellator.dispose( );
+                parallelTessellator = null;
+                ownsParallelTessellator = false;
+            }
+        }
+    }
+
+    /**
+     * A single modification to the polygon groups of this painter. When queued updates are
+     * disabled, commands are applied immediately while holding updateLock. Otherwise, they
+     * are applied on the opengl display thread (also while holding updateLock) when the
+     * update queue is drained.
+     */
+    protected abstract class GroupCommand implements UpdateQueue.Command
+    {
+        // the group modified by this command, or ALL_GROUPS
+        int groupId;
+        // the type of setting modified by this command, or null if the command should never be coalesced
+        Object coalesceType;
+
+        public GroupCommand( int groupId, Object coalesceType )
+        {
+            this.groupId = groupId;
+            this.coalesceType = coalesceType;
+        }
+
+        @Override
+        public Object getCoalesceKey( )
+        {
+            return coalesceType != null ? new UpdateQueue.Key( groupId, coalesceType ) : null;
+        }
+
+        // must be called while holding updateLock
+        public abstract void apply( );
+    }
+
+    // a command which modifies the display settings of a single group
+    private abstract class GroupStyleCommand extends GroupCommand
+    {
+        public GroupStyleCommand( int groupId, Object coalesceType )
+        {
+            super( groupId, coalesceType );
+        }
+
+        @Override
+        public void apply( )
+        {
+            Group group = getOrCreateGroup( groupId );
+
+            apply( group );
+
+            updatedGroups.add( group );
+            newData = true;
+        }
+
+        protected abstract void apply( Group group );
+    }
+
+    private class AddPolygon extends GroupCommand
+    {
+        IdPolygon polygon;
+
+        public AddPolygon( int groupId, IdPolygon polygon )
+        {
+            super( groupId, null );
+            this.polygon = polygon;
+        }
+
+        @Override
+        public void apply( )
+        {
+            Group group = getOrCreateGroup( groupId );
+
+            group.add( polygon );
+
+            updatedGroups.add( group );
+            newData = true;
+        }
+    }
+
+    private class DeleteAll extends GroupCommand
+    {
+        public DeleteAll( )
+        {
+            super( ALL_GROUPS, null );
+        }
+
+        @Override
+        public void apply( )
+        {
+            for ( Group group : groups.values( ) )
+            {
+                group.delete( );
+            }
+
+            updatedGroups.addAll( groups.values( ) );
+            newData = true;
+        }
+    }
+
+    private class DeleteGroup extends GroupCommand
+    {
+        public DeleteGroup( int groupId )
+        {
+            super( groupId, null );
+        }
+
+        @Override
+        public void apply( )
+        {
+            Group group = groups.get( groupId );
+            if ( group == null ) return;
+
+            group.delete( );
+
+            updatedGroups.add( group );
+            newData = true;
+        }
+    }
+
+    private class ClearGroup extends GroupCommand
+    {
+        public ClearGroup( int groupId )
+        {
+            super( groupId, null );
+        }
+
+        @Override
+        public void apply( )
+        {
+            Group group = groups.get( groupId );
+            if ( group == null ) return;
+
+            group.clear( );
+
+            updatedGroups.add( group );
+            newData = true;
+        }
+    }
+
+    private class DisplayGroupTimeRange extends GroupStyleCommand
+    {
+        IdPolygon startPoint;
+        IdPolygon endPoint;
+
+        public DisplayGroupTimeRange( int groupId, IdPolygon startPoint, IdPolygon endPoint )
+        {
+            super( groupId, DisplayGroupTimeRange.class );
+            this.startPoint = startPoint;
+            this.endPoint = endPoint;
+        }
+
+        @Override
+        protected void apply( Group group )
+        {
+            group.setTimeRange( startPoint, endPoint );
+        }
+    }
+
+    private class DisplayTimeRange extends GroupCommand
+    {
+        IdPolygon startPoint;
+        IdPolygon endPoint;
+
+        public DisplayTimeRange( IdPolygon startPoint, IdPolygon endPoint )
+        {
+            super( ALL_GROUPS, DisplayTimeRange.class );
+            this.startPoint = startPoint;
+            this.endPoint = endPoint;
+        }
+
+        @Override
+        public void apply( )
+        {
+            globalSelectionStart = startPoint;
+            globalSelectionEnd = endPoint;
+
+            for ( Group group : groups.values( ) )
+            {
+                group.setTimeRange( globalSelectionStart, globalSelectionEnd );
+            }
+
+            updatedGroups.addAll( groups.values( ) );
+            newData = true;
+        }
+    }
+
+    private class SetLineColor extends GroupStyleCommand
+    {
+        float[] rgba;
+        float r, g, b, a;
+
+        public SetLineColor( int groupId, float[] rgba )
+        {
+            super( groupId, SetLineColor.class );
+            this.rgba = rgba.clone( );
+        }
+
+        public SetLineColor( int groupId, float r, float g, float b, float a )
+        {
+            super( groupId, SetLineColor.class );
+            this.r = r;
+            this.g = g;
+            this.b = b;
+            this.a = a;
+        }
+
+        @Override
+        protected void apply( Group group )
+        {
+            if ( rgba != null )
+            {
+                group.setLineColor( rgba );
+            }
+            else
+            {
+                group.setLineColor( r, g, b, a );
+            }
+        }
+    }
+
+    private class SetFillColor extends GroupStyleCommand
+    {
+        float[] rgba;
+        float r, g, b, a;
+
+        public SetFillColor( int groupId, float[] rgba )
+        {
+            super( groupId, SetFillColor.class );
+            this.rgba = rgba.clone( );
+        }
+
+        public SetFillColor( int groupId, float r, float g, float b, float a )
+        {
+            super( groupId, SetFillColor.class );
+            this.r = r;
+            this.g = g;
+            this.b = b;
+            this.a = a;
+        }
+
+        @Override
+        protected void apply( Group group )
+        {
+            if ( rgba != null )
+            {
+                group.setFillColor( rgba );
+            }
+            else
+            {
+                group.setFillColor( r, g, b, a );
+            }
+        }
+    }
+
+    private class SetLineWidth extends GroupStyleCommand
+    {
+        float width;
+
+        public SetLineWidth( int groupId, float width )
+        {
+            super( groupId, SetLineWidth.class );
+            this.width = width;
+        }
+
+        @Override
+        protected void apply( Group group )
+        {
+            group.setLineWidth( width );
+        }
+    }
+
+    private class SetShowLines extends GroupStyleCommand
+    {
+        boolean show;
+
+        public SetShowLines( int groupId, boolean show )
+        {
+            super( groupId, SetShowLines.class );
+            this.show = show;
+        }
+
+        @Override
+        protected void apply( Group group )
+        {
+            group.setShowLines( show );
+        }
+    }
+
+    private class SetFill extends GroupStyleCommand
+    {
+        boolean show;
+
+        public SetFill( int groupId, boolean show )
+        {
+            super( groupId, SetFill.class );
+            this.show = show;
+        }
+
+        @Override
+        protected void apply( Group group )
+        {
+            group.setShowPoly( show );
+        }
+    }
+
+    private class SetPolyDotted extends GroupStyleCommand
+    {
+        boolean dotted;
+
+        public SetPolyDotted( int groupId, boolean dotted )
+        {
+            super( groupId, SetPolyDotted.class );
+            this.dotted = dotted;
+        }
+
+        @Override
+        protected void apply( Group group )
+        {
+            group.setPolyStipple( dotted );
+        }
+    }
+
+    private class SetPolyDottedPattern extends GroupStyleCommand
+    {
+        byte[] stipple;
+
+        public SetPolyDottedPattern( int groupId, byte[] stipple )
+        {
+            super( groupId, SetPolyDottedPattern.class );
+            this.stipple = stipple.clone( );
+        }
+
+        @Override
+        protected void apply( Group group )
+        {
+            group.setPolyStipple( true );
+            group.setPolyStipple( stipple );
+        }
+    }
+
+    private class SetLineDotted extends GroupStyleCommand
+    {
+        boolean dotted;
+
+        public SetLineDotted( int groupId, boolean dotted )
+        {
+            super( groupId, SetLineDotted.class );
+            this.dotted = dotted;
+        }
+
+        @Override
+        protected void apply( Group group )
+        {
+            group.setLineStipple( dotted );
+        }
+    }
+
+    private class SetLineDottedPattern extends GroupStyleCommand
+    {
+        int stippleFactor;
+        short stipplePattern;
+
+        public SetLineDottedPattern( int groupId, int stippleFactor, short stipplePattern )
+        {
+            super( groupId, SetLineDottedPattern.class );
+            this.stippleFactor = stippleFactor;
+            this.stipplePattern = stipplePattern;
         }
 
-        tessellator.destroy( );
+        @Override
+        protected void apply( Group group )
+        {
+            group.setLineStipple( true );
+            group.setLineStipple( stippleFactor, stipplePattern );
+        }
     }
 
     /**
@@ -1061,7 +1450,7 @@ public class PolygonPainter extends GlimpsePainter2D
      *
      * @author ulman
      */
-    private class IdPolygon
+    private class IdPolygon implements Xy
     {
         int groupId;
         int polygonId;
@@ -1070,6 +1459,8 @@ public class PolygonPainter extends GlimpsePainter2D
         long endTime;
 
         Polygon geometry;
+        // the simplified levels of detail of geometry (or null if the polygon is not simplified)
+        SimplifiedPolygon simplified;
 
         float[] fillVertices;
         float depth;
@@ -1077,33 +1468,68 @@ public class PolygonPainter extends GlimpsePainter2D
         int lineVertexCount;
         int fillVertexCount;
 
+        // the number of primitives at each level of detail
         int linePrimitiveCount;
         int fillPrimitiveCount;
 
+        // the offsets and sizes of the line primitives of all levels of detail, the
+        // primitives of level i start at index i * linePrimitiveCount
         int[] lineOffsets;
         int[] lineSizes;
 
+        // the offsets and sizes of the fill primitive of each level of detail
         int[] fillOffsets;
         int[] fillSizes;
 
+        // bounding box of the polygon's vertices (empty if it has none)
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+
+        // the positions of this polygon's primitives in its LoadedGroup's offset and
+        // count buffers, while it is selected (accessed only by the display thread)
+        int[] lineSlots;
+        int fillSlot;
+
         protected IdPolygon( int groupId, int polygonId, long startTime, long endTime, Polygon geometry, float depth )
+        {
+            this( groupId, polygonId, startTime, endTime, geometry, null, depth );
+        }
+
+        // if fillVertices is null, the polygon is tessellated to determine its fill vertices
+        protected IdPolygon( int groupId, int polygonId, long startTime, long endTime, Polygon geometry, float[] fillVertices, float depth )
+        {
+            this( groupId, polygonId, startTime, endTime, geometry, fillVertices, null, depth );
+        }
+
+        protected IdPolygon( int groupId, int polygonId, long startTime, long endTime, SimplifiedPolygon simplified, float depth )
+        {
+            this( groupId, polygonId, startTime, endTime, simplified.getGeometry( ), simplified.getTriangles( ), simplified, depth );
+        }
+
+        private IdPolygon( int groupId, int polygonId, long startTime, long endTime, Polygon geometry, float[] fillVertices, SimplifiedPolygon simplified, float depth )
         {
             this.groupId = groupId;
             this.polygonId = polygonId;
             this.startTime = startTime;
             this.endTime = endTime;
             this.geometry = geometry;
+            this.fillVertices = fillVertices;
+            this.simplified = simplified;
             this.depth = depth;
 
             if ( this.geometry != null )
             {
                 this.calculateLineCounts( );
                 this.calculateFillCounts( );
+                this.calculateBounds( );
 
-                this.lineOffsets = new int[linePrimitiveCount];
-                this.lineSizes = new int[linePrimitiveCount];
-                this.fillOffsets = new int[fillPrimitiveCount];
-                this.fillSizes = new int[fillPrimitiveCount];
+                this.lineOffsets = new int[linePrimitiveCount * ( getLevelCount( ) + 1 )];
+                this.lineSizes = new int[linePrimitiveCount * ( getLevelCount( ) + 1 )];
+                this.lineSlots = new int[linePrimitiveCount];
+                this.fillOffsets = new int[fillPrimitiveCount * ( getFillLevelCount( ) + 1 )];
+                this.fillSizes = new int[fillPrimitiveCount * ( getFillLevelCount( ) + 1 )];
             }
         }
 
@@ -1126,15 +1552,80 @@ public class PolygonPainter extends GlimpsePainter2D
                 primitiveCount += 1;
             }
 
+            // the simplified levels follow the original outline
+            for ( int level = 1; level <= getLevelCount( ); level++ )
+            {
+                vertexCount += simplified.getLevelVertexCount( level );
+            }
+
             lineVertexCount = vertexCount;
             linePrimitiveCount = primitiveCount;
         }
 
+        public int getLevelCount( )
+        {
+            return simplified == null ? 0 : simplified.getLevelCount( );
+        }
+
+        public int getFillLevelCount( )
+        {
+            return simplified == null ? 0 : simplified.getFillLevelCount( );
+        }
+
+        /**
+         * @return the coarsest level of detail within the given tolerance (in axis units)
+         */
+        public int getLevel( double tolerance )
+        {
+            return simplified == null ? 0 : simplified.getLevel( tolerance );
+        }
+
+        protected void calculateBounds( )
+        {
+            Iterator<Loop> iter = geometry.getIterator( );
+            while ( iter.hasNext( ) )
+            {
+                Loop loop = iter.next( );
+                for ( int i = 0; i < loop.size( ); i++ )
+                {
+                    double x = loop.getX( i );
+                    double y = loop.getY( i );
+                    if ( x < minX ) minX = x;
+                    if ( x > maxX ) maxX = x;
+                    if ( y < minY ) minY = y;
+                    if ( y > maxY ) maxY = y;
+                }
+            }
+        }
+
+        public boolean isEmpty( )
+        {
+            return !( minX <= maxX && minY <= maxY );
+        }
+
+        // the center of the bounding box, used to place the polygon in a spatial index
+        @Override
+        public float x( )
+        {
+            return ( float ) ( 0.5 * ( minX + maxX ) );
+        }
+
+        @Override
+        public float y( )
+        {
+            return ( float ) ( 0.5 * ( minY + maxY ) );
+        }
+
         protected void calculateFillCounts( )
         {
-            fillVertices = tessellate( );
+            if ( fillVertices == null ) fillVertices = tessellate( );
             fillVertexCount = fillVertices.length / 2;
             fillPrimitiveCount = 1;
+
+            for ( int level = 1; level <= getFillLevelCount( ); level++ )
+            {
+                fillVertexCount += simplified.getLevelTriangles( level ).length / 2;
+            }
         }
 
         public long getStartTime( )
@@ -1179,47 +1670,62 @@ public class PolygonPainter extends GlimpsePainter2D
                 totalSize += size;
             }
 
-            return lineVertexCount;
-        }
-
-        public void loadLineIntoBuffer( IntBuffer offsetBuffer, IntBuffer sizeBuffer )
-        {
-            for ( int index = 0; index < linePrimitiveCount; index++ )
+            for ( int level = 1; level <= getLevelCount( ); level++ )
             {
-                offsetBuffer.put( lineOffsets[index] );
-                sizeBuffer.put( lineSizes[index] );
+                for ( int loop = 0; loop < linePrimitiveCount; loop++ )
+                {
+                    Loop original = simplified.getLoop( loop );
+                    int size = simplified.getLevelLoopSize( level, loop );
+
+                    if ( size > 0 )
+                    {
+                        for ( int i = 0; i < original.size( ); i++ )
+                        {
+                            if ( simplified.isKept( level, loop, i ) )
+                            {
+                                vertexBuffer.put( ( float ) original.getX( i ) ).put( ( float ) original.getY( i ) ).put( zCoord );
+                            }
+                        }
+                    }
+
+                    lineOffsets[level * linePrimitiveCount + loop] = offsetVertex + totalSize;
+                    lineSizes[level * linePrimitiveCount + loop] = size;
+
+                    totalSize += size;
+                }
             }
+
+            return lineVertexCount;
         }
 
         public int loadFillVerticesIntoBuffer( float zCoord, FloatBuffer vertexBuffer, int offsetVertex )
         {
-            for ( int i = 0; i < fillVertexCount * 2; i++ )
+            int totalSize = 0;
+            for ( int level = 0; level <= getFillLevelCount( ); level++ )
             {
-                vertexBuffer.put( fillVertices[i] );
+                float[] triangles = level == 0 ? fillVertices : simplified.getLevelTriangles( level );
 
-                if ( i % 2 != 0 ) vertexBuffer.put( zCoord );
-            }
+                for ( int i = 0; i < triangles.length; i++ )
+                {
+                    vertexBuffer.put( triangles[i] );
 
-            fillOffsets[0] = offsetVertex;
-            fillSizes[0] = fillVertexCount;
+                    if ( i % 2 != 0 ) vertexBuffer.put( zCoord );
+                }
 
-            return fillVertexCount;
-        }
+                fillOffsets[level] = offsetVertex + totalSize;
+                fillSizes[level] = triangles.length / 2;
 
-        public void loadFillIntoBuffer( IntBuffer offsetBuffer, IntBuffer sizeBuffer )
-        {
-            // there is always only one fill primitive for a polygon
-            offsetBuffer.put( fillOffsets[0] );
-            sizeBuffer.put( fillSizes[0] );
+                totalSize += triangles.length / 2;
+            }
+
+            return fillVertexCount;
         }
 
         protected float[] tessellate( )
         {
             try
             {
-                SimpleVertexAccumulator accumulator = new SimpleVertexAccumulator( );
-                tessellator.tessellate( geometry, accumulator );
-                return accumulator.getVertices( );
+                return tessellator.tessellate( geometry );
             }
             catch ( TessellationException e )
             {
@@ -1320,6 +1826,58 @@ public class PolygonPainter extends GlimpsePainter2D
         // the number of elements in glFillOffsetBuffer and glFillCountBuffer
         int glTotalFillPrimitives;
 
+        // the polygon (and loop within that polygon) owning each element of the line
+        // buffers, so an element can be moved when another polygon is deselected
+        IdPolygon[] lineSlotPolygons = new IdPolygon[0];
+        int[] lineSlotLoops = new int[0];
+        // the polygon owning each element of the fill buffers
+        IdPolygon[] fillSlotPolygons = new IdPolygon[0];
+
+        // spatial index of the polygons in this group, by the size of their bounding boxes
+        Map<Integer, SizeClass> sizeClasses = new LinkedHashMap<Integer, SizeClass>( );
+        // bounding box of all the polygons in this group
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+
+        // offsets and counts for the selected primitives overlapping the visible area
+        IntBuffer glVisibleLineOffsetBuffer;
+        IntBuffer glVisibleLineCountBuffer;
+        IntBuffer glVisibleFillOffsetBuffer;
+        IntBuffer glVisibleFillCountBuffer;
+        int glVisibleLinePrimitives;
+        int glVisibleFillPrimitives;
+
+        // the smallest simplification tolerance of any polygon in this group (infinite if none are simplified)
+        double minLevelTolerance = Double.POSITIVE_INFINITY;
+
+        // if true, draw from the visible buffers instead of the selection buffers
+        boolean culled = false;
+        // if true, the visible buffers must be rebuilt even if the visible area has not moved
+        boolean visibleDirty = true;
+        double visibleMinX = Double.NaN;
+        double visibleMaxX = Double.NaN;
+        double visibleMinY = Double.NaN;
+        double visibleMaxY = Double.NaN;
+        boolean visibleContainsGroup = false;
+        // polygons only change levels of detail when the exponent of the tolerance changes
+        int visibleToleranceExponent = Integer.MIN_VALUE;
+        List<IdPolygon> visibleCandidates = new ArrayList<IdPolygon>( );
+
+        /**
+         * Polygons whose bounding boxes have similar sizes. Each is indexed by the center of
+         * its bounding box, so a search must be expanded by the largest half-size in the class.
+         * Keeping sizes separate stops a few very large polygons from making every search
+         * return the whole group.
+         */
+        static class SizeClass
+        {
+            QuadTreeXys<IdPolygon> tree = new QuadTreeXys<IdPolygon>( QUAD_TREE_BIN_MAX );
+            float maxHalfWidth = 0;
+            float maxHalfHeight = 0;
+        }
+
         public LoadedGroup( Group group )
         {
             this.loadSettings( group );
@@ -1327,9 +1885,6 @@ public class PolygonPainter extends GlimpsePainter2D
 
         public void loadSettings( Group group )
         {
-            this.glTotalLinePrimitives = group.selectedLinePrimitiveCount;
-            this.glTotalFillPrimitives = group.selectedFillPrimitiveCount;
-
             this.lineColor[0] = group.lineColor[0];
             this.lineColor[1] = group.lineColor[1];
             this.lineColor[2] = group.lineColor[2];
@@ -1424,30 +1979,103 @@ public class PolygonPainter extends GlimpsePainter2D
             }
         }
 
-        public void loadLineSelectionIntoBuffer( Collection<IdPolygon> polygons, int size )
+        /**
+         * Rebuilds the line offset and count buffers from scratch.
+         */
+        public void loadLineSelection( Collection<IdPolygon> selected )
         {
             int primitiveCount = 0;
-            for ( IdPolygon polygon : polygons )
+            for ( IdPolygon polygon : selected )
             {
                 primitiveCount += polygon.linePrimitiveCount;
             }
 
-            loadLineSelectionIntoBuffer( polygons, size, size - primitiveCount );
+            ensureLineOffsetBufferSize( primitiveCount );
+            ensureLineCountBufferSize( primitiveCount );
+
+            Arrays.fill( lineSlotPolygons, null );
+            glTotalLinePrimitives = 0;
+            visibleDirty = true;
+            for ( IdPolygon polygon : selected )
+            {
+                addLineSelection( polygon );
+            }
+        }
+
+        /**
+         * Updates the line offset and count buffers for polygons which have entered or left
+         * the selection since they were last loaded. Deselected polygons are removed by moving
+         * the last elements of the buffers into their slots, so the cost depends only on
+         * the number of polygons which changed.
+         */
+        public void updateLineSelection( Collection<IdPolygon> selected, Collection<IdPolygon> added, Collection<IdPolygon> removed )
+        {
+            if ( added.size( ) + removed.size( ) > selected.size( ) )
+            {
+                loadLineSelection( selected );
+                return;
+            }
+
+            for ( IdPolygon polygon : removed )
+            {
+                removeLineSelection( polygon );
+            }
+
+            if ( !added.isEmpty( ) || !removed.isEmpty( ) ) visibleDirty = true;
+
+            for ( IdPolygon polygon : added )
+            {
+                addLineSelection( polygon );
+            }
         }
 
-        public void loadLineSelectionIntoBuffer( Collection<IdPolygon> polygons, int size, int offset )
+        protected void addLineSelection( IdPolygon polygon )
         {
-            ensureLineOffsetBufferSize( size );
-            ensureLineCountBufferSize( size );
+            int needed = glTotalLinePrimitives + polygon.linePrimitiveCount;
+            if ( glLineOffsetBuffer == null || glLineOffsetBuffer.capacity( ) < needed )
+            {
+                ensureLineOffsetBufferSize( needed );
+                ensureLineCountBufferSize( needed );
+            }
 
-            if ( size <= 0 || offset < 0 ) return;
+            if ( lineSlotPolygons.length < needed )
+            {
+                int capacity = Math.max( ( int ) ( lineSlotPolygons.length * 1.5 ), needed );
+                lineSlotPolygons = Arrays.copyOf( lineSlotPolygons, capacity );
+                lineSlotLoops = Arrays.copyOf( lineSlotLoops, capacity );
+            }
 
-            glLineOffsetBuffer.position( offset );
-            glLineCountBuffer.position( offset );
+            for ( int loop = 0; loop < polygon.linePrimitiveCount; loop++ )
+            {
+                int slot = glTotalLinePrimitives++;
+                glLineOffsetBuffer.put( slot, polygon.lineOffsets[loop] );
+                glLineCountBuffer.put( slot, polygon.lineSizes[loop] );
+                lineSlotPolygons[slot] = polygon;
+                lineSlotLoops[slot] = loop;
+                polygon.lineSlots[loop] = slot;
+            }
+        }
 
-            for ( IdPolygon polygon : polygons )
+        protected void removeLineSelection( IdPolygon polygon )
+        {
+            for ( int loop = 0; loop < polygon.linePrimitiveCount; loop++ )
             {
-                polygon.loadLineIntoBuffer( glLineOffsetBuffer, glLineCountBuffer );
+                int slot = polygon.lineSlots[loop];
+                int last = --glTotalLinePrimitives;
+
+                if ( slot != last )
+                {
+                    IdPolygon moved = lineSlotPolygons[last];
+                    int movedLoop = lineSlotLoops[last];
+
+                    glLineOffsetBuffer.put( slot, glLineOffsetBuffer.get( last ) );
+                    glLineCountBuffer.put( slot, glLineCountBuffer.get( last ) );
+                    lineSlotPolygons[slot] = moved;
+                    lineSlotLoops[slot] = movedLoop;
+                    moved.lineSlots[movedLoop] = slot;
+                }
+
+                lineSlotPolygons[last] = null;
             }
         }
 
@@ -1463,33 +2091,247 @@ public class PolygonPainter extends GlimpsePainter2D
             }
         }
 
-        public void loadFillSelectionIntoBuffer( Collection<IdPolygon> polygons, int size )
+        /**
+         * Rebuilds the fill offset and count buffers from scratch.
+         */
+        public void loadFillSelection( Collection<IdPolygon> selected )
         {
-            if ( size <= 0 ) return;
+            ensureFillOffsetBufferSize( selected.size( ) );
+            ensureFillCountBufferSize( selected.size( ) );
 
-            int primitiveCount = 0;
-            for ( IdPolygon polygon : polygons )
+            Arrays.fill( fillSlotPolygons, null );
+            glTotalFillPrimitives = 0;
+            visibleDirty = true;
+            for ( IdPolygon polygon : selected )
+            {
+                addFillSelection( polygon );
+            }
+        }
+
+        /**
+         * @see #updateLineSelection(Collection, Collection, Collection)
+         */
+        public void updateFillSelection( Collection<IdPolygon> selected, Collection<IdPolygon> added, Collection<IdPolygon> removed )
+        {
+            if ( added.size( ) + removed.size( ) > selected.size( ) )
+            {
+                loadFillSelection( selected );
+                return;
+            }
+
+            for ( IdPolygon polygon : removed )
+            {
+                removeFillSelection( polygon );
+            }
+
+            if ( !added.isEmpty( ) || !removed.isEmpty( ) ) visibleDirty = true;
+
+            for ( IdPolygon polygon : added )
+            {
+                addFillSelection( polygon );
+            }
+        }
+
+        // there is always only one fill primitive for a polygon
+        protected void addFillSelection( IdPolygon polygon )
+        {
+            int needed = glTotalFillPrimitives + 1;
+            if ( glFillOffsetBuffer == null || glFillOffsetBuffer.capacity( ) < needed )
+            {
+                ensureFillOffsetBufferSize( needed );
+                ensureFillCountBufferSize( needed );
+            }
+
+            if ( fillSlotPolygons.length < needed )
+            {
+                fillSlotPolygons = Arrays.copyOf( fillSlotPolygons, Math.max( ( int ) ( fillSlotPolygons.length * 1.5 ), needed ) );
+            }
+
+            int slot = glTotalFillPrimitives++;
+            glFillOffsetBuffer.put( slot, polygon.fillOffsets[0] );
+            glFillCountBuffer.put( slot, polygon.fillSizes[0] );
+            fillSlotPolygons[slot] = polygon;
+            polygon.fillSlot = slot;
+        }
+
+        protected void removeFillSelection( IdPolygon polygon )
+        {
+            int slot = polygon.fillSlot;
+            int last = --glTotalFillPrimitives;
+
+            if ( slot != last )
+            {
+                IdPolygon moved = fillSlotPolygons[last];
+
+                glFillOffsetBuffer.put( slot, glFillOffsetBuffer.get( last ) );
+                glFillCountBuffer.put( slot, glFillCountBuffer.get( last ) );
+                fillSlotPolygons[slot] = moved;
+                moved.fillSlot = slot;
+            }
+
+            fillSlotPolygons[last] = null;
+        }
+
+        public void addToIndex( Group group, int offset, int size )
+        {
+            Iterator<IdPolygon> iter = group.polygonIndices.listIterator( offset );
+            for ( int i = 0; i < size && iter.hasNext( ); i++ )
             {
-                primitiveCount += polygon.fillPrimitiveCount;
+                IdPolygon polygon = iter.next( );
+                if ( polygon.isEmpty( ) ) continue;
+
+                float x = polygon.x( );
+                float y = polygon.y( );
+                float halfWidth = ( float ) Math.max( polygon.maxX - x, x - polygon.minX );
+                float halfHeight = ( float ) Math.max( polygon.maxY - y, y - polygon.minY );
+
+                Integer sizeKey = Math.getExponent( Math.max( halfWidth, halfHeight ) );
+                SizeClass sizeClass = sizeClasses.get( sizeKey );
+                if ( sizeClass == null )
+                {
+                    sizeClass = new SizeClass( );
+                    sizeClasses.put( sizeKey, sizeClass );
+                }
+
+                sizeClass.tree.add( polygon );
+                sizeClass.maxHalfWidth = Math.max( sizeClass.maxHalfWidth, halfWidth );
+                sizeClass.maxHalfHeight = Math.max( sizeClass.maxHalfHeight, halfHeight );
+
+                minX = Math.min( minX, polygon.minX );
+                maxX = Math.max( maxX, polygon.maxX );
+                minY = Math.min( minY, polygon.minY );
+                maxY = Math.max( maxY, polygon.maxY );
+
+                if ( polygon.getLevelCount( ) > 0 ) minLevelTolerance = Math.min( minLevelTolerance, polygon.simplified.getLevelTolerance( 1 ) );
             }
 
-            loadFillSelectionIntoBuffer( polygons, size, size - primitiveCount );
+            visibleDirty = true;
         }
 
-        public void loadFillSelectionIntoBuffer( Collection<IdPolygon> polygons, int size, int offset )
+        /**
+         * Rebuilds the visible offset and count buffers, if the visible area, the level of detail
+         * or the selection has changed since they were last built. If the visible area contains the
+         * whole group and no polygons are simplified, the selection buffers are drawn directly instead.
+         *
+         * @param tolerance the simplification tolerance, in axis units
+         */
+        public void updateVisiblePrimitives( double xMin, double xMax, double yMin, double yMax, double tolerance )
         {
-            ensureFillOffsetBufferSize( size );
-            ensureFillCountBufferSize( size );
+            boolean containsGroup = xMin <= minX && maxX <= xMax && yMin <= minY && maxY <= yMax;
+            boolean simplify = tolerance >= minLevelTolerance;
+            int toleranceExponent = simplify ? Math.getExponent( tolerance ) : Integer.MIN_VALUE;
+
+            if ( !visibleDirty && toleranceExponent == visibleToleranceExponent )
+            {
+                // panning with the whole group in view changes nothing
+                if ( containsGroup && visibleContainsGroup ) return;
+                if ( xMin == visibleMinX && xMax == visibleMaxX && yMin == visibleMinY && yMax == visibleMaxY ) return;
+            }
 
-            if ( size <= 0 || offset < 0 ) return;
+            visibleDirty = false;
+            visibleMinX = xMin;
+            visibleMaxX = xMax;
+            visibleMinY = yMin;
+            visibleMaxY = yMax;
+            visibleContainsGroup = containsGroup;
+            visibleToleranceExponent = toleranceExponent;
+
+            culled = !containsGroup || simplify;
+            if ( !culled ) return;
+
+            glVisibleLineOffsetBuffer = ensureBufferSize( glVisibleLineOffsetBuffer, glTotalLinePrimitives );
+            glVisibleLineCountBuffer = ensureBufferSize( glVisibleLineCountBuffer, glTotalLinePrimitives );
+            glVisibleFillOffsetBuffer = ensureBufferSize( glVisibleFillOffsetBuffer, glTotalFillPrimitives );
+            glVisibleFillCountBuffer = ensureBufferSize( glVisibleFillCountBuffer, glTotalFillPrimitives );
+            glVisibleLinePrimitives = 0;
+            glVisibleFillPrimitives = 0;
+
+            if ( containsGroup )
+            {
+                // every selected primitive is visible, so there is no need to search the spatial index
+                for ( int slot = 0; slot < glTotalFillPrimitives; slot++ )
+                {
+                    IdPolygon polygon = fillSlotPolygons[slot];
+                    addVisibleFill( polygon, polygon.getLevel( tolerance ) );
+                }
+
+                for ( int slot = 0; slot < glTotalLinePrimitives; slot++ )
+                {
+                    IdPolygon polygon = lineSlotPolygons[slot];
+                    addVisibleLine( polygon, lineSlotLoops[slot], polygon.getLevel( tolerance ) );
+                }
 
-            glFillOffsetBuffer.position( offset );
-            glFillCountBuffer.position( offset );
+                return;
+            }
 
-            for ( IdPolygon polygon : polygons )
+            for ( SizeClass sizeClass : sizeClasses.values( ) )
             {
-                polygon.loadFillIntoBuffer( glFillOffsetBuffer, glFillCountBuffer );
+                // round outward, since the tree stores float coordinates
+                float searchMinX = Math.nextAfter( ( float ) xMin - sizeClass.maxHalfWidth, Double.NEGATIVE_INFINITY );
+                float searchMaxX = Math.nextAfter( ( float ) xMax + sizeClass.maxHalfWidth, Double.POSITIVE_INFINITY );
+                float searchMinY = Math.nextAfter( ( float ) yMin - sizeClass.maxHalfHeight, Double.NEGATIVE_INFINITY );
+                float searchMaxY = Math.nextAfter( ( float ) yMax + sizeClass.maxHalfHeight, Double.POSITIVE_INFINITY );
+
+                visibleCandidates.clear( );
+                sizeClass.tree.search( searchMinX, searchMaxX, searchMinY, searchMaxY, visibleCandidates );
+
+                for ( IdPolygon polygon : visibleCandidates )
+                {
+                    if ( polygon.maxX < xMin || polygon.minX > xMax || polygon.maxY < yMin || polygon.minY > yMax ) continue;
+
+                    int level = polygon.getLevel( tolerance );
+
+                    if ( isFillSelected( polygon ) )
+                    {
+                        addVisibleFill( polygon, level );
+                    }
+
+                    if ( isLineSelected( polygon ) )
+                    {
+                        for ( int loop = 0; loop < polygon.linePrimitiveCount; loop++ )
+                        {
+                            addVisibleLine( polygon, loop, level );
+                        }
+                    }
+                }
             }
+
+            visibleCandidates.clear( );
+        }
+
+        // levels past the polygon's last simplified fill are filled using that fill
+        protected void addVisibleFill( IdPolygon polygon, int level )
+        {
+            int index = Math.min( level, polygon.getFillLevelCount( ) );
+            if ( polygon.fillSizes[index] == 0 ) return;
+
+            glVisibleFillOffsetBuffer.put( glVisibleFillPrimitives, polygon.fillOffsets[index] );
+            glVisibleFillCountBuffer.put( glVisibleFillPrimitives, polygon.fillSizes[index] );
+            glVisibleFillPrimitives++;
+        }
+
+        // loops dropped by the level have zero size, and are skipped
+        protected void addVisibleLine( IdPolygon polygon, int loop, int level )
+        {
+            int index = level * polygon.linePrimitiveCount + loop;
+            if ( polygon.lineSizes[index] == 0 ) return;
+
+            glVisibleLineOffsetBuffer.put( glVisibleLinePrimitives, polygon.lineOffsets[index] );
+            glVisibleLineCountBuffer.put( glVisibleLinePrimitives, polygon.lineSizes[index] );
+            glVisibleLinePrimitives++;
+        }
+
+        protected boolean isLineSelected( IdPolygon polygon )
+        {
+            if ( polygon.linePrimitiveCount == 0 ) return false;
+            int slot = polygon.lineSlots[0];
+            return slot < glTotalLinePrimitives && lineSlotPolygons[slot] == polygon;
+        }
+
+        protected boolean isFillSelected( IdPolygon polygon )
+        {
+            int slot = polygon.fillSlot;
+            return slot < glTotalFillPrimitives && fillSlotPolygons[slot] == polygon;
         }
 
         public void dispose( GL gl )
@@ -1550,6 +2392,8 @@ public class PolygonPainter extends GlimpsePainter2D
         Set<IdPolygon> selectedPolygons;
         // polygons selected since the last display( ) call
         Set<IdPolygon> newSelectedPolygons;
+        // polygons deselected since the last display( ) call
+        Set<IdPolygon> newDeselectedPolygons;
 
         IdPolygon selectionStart;
         IdPolygon selectionEnd;
@@ -1582,6 +2426,7 @@ public class PolygonPainter extends GlimpsePainter2D
             this.groupId = groupId;
             this.selectedPolygons = new LinkedHashSet<IdPolygon>( );
             this.newSelectedPolygons = new LinkedHashSet<IdPolygon>( );
+            this.newDeselectedPolygons = new LinkedHashSet<IdPolygon>( );
             this.polygonIndices = new LinkedList<IdPolygon>( );
             this.startTimes = new TreeSet<IdPolygon>( startTimeComparator );
             this.endTimes = new TreeSet<IdPolygon>( endTimeComparator );
@@ -1611,6 +2456,7 @@ public class PolygonPainter extends GlimpsePainter2D
 
             this.selectedPolygons.clear( );
             this.newSelectedPolygons.clear( );
+            this.newDeselectedPolygons.clear( );
 
             this.selectedFillPrimitiveCount = 0;
             this.selectedLinePrimitiveCount = 0;
@@ -1642,14 +2488,7 @@ public class PolygonPainter extends GlimpsePainter2D
             this.fillInsertVertexCount += fillVertexCount;
             //            this.totalFillPrimitiveCount += fillPrimitiveCount;
 
-            //TODO using IdPolygons to hold start/end times of window is awkward
-            if ( polygon.getStartTime( ) <= selectionEnd.endTime && polygon.getEndTime( ) >= selectionStart.startTime )
-            {
-                selectedFillPrimitiveCount += polygon.fillPrimitiveCount;
-                selectedLinePrimitiveCount += polygon.linePrimitiveCount;
-                selectedPolygons.add( polygon );
-                newSelectedPolygons.add( polygon );
-            }
+            if ( isInTimeRange( polygon ) ) select( polygon );
 
             if ( !dataInserted || polygonInsertIndex < offsetInsertPolygons )
             {
@@ -1660,35 +2499,116 @@ public class PolygonPainter extends GlimpsePainter2D
 
         public void setTimeRange( IdPolygon startPoint, IdPolygon endPoint )
         {
+            IdPolygon oldStart = selectionStart;
+            IdPolygon oldEnd = selectionEnd;
+
             selectionStart = startPoint;
             selectionEnd = endPoint;
 
-            checkTimeRange( );
+            if ( oldStart == null || oldEnd == null )
+            {
+                checkTimeRange( );
+            }
+            else
+            {
+                updateTimeRange( oldStart, oldEnd );
+            }
+        }
+
+        //TODO using IdPolygons to hold start/end times of window is awkward
+        protected boolean isInTimeRange( IdPolygon polygon )
+        {
+            return polygon.getStartTime( ) <= selectionEnd.endTime && polygon.getEndTime( ) >= selectionStart.startTime;
         }
 
+        /**
+         * Recomputes the whole selection for the current time range.
+         */
         public void checkTimeRange( )
         {
             if ( selectionStart == null || selectionEnd == null ) return;
 
-            SortedSet<IdPolygon> startSet = startTimes.headSet( selectionEnd, true );
-            SortedSet<IdPolygon> endSet = endTimes.tailSet( selectionStart, true );
+            for ( IdPolygon polygon : polygonIndices )
+            {
+                updateSelection( polygon );
+            }
+
+            selectionChanged = true;
+        }
+
+        /**
+         * Updates the selection after the time range moves, visiting only the polygons
+         * which could have entered or left it: a polygon's membership can only change if
+         * its start time lies between the old and new range ends, or its end time lies
+         * between the old and new range starts. Sliding a time window therefore costs time
+         * proportional to the polygons crossing its edges, not to the size of the group.
+         */
+        protected void updateTimeRange( IdPolygon oldStart, IdPolygon oldEnd )
+        {
+            if ( selectionStart == null || selectionEnd == null ) return;
 
-            // selectedPolys contains the set intersection of startSet and endSet
-            selectedPolygons.clear( );
-            selectedPolygons.addAll( startSet );
-            selectedPolygons.retainAll( endSet );
+            // polygons with startTime in ( min( oldEnd, newEnd ), max( oldEnd, newEnd ) ]
+            int endOrder = startTimeComparator.compare( oldEnd, selectionEnd );
+            if ( endOrder != 0 )
+            {
+                IdPolygon lo = endOrder < 0 ? oldEnd : selectionEnd;
+                IdPolygon hi = endOrder < 0 ? selectionEnd : oldEnd;
+                for ( IdPolygon polygon : startTimes.subSet( lo, false, hi, true ) )
+                {
+                    updateSelection( polygon );
+                }
+            }
 
-            selectedFillPrimitiveCount = 0;
-            selectedLinePrimitiveCount = 0;
-            for ( IdPolygon polygon : selectedPolygons )
+            // polygons with endTime in [ min( oldStart, newStart ), max( oldStart, newStart ) )
+            int startOrder = endTimeComparator.compare( oldStart, selectionStart );
+            if ( startOrder != 0 )
             {
-                selectedFillPrimitiveCount += polygon.fillPrimitiveCount;
-                selectedLinePrimitiveCount += polygon.linePrimitiveCount;
+                IdPolygon lo = startOrder < 0 ? oldStart : selectionStart;
+                IdPolygon hi = startOrder < 0 ? selectionStart : oldStart;
+                for ( IdPolygon polygon : endTimes.subSet( lo, true, hi, false ) )
+                {
+                    updateSelection( polygon );
+                }
             }
 
             selectionChanged = true;
         }
 
+        protected void updateSelection( IdPolygon polygon )
+        {
+            boolean inRange = isInTimeRange( polygon );
+            boolean selected = selectedPolygons.contains( polygon );
+
+            if ( inRange && !selected )
+            {
+                select( polygon );
+            }
+            else if ( !inRange && selected )
+            {
+                deselect( polygon );
+            }
+        }
+
+        // newSelectedPolygons and newDeselectedPolygons track the net change since the
+        // selection was last copied to the LoadedGroup
+        protected void select( IdPolygon polygon )
+        {
+            selectedPolygons.add( polygon );
+            if ( !newDeselectedPolygons.remove( polygon ) ) newSelectedPolygons.add( polygon );
+
+            selectedFillPrimitiveCount += polygon.fillPrimitiveCount;
+            selectedLinePrimitiveCount += polygon.linePrimitiveCount;
+        }
+
+        protected void deselect( IdPolygon polygon )
+        {
+            selectedPolygons.remove( polygon );
+            if ( !newSelectedPolygons.remove( polygon ) ) newDeselectedPolygons.add( polygon );
+
+            selectedFillPrimitiveCount -= polygon.fillPrimitiveCount;
+            selectedLinePrimitiveCount -= polygon.linePrimitiveCount;
+        }
+
         public void setLineColor( float[] rgba )
         {
             lineColor = rgba;
@@ -1769,6 +2689,7 @@ public class PolygonPainter extends GlimpsePainter2D
         public void reset( )
         {
             newSelectedPolygons.clear( );
+            newDeselectedPolygons.clear( );
             lineInsertVertexCount = 0;
             fillInsertVertexCount = 0;
             dataInserted = false;
@@ -43,6 +43,7 @@ import com.metsci.glimpse.gl.texture.ColorTexture1D;
 import com.metsci.glimpse.gl.texture.FloatTexture1D;
 import com.metsci.glimpse.painter.base.GlimpseDataPainter2D;
 import com.metsci.glimpse.support.color.GlimpseColor;
+import com.metsci.glimpse.support.repaint.DirtyListener;
 import com.metsci.glimpse.support.shader.SimplePointShader;
 
 /**
@@ -50,6 +51,12 @@ import com.metsci.glimpse.support.shader.SimplePointShader;
  * of large clouds of points or particles. Unlike {@link PointSetPainter},
  * {@code ShadedPointPainter} employs shaders set the color and size of the points.
  *
+ * The position and attribute buffers may be streamed with {@link GLFloatBuffer#append(float[], int, int)}
+ * and {@link GLFloatBuffer#trim(int)}, in which case only the appended vertices are uploaded each frame.
+ * Attribute buffers must be appended to and trimmed in step with the position buffer, and must be
+ * circular if it is, with the same capacity. Changes to the buffers mark the painter dirty
+ * (see {@link com.metsci.glimpse.support.repaint.RepaintManager#setDemandDriven(boolean)}).
+ *
  * @author ulman
  * @see com.metsci.glimpse.examples.basic.ScatterplotExample
  */
@@ -78,6 +85,16 @@ public class ShadedPointPainter extends GlimpseDataPainter2D
 
     protected boolean userPipeline = false;
 
+    // marks this painter dirty when the data in its position or attribute buffers changes
+    protected final DirtyListener bufferListener = new DirtyListener( )
+    {
+        @Override
+        public void markDirty( )
+        {
+            ShadedPointPainter.this.markDirty( );
+        }
+    };
+
     public ShadedPointPainter( Axis1D colorAxis, Axis1D sizeAxis, Pipeline pipeline ) throws IOException
     {
         this.lock = new ReentrantLock( );
@@ -102,12 +119,15 @@ public class ShadedPointPainter extends GlimpseDataPainter2D
         lock.lock( );
         try
         {
+            swapBufferListener( this.positionBuffer, positionBuffer );
             this.positionBuffer = positionBuffer;
         }
         finally
         {
             lock.unlock( );
         }
+
+        markDirty( );
     }
 
     public void useColorAttribData( GLFloatBuffer attributeBuffer )
@@ -115,6 +135,7 @@ public class ShadedPointPainter extends GlimpseDataPainter2D
         lock.lock( );
         try
         {
+            swapBufferListener( this.colorAttributeBuffer, attributeBuffer );
             this.colorAttributeBuffer = attributeBuffer;
             this.setVariablePointColor0( );
         }
@@ -122,6 +143,8 @@ public class ShadedPointPainter extends GlimpseDataPainter2D
         {
             lock.unlock( );
         }
+
+        markDirty( );
     }
 
     public void useSizeAttribData( GLFloatBuffer attributeBuffer )
@@ -129,6 +152,7 @@ public class ShadedPointPainter extends GlimpseDataPainter2D
         lock.lock( );
         try
         {
+            swapBufferListener( this.sizeAttributeBuffer, attributeBuffer );
             this.sizeAttributeBuffer = attributeBuffer;
             this.setVariablePointSize0( );
         }
@@ -136,6 +160,16 @@ public class ShadedPointPainter extends GlimpseDataPainter2D
         {
             lock.unlock( );
         }
+
+        markDirty( );
+    }
+
+    // the listener list allows duplicates, so a buffer used in more than one role
+    // stays registered until it has been replaced in all of them
+    protected void swapBufferListener( GLFloatBuffer oldBuffer, GLFloatBuffer newBuffer )
+    {
+        if ( oldBuffer != null ) oldBuffer.removeDirtyListener( bufferListener );
+        if ( newBuffer != null ) newBuffer.addDirtyListener( bufferListener );
     }
 
     public void useColorScale( ColorTexture1D colorTexture )
@@ -369,7 +403,7 @@ public class ShadedPointPainter extends GlimpseDataPainter2D
             gl.glBlendFunc( GL.GL_SRC_ALPHA, GL.GL_ONE_MINUS_SRC_ALPHA );
             gl.glEnable( GL.GL_BLEND );
 
-            gl.glDrawArrays( GL.GL_POINTS, 0, positionBuffer.getNumVertices( ) );
+            positionBuffer.drawArrays( gl, GL.GL_POINTS );
 
             // don't need to cleanup here, gl state was saved in
             // com.metsci.glimpse.painter.base.GlimpsePainter.display()
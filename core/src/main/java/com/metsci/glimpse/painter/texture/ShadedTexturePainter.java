@@ -41,9 +41,12 @@ import com.metsci.glimpse.axis.Axis2D;
 import com.metsci.glimpse.context.GlimpseBounds;
 import com.metsci.glimpse.context.GlimpseContext;
 import com.metsci.glimpse.gl.shader.Pipeline;
+import com.metsci.glimpse.gl.texture.AbstractTexture;
 import com.metsci.glimpse.gl.texture.DrawableTexture;
 import com.metsci.glimpse.gl.texture.Texture;
 import com.metsci.glimpse.painter.base.GlimpsePainter2D;
+import com.metsci.glimpse.support.repaint.DirtyListener;
+import com.metsci.glimpse.support.texture.TextureProjected2D;
 
 /**
  * A painter which applies shaders to textures in order to display
@@ -65,6 +68,16 @@ public class ShadedTexturePainter extends GlimpsePainter2D
     // the shader pipeline
     protected Pipeline pipeline;
 
+    // marks this painter dirty when the data in one of its textures changes
+    protected final DirtyListener textureListener = new DirtyListener( )
+    {
+        @Override
+        public void markDirty( )
+        {
+            ShadedTexturePainter.this.markDirty( );
+        }
+    };
+
     public ShadedTexturePainter( )
     {
         this.nonDrawableTextures = new HashSet<TextureUnit<Texture>>( );
@@ -82,6 +95,8 @@ public class ShadedTexturePainter extends GlimpsePainter2D
         {
             lock.unlock( );
         }
+
+        markDirty( );
     }
 
     public void addDrawableTexture( DrawableTexture texture )
@@ -94,12 +109,14 @@ public class ShadedTexturePainter extends GlimpsePainter2D
         lock.lock( );
         try
         {
-            this.drawableTextures.add( new TextureUnit<DrawableTexture>( textureUnit, texture ) );
+            if ( this.drawableTextures.add( new TextureUnit<DrawableTexture>( textureUnit, texture ) ) ) addTextureListener( texture );
         }
         finally
         {
             lock.unlock( );
         }
+
+        markDirty( );
     }
 
     public void removeDrawableTexture( DrawableTexture texture )
@@ -107,12 +124,14 @@ public class ShadedTexturePainter extends GlimpsePainter2D
         lock.lock( );
         try
         {
-            this.drawableTextures.remove( new TextureUnit<DrawableTexture>( texture ) );
+            if ( this.drawableTextures.remove( new TextureUnit<DrawableTexture>( texture ) ) ) removeTextureListener( texture );
         }
         finally
         {
             lock.unlock( );
         }
+
+        markDirty( );
     }
 
     public void removeAllDrawableTextures( )
@@ -120,12 +139,19 @@ public class ShadedTexturePainter extends GlimpsePainter2D
         lock.lock( );
         try
         {
+            for ( TextureUnit<DrawableTexture> textureUnit : drawableTextures )
+            {
+                removeTextureListener( textureUnit.getTexture( ) );
+            }
+
             this.drawableTextures.clear( );
         }
         finally
         {
             lock.unlock( );
         }
+
+        markDirty( );
     }
 
     public void addNonDrawableTexture( Texture texture )
@@ -138,12 +164,14 @@ public class ShadedTexturePainter extends GlimpsePainter2D
         lock.lock( );
         try
         {
-            this.nonDrawableTextures.add( new TextureUnit<Texture>( textureUnit, texture ) );
+            if ( this.nonDrawableTextures.add( new TextureUnit<Texture>( textureUnit, texture ) ) ) addTextureListener( texture );
         }
         finally
         {
             lock.unlock( );
         }
+
+        markDirty( );
     }
 
     public void removeNonDrawableTexture( Texture texture )
@@ -151,12 +179,14 @@ public class ShadedTexturePainter extends GlimpsePainter2D
         lock.lock( );
         try
         {
-            this.nonDrawableTextures.remove( new TextureUnit<Texture>( texture ) );
+            if ( this.nonDrawableTextures.remove( new TextureUnit<Texture>( texture ) ) ) removeTextureListener( texture );
         }
         finally
         {
             lock.unlock( );
         }
+
+        markDirty( );
     }
 
     public void removeAllNonDrawableTextures( )
@@ -164,12 +194,19 @@ public class ShadedTexturePainter extends GlimpsePainter2D
         lock.lock( );
         try
         {
+            for ( TextureUnit<Texture> textureUnit : nonDrawableTextures )
+            {
+                removeTextureListener( textureUnit.getTexture( ) );
+            }
+
             this.nonDrawableTextures.clear( );
         }
         finally
         {
             lock.unlock( );
         }
+
+        markDirty( );
     }
 
     @Override
@@ -211,6 +248,30 @@ public class ShadedTexturePainter extends GlimpsePainter2D
         }
     }
 
+    protected void addTextureListener( Texture texture )
+    {
+        if ( texture instanceof AbstractTexture )
+        {
+            ( ( AbstractTexture ) texture ).addDirtyListener( textureListener );
+        }
+        else if ( texture instanceof TextureProjected2D )
+        {
+            ( ( TextureProjected2D ) texture ).addDirtyListener( textureListener );
+        }
+    }
+
+    protected void removeTextureListener( Texture texture )
+    {
+        if ( texture instanceof AbstractTexture )
+        {
+            ( ( AbstractTexture ) texture ).removeDirtyListener( textureListener );
+        }
+        else if ( texture instanceof TextureProjected2D )
+        {
+            ( ( TextureProjected2D ) texture ).removeDirtyListener( textureListener );
+        }
+    }
+
     protected void draw( TextureUnit<DrawableTexture> textureUnit, GL gl )
     {
         textureUnit.texture.draw( gl, textureUnit.textureUnit );
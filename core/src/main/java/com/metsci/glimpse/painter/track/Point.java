@@ -29,9 +29,9 @@ package com.metsci.glimpse.painter.track;
 import java.nio.FloatBuffer;
 
 import com.metsci.glimpse.util.GeneralUtils;
-import com.metsci.glimpse.util.quadtree.Xy;
+import com.metsci.glimpse.util.quadtree.Xyt;
 
-public class Point implements Comparable<Point>, Xy
+public class Point implements Comparable<Point>, Xyt
 {
     protected int trackId;
     protected int pointId;
@@ -111,6 +111,12 @@ public class Point implements Comparable<Point>, Xy
         return y;
     }
 
+    @Override
+    public long t( )
+    {
+        return time;
+    }
+
     @Override
     public boolean equals( Object o )
     {
@@ -32,8 +32,10 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -48,13 +50,18 @@ import javax.media.opengl.GLContext;
 
 import com.metsci.glimpse.axis.Axis2D;
 import com.metsci.glimpse.context.GlimpseBounds;
+import com.metsci.glimpse.gl.attribute.GLVertexArena;
 import com.metsci.glimpse.painter.base.GlimpseDataPainter2D;
+import com.metsci.glimpse.support.font.BatchedTextRenderer;
 import com.metsci.glimpse.support.font.FontUtils;
+import com.metsci.glimpse.support.queue.UpdateQueue;
 import com.metsci.glimpse.support.selection.SpatialSelectionAxisListener;
 import com.metsci.glimpse.support.selection.SpatialSelectionListener;
 import com.metsci.glimpse.support.selection.TemporalSelectionListener;
-import com.metsci.glimpse.util.quadtree.QuadTreeXys;
-import com.sun.opengl.util.j2d.TextRenderer;
+import com.metsci.glimpse.util.primitives.FloatsArray;
+import com.metsci.glimpse.util.primitives.IntsArray;
+import com.metsci.glimpse.util.primitives.sorted.SortedLongsArray;
+import com.metsci.glimpse.util.quadtree.ConcurrentQuadTreeXyts;
 
 /**
  * Paints groups of line segments of points with associated timestamps.
@@ -70,12 +77,23 @@ public class TrackPainter extends GlimpseDataPainter2D
 {
     public static final int QUAD_TREE_BIN_MAX = 1000;
 
+    // default spatial index time slice: ten minutes, for point times in milliseconds
+    public static final long SPATIAL_INDEX_TIME_SLICE = 10 * 60 * 1000L;
+
     public static final long SPATIAL_SELECTION_UPDATE_RATE = 50;
 
     public static final int TRACK_SIZE_ESTIMATE = 100;
+
+    // when a track exceeds its maximum history, at least 1/HISTORY_EVICTION_DIVISOR
+    // of its history is discarded at once, so arrays are not shifted on every new point
+    public static final int HISTORY_EVICTION_DIVISOR = 8;
+
     public static final int TRACK_LABEL_OFFSET_X = 8;
     public static final int TRACK_LABEL_OFFSET_Y = 8;
 
+    // the track id used by commands which apply to all tracks
+    protected static final int ALL_TRACKS = Integer.MIN_VALUE;
+
     protected int dataBufferSize = 0;
     protected FloatBuffer dataBuffer = null;
     protected ReentrantLock trackUpdateLock = null;
@@ -88,18 +106,46 @@ public class TrackPainter extends GlimpseDataPainter2D
     protected Set<Track> updatedTracks;
     // mapping from id to LoadedTrack (GPU-side track information)
     protected Map<Integer, LoadedTrack> loadedTracks;
-    // spatial index on Points
-    protected QuadTreeXys<Point> spatialIndex;
+    // spatio-temporal index on Points, searchable without holding trackUpdateLock
+    protected ConcurrentQuadTreeXyts<Point> spatialIndex;
+
+    // packs the vertices of all tracks into a small number of device buffers
+    protected GLVertexArena vertexArena;
+    // track vertices grouped by device buffer and display style
+    // each batch is drawn with a single glMultiDrawArrays call
+    protected List<DrawBatch> drawBatches;
+    // head points grouped by display style
+    protected List<HeadPointBatch> headPointBatches;
+    // true if the draw batches must be rebuilt before they are next drawn
+    protected boolean drawBatchesDirty = false;
+    // true if any track label is visible
+    protected boolean labelsOn = false;
+
+    // display statistics for the most recent call to paintTo
+    protected int drawCallCount;
+    protected long uploadedBytes;
+
+    // if true, updates are queued and applied by the display thread
+    protected volatile boolean queueUpdates = false;
+    // lock-free queue of updates waiting to be applied
+    protected UpdateQueue<TrackCommand> updateQueue;
+    // reused by the display thread when draining updateQueue
+    protected List<TrackCommand> drainedCommands;
+    // points drained from updateQueue which have not yet been added to their tracks
+    protected Map<Integer, List<Point>> pendingPoints;
 
     // the overall start and end times set by displayTimeRange
     // when new tracks are created, they inherit these time bounds
     protected Point startTimeRange = getStartPoint( Long.MIN_VALUE );
     protected Point endTimeRange = getEndPoint( Long.MAX_VALUE );
 
+    // the maximum number of points retained by newly created tracks (zero if unlimited)
+    protected int maxHistory = 0;
+
     protected Collection<TemporalSelectionListener<Point>> temporalSelectionListeners;
 
     private static final Font textFont = FontUtils.getDefaultBold( 12 );
-    protected TextRenderer fontRenderer;
+    protected BatchedTextRenderer labelRenderer;
 
     public TrackPainter( )
     {
@@ -108,7 +154,17 @@ public class TrackPainter extends GlimpseDataPainter2D
 
     public TrackPainter( boolean enableSpatialIndex )
     {
-        if ( enableSpatialIndex ) this.spatialIndex = new QuadTreeXys<Point>( QUAD_TREE_BIN_MAX );
+        this( enableSpatialIndex, SPATIAL_INDEX_TIME_SLICE );
+    }
+
+    /**
+     * @param spatialIndexTimeSlice the duration of the time slices used by the spatial index, in the
+     *                              same units as point times. Time window queries are most efficient
+     *                              when this is comparable to the shortest windows that will be queried.
+     */
+    public TrackPainter( boolean enableSpatialIndex, long spatialIndexTimeSlice )
+    {
+        if ( enableSpatialIndex ) this.spatialIndex = new ConcurrentQuadTreeXyts<Point>( QUAD_TREE_BIN_MAX, spatialIndexTimeSlice );
 
         this.temporalSelectionListeners = new CopyOnWriteArrayList<TemporalSelectionListener<Point>>( );
 
@@ -117,7 +173,15 @@ public class TrackPainter extends GlimpseDataPainter2D
         this.loadedTracks = new HashMap<Integer, LoadedTrack>( );
         this.trackUpdateLock = new ReentrantLock( );
 
-        this.fontRenderer = new TextRenderer( textFont );
+        this.vertexArena = new GLVertexArena( 2 );
+        this.drawBatches = new ArrayList<DrawBatch>( );
+        this.headPointBatches = new ArrayList<HeadPointBatch>( );
+
+        this.updateQueue = new UpdateQueue<TrackCommand>( );
+        this.drainedCommands = new ArrayList<TrackCommand>( );
+        this.pendingPoints = new HashMap<Integer, List<Point>>( );
+
+        this.labelRenderer = new BatchedTextRenderer( textFont );
     }
 
     public void addTemporalSelectionListener( TemporalSelectionListener<Point> listener )
@@ -180,21 +244,26 @@ public class TrackPainter extends GlimpseDataPainter2D
         }
     }
 
-    public void deleteAll( )
+    /**
+     * If true, calls which modify tracks do not acquire {@code trackUpdateLock}. Instead,
+     * they append an update command to a lock-free queue which is drained by the display
+     * thread once per frame. Repeated style changes are coalesced and points added to the
+     * same track are merged into the track in a single batch.
+     *
+     * While queued updates are enabled, methods which query track state (such as
+     * {@link #getTrackHead(int)} or {@link #getGeoRange(double, double, double, double)})
+     * reflect only those updates which have been drained by the display thread.
+     */
+    public void setQueueUpdates( boolean queueUpdates )
     {
         this.trackUpdateLock.lock( );
         try
         {
-            for ( Track track : tracks.values( ) )
-            {
-                track.deletePending = true;
-                track.points.clear( );
-            }
-
-            if ( this.spatialIndex != null ) this.spatialIndex = new QuadTreeXys<Point>( QUAD_TREE_BIN_MAX );
+            // apply any commands which are already queued so that they are not
+            // reordered with respect to updates made after queueing is turned off
+            if ( !queueUpdates ) applyQueuedCommands( );
 
-            this.updatedTracks.addAll( tracks.values( ) );
-            this.newData = true;
+            this.queueUpdates = queueUpdates;
         }
         finally
         {
@@ -202,60 +271,32 @@ public class TrackPainter extends GlimpseDataPainter2D
         }
     }
 
-    public void deleteTrack( int trackId )
+    public boolean isQueueUpdates( )
     {
-        this.trackUpdateLock.lock( );
-        try
-        {
-            if ( !tracks.containsKey( trackId ) ) return;
-
-            Track track = tracks.get( trackId );
+        return this.queueUpdates;
+    }
 
-            if ( this.spatialIndex != null )
-            {
-                for ( Point p : track.points )
-                {
-                    this.spatialIndex.remove( p );
-                }
-            }
+    /**
+     * @return the queue which holds pending updates when {@link #setQueueUpdates(boolean)} is enabled
+     */
+    public UpdateQueue<?> getUpdateQueue( )
+    {
+        return this.updateQueue;
+    }
 
-            track.delete( );
+    public void deleteAll( )
+    {
+        submit( new DeleteAll( ) );
+    }
 
-            this.updatedTracks.add( track );
-            this.newData = true;
-        }
-        finally
-        {
-            this.trackUpdateLock.unlock( );
-        }
+    public void deleteTrack( int trackId )
+    {
+        submit( new DeleteTrack( trackId ) );
     }
 
     public void clearTrack( int trackId )
     {
-        this.trackUpdateLock.lock( );
-        try
-        {
-            if ( !tracks.containsKey( trackId ) ) return;
-
-            Track track = tracks.get( trackId );
-
-            if ( this.spatialIndex != null )
-            {
-                for ( Point p : track.points )
-                {
-                    this.spatialIndex.remove( p );
-                }
-            }
-
-            track.clear( );
-
-            this.updatedTracks.add( track );
-            this.newData = true;
-        }
-        finally
-        {
-            this.trackUpdateLock.unlock( );
-        }
+        submit( new ClearTrack( trackId ) );
     }
 
     public void addPoint( int trackId, int pointId, double x, double y, long time )
@@ -265,20 +306,8 @@ public class TrackPainter extends GlimpseDataPainter2D
 
     public void addPoints( int trackId, List<Point> points )
     {
-        this.trackUpdateLock.lock( );
-        try
-        {
-            Track track = getOrCreateTrack( trackId );
-
-            track.add( points );
-
-            this.updatedTracks.add( track );
-            this.newData = true;
-        }
-        finally
-        {
-            this.trackUpdateLock.unlock( );
-        }
+        // copied, since a queued command may not be applied until after the caller modifies the list
+        submit( new AddPoints( trackId, new ArrayList<Point>( points ) ) );
     }
 
     public void setLineColor( int trackId, float[] color )
@@ -288,38 +317,12 @@ public class TrackPainter extends GlimpseDataPainter2D
 
     public void setLineColor( int trackId, float r, float g, float b, float a )
     {
-        this.trackUpdateLock.lock( );
-        try
-        {
-            Track track = getOrCreateTrack( trackId );
-
-            track.setLineColor( r, g, b, a );
-
-            this.updatedTracks.add( track );
-            this.newData = true;
-        }
-        finally
-        {
-            this.trackUpdateLock.unlock( );
-        }
+        submit( new SetLineColor( trackId, r, g, b, a ) );
     }
 
     public void setLineWidth( int trackId, float width )
     {
-        this.trackUpdateLock.lock( );
-        try
-        {
-            Track track = getOrCreateTrack( trackId );
-
-            track.setLineWidth( width );
-
-            this.updatedTracks.add( track );
-            this.newData = true;
-        }
-        finally
-        {
-            this.trackUpdateLock.unlock( );
-        }
+        submit( new SetLineWidth( trackId, width ) );
     }
 
     public void setPointColor( int trackId, float[] color )
@@ -329,56 +332,17 @@ public class TrackPainter extends GlimpseDataPainter2D
 
     public void setPointColor( int trackId, float r, float g, float b, float a )
     {
-        this.trackUpdateLock.lock( );
-        try
-        {
-            Track track = getOrCreateTrack( trackId );
-
-            track.setPointColor( r, g, b, a );
-
-            this.updatedTracks.add( track );
-            this.newData = true;
-        }
-        finally
-        {
-            this.trackUpdateLock.unlock( );
-        }
+        submit( new SetPointColor( trackId, r, g, b, a ) );
     }
 
     public void setPointSize( int trackId, float size )
     {
-        this.trackUpdateLock.lock( );
-        try
-        {
-            Track track = getOrCreateTrack( trackId );
-
-            track.setPointSize( size );
-
-            this.updatedTracks.add( track );
-            this.newData = true;
-        }
-        finally
-        {
-            this.trackUpdateLock.unlock( );
-        }
+        submit( new SetPointSize( trackId, size ) );
     }
 
     public void setShowPoints( int trackId, boolean show )
     {
-        this.trackUpdateLock.lock( );
-        try
-        {
-            Track track = getOrCreateTrack( trackId );
-
-            track.setShowPoints( show );
-
-            this.updatedTracks.add( track );
-            this.newData = true;
-        }
-        finally
-        {
-            this.trackUpdateLock.unlock( );
-        }
+        submit( new SetShowPoints( trackId, show ) );
     }
 
     public void setHeadPointColor( int trackId, float[] color )
@@ -388,111 +352,32 @@ public class TrackPainter extends GlimpseDataPainter2D
 
     public void setHeadPointColor( int trackId, float r, float g, float b, float a )
     {
-        this.trackUpdateLock.lock( );
-        try
-        {
-            Track track = getOrCreateTrack( trackId );
-
-            track.setHeadPointColor( r, g, b, a );
-
-            this.updatedTracks.add( track );
-            this.newData = true;
-        }
-        finally
-        {
-            this.trackUpdateLock.unlock( );
-        }
+        submit( new SetHeadPointColor( trackId, r, g, b, a ) );
     }
 
     public void setHeadPointSize( int trackId, float size )
     {
-        this.trackUpdateLock.lock( );
-        try
-        {
-            Track track = getOrCreateTrack( trackId );
-
-            track.setHeadPointSize( size );
-
-            this.updatedTracks.add( track );
-            this.newData = true;
-        }
-        finally
-        {
-            this.trackUpdateLock.unlock( );
-        }
+        submit( new SetHeadPointSize( trackId, size ) );
     }
 
     public void setShowHeadPoint( int trackId, boolean show )
     {
-        this.trackUpdateLock.lock( );
-        try
-        {
-            Track track = getOrCreateTrack( trackId );
-
-            track.setShowHeadPoint( show );
-
-            this.updatedTracks.add( track );
-            this.newData = true;
-        }
-        finally
-        {
-            this.trackUpdateLock.unlock( );
-        }
+        submit( new SetShowHeadPoint( trackId, show ) );
     }
 
     public void setShowLines( int trackId, boolean show )
     {
-        this.trackUpdateLock.lock( );
-        try
-        {
-            Track track = getOrCreateTrack( trackId );
-
-            track.setShowLines( show );
-
-            this.updatedTracks.add( track );
-            this.newData = true;
-        }
-        finally
-        {
-            this.trackUpdateLock.unlock( );
-        }
+        submit( new SetShowLines( trackId, show ) );
     }
 
     public void setDotted( int trackId, boolean dotted )
     {
-        this.trackUpdateLock.lock( );
-        try
-        {
-            Track track = getOrCreateTrack( trackId );
-
-            track.setTrackStipple( dotted );
-
-            this.updatedTracks.add( track );
-            this.newData = true;
-        }
-        finally
-        {
-            this.trackUpdateLock.unlock( );
-        }
+        submit( new SetDotted( trackId, dotted ) );
     }
 
     public void setDotted( int trackId, int stippleFactor, short stipplePattern )
     {
-        this.trackUpdateLock.lock( );
-        try
-        {
-            Track track = getOrCreateTrack( trackId );
-
-            track.setTrackStipple( true );
-            track.setTrackStipple( stippleFactor, stipplePattern );
-
-            this.updatedTracks.add( track );
-            this.newData = true;
-        }
-        finally
-        {
-            this.trackUpdateLock.unlock( );
-        }
+        submit( new SetDottedPattern( trackId, stippleFactor, stipplePattern ) );
     }
 
     public void setLabelColor( int trackId, float[] color )
@@ -502,20 +387,7 @@ public class TrackPainter extends GlimpseDataPainter2D
 
     public void setLabelColor( int trackId, float r, float g, float b, float a )
     {
-        this.trackUpdateLock.lock( );
-        try
-        {
-            Track track = getOrCreateTrack( trackId );
-
-            track.setLabelColor( r, g, b, a );
-
-            this.updatedTracks.add( track );
-            this.newData = true;
-        }
-        finally
-        {
-            this.trackUpdateLock.unlock( );
-        }
+        submit( new SetLabelColor( trackId, r, g, b, a ) );
     }
 
     public void setLabelLineColor( int trackId, float[] color )
@@ -525,75 +397,48 @@ public class TrackPainter extends GlimpseDataPainter2D
 
     public void setLabelLineColor( int trackId, float r, float g, float b, float a )
     {
-        this.trackUpdateLock.lock( );
-        try
-        {
-            Track track = getOrCreateTrack( trackId );
-
-            track.setLabelLineColor( r, g, b, a );
-
-            this.updatedTracks.add( track );
-            this.newData = true;
-        }
-        finally
-        {
-            this.trackUpdateLock.unlock( );
-        }
+        submit( new SetLabelLineColor( trackId, r, g, b, a ) );
     }
 
     public void setShowLabelLine( int trackId, boolean show )
     {
-        this.trackUpdateLock.lock( );
-        try
-        {
-            Track track = getOrCreateTrack( trackId );
-
-            track.setShowLabelLine( show );
-
-            this.updatedTracks.add( track );
-            this.newData = true;
-        }
-        finally
-        {
-            this.trackUpdateLock.unlock( );
-        }
+        submit( new SetShowLabelLine( trackId, show ) );
     }
 
     public void setLabel( int trackId, String label )
     {
-        this.trackUpdateLock.lock( );
-        try
-        {
-            Track track = getOrCreateTrack( trackId );
+        submit( new SetLabel( trackId, label ) );
+    }
 
-            track.setShowLabel( true );
-            track.setLabel( label );
+    public void setShowLabel( int trackId, boolean show )
+    {
+        submit( new SetShowLabel( trackId, show ) );
+    }
 
-            this.updatedTracks.add( track );
-            this.newData = true;
-        }
-        finally
-        {
-            this.trackUpdateLock.unlock( );
-        }
+    /**
+     * Limits the number of points retained by a track. Once a track holds more than
+     * {@code maxPoints} points, its oldest points are discarded (from the track and from
+     * the spatial index). The device buffer for the track is allocated once and reused
+     * as a ring buffer, so only newly added points are uploaded each frame.
+     *
+     * Points are discarded in batches, so a track may hold as few as
+     * {@code maxPoints - maxPoints / HISTORY_EVICTION_DIVISOR} points after an eviction.
+     *
+     * @param maxPoints the maximum number of points to retain, or zero for unlimited history
+     */
+    public void setMaxHistory( int trackId, int maxPoints )
+    {
+        submit( new SetMaxHistory( trackId, maxPoints ) );
     }
 
-    public void setShowLabel( int trackId, boolean show )
+    /**
+     * Sets the maximum history for all current tracks and for tracks created in the future.
+     *
+     * @see #setMaxHistory(int, int)
+     */
+    public void setMaxHistory( int maxPoints )
     {
-        this.trackUpdateLock.lock( );
-        try
-        {
-            Track track = getOrCreateTrack( trackId );
-
-            track.setShowLabel( show );
-
-            this.updatedTracks.add( track );
-            this.newData = true;
-        }
-        finally
-        {
-            this.trackUpdateLock.unlock( );
-        }
+        submit( new SetDefaultMaxHistory( maxPoints ) );
     }
 
     public void displayTimeRange( int trackId, double startTime, double endTime )
@@ -608,45 +453,12 @@ public class TrackPainter extends GlimpseDataPainter2D
 
     public void displayTimeRange( int trackId, long startTime, long endTime )
     {
-        Point startPoint = getStartPoint( startTime );
-        Point endPoint = getEndPoint( endTime );
-
-        this.trackUpdateLock.lock( );
-        try
-        {
-            Track track = getOrCreateTrack( trackId );
-
-            track.setTimeRange( startPoint, endPoint );
-
-            this.updatedTracks.add( track );
-            this.newData = true;
-        }
-        finally
-        {
-            this.trackUpdateLock.unlock( );
-        }
+        submit( new DisplayTrackTimeRange( trackId, getStartPoint( startTime ), getEndPoint( endTime ) ) );
     }
 
     public void displayTimeRange( long startTime, long endTime )
     {
-        startTimeRange = getStartPoint( startTime );
-        endTimeRange = getEndPoint( endTime );
-
-        this.trackUpdateLock.lock( );
-        try
-        {
-            for ( Track track : tracks.values( ) )
-            {
-                track.setTimeRange( startTimeRange, endTimeRange );
-            }
-
-            this.updatedTracks.addAll( tracks.values( ) );
-            this.newData = true;
-        }
-        finally
-        {
-            this.trackUpdateLock.unlock( );
-        }
+        submit( new DisplayTimeRange( getStartPoint( startTime ), getEndPoint( endTime ) ) );
     }
 
     /**
@@ -656,15 +468,8 @@ public class TrackPainter extends GlimpseDataPainter2D
     {
         if ( spatialIndex != null )
         {
-            this.trackUpdateLock.lock( );
-            try
-            {
-                return spatialIndex.search( ( float ) minX, ( float ) maxX, ( float ) minY, ( float ) maxY );
-            }
-            finally
-            {
-                this.trackUpdateLock.unlock( );
-            }
+            // searches a snapshot of the index, so never waits on threads adding points
+            return spatialIndex.search( ( float ) minX, ( float ) maxX, ( float ) minY, ( float ) maxY );
         }
         else
         {
@@ -684,15 +489,9 @@ public class TrackPainter extends GlimpseDataPainter2D
     {
         if ( spatialIndex != null )
         {
-            this.trackUpdateLock.lock( );
-            try
-            {
-                return filter( spatialIndex.search( ( float ) minX, ( float ) maxX, ( float ) minY, ( float ) maxY ), minTime, maxTime );
-            }
-            finally
-            {
-                this.trackUpdateLock.unlock( );
-            }
+            // the index only visits time slices overlapping the window, and never waits on threads adding points
+            if ( minTime == Long.MAX_VALUE ) return Collections.emptyList( );
+            return spatialIndex.search( minTime + 1, maxTime, ( float ) minX, ( float ) maxX, ( float ) minY, ( float ) maxY );
         }
         else
         {
@@ -708,10 +507,40 @@ public class TrackPainter extends GlimpseDataPainter2D
     {
         if ( spatialIndex != null )
         {
+            long minTime = Long.MAX_VALUE;
+            long maxTime = Long.MIN_VALUE;
+
+            this.trackUpdateLock.lock( );
+            try
+            {
+                for ( Track track : tracks.values( ) )
+                {
+                    if ( track.selectionStart == null || track.selectionEnd == null )
+                    {
+                        minTime = Long.MIN_VALUE;
+                        maxTime = Long.MAX_VALUE;
+                        break;
+                    }
+
+                    minTime = Math.min( minTime, track.selectionStart.getTime( ) );
+                    maxTime = Math.max( maxTime, track.selectionEnd.getTime( ) );
+                }
+            }
+            finally
+            {
+                this.trackUpdateLock.unlock( );
+            }
+
+            if ( minTime > maxTime ) return Collections.emptyList( );
+
+            // search outside the lock, limited to the union of the track selections;
+            // only the exact per-track selection check needs the lock
+            Collection<Point> points = spatialIndex.search( minTime, maxTime, ( float ) minX, ( float ) maxX, ( float ) minY, ( float ) maxY );
+
             this.trackUpdateLock.lock( );
             try
             {
-                return filter( spatialIndex.search( ( float ) minX, ( float ) maxX, ( float ) minY, ( float ) maxY ) );
+                return filter( points );
             }
             finally
             {
@@ -724,6 +553,30 @@ public class TrackPainter extends GlimpseDataPainter2D
         }
     }
 
+    /**
+     * @return the number of draw calls issued during the most recent call to paintTo
+     */
+    public int getDrawCallCount( )
+    {
+        return drawCallCount;
+    }
+
+    /**
+     * @return the number of bytes of vertex data copied to the device during the most recent call to paintTo
+     */
+    public long getUploadedBytes( )
+    {
+        return uploadedBytes;
+    }
+
+    /**
+     * @return the number of device buffers used to hold the vertices of all tracks
+     */
+    public int getVertexBufferCount( )
+    {
+        return vertexArena.getPageCount( );
+    }
+
     /**
      * Reclaims direct host memory used to move track vertices between the host and device.
      * By default, this memory is never reclaimed because it is slow to allocate. However,
@@ -796,20 +649,132 @@ public class TrackPainter extends GlimpseDataPainter2D
     }
 
     protected void addPoint( int trackId, Point point )
+    {
+        submit( new AddPoints( trackId, point ) );
+    }
+
+    // applies the command immediately or queues it for the display thread
+    protected void submit( TrackCommand command )
+    {
+        if ( this.queueUpdates )
+        {
+            this.updateQueue.add( command );
+
+            // if queueing was turned off while the command was being added, it may have
+            // missed the final drain, so apply it now rather than at the next repaint
+            if ( !this.queueUpdates ) applyQueuedCommandsNow( );
+        }
+        else
+        {
+            this.trackUpdateLock.lock( );
+            if ( this.spatialIndex != null ) this.spatialIndex.startBatch( );
+            try
+            {
+                // commands queued by callers which saw queueing still enabled come first
+                applyQueuedCommands( );
+                command.apply( );
+            }
+            finally
+            {
+                if ( this.spatialIndex != null ) this.spatialIndex.endBatch( );
+                this.trackUpdateLock.unlock( );
+            }
+        }
+
+        markDirty( );
+    }
+
+    protected void applyQueuedCommandsNow( )
     {
         this.trackUpdateLock.lock( );
         try
         {
-            Track track = getOrCreateTrack( trackId );
+            applyQueuedCommands( );
+        }
+        finally
+        {
+            this.trackUpdateLock.unlock( );
+        }
+    }
+
+    // must be called while holding trackUpdateLock
+    protected void applyQueuedCommands( )
+    {
+        if ( this.updateQueue.isEmpty( ) ) return;
+
+        this.updateQueue.drain( this.drainedCommands );
 
-            track.add( point );
+        // readers of the spatial index see the whole drained batch at once
+        if ( this.spatialIndex != null ) this.spatialIndex.startBatch( );
+        try
+        {
+            for ( TrackCommand command : this.drainedCommands )
+            {
+                if ( command instanceof AddPoints )
+                {
+                    // batch up consecutive points for each track so they can be merged in at once
+                    ( ( AddPoints ) command ).addTo( getPendingPoints( command.trackId ) );
+                }
+                else
+                {
+                    if ( command.isStructural( ) ) flushPendingPoints( command.trackId );
+                    command.apply( );
+                }
+            }
 
-            this.updatedTracks.add( track );
-            this.newData = true;
+            flushPendingPoints( ALL_TRACKS );
         }
         finally
         {
-            this.trackUpdateLock.unlock( );
+            this.drainedCommands.clear( );
+            if ( this.spatialIndex != null ) this.spatialIndex.endBatch( );
+        }
+    }
+
+    // must be called while holding trackUpdateLock
+    protected List<Point> getPendingPoints( int trackId )
+    {
+        List<Point> points = this.pendingPoints.get( trackId );
+
+        if ( points == null )
+        {
+            points = new ArrayList<Point>( );
+            this.pendingPoints.put( trackId, points );
+        }
+
+        return points;
+    }
+
+    // must be called while holding trackUpdateLock
+    protected void flushPendingPoints( int trackId )
+    {
+        if ( this.pendingPoints.isEmpty( ) ) return;
+
+        if ( trackId == ALL_TRACKS )
+        {
+            for ( Map.Entry<Integer, List<Point>> entry : this.pendingPoints.entrySet( ) )
+            {
+                new AddPoints( entry.getKey( ), entry.getValue( ) ).apply( );
+            }
+
+            this.pendingPoints.clear( );
+        }
+        else
+        {
+            List<Point> points = this.pendingPoints.remove( trackId );
+
+            if ( points != null ) new AddPoints( trackId, points ).apply( );
+        }
+    }
+
+    // must be called while holding trackUpdateLock
+    protected void removeFromSpatialIndex( Track track )
+    {
+        if ( this.spatialIndex == null ) return;
+
+        for ( int i = 0; i < track.getSize( ); i++ )
+        {
+            this.spatialIndex.remove( track.getPoint( i ) );
         }
     }
 
@@ -822,6 +787,7 @@ public class TrackPainter extends GlimpseDataPainter2D
         {
             track = new Track( trackId );
             track.setTimeRange( startTimeRange, endTimeRange );
+            track.setMaxHistory( maxHistory );
             this.tracks.put( trackId, track );
         }
 
@@ -864,11 +830,17 @@ public class TrackPainter extends GlimpseDataPainter2D
         int width = bounds.getWidth( );
         int height = bounds.getHeight( );
 
-        if ( this.newData )
+        vertexArena.resetCounters( );
+        drawCallCount = 0;
+
+        if ( this.newData || !this.updateQueue.isEmpty( ) )
         {
             this.trackUpdateLock.lock( );
             try
             {
+                // apply any updates submitted while queued updates are enabled
+                applyQueuedCommands( );
+
                 // loop through all tracks with new posits
                 for ( Track track : updatedTracks )
                 {
@@ -877,7 +849,7 @@ public class TrackPainter extends GlimpseDataPainter2D
                     if ( track.isDeletePending( ) || track.isClearPending( ) )
                     {
                         LoadedTrack loaded = getOrCreateLoadedTrack( id, track );
-                        loaded.dispose( gl );
+                        loaded.dispose( gl, vertexArena );
                         loadedTracks.remove( id );
 
                         // If the track was deleted then recreated in between calls to display0(),
@@ -892,60 +864,21 @@ public class TrackPainter extends GlimpseDataPainter2D
                     LoadedTrack loaded = getOrCreateLoadedTrack( id, track );
                     loaded.loadSettings( track );
 
-                    int trackSize = track.getSize( );
+                    // the track must be moved to a new region when switching to or from a ring buffer
+                    if ( track.isHistoryChanged( ) )
+                    {
+                        loaded.dispose( gl, vertexArena );
+                    }
 
                     if ( track.isDataInserted( ) )
                     {
-                        if ( !loaded.glBufferInitialized || loaded.glBufferMaxSize < trackSize )
+                        if ( track.isHistoryLimited( ) )
                         {
-                            // if the track doesn't have a gl buffer or it is too small we must
-                            // copy all the track's data into a new, larger buffer
-
-                            // if this is the first time we have allocated memory for this track
-                            // don't allocate any extra, it may never get added to
-                            // however, once a track has been updated once, we assume it is likely
-                            // to be updated again and give it extra memory
-                            if ( loaded.glBufferInitialized )
-                            {
-                                gl.glDeleteBuffers( 1, new int[] { loaded.glBufferHandle }, 0 );
-                                loaded.glBufferMaxSize = Math.max( ( int ) ( loaded.glBufferMaxSize * 1.5 ), trackSize );
-                            }
-                            else
-                            {
-                                loaded.glBufferMaxSize = trackSize;
-                            }
-
-                            // copy all the track data into a host buffer
-                            ensureDataBufferSize( loaded.glBufferMaxSize );
-                            dataBuffer.rewind( );
-                            track.loadIntoBuffer( dataBuffer, 0, trackSize );
-
-                            // create a new device buffer handle
-                            int[] bufferHandle = new int[1];
-                            gl.glGenBuffers( 1, bufferHandle, 0 );
-                            loaded.glBufferHandle = bufferHandle[0];
-
-                            loaded.glBufferInitialized = true;
-
-                            // copy data from the host buffer into the device buffer
-                            gl.glBindBuffer( GL.GL_ARRAY_BUFFER, loaded.glBufferHandle );
-                            gl.glBufferData( GL.GL_ARRAY_BUFFER, loaded.glBufferMaxSize * 2 * BYTES_PER_FLOAT, dataBuffer.rewind( ), GL.GL_DYNAMIC_DRAW );
+                            loadRingBuffer( gl, track, loaded );
                         }
                         else
                         {
-                            // there is enough empty space in the device buffer to accommodate all the new data
-
-                            int insertOffset = track.getInsertOffset( );
-                            int insertCount = track.getInsertCount( );
-
-                            // copy all the new track data into a host buffer
-                            ensureDataBufferSize( insertCount );
-                            dataBuffer.rewind( );
-                            track.loadIntoBuffer( dataBuffer, insertOffset, trackSize );
-
-                            // update the device buffer with the new data
-                            gl.glBindBuffer( GL.GL_ARRAY_BUFFER, loaded.glBufferHandle );
-                            gl.glBufferSubData( GL.GL_ARRAY_BUFFER, insertOffset * 2 * BYTES_PER_FLOAT, insertCount * 2 * BYTES_PER_FLOAT, dataBuffer.rewind( ) );
+                            loadBuffer( gl, track, loaded );
                         }
                     }
 
@@ -954,6 +887,7 @@ public class TrackPainter extends GlimpseDataPainter2D
 
                 this.updatedTracks.clear( );
                 this.newData = false;
+                this.drawBatchesDirty = true;
             }
             finally
             {
@@ -963,145 +897,852 @@ public class TrackPainter extends GlimpseDataPainter2D
             glHandleError( gl );
         }
 
+        uploadedBytes = vertexArena.getUploadedBytes( );
+
         if ( loadedTracks.isEmpty( ) ) return;
 
-        gl.glEnableClientState( GL.GL_VERTEX_ARRAY );
+        // track styles and selected time ranges only change when new data is loaded
+        if ( drawBatchesDirty )
+        {
+            rebuildDrawBatches( );
+            drawBatchesDirty = false;
+        }
 
-        boolean labelOn = false;
+        gl.glEnableClientState( GL.GL_VERTEX_ARRAY );
 
-        for ( LoadedTrack loaded : loadedTracks.values( ) )
+        // batches are sorted by device buffer, so each buffer is bound only once
+        int boundHandle = -1;
+        for ( DrawBatch batch : drawBatches )
         {
-            if ( !loaded.glBufferInitialized ) continue;
+            // a batch can end up with no ranges when its tracks have nothing selected
+            if ( batch.firsts.n == 0 ) continue;
 
-            int glOffset = loaded.glSelectedOffset;
-            int glSize = loaded.glSelectedSize;
+            int handle = batch.page.getBufferHandle( );
+            if ( handle != boundHandle )
+            {
+                gl.glBindBuffer( GL.GL_ARRAY_BUFFER, handle );
+                gl.glVertexPointer( 2, GL.GL_FLOAT, 0, 0 );
+                boundHandle = handle;
+            }
 
-            gl.glBindBuffer( GL.GL_ARRAY_BUFFER, loaded.glBufferHandle );
-            gl.glVertexPointer( 2, GL.GL_FLOAT, 0, 0 );
+            batch.draw( gl );
+            drawCallCount++;
+        }
 
-            if ( loaded.linesOn )
-            {
-                gl.glColor4fv( loaded.lineColor, 0 );
-                gl.glLineWidth( loaded.lineWidth );
+        for ( HeadPointBatch batch : headPointBatches )
+        {
+            batch.draw( gl );
+            drawCallCount++;
+        }
+
+        // don't bother iterating through all the tracks again if none have labels turned on
+        if ( labelsOn )
+        {
+            // all labels and leader lines go into one batch, drawn with one call for the
+            // lines and one for the text, instead of a color change and draw per track
+            labelRenderer.begin( width, height );
 
-                if ( loaded.stippleOn )
+            for ( LoadedTrack loaded : loadedTracks.values( ) )
+            {
+                if ( loaded.labelOn && loaded.label != null )
                 {
-                    gl.glEnable( GL.GL_LINE_STIPPLE );
-                    gl.glLineStipple( loaded.stippleFactor, loaded.stipplePattern );
-                }
+                    int posX = axis.getAxisX( ).valueToScreenPixel( loaded.headPosX );
+                    int posY = axis.getAxisY( ).valueToScreenPixel( loaded.headPosY );
 
-                gl.glEnable( GL.GL_LINE_SMOOTH );
-                gl.glDrawArrays( GL.GL_LINE_STRIP, glOffset, glSize );
-                gl.glDisable( GL.GL_LINE_SMOOTH );
+                    int labelX = posX + TRACK_LABEL_OFFSET_X;
+                    int labelY = posY + TRACK_LABEL_OFFSET_Y;
+                    labelRenderer.addText( loaded.label, labelX, labelY, loaded.labelColorRgba );
 
-                if ( loaded.stippleOn )
-                {
-                    gl.glDisable( GL.GL_LINE_STIPPLE );
+                    if ( loaded.labelLineOn )
+                    {
+                        float[] c = loaded.labelLineColor;
+                        labelRenderer.addLine( posX, posY, labelX, labelY, c[0], c[1], c[2], 1.0f );
+                    }
                 }
             }
 
-            if ( loaded.pointsOn )
+            drawCallCount += labelRenderer.end( gl );
+        }
+    }
+
+    // copies the points added to a track into its region of the vertex arena
+    // must be called while holding trackUpdateLock
+    protected void loadBuffer( GL gl, Track track, LoadedTrack loaded )
+    {
+        int trackSize = track.getSize( );
+        int insertOffset = track.getInsertOffset( );
+        if ( trackSize == 0 ) return;
+
+        if ( loaded.region == null )
+        {
+            // if this is the first time we have allocated memory for this track
+            // don't allocate any extra, it may never get added to
+            loaded.region = vertexArena.allocate( gl, trackSize );
+            insertOffset = 0;
+        }
+        else if ( loaded.region.getCapacity( ) < trackSize )
+        {
+            // once a track has been updated once, we assume it is likely
+            // to be updated again and give it extra memory
+            int capacity = Math.max( ( int ) ( loaded.region.getCapacity( ) * 1.5 ), trackSize );
+
+            // grow the region in place if possible, otherwise move the
+            // track and copy all its data into the new region
+            if ( !vertexArena.extend( loaded.region, capacity ) )
             {
-                gl.glColor4fv( loaded.pointColor, 0 );
-                gl.glPointSize( loaded.pointSize );
-                gl.glEnable( GL.GL_POINT_SMOOTH );
-                gl.glDrawArrays( GL.GL_POINTS, glOffset, glSize );
-                gl.glDisable( GL.GL_POINT_SMOOTH );
+                vertexArena.free( gl, loaded.region );
+                loaded.region = vertexArena.allocate( gl, capacity );
+                insertOffset = 0;
             }
+        }
+
+        int insertCount = trackSize - insertOffset;
+        if ( insertCount <= 0 ) return;
+
+        // copy the new track data into a host buffer
+        ensureDataBufferSize( insertCount );
+        dataBuffer.rewind( );
+        track.loadIntoBuffer( dataBuffer, insertOffset, trackSize );
+
+        // update the device buffer with the new data
+        vertexArena.upload( gl, loaded.region, insertOffset, insertCount, dataBuffer.rewind( ) );
+    }
+
+    // copies the points added to a track with limited history into its ring buffer
+    // must be called while holding trackUpdateLock
+    protected void loadRingBuffer( GL gl, Track track, LoadedTrack loaded )
+    {
+        int capacity = track.maxHistory;
+        int insertOffset = track.getInsertOffset( );
+
+        if ( loaded.region == null )
+        {
+            // one extra vertex at the end of the region mirrors the first vertex,
+            // allowing line strips which wrap around the end of the ring to be connected
+            loaded.region = vertexArena.allocate( gl, capacity + 1 );
+            loaded.glRingCapacity = capacity;
+            loaded.glRingBase = 0;
+
+            insertOffset = 0;
+        }
+        else
+        {
+            // evicted points free up their slots, moving the start of the ring forward
+            loaded.glRingBase = ( loaded.glRingBase + track.getEvictedCount( ) ) % capacity;
+        }
+
+        int trackSize = track.getSize( );
+        int insertCount = trackSize - insertOffset;
+        if ( insertCount <= 0 ) return;
+
+        // copy the new track data into a host buffer
+        ensureDataBufferSize( insertCount );
+        dataBuffer.rewind( );
+        track.loadIntoBuffer( dataBuffer, insertOffset, trackSize );
+
+        // the new data may wrap around the end of the ring, requiring two copies
+        int slot = ( loaded.glRingBase + insertOffset ) % capacity;
+        int firstCount = Math.min( insertCount, capacity - slot );
+        int secondCount = insertCount - firstCount;
+
+        vertexArena.upload( gl, loaded.region, slot, firstCount, dataBuffer.position( 0 ) );
+
+        if ( secondCount > 0 )
+        {
+            vertexArena.upload( gl, loaded.region, 0, secondCount, dataBuffer.position( firstCount * 2 ) );
+        }
+
+        // keep the mirror of the first slot up to date
+        if ( slot == 0 || secondCount > 0 )
+        {
+            int mirrorIndex = slot == 0 ? 0 : firstCount;
+            vertexArena.upload( gl, loaded.region, capacity, 1, dataBuffer.position( mirrorIndex * 2 ) );
+        }
+
+        dataBuffer.rewind( );
+    }
+
+    // groups the visible tracks by device buffer and display style so that
+    // all the tracks in a group can be drawn with a single call
+    protected void rebuildDrawBatches( )
+    {
+        Map<DrawStyle, DrawBatch> batches = new HashMap<DrawStyle, DrawBatch>( );
+        Map<DrawStyle, HeadPointBatch> headBatches = new HashMap<DrawStyle, HeadPointBatch>( );
+
+        labelsOn = false;
+
+        for ( LoadedTrack loaded : loadedTracks.values( ) )
+        {
+            if ( loaded.labelOn ) labelsOn = true;
 
             if ( loaded.headPointOn )
             {
-                gl.glColor4fv( loaded.headPointColor, 0 );
-                gl.glPointSize( loaded.headPointSize );
-                gl.glEnable( GL.GL_POINT_SMOOTH );
-                gl.glBegin( GL.GL_POINTS );
-                try
-                {
-                    gl.glVertex2d( loaded.headPosX, loaded.headPosY );
-                }
-                finally
+                DrawStyle style = new DrawStyle( null, GL.GL_POINTS, loaded.headPointColor, loaded.headPointSize );
+                HeadPointBatch batch = headBatches.get( style );
+                if ( batch == null )
                 {
-                    gl.glEnd( );
+                    batch = new HeadPointBatch( style );
+                    headBatches.put( style, batch );
                 }
-                gl.glDisable( GL.GL_POINT_SMOOTH );
+
+                batch.tracks.add( loaded );
             }
 
-            if ( loaded.labelOn ) labelOn = true;
+            if ( loaded.region == null || loaded.glSelectedSize <= 0 ) continue;
+
+            GLVertexArena.Page page = loaded.region.getPage( );
+
+            if ( loaded.linesOn )
+            {
+                DrawStyle style = new DrawStyle( page, GL.GL_LINE_STRIP, loaded.lineColor, loaded.lineWidth );
+                if ( loaded.stippleOn ) style.setStipple( loaded.stippleFactor, loaded.stipplePattern );
+                addSelected( loaded, getDrawBatch( batches, style ), true );
+            }
+
+            if ( loaded.pointsOn )
+            {
+                DrawStyle style = new DrawStyle( page, GL.GL_POINTS, loaded.pointColor, loaded.pointSize );
+                addSelected( loaded, getDrawBatch( batches, style ), false );
+            }
+        }
+
+        drawBatches.clear( );
+        drawBatches.addAll( batches.values( ) );
+        Collections.sort( drawBatches, DrawBatch.comparator );
+
+        headPointBatches.clear( );
+        headPointBatches.addAll( headBatches.values( ) );
+    }
+
+    protected DrawBatch getDrawBatch( Map<DrawStyle, DrawBatch> batches, DrawStyle style )
+    {
+        DrawBatch batch = batches.get( style );
+        if ( batch == null )
+        {
+            batch = new DrawBatch( style );
+            batches.put( style, batch );
+        }
+
+        return batch;
+    }
+
+    // adds the selected vertices of a track to a batch, splitting them into
+    // two ranges if they wrap around the end of a ring buffer
+    protected void addSelected( LoadedTrack loaded, DrawBatch batch, boolean connect )
+    {
+        int base = loaded.region.getOffset( );
+        int offset = loaded.glSelectedOffset;
+        int size = loaded.glSelectedSize;
+        int capacity = loaded.glRingCapacity;
+
+        if ( capacity <= 0 )
+        {
+            batch.add( base + offset, size );
+            return;
+        }
+
+        int slot = ( loaded.glRingBase + offset ) % capacity;
+        int firstCount = Math.min( size, capacity - slot );
+
+        if ( firstCount == size )
+        {
+            batch.add( base + slot, size );
+        }
+        else
+        {
+            // line strips include the mirrored vertex after the end of the ring,
+            // which connects them to the vertices at the start of the ring
+            batch.add( base + slot, connect ? firstCount + 1 : firstCount );
+            batch.add( base, size - firstCount );
+        }
+    }
+
+    @Override
+    public void dispose( GLContext context )
+    {
+        GL gl = context.getGL( );
+
+        this.trackUpdateLock.lock( );
+        try
+        {
+            for ( LoadedTrack track : loadedTracks.values( ) )
+            {
+                track.dispose( gl, vertexArena );
+            }
+
+            vertexArena.dispose( gl );
+            drawBatches.clear( );
+            headPointBatches.clear( );
+        }
+        finally
+        {
+            this.trackUpdateLock.unlock( );
+        }
+
+        if ( labelRenderer != null )
+        {
+            labelRenderer.dispose( gl );
+            labelRenderer = null;
+        }
+    }
+
+    ////////////////////////////////////////
+    ///// Update Commands              /////
+    ////////////////////////////////////////
+
+    // A single modification to the tracks of this painter. When queued updates are
+    // disabled, commands are applied immediately while holding trackUpdateLock.
+    // Otherwise, they are applied on the gl display() thread (also while holding
+    // trackUpdateLock) when the update queue is drained.
+    protected abstract class TrackCommand implements UpdateQueue.Command
+    {
+        // the track modified by this command, or ALL_TRACKS
+        int trackId;
+        // the type of setting modified by this command, or null if the command should never be coalesced
+        Object coalesceType;
+
+        public TrackCommand( int trackId, Object coalesceType )
+        {
+            this.trackId = trackId;
+            this.coalesceType = coalesceType;
+        }
+
+        @Override
+        public Object getCoalesceKey( )
+        {
+            return coalesceType != null ? new UpdateQueue.Key( trackId, coalesceType ) : null;
+        }
+
+        // true if points queued before this command must be added before it is applied
+        public boolean isStructural( )
+        {
+            return false;
+        }
+
+        // must be called while holding trackUpdateLock
+        public abstract void apply( );
+    }
+
+    // a command which modifies the display settings of a single track
+    private abstract class TrackStyleCommand extends TrackCommand
+    {
+        public TrackStyleCommand( int trackId, Object coalesceType )
+        {
+            super( trackId, coalesceType );
+        }
+
+        @Override
+        public void apply( )
+        {
+            Track track = getOrCreateTrack( trackId );
+
+            apply( track );
+
+            updatedTracks.add( track );
+            newData = true;
+        }
+
+        protected abstract void apply( Track track );
+    }
+
+    private class AddPoints extends TrackCommand
+    {
+        Point point;
+        List<Point> points;
+
+        public AddPoints( int trackId, Point point )
+        {
+            super( trackId, null );
+            this.point = point;
+        }
+
+        public AddPoints( int trackId, List<Point> points )
+        {
+            super( trackId, null );
+            this.points = points;
+        }
+
+        public void addTo( List<Point> batch )
+        {
+            if ( point != null ) batch.add( point );
+            if ( points != null ) batch.addAll( points );
+        }
+
+        @Override
+        public void apply( )
+        {
+            Track track = getOrCreateTrack( trackId );
+
+            if ( point != null ) track.add( point );
+            if ( points != null ) track.add( points );
+
+            updatedTracks.add( track );
+            newData = true;
+        }
+    }
+
+    private class DeleteAll extends TrackCommand
+    {
+        public DeleteAll( )
+        {
+            super( ALL_TRACKS, null );
+        }
+
+        @Override
+        public boolean isStructural( )
+        {
+            return true;
+        }
+
+        @Override
+        public void apply( )
+        {
+            for ( Track track : tracks.values( ) )
+            {
+                track.deletePending = true;
+                track.clearPoints( );
+            }
+
+            if ( spatialIndex != null ) spatialIndex.clear( );
+
+            updatedTracks.addAll( tracks.values( ) );
+            newData = true;
+        }
+    }
+
+    private class DeleteTrack extends TrackCommand
+    {
+        public DeleteTrack( int trackId )
+        {
+            super( trackId, null );
+        }
+
+        @Override
+        public boolean isStructural( )
+        {
+            return true;
+        }
+
+        @Override
+        public void apply( )
+        {
+            Track track = tracks.get( trackId );
+            if ( track == null ) return;
+
+            removeFromSpatialIndex( track );
+
+            track.delete( );
+
+            updatedTracks.add( track );
+            newData = true;
+        }
+    }
+
+    private class ClearTrack extends TrackCommand
+    {
+        public ClearTrack( int trackId )
+        {
+            super( trackId, null );
+        }
+
+        @Override
+        public boolean isStructural( )
+        {
+            return true;
+        }
+
+        @Override
+        public void apply( )
+        {
+            Track track = tracks.get( trackId );
+            if ( track == null ) return;
+
+            removeFromSpatialIndex( track );
+
+            track.clear( );
+
+            updatedTracks.add( track );
+            newData = true;
+        }
+    }
+
+    private class DisplayTrackTimeRange extends TrackStyleCommand
+    {
+        Point startPoint;
+        Point endPoint;
+
+        public DisplayTrackTimeRange( int trackId, Point startPoint, Point endPoint )
+        {
+            super( trackId, DisplayTrackTimeRange.class );
+            this.startPoint = startPoint;
+            this.endPoint = endPoint;
+        }
+
+        @Override
+        protected void apply( Track track )
+        {
+            track.setTimeRange( startPoint, endPoint );
+        }
+    }
+
+    private class DisplayTimeRange extends TrackCommand
+    {
+        Point startPoint;
+        Point endPoint;
+
+        public DisplayTimeRange( Point startPoint, Point endPoint )
+        {
+            super( ALL_TRACKS, DisplayTimeRange.class );
+            this.startPoint = startPoint;
+            this.endPoint = endPoint;
+        }
+
+        @Override
+        public void apply( )
+        {
+            startTimeRange = startPoint;
+            endTimeRange = endPoint;
+
+            for ( Track track : tracks.values( ) )
+            {
+                track.setTimeRange( startTimeRange, endTimeRange );
+            }
+
+            updatedTracks.addAll( tracks.values( ) );
+            newData = true;
+        }
+    }
+
+    private class SetMaxHistory extends TrackStyleCommand
+    {
+        int maxPoints;
+
+        public SetMaxHistory( int trackId, int maxPoints )
+        {
+            super( trackId, SetMaxHistory.class );
+            this.maxPoints = maxPoints;
+        }
+
+        @Override
+        protected void apply( Track track )
+        {
+            track.setMaxHistory( maxPoints );
+        }
+    }
+
+    private class SetDefaultMaxHistory extends TrackCommand
+    {
+        int maxPoints;
+
+        public SetDefaultMaxHistory( int maxPoints )
+        {
+            super( ALL_TRACKS, SetDefaultMaxHistory.class );
+            this.maxPoints = maxPoints;
+        }
+
+        @Override
+        public void apply( )
+        {
+            maxHistory = maxPoints;
+
+            for ( Track track : tracks.values( ) )
+            {
+                track.setMaxHistory( maxHistory );
+            }
+
+            updatedTracks.addAll( tracks.values( ) );
+            newData = true;
+        }
+    }
+
+    private class SetLineColor extends TrackStyleCommand
+    {
+        float r, g, b, a;
+
+        public SetLineColor( int trackId, float r, float g, float b, float a )
+        {
+            super( trackId, SetLineColor.class );
+            this.r = r;
+            this.g = g;
+            this.b = b;
+            this.a = a;
+        }
+
+        @Override
+        protected void apply( Track track )
+        {
+            track.setLineColor( r, g, b, a );
+        }
+    }
+
+    private class SetLineWidth extends TrackStyleCommand
+    {
+        float width;
+
+        public SetLineWidth( int trackId, float width )
+        {
+            super( trackId, SetLineWidth.class );
+            this.width = width;
+        }
+
+        @Override
+        protected void apply( Track track )
+        {
+            track.setLineWidth( width );
+        }
+    }
+
+    private class SetPointColor extends TrackStyleCommand
+    {
+        float r, g, b, a;
+
+        public SetPointColor( int trackId, float r, float g, float b, float a )
+        {
+            super( trackId, SetPointColor.class );
+            this.r = r;
+            this.g = g;
+            this.b = b;
+            this.a = a;
+        }
+
+        @Override
+        protected void apply( Track track )
+        {
+            track.setPointColor( r, g, b, a );
+        }
+    }
+
+    private class SetPointSize extends TrackStyleCommand
+    {
+        float size;
+
+        public SetPointSize( int trackId, float size )
+        {
+            super( trackId, SetPointSize.class );
+            this.size = size;
+        }
+
+        @Override
+        protected void apply( Track track )
+        {
+            track.setPointSize( size );
+        }
+    }
+
+    private class SetShowPoints extends TrackStyleCommand
+    {
+        boolean show;
+
+        public SetShowPoints( int trackId, boolean show )
+        {
+            super( trackId, SetShowPoints.class );
+            this.show = show;
+        }
+
+        @Override
+        protected void apply( Track track )
+        {
+            track.setShowPoints( show );
+        }
+    }
+
+    private class SetHeadPointColor extends TrackStyleCommand
+    {
+        float r, g, b, a;
+
+        public SetHeadPointColor( int trackId, float r, float g, float b, float a )
+        {
+            super( trackId, SetHeadPointColor.class );
+            this.r = r;
+            this.g = g;
+            this.b = b;
+            this.a = a;
+        }
+
+        @Override
+        protected void apply( Track track )
+        {
+            track.setHeadPointColor( r, g, b, a );
+        }
+    }
+
+    private class SetHeadPointSize extends TrackStyleCommand
+    {
+        float size;
+
+        public SetHeadPointSize( int trackId, float size )
+        {
+            super( trackId, SetHeadPointSize.class );
+            this.size = size;
+        }
+
+        @Override
+        protected void apply( Track track )
+        {
+            track.setHeadPointSize( size );
+        }
+    }
+
+    private class SetShowHeadPoint extends TrackStyleCommand
+    {
+        boolean show;
+
+        public SetShowHeadPoint( int trackId, boolean show )
+        {
+            super( trackId, SetShowHeadPoint.class );
+            this.show = show;
+        }
+
+        @Override
+        protected void apply( Track track )
+        {
+            track.setShowHeadPoint( show );
+        }
+    }
+
+    private class SetShowLines extends TrackStyleCommand
+    {
+        boolean show;
+
+        public SetShowLines( int trackId, boolean show )
+        {
+            super( trackId, SetShowLines.class );
+            this.show = show;
+        }
+
+        @Override
+        protected void apply( Track track )
+        {
+            track.setShowLines( show );
+        }
+    }
+
+    private class SetDotted extends TrackStyleCommand
+    {
+        boolean dotted;
+
+        public SetDotted( int trackId, boolean dotted )
+        {
+            super( trackId, SetDotted.class );
+            this.dotted = dotted;
+        }
+
+        @Override
+        protected void apply( Track track )
+        {
+            track.setTrackStipple( dotted );
+        }
+    }
+
+    private class SetDottedPattern extends TrackStyleCommand
+    {
+        int stippleFactor;
+        short stipplePattern;
+
+        public SetDottedPattern( int trackId, int stippleFactor, short stipplePattern )
+        {
+            super( trackId, SetDottedPattern.class );
+            this.stippleFactor = stippleFactor;
+            this.stipplePattern = stipplePattern;
+        }
+
+        @Override
+        protected void apply( Track track )
+        {
+            track.setTrackStipple( true );
+            track.setTrackStipple( stippleFactor, stipplePattern );
+        }
+    }
+
+    private class SetLabelColor extends TrackStyleCommand
+    {
+        float r, g, b, a;
+
+        public SetLabelColor( int trackId, float r, float g, float b, float a )
+        {
+            super( trackId, SetLabelColor.class );
+            this.r = r;
+            this.g = g;
+            this.b = b;
+            this.a = a;
+        }
+
+        @Override
+        protected void apply( Track track )
+        {
+            track.setLabelColor( r, g, b, a );
+        }
+    }
+
+    private class SetLabelLineColor extends TrackStyleCommand
+    {
+        float r, g, b, a;
+
+        public SetLabelLineColor( int trackId, float r, float g, float b, float a )
+        {
+            super( trackId, SetLabelLineColor.class );
+            this.r = r;
+            this.g = g;
+            this.b = b;
+            this.a = a;
         }
 
-        // don't bother iterating through all the tracks again if none have labels turned on
-        if ( labelOn )
+        @Override
+        protected void apply( Track track )
         {
-            fontRenderer.beginRendering( width, height );
-            try
-            {
-                for ( LoadedTrack loaded : loadedTracks.values( ) )
-                {
-                    if ( loaded.labelOn )
-                    {
-                        int posX = axis.getAxisX( ).valueToScreenPixel( loaded.headPosX );
-                        int posY = axis.getAxisY( ).valueToScreenPixel( loaded.headPosY );
-                        fontRenderer.setColor( loaded.labelColor );
-                        fontRenderer.draw( loaded.label, posX + TRACK_LABEL_OFFSET_X, posY + TRACK_LABEL_OFFSET_Y );
-                    }
-                }
-            }
-            finally
-            {
-                fontRenderer.endRendering( );
-            }
+            track.setLabelLineColor( r, g, b, a );
+        }
+    }
 
-            gl.glMatrixMode( GL.GL_PROJECTION );
-            gl.glLoadIdentity( );
-            gl.glOrtho( 0, width, 0, height, -1, 1 );
-            gl.glMatrixMode( GL.GL_MODELVIEW );
-            gl.glLoadIdentity( );
+    private class SetShowLabelLine extends TrackStyleCommand
+    {
+        boolean show;
 
-            for ( LoadedTrack loaded : loadedTracks.values( ) )
-            {
-                if ( loaded.labelOn && loaded.labelLineOn )
-                {
-                    int posX = axis.getAxisX( ).valueToScreenPixel( loaded.headPosX );
-                    int posY = axis.getAxisY( ).valueToScreenPixel( loaded.headPosY );
+        public SetShowLabelLine( int trackId, boolean show )
+        {
+            super( trackId, SetShowLabelLine.class );
+            this.show = show;
+        }
 
-                    gl.glColor3fv( loaded.labelLineColor, 0 );
-                    gl.glBegin( GL.GL_LINES );
-                    try
-                    {
-                        gl.glVertex2i( posX, posY );
-                        gl.glVertex2i( posX + TRACK_LABEL_OFFSET_X, posY + TRACK_LABEL_OFFSET_Y );
-                    }
-                    finally
-                    {
-                        gl.glEnd( );
-                    }
-                }
-            }
+        @Override
+        protected void apply( Track track )
+        {
+            track.setShowLabelLine( show );
         }
     }
 
-    @Override
-    public void dispose( GLContext context )
+    private class SetLabel extends TrackStyleCommand
     {
-        GL gl = context.getGL( );
+        String label;
 
-        this.trackUpdateLock.lock( );
-        try
+        public SetLabel( int trackId, String label )
         {
-            for ( LoadedTrack track : loadedTracks.values( ) )
-            {
-                track.dispose( gl );
-            }
+            super( trackId, SetLabel.class );
+            this.label = label;
         }
-        finally
+
+        @Override
+        protected void apply( Track track )
         {
-            this.trackUpdateLock.unlock( );
+            track.setShowLabel( true );
+            track.setLabel( label );
+        }
+    }
+
+    private class SetShowLabel extends TrackStyleCommand
+    {
+        boolean show;
+
+        public SetShowLabel( int trackId, boolean show )
+        {
+            super( trackId, SetShowLabel.class );
+            this.show = show;
         }
 
-        if ( fontRenderer != null )
+        @Override
+        protected void apply( Track track )
         {
-            fontRenderer.dispose( );
-            fontRenderer = null;
+            track.setShowLabel( show );
         }
     }
 
@@ -1137,6 +1778,7 @@ public class TrackPainter extends GlimpseDataPainter2D
         double headPosX;
         double headPosY;
         Color labelColor;
+        float[] labelColorRgba = new float[4];
 
         float[] labelLineColor = new float[4];
         boolean labelLineOn;
@@ -1145,14 +1787,18 @@ public class TrackPainter extends GlimpseDataPainter2D
         float[] headPointColor = new float[4];
         boolean headPointOn;
 
-        boolean glBufferInitialized = false;
-        // a reference to the device buffer for this track
-        int glBufferHandle;
-        // the maximum allocated size of the device buffer for this track
-        int glBufferMaxSize;
+        // the region of the vertex arena holding the vertices of this track
+        // (null if no device memory has been allocated for the track)
+        GLVertexArena.Region region;
         // the currently used size of the device buffer for this track
         int glBufferCurrentSize;
 
+        // the number of vertices in the ring buffer (zero if the
+        // region is not being used as a ring buffer)
+        int glRingCapacity;
+        // the ring buffer slot holding the first vertex of the track
+        int glRingBase;
+
         // the offset into the device buffer to begin displaying track vertices
         int glSelectedOffset;
         // the number of bytes from the device buffer to display
@@ -1204,6 +1850,7 @@ public class TrackPainter extends GlimpseDataPainter2D
                 this.headPosX = track.headPosX;
                 this.headPosY = track.headPosY;
                 this.labelColor = track.labelColor;
+                this.labelColor.getRGBComponents( this.labelColorRgba );
             }
         }
 
@@ -1232,12 +1879,183 @@ public class TrackPainter extends GlimpseDataPainter2D
             return prime + trackId;
         }
 
-        public void dispose( GL gl )
+        public void dispose( GL gl, GLVertexArena arena )
+        {
+            if ( region != null )
+            {
+                arena.free( gl, region );
+            }
+
+            region = null;
+            glRingCapacity = 0;
+            glRingBase = 0;
+        }
+    }
+
+    // The display attributes shared by a group of tracks drawn together
+    private static class DrawStyle
+    {
+        GLVertexArena.Page page;
+        int mode;
+
+        float[] color;
+        float size;
+
+        boolean stippleOn;
+        int stippleFactor;
+        short stipplePattern;
+
+        public DrawStyle( GLVertexArena.Page page, int mode, float[] color, float size )
+        {
+            this.page = page;
+            this.mode = mode;
+            this.color = color;
+            this.size = size;
+        }
+
+        public void setStipple( int stippleFactor, short stipplePattern )
+        {
+            this.stippleOn = true;
+            this.stippleFactor = stippleFactor;
+            this.stipplePattern = stipplePattern;
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( o == null ) return false;
+            if ( o == this ) return true;
+            if ( o.getClass( ) != this.getClass( ) ) return false;
+            DrawStyle p = ( DrawStyle ) o;
+            return p.page == page && p.mode == mode && Arrays.equals( p.color, color ) && Float.floatToIntBits( p.size ) == Float.floatToIntBits( size ) && p.stippleOn == stippleOn && p.stippleFactor == stippleFactor && p.stipplePattern == stipplePattern;
+        }
+
+        @Override
+        public int hashCode( )
+        {
+            final int prime = 227;
+            int result = 1;
+            result = prime * result + ( page == null ? 0 : page.getBufferHandle( ) );
+            result = prime * result + mode;
+            result = prime * result + Arrays.hashCode( color );
+            result = prime * result + Float.floatToIntBits( size );
+            result = prime * result + ( stippleOn ? 1 : 0 );
+            result = prime * result + stippleFactor;
+            result = prime * result + stipplePattern;
+            return result;
+        }
+    }
+
+    // A group of tracks sharing a device buffer and display style, drawn
+    // with a single glMultiDrawArrays call
+    private static class DrawBatch
+    {
+        // group batches which share a device buffer, so each buffer is bound once,
+        // and within a device buffer draw lines before points
+        static final Comparator<DrawBatch> comparator = new Comparator<DrawBatch>( )
+        {
+            @Override
+            public int compare( DrawBatch o1, DrawBatch o2 )
+            {
+                int handle1 = o1.page.getBufferHandle( );
+                int handle2 = o2.page.getBufferHandle( );
+                if ( handle1 != handle2 ) return handle1 < handle2 ? -1 : 1;
+
+                boolean lines1 = o1.style.mode == GL.GL_LINE_STRIP;
+                boolean lines2 = o2.style.mode == GL.GL_LINE_STRIP;
+                if ( lines1 != lines2 ) return lines1 ? -1 : 1;
+
+                return 0;
+            }
+        };
+
+        DrawStyle style;
+        GLVertexArena.Page page;
+
+        // the first vertex and vertex count of each range to draw
+        IntsArray firsts;
+        IntsArray counts;
+
+        public DrawBatch( DrawStyle style )
+        {
+            this.style = style;
+            this.page = style.page;
+            this.firsts = new IntsArray( );
+            this.counts = new IntsArray( );
+        }
+
+        public void add( int first, int count )
+        {
+            if ( count <= 0 ) return;
+
+            firsts.append( first );
+            counts.append( count );
+        }
+
+        // the device buffer for this batch must already be bound
+        public void draw( GL gl )
+        {
+            if ( style.mode == GL.GL_LINE_STRIP )
+            {
+                gl.glColor4fv( style.color, 0 );
+                gl.glLineWidth( style.size );
+
+                if ( style.stippleOn )
+                {
+                    gl.glEnable( GL.GL_LINE_STIPPLE );
+                    gl.glLineStipple( style.stippleFactor, style.stipplePattern );
+                }
+
+                gl.glEnable( GL.GL_LINE_SMOOTH );
+                gl.glMultiDrawArrays( GL.GL_LINE_STRIP, firsts.a, 0, counts.a, 0, firsts.n );
+                gl.glDisable( GL.GL_LINE_SMOOTH );
+
+                if ( style.stippleOn )
+                {
+                    gl.glDisable( GL.GL_LINE_STIPPLE );
+                }
+            }
+            else
+            {
+                gl.glColor4fv( style.color, 0 );
+                gl.glPointSize( style.size );
+                gl.glEnable( GL.GL_POINT_SMOOTH );
+                gl.glMultiDrawArrays( GL.GL_POINTS, firsts.a, 0, counts.a, 0, firsts.n );
+                gl.glDisable( GL.GL_POINT_SMOOTH );
+            }
+        }
+    }
+
+    // A group of track head points sharing a display style
+    private static class HeadPointBatch
+    {
+        DrawStyle style;
+        List<LoadedTrack> tracks;
+
+        public HeadPointBatch( DrawStyle style )
+        {
+            this.style = style;
+            this.tracks = new ArrayList<LoadedTrack>( );
+        }
+
+        public void draw( GL gl )
         {
-            if ( glBufferInitialized )
+            gl.glColor4fv( style.color, 0 );
+            gl.glPointSize( style.size );
+            gl.glEnable( GL.GL_POINT_SMOOTH );
+            gl.glBegin( GL.GL_POINTS );
+            try
+            {
+                for ( LoadedTrack loaded : tracks )
+                {
+                    gl.glVertex2d( loaded.headPosX, loaded.headPosY );
+                }
+            }
+            finally
             {
-                gl.glDeleteBuffers( 1, new int[] { glBufferHandle }, 0 );
+                gl.glEnd( );
             }
+            gl.glDisable( GL.GL_POINT_SMOOTH );
         }
     }
 
@@ -1248,8 +2066,12 @@ public class TrackPainter extends GlimpseDataPainter2D
     {
         // the unique identifier of the track
         int trackId;
-        // the points making up the track
-        List<Point> points;
+        // the points making up the track, stored as parallel primitive
+        // arrays ordered by time (then point id) rather than as Point objects
+        SortedLongsArray times;
+        IntsArray pointIds;
+        FloatsArray xs;
+        FloatsArray ys;
         // the lowest index of the last change made to the track
         // when the track data is copied to a device buffer, all
         // data from here to the end of the track must be copied
@@ -1261,6 +2083,13 @@ public class TrackPainter extends GlimpseDataPainter2D
         // if true, this track is waiting to be cleared
         boolean clearPending = false;
 
+        // the maximum number of points to retain (zero if unlimited)
+        int maxHistory = 0;
+        // if true, maxHistory has changed since the last display
+        boolean historyChanged = false;
+        // the number of points discarded from the start of the track since the last display
+        int evictedCount = 0;
+
         // the offset into the points list of the first point to display
         int selectedOffset;
         // the number of points in the points list to display
@@ -1298,7 +2127,10 @@ public class TrackPainter extends GlimpseDataPainter2D
         public Track( int trackId )
         {
             this.trackId = trackId;
-            this.points = new ArrayList<Point>( TRACK_SIZE_ESTIMATE );
+            this.times = new SortedLongsArray( new long[TRACK_SIZE_ESTIMATE], 0 );
+            this.pointIds = new IntsArray( new int[TRACK_SIZE_ESTIMATE], 0 );
+            this.xs = new FloatsArray( new float[TRACK_SIZE_ESTIMATE], 0 );
+            this.ys = new FloatsArray( new float[TRACK_SIZE_ESTIMATE], 0 );
         }
 
         public void setTimeRange( Point startPoint, Point endPoint )
@@ -1332,11 +2164,15 @@ public class TrackPainter extends GlimpseDataPainter2D
                 selectedOffset = startIndex;
                 selectedSize = endIndex - startIndex + 1;
 
-                trackHead = points.get( endIndex );
-                headPosX = trackHead.getX( );
-                headPosY = trackHead.getY( );
+                headPosX = xs.a[endIndex];
+                headPosY = ys.a[endIndex];
 
-                if ( !trackHead.equals( previousTrackHead ) ) notifyTemporalSelectionListeners( Collections.singletonMap( trackId, trackHead ) );
+                // only allocate a new head Point when the head actually changes
+                if ( previousTrackHead == null || previousTrackHead.getTime( ) != times.a[endIndex] || previousTrackHead.getPointId( ) != pointIds.a[endIndex] )
+                {
+                    trackHead = getPoint( endIndex );
+                    notifyTemporalSelectionListeners( Collections.singletonMap( trackId, trackHead ) );
+                }
             }
         }
 
@@ -1439,22 +2275,17 @@ public class TrackPainter extends GlimpseDataPainter2D
 
             List<Point> sortedPoints = new ArrayList<Point>( _points );
             Collections.sort( sortedPoints );
-            Point firstPoint = sortedPoints.get( 0 );
 
-            // add the point to the temporal and spatial indexes
-            int index = firstIndexAfter( firstPoint );
+            // all data before index is unchanged by the merge
+            int index = firstIndexAfter( sortedPoints.get( 0 ) );
 
-            if ( index == points.size( ) )
+            if ( index == getSize( ) )
             {
-                points.addAll( index, sortedPoints );
+                append( sortedPoints );
             }
             else
             {
-                for ( Point point : sortedPoints )
-                {
-                    index = firstIndexAfter( firstPoint );
-                    points.add( index, point );
-                }
+                merge( sortedPoints );
             }
 
             if ( spatialIndex != null )
@@ -1463,30 +2294,176 @@ public class TrackPainter extends GlimpseDataPainter2D
                     spatialIndex.add( point );
             }
 
+            // set flag indicating this track contains new data
+            if ( !dataInserted || index < insertIndex )
+            {
+                insertIndex = index;
+                dataInserted = true;
+            }
+
+            // discard old points if the track is too long
+            trimHistory( );
+
             // determine if the new point resides inside the selected time range
             checkTimeRange( );
-
-            // set flag indicating this track contains new data
-            insertIndex = 0;
-            dataInserted = true;
         }
 
         public void add( Point point )
         {
             // add the point to the temporal and spatial indexes
             int index = firstIndexAfter( point );
-            points.add( index, point );
+            times.insert( index, point.getTime( ) );
+            pointIds.insert( index, point.getPointId( ) );
+            xs.insert( index, point.getX( ) );
+            ys.insert( index, point.getY( ) );
             if ( spatialIndex != null ) spatialIndex.add( point );
 
-            // determine if the new point resides inside the selected time range
-            checkTimeRange( );
-
             // set flag indicating this track contains new data
             if ( !dataInserted || index < insertIndex )
             {
                 insertIndex = index;
                 dataInserted = true;
             }
+
+            // discard old points if the track is too long
+            trimHistory( );
+
+            // determine if the new point resides inside the selected time range
+            checkTimeRange( );
+        }
+
+        public void setMaxHistory( int maxPoints )
+        {
+            maxPoints = Math.max( 0, maxPoints );
+            if ( maxPoints == maxHistory ) return;
+
+            maxHistory = maxPoints;
+            historyChanged = true;
+
+            trimHistory( );
+            checkTimeRange( );
+
+            // the device buffer is reallocated, so all the track data must be reloaded
+            if ( getSize( ) > 0 )
+            {
+                insertIndex = 0;
+                dataInserted = true;
+            }
+        }
+
+        public boolean isHistoryLimited( )
+        {
+            return maxHistory > 0;
+        }
+
+        public boolean isHistoryChanged( )
+        {
+            return historyChanged;
+        }
+
+        public int getEvictedCount( )
+        {
+            return evictedCount;
+        }
+
+        // discards the oldest points if the track holds more than maxHistory points
+        protected void trimHistory( )
+        {
+            if ( maxHistory <= 0 ) return;
+
+            int size = getSize( );
+            int excess = size - maxHistory;
+            if ( excess <= 0 ) return;
+
+            int batch = Math.max( 1, maxHistory / HISTORY_EVICTION_DIVISOR );
+            removeOldest( Math.min( size, excess + batch - 1 ) );
+        }
+
+        protected void removeOldest( int count )
+        {
+            if ( spatialIndex != null )
+            {
+                for ( int i = 0; i < count; i++ )
+                {
+                    spatialIndex.remove( getPoint( i ) );
+                }
+            }
+
+            int remaining = getSize( ) - count;
+            System.arraycopy( times.a, count, times.a, 0, remaining );
+            System.arraycopy( pointIds.a, count, pointIds.a, 0, remaining );
+            System.arraycopy( xs.a, count, xs.a, 0, remaining );
+            System.arraycopy( ys.a, count, ys.a, 0, remaining );
+            times.n = remaining;
+            pointIds.n = remaining;
+            xs.n = remaining;
+            ys.n = remaining;
+
+            insertIndex = Math.max( 0, insertIndex - count );
+            evictedCount += count;
+        }
+
+        // appends sortedPoints, all of which fall after the current last point
+        protected void append( List<Point> sortedPoints )
+        {
+            int count = sortedPoints.size( );
+            int offset = getSize( );
+
+            times.prepForAppend( count );
+            pointIds.prepForAppend( count );
+            xs.prepForAppend( count );
+            ys.prepForAppend( count );
+
+            for ( int i = 0; i < count; i++ )
+            {
+                set( offset + i, sortedPoints.get( i ) );
+            }
+        }
+
+        // merges sortedPoints into the existing points in a single pass,
+        // working backward from the end so no temporary arrays are needed
+        protected void merge( List<Point> sortedPoints )
+        {
+            int count = sortedPoints.size( );
+            int i = getSize( ) - 1;
+
+            times.prepForAppend( count );
+            pointIds.prepForAppend( count );
+            xs.prepForAppend( count );
+            ys.prepForAppend( count );
+
+            int j = count - 1;
+            int k = getSize( ) - 1;
+
+            while ( j >= 0 )
+            {
+                Point point = sortedPoints.get( j );
+
+                // new points are placed before existing points which compare equal
+                if ( i >= 0 && compare( i, point.getTime( ), trackId, point.getPointId( ) ) >= 0 )
+                {
+                    times.a[k] = times.a[i];
+                    pointIds.a[k] = pointIds.a[i];
+                    xs.a[k] = xs.a[i];
+                    ys.a[k] = ys.a[i];
+                    i--;
+                }
+                else
+                {
+                    set( k, point );
+                    j--;
+                }
+
+                k--;
+            }
+        }
+
+        protected void set( int index, Point point )
+        {
+            times.a[index] = point.getTime( );
+            pointIds.a[index] = point.getPointId( );
+            xs.a[index] = point.getX( );
+            ys.a[index] = point.getY( );
         }
 
         public void delete( )
@@ -1501,25 +2478,81 @@ public class TrackPainter extends GlimpseDataPainter2D
 
             dataInserted = false;
             trackHead = null;
-            points.clear( );
+            clearPoints( );
 
             checkTimeRange( );
         }
 
+        public void clearPoints( )
+        {
+            times.n = 0;
+            pointIds.n = 0;
+            xs.n = 0;
+            ys.n = 0;
+        }
+
         public int firstIndexAfter( Point point )
         {
-            int index = Collections.binarySearch( points, point );
+            int index = indexOf( point.getTime( ), point.getTrackId( ), point.getPointId( ) );
             if ( index < 0 ) index = - ( index + 1 );
             return index;
         }
 
         public int firstIndexBefore( Point point )
         {
-            int index = Collections.binarySearch( points, point );
+            int index = indexOf( point.getTime( ), point.getTrackId( ), point.getPointId( ) );
             if ( index < 0 ) index = - ( index + 1 ) - 1;
             return index;
         }
 
+        // follows the convention of Collections.binarySearch using the Point.compareTo ordering
+        protected int indexOf( long time, int trackId, int pointId )
+        {
+            // every point with this time lies in [low, high]
+            int low = times.indexAtOrAfter( time );
+            int high = times.indexAfter( time ) - 1;
+
+            if ( trackId < this.trackId ) return - ( low + 1 );
+            if ( trackId > this.trackId ) return - ( high + 2 );
+
+            while ( low <= high )
+            {
+                int mid = ( low + high ) >>> 1;
+                int midId = pointIds.a[mid];
+
+                if ( midId < pointId )
+                {
+                    low = mid + 1;
+                }
+                else if ( midId > pointId )
+                {
+                    high = mid - 1;
+                }
+                else
+                {
+                    return mid;
+                }
+            }
+
+            return - ( low + 1 );
+        }
+
+        // compares the point at index to the given point using the Point.compareTo ordering
+        protected int compare( int index, long time, int trackId, int pointId )
+        {
+            long t = times.a[index];
+            if ( t != time ) return t < time ? -1 : 1;
+            if ( this.trackId != trackId ) return this.trackId < trackId ? -1 : 1;
+            int id = pointIds.a[index];
+            if ( id != pointId ) return id < pointId ? -1 : 1;
+            return 0;
+        }
+
+        public Point getPoint( int index )
+        {
+            return new Point( trackId, pointIds.a[index], xs.a[index], ys.a[index], times.a[index] );
+        }
+
         public boolean isDataInserted( )
         {
             return dataInserted;
@@ -1550,11 +2583,13 @@ public class TrackPainter extends GlimpseDataPainter2D
             dataInserted = false;
             clearPending = false;
             deletePending = false;
+            historyChanged = false;
+            evictedCount = 0;
         }
 
         public int getSize( )
         {
-            return points.size( );
+            return times.n;
         }
 
         public Point getTrackHead( )
@@ -1564,9 +2599,12 @@ public class TrackPainter extends GlimpseDataPainter2D
 
         public void loadIntoBuffer( FloatBuffer buffer, int offset, int size )
         {
+            float[] x = xs.a;
+            float[] y = ys.a;
+
             for ( int i = offset; i < size; i++ )
             {
-                points.get( i ).loadIntoBuffer( buffer );
+                buffer.put( x[i] ).put( y[i] );
             }
         }
 
@@ -0,0 +1,583 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.support.font;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.font.LineMetrics;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.media.opengl.GL;
+
+import com.sun.opengl.util.BufferUtil;
+
+/**
+ * Draws many short strings, each with its own position and color, in a single draw call.
+ * Also collects line segments (such as label leader lines), drawn in one more call.<p>
+ *
+ * Glyphs are rasterized individually, with Java2D, into a shared atlas texture, the first
+ * time each character is used. Each string added to the batch becomes a textured quad per
+ * glyph, with the string's color stored per vertex, so color changes do not break the batch
+ * the way {@link com.sun.opengl.util.j2d.TextRenderer#setColor(Color)} does. Strings and
+ * lines that fall entirely outside the viewport are dropped as they are added.<p>
+ *
+ * Usage follows {@code TextRenderer}: call {@link #begin(int, int)}, add any number of strings
+ * and lines in window pixel coordinates (origin at the lower left), then call {@link #end(GL)}.
+ * Glyphs are laid out one at a time, without kerning or complex shaping, which suits labels
+ * and annotations but not running text.
+ */
+public class BatchedTextRenderer
+{
+    protected static final int initialAtlasSize = 256;
+    protected static final int maxAtlasSize = 2048;
+    protected static final int glyphPadding = 1;
+
+    // x, y, s, t, r, g, b, a
+    protected static final int floatsPerTextVertex = 8;
+    // x, y, r, g, b, a
+    protected static final int floatsPerLineVertex = 6;
+
+    protected final Font font;
+    protected final FontRenderContext frc;
+    protected final float ascent;
+    protected final float descent;
+
+    // glyph atlas: an intensity image, uploaded as an alpha texture
+    protected BufferedImage atlasImage;
+    protected Graphics2D atlasGraphics;
+    protected int atlasWidth;
+    protected int atlasHeight;
+    protected int shelfX;
+    protected int shelfY;
+    protected int shelfHeight;
+    protected int dirtyMinY;
+    protected int dirtyMaxY;
+    protected boolean atlasReallocated;
+    protected int textureHandle;
+
+    protected final Glyph[] asciiGlyphs;
+    protected final Map<Character, Glyph> otherGlyphs;
+
+    // the current batch
+    protected int width;
+    protected int height;
+    protected float[] textVertices;
+    protected int textVertexCount;
+    protected float[] lineVertices;
+    protected int lineVertexCount;
+    protected int textCount;
+    protected int culledCount;
+
+    protected FloatBuffer textBuffer;
+    protected FloatBuffer lineBuffer;
+
+    protected static class Glyph
+    {
+        public float advance;
+
+        // pixel bounds relative to the pen position on the baseline, y down (as in Java2D)
+        public int boundsX;
+        public int boundsY;
+        public int width;
+        public int height;
+
+        // upper-left corner of the glyph in the atlas, or -1 if it did not fit
+        public int atlasX = -1;
+        public int atlasY = -1;
+    }
+
+    public BatchedTextRenderer( Font font )
+    {
+        this( font, false );
+    }
+
+    public BatchedTextRenderer( Font font, boolean antialias )
+    {
+        this.font = font;
+        this.frc = new FontRenderContext( null, antialias, false );
+
+        LineMetrics metrics = font.getLineMetrics( "Mg", frc );
+        this.ascent = metrics.getAscent( );
+        this.descent = metrics.getDescent( );
+
+        this.asciiGlyphs = new Glyph[128];
+        this.otherGlyphs = new HashMap<Character, Glyph>( );
+
+        this.textVertices = new float[1024 * floatsPerTextVertex];
+        this.lineVertices = new float[256 * floatsPerLineVertex];
+
+        allocateAtlas( initialAtlasSize, initialAtlasSize );
+    }
+
+    public Font getFont( )
+    {
+        return font;
+    }
+
+    /**
+     * Starts a new batch, for a viewport of the given size.
+     */
+    public void begin( int width, int height )
+    {
+        this.width = width;
+        this.height = height;
+        this.textVertexCount = 0;
+        this.lineVertexCount = 0;
+        this.textCount = 0;
+        this.culledCount = 0;
+    }
+
+    /**
+     * Adds a string to the batch, with its baseline starting at (x, y).
+     *
+     * @return false if the string was dropped because it falls outside the viewport
+     */
+    public boolean addText( String text, int x, int y, float r, float g, float b, float a )
+    {
+        int n = text.length( );
+
+        // cull against the viewport before touching the glyphs
+        if ( x > width || y - descent > height || y + ascent < 0 || x + getAdvance( text ) < 0 )
+        {
+            culledCount++;
+            return false;
+        }
+
+        ensureTextCapacity( textVertexCount + 4 * n );
+
+        float penX = x;
+        for ( int i = 0; i < n; i++ )
+        {
+            Glyph glyph = getGlyph( text.charAt( i ) );
+
+            if ( glyph.atlasX >= 0 && glyph.width > 0 )
+            {
+                float left = Math.round( penX ) + glyph.boundsX;
+                float right = left + glyph.width;
+                float top = y - glyph.boundsY;
+                float bottom = top - glyph.height;
+
+                float s0 = glyph.atlasX;
+                float s1 = s0 + glyph.width;
+                float t0 = glyph.atlasY;
+                float t1 = t0 + glyph.height;
+
+                putTextVertex( left, bottom, s0, t1, r, g, b, a );
+                putTextVertex( right, bottom, s1, t1, r, g, b, a );
+                putTextVertex( right, top, s1, t0, r, g, b, a );
+                putTextVertex( left, top, s0, t0, r, g, b, a );
+            }
+
+            penX += glyph.advance;
+        }
+
+        textCount++;
+        return true;
+    }
+
+    public boolean addText( String text, int x, int y, float[] color )
+    {
+        return addText( text, x, y, color[0], color[1], color[2], color[3] );
+    }
+
+    /**
+     * Adds a line segment to the batch. Lines are drawn underneath the text.
+     *
+     * @return false if the line was dropped because it falls outside the viewport
+     */
+    public boolean addLine( float x0, float y0, float x1, float y1, float r, float g, float b, float a )
+    {
+        if ( ( x0 < 0 && x1 < 0 ) || ( x0 > width && x1 > width ) || ( y0 < 0 && y1 < 0 ) || ( y0 > height && y1 > height ) )
+        {
+            culledCount++;
+            return false;
+        }
+
+        ensureLineCapacity( lineVertexCount + 2 );
+        putLineVertex( x0, y0, r, g, b, a );
+        putLineVertex( x1, y1, r, g, b, a );
+        return true;
+    }
+
+    public boolean addLine( float x0, float y0, float x1, float y1, float[] color )
+    {
+        return addLine( x0, y0, x1, y1, color[0], color[1], color[2], color[3] );
+    }
+
+    /**
+     * Draws the batch: one call for all the lines, and one for all the glyphs.
+     *
+     * @return the number of draw calls issued (zero, one, or two, depending on which
+     *         parts of the batch are empty)
+     */
+    public int end( GL gl )
+    {
+        if ( textVertexCount == 0 && lineVertexCount == 0 ) return 0;
+
+        int drawCalls = 0;
+
+        gl.glPushAttrib( GL.GL_ENABLE_BIT | GL.GL_TEXTURE_BIT | GL.GL_COLOR_BUFFER_BIT | GL.GL_TRANSFORM_BIT );
+        gl.glPushClientAttrib( ( int ) GL.GL_CLIENT_ALL_ATTRIB_BITS );
+        try
+        {
+            gl.glMatrixMode( GL.GL_TEXTURE );
+            gl.glPushMatrix( );
+            gl.glLoadIdentity( );
+            gl.glScalef( 1.0f / atlasWidth, 1.0f / atlasHeight, 1 );
+
+            gl.glMatrixMode( GL.GL_PROJECTION );
+            gl.glPushMatrix( );
+            gl.glLoadIdentity( );
+            gl.glOrtho( 0, width, 0, height, -1, 1 );
+
+            gl.glMatrixMode( GL.GL_MODELVIEW );
+            gl.glPushMatrix( );
+            gl.glLoadIdentity( );
+
+            gl.glDisable( GL.GL_DEPTH_TEST );
+            gl.glDisable( GL.GL_CULL_FACE );
+            gl.glDisable( GL.GL_LIGHTING );
+            gl.glEnable( GL.GL_BLEND );
+            gl.glBlendFunc( GL.GL_SRC_ALPHA, GL.GL_ONE_MINUS_SRC_ALPHA );
+
+            // vertices come from client memory
+            gl.glBindBuffer( GL.GL_ARRAY_BUFFER, 0 );
+
+            if ( lineVertexCount > 0 )
+            {
+                lineBuffer = fill( lineBuffer, lineVertices, lineVertexCount * floatsPerLineVertex );
+
+                gl.glDisable( GL.GL_TEXTURE_2D );
+                gl.glEnableClientState( GL.GL_VERTEX_ARRAY );
+                gl.glEnableClientState( GL.GL_COLOR_ARRAY );
+                gl.glVertexPointer( 2, GL.GL_FLOAT, floatsPerLineVertex * 4, slice( lineBuffer, 0 ) );
+                gl.glColorPointer( 4, GL.GL_FLOAT, floatsPerLineVertex * 4, slice( lineBuffer, 2 ) );
+                gl.glDrawArrays( GL.GL_LINES, 0, lineVertexCount );
+                drawCalls++;
+            }
+
+            if ( textVertexCount > 0 )
+            {
+                textBuffer = fill( textBuffer, textVertices, textVertexCount * floatsPerTextVertex );
+
+                uploadAtlas( gl );
+
+                gl.glEnable( GL.GL_TEXTURE_2D );
+                gl.glBindTexture( GL.GL_TEXTURE_2D, textureHandle );
+                gl.glTexEnvi( GL.GL_TEXTURE_ENV, GL.GL_TEXTURE_ENV_MODE, GL.GL_MODULATE );
+
+                gl.glEnableClientState( GL.GL_VERTEX_ARRAY );
+                gl.glEnableClientState( GL.GL_TEXTURE_COORD_ARRAY );
+                gl.glEnableClientState( GL.GL_COLOR_ARRAY );
+                gl.glVertexPointer( 2, GL.GL_FLOAT, floatsPerTextVertex * 4, slice( textBuffer, 0 ) );
+                gl.glTexCoordPointer( 2, GL.GL_FLOAT, floatsPerTextVertex * 4, slice( textBuffer, 2 ) );
+                gl.glColorPointer( 4, GL.GL_FLOAT, floatsPerTextVertex * 4, slice( textBuffer, 4 ) );
+                gl.glDrawArrays( GL.GL_QUADS, 0, textVertexCount );
+                drawCalls++;
+            }
+
+            gl.glMatrixMode( GL.GL_MODELVIEW );
+            gl.glPopMatrix( );
+            gl.glMatrixMode( GL.GL_PROJECTION );
+            gl.glPopMatrix( );
+            gl.glMatrixMode( GL.GL_TEXTURE );
+            gl.glPopMatrix( );
+        }
+        finally
+        {
+            gl.glPopClientAttrib( );
+            gl.glPopAttrib( );
+        }
+
+        return drawCalls;
+    }
+
+    /**
+     * @return the bounds of the string, relative to its baseline origin, y down (as in
+     *         {@link com.sun.opengl.util.j2d.TextRenderer#getBounds(String)})
+     */
+    public Rectangle2D getBounds( String text )
+    {
+        return new Rectangle2D.Float( 0, -ascent, getAdvance( text ), ascent + descent );
+    }
+
+    public float getAdvance( String text )
+    {
+        float advance = 0;
+        for ( int i = 0; i < text.length( ); i++ )
+        {
+            advance += getGlyph( text.charAt( i ) ).advance;
+        }
+        return advance;
+    }
+
+    /**
+     * @return the number of strings drawn by the last batch
+     */
+    public int getTextCount( )
+    {
+        return textCount;
+    }
+
+    /**
+     * @return the number of strings and lines dropped from the last batch by viewport culling
+     */
+    public int getCulledCount( )
+    {
+        return culledCount;
+    }
+
+    public void dispose( GL gl )
+    {
+        if ( textureHandle != 0 )
+        {
+            gl.glDeleteTextures( 1, new int[] { textureHandle }, 0 );
+            textureHandle = 0;
+        }
+
+        atlasReallocated = true;
+    }
+
+    protected Glyph getGlyph( char c )
+    {
+        Glyph glyph;
+        if ( c < asciiGlyphs.length )
+        {
+            glyph = asciiGlyphs[c];
+            if ( glyph == null )
+            {
+                glyph = newGlyph( c );
+                asciiGlyphs[c] = glyph;
+            }
+        }
+        else
+        {
+            glyph = otherGlyphs.get( c );
+            if ( glyph == null )
+            {
+                glyph = newGlyph( c );
+                otherGlyphs.put( c, glyph );
+            }
+        }
+        return glyph;
+    }
+
+    protected Glyph newGlyph( char c )
+    {
+        GlyphVector vector = font.createGlyphVector( frc, new char[] { c } );
+        Rectangle bounds = vector.getPixelBounds( frc, 0, 0 );
+
+        Glyph glyph = new Glyph( );
+        glyph.advance = vector.getGlyphMetrics( 0 ).getAdvanceX( );
+        glyph.boundsX = bounds.x;
+        glyph.boundsY = bounds.y;
+        glyph.width = bounds.width;
+        glyph.height = bounds.height;
+
+        if ( glyph.width > 0 && glyph.height > 0 && reserve( glyph ) )
+        {
+            int x = glyph.atlasX - glyph.boundsX;
+            int y = glyph.atlasY - glyph.boundsY;
+            atlasGraphics.drawGlyphVector( vector, x, y );
+
+            dirtyMinY = Math.min( dirtyMinY, glyph.atlasY );
+            dirtyMaxY = Math.max( dirtyMaxY, glyph.atlasY + glyph.height );
+        }
+
+        return glyph;
+    }
+
+    /**
+     * Finds a spot for the glyph in the atlas, using simple shelf packing, and growing
+     * the atlas if necessary.
+     */
+    protected boolean reserve( Glyph glyph )
+    {
+        int w = glyph.width + 2 * glyphPadding;
+        int h = glyph.height + 2 * glyphPadding;
+        if ( w > atlasWidth ) return false;
+
+        if ( shelfX + w > atlasWidth )
+        {
+            shelfY += shelfHeight;
+            shelfX = 0;
+            shelfHeight = 0;
+        }
+
+        while ( shelfY + h > atlasHeight )
+        {
+            if ( atlasHeight >= maxAtlasSize ) return false;
+            allocateAtlas( atlasWidth, 2 * atlasHeight );
+        }
+
+        glyph.atlasX = shelfX + glyphPadding;
+        glyph.atlasY = shelfY + glyphPadding;
+
+        shelfX += w;
+        shelfHeight = Math.max( shelfHeight, h );
+        return true;
+    }
+
+    protected void allocateAtlas( int width, int height )
+    {
+        BufferedImage image = new BufferedImage( width, height, BufferedImage.TYPE_BYTE_GRAY );
+
+        // the atlas only grows taller, so the old rows can be copied straight across
+        if ( atlasImage != null )
+        {
+            byte[] oldData = ( ( DataBufferByte ) atlasImage.getRaster( ).getDataBuffer( ) ).getData( );
+            byte[] newData = ( ( DataBufferByte ) image.getRaster( ).getDataBuffer( ) ).getData( );
+            System.arraycopy( oldData, 0, newData, 0, oldData.length );
+            atlasGraphics.dispose( );
+        }
+
+        Graphics2D graphics = image.createGraphics( );
+        graphics.setColor( Color.WHITE );
+        graphics.setFont( font );
+        graphics.setRenderingHint( RenderingHints.KEY_TEXT_ANTIALIASING, frc.isAntiAliased( ) ? RenderingHints.VALUE_TEXT_ANTIALIAS_ON : RenderingHints.VALUE_TEXT_ANTIALIAS_OFF );
+
+        this.atlasImage = image;
+        this.atlasGraphics = graphics;
+        this.atlasWidth = width;
+        this.atlasHeight = height;
+        this.atlasReallocated = true;
+    }
+
+    protected void uploadAtlas( GL gl )
+    {
+        if ( textureHandle == 0 )
+        {
+            int[] handle = new int[1];
+            gl.glGenTextures( 1, handle, 0 );
+            textureHandle = handle[0];
+            atlasReallocated = true;
+        }
+
+        if ( !atlasReallocated && dirtyMaxY <= dirtyMinY ) return;
+
+        byte[] data = ( ( DataBufferByte ) atlasImage.getRaster( ).getDataBuffer( ) ).getData( );
+
+        gl.glBindTexture( GL.GL_TEXTURE_2D, textureHandle );
+        gl.glPixelStorei( GL.GL_UNPACK_ALIGNMENT, 1 );
+
+        if ( atlasReallocated )
+        {
+            gl.glTexParameteri( GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MIN_FILTER, GL.GL_NEAREST );
+            gl.glTexParameteri( GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MAG_FILTER, GL.GL_NEAREST );
+            gl.glTexParameteri( GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_S, GL.GL_CLAMP_TO_EDGE );
+            gl.glTexParameteri( GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_T, GL.GL_CLAMP_TO_EDGE );
+            gl.glTexImage2D( GL.GL_TEXTURE_2D, 0, GL.GL_ALPHA, atlasWidth, atlasHeight, 0, GL.GL_ALPHA, GL.GL_UNSIGNED_BYTE, toDirect( data, 0, data.length ) );
+        }
+        else
+        {
+            // only the rows touched by new glyphs
+            int offset = dirtyMinY * atlasWidth;
+            int length = ( dirtyMaxY - dirtyMinY ) * atlasWidth;
+            gl.glTexSubImage2D( GL.GL_TEXTURE_2D, 0, 0, dirtyMinY, atlasWidth, dirtyMaxY - dirtyMinY, GL.GL_ALPHA, GL.GL_UNSIGNED_BYTE, toDirect( data, offset, length ) );
+        }
+
+        atlasReallocated = false;
+        dirtyMinY = Integer.MAX_VALUE;
+        dirtyMaxY = Integer.MIN_VALUE;
+    }
+
+    protected void putTextVertex( float x, float y, float s, float t, float r, float g, float b, float a )
+    {
+        int i = textVertexCount * floatsPerTextVertex;
+        textVertices[i] = x;
+        textVertices[i + 1] = y;
+        textVertices[i + 2] = s;
+        textVertices[i + 3] = t;
+        textVertices[i + 4] = r;
+        textVertices[i + 5] = g;
+        textVertices[i + 6] = b;
+        textVertices[i + 7] = a;
+        textVertexCount++;
+    }
+
+    protected void putLineVertex( float x, float y, float r, float g, float b, float a )
+    {
+        int i = lineVertexCount * floatsPerLineVertex;
+        lineVertices[i] = x;
+        lineVertices[i + 1] = y;
+        lineVertices[i + 2] = r;
+        lineVertices[i + 3] = g;
+        lineVertices[i + 4] = b;
+        lineVertices[i + 5] = a;
+        lineVertexCount++;
+    }
+
+    protected void ensureTextCapacity( int vertexCount )
+    {
+        int needed = vertexCount * floatsPerTextVertex;
+        if ( needed > textVertices.length ) textVertices = Arrays.copyOf( textVertices, Math.max( needed, 2 * textVertices.length ) );
+    }
+
+    protected void ensureLineCapacity( int vertexCount )
+    {
+        int needed = vertexCount * floatsPerLineVertex;
+        if ( needed > lineVertices.length ) lineVertices = Arrays.copyOf( lineVertices, Math.max( needed, 2 * lineVertices.length ) );
+    }
+
+    protected static FloatBuffer fill( FloatBuffer buffer, float[] values, int length )
+    {
+        if ( buffer == null || buffer.capacity( ) < length ) buffer = BufferUtil.newFloatBuffer( Math.max( length, values.length ) );
+
+        buffer.clear( );
+        buffer.put( values, 0, length );
+        buffer.flip( );
+        return buffer;
+    }
+
+    protected static FloatBuffer slice( FloatBuffer buffer, int offset )
+    {
+        buffer.position( offset );
+        FloatBuffer slice = buffer.slice( );
+        buffer.position( 0 );
+        return slice;
+    }
+
+    protected static ByteBuffer toDirect( byte[] data, int offset, int length )
+    {
+        ByteBuffer buffer = BufferUtil.newByteBuffer( length );
+        buffer.put( data, offset, length );
+        buffer.rewind( );
+        return buffer;
+    }
+}
@@ -0,0 +1,961 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/*
+ * PORTIONS OF THIS FILE ARE MODIFIED FROM CODE ORIGINALLY AVAILABLE AT:
+ *
+ * https://github.com/mapbox/earcut
+ *
+ * AND AVAILABLE UNDER THE FOLLOWING LICENSE:
+ *
+ * ISC License
+ *
+ * Copyright (c) 2016, Mapbox
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND ISC DISCLAIMS ALL WARRANTIES WITH REGARD TO
+ * THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS.
+ * IN NO EVENT SHALL ISC BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL
+ * DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package com.metsci.glimpse.support.polygon;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import com.metsci.glimpse.support.polygon.Polygon.Loop;
+import com.metsci.glimpse.support.polygon.PolygonTessellator.TessellationException;
+import com.metsci.glimpse.util.primitives.FloatsArray;
+
+/**
+ * A pure Java polygon tessellator based on ear clipping. Unlike {@link PolygonTessellator},
+ * it does not require GLU and holds no state between calls, so a single instance may be used
+ * from many threads at once (see {@link ParallelTessellator}).
+ *
+ * Loops are filled using the odd winding rule: each loop contained in an odd number of other
+ * loops is a hole in the loop immediately containing it. Loops are expected not to cross one
+ * another, although self-intersecting and degenerate loops are tolerated.
+ *
+ * Large loops use a z-order curve index to speed up ear tests, and holes are joined to their
+ * outer loop with bridge edges before clipping.
+ *
+ * The ear clipping, hole bridging, and z-order indexing are a Java port of the earcut library
+ * by Mapbox (https://github.com/mapbox/earcut), used under the ISC license reproduced at the
+ * top of this file. The loop nesting and the odd winding rule are additions for Glimpse.
+ */
+public class EarClippingTessellator
+{
+    // loops with more vertices than this use a z-order index when searching for ears
+    protected static final int HASH_THRESHOLD = 80;
+
+    /**
+     * Tessellates the polygon, passing the resulting triangles to the accumulator as
+     * (x,y) float pairs (three vertices per triangle).
+     *
+     * @return the number of triangles generated
+     */
+    public int tessellate( Polygon poly, VertexAccumulator accumulator ) throws TessellationException
+    {
+        FloatsArray triangles = new FloatsArray( );
+        tessellate( poly, triangles );
+
+        int nVertices = triangles.n / 2;
+        if ( nVertices > 0 ) accumulator.addVertices( triangles.a, nVertices );
+
+        return nVertices / 3;
+    }
+
+    /**
+     * @return the triangles covering the polygon, as (x,y) float pairs (three vertices per triangle)
+     */
+    public float[] tessellate( Polygon poly ) throws TessellationException
+    {
+        FloatsArray triangles = new FloatsArray( );
+        tessellate( poly, triangles );
+        return triangles.copyOf( );
+    }
+
+    /**
+     * Appends the triangles covering the polygon to the provided array.
+     */
+    public void tessellate( Polygon poly, FloatsArray triangles ) throws TessellationException
+    {
+        List<Ring> rings = new ArrayList<Ring>( );
+
+        Iterator<Loop> loops = poly.getIterator( );
+        while ( loops.hasNext( ) )
+        {
+            Ring ring = new Ring( loops.next( ) );
+            if ( Double.isNaN( ring.area ) || Double.isInfinite( ring.area ) ) throw new TessellationException( );
+            if ( ring.size >= 3 ) rings.add( ring );
+        }
+
+        assignParents( rings );
+
+        for ( Ring ring : rings )
+        {
+            // rings nested within an even number of rings are outer boundaries
+            if ( ring.depth % 2 != 0 ) continue;
+
+            List<Ring> holes = new ArrayList<Ring>( );
+            for ( Ring hole : rings )
+            {
+                if ( hole.parent == ring ) holes.add( hole );
+            }
+
+            tessellate( ring, holes, triangles );
+        }
+    }
+
+    // determines the nesting depth of each ring and the ring immediately containing it
+    protected void assignParents( List<Ring> rings )
+    {
+        for ( Ring ring : rings )
+        {
+            double x = ring.loop.getX( 0 );
+            double y = ring.loop.getY( 0 );
+
+            for ( Ring other : rings )
+            {
+                if ( other == ring || !other.contains( x, y ) ) continue;
+
+                ring.depth++;
+
+                // the immediate parent is the smallest containing ring
+                if ( ring.parent == null || other.area < ring.parent.area ) ring.parent = other;
+            }
+        }
+    }
+
+    protected void tessellate( Ring outer, List<Ring> holes, FloatsArray triangles )
+    {
+        Node outerNode = linkedList( outer.loop, 0, true );
+        if ( outerNode == null || outerNode.next == outerNode.prev ) return;
+
+        if ( !holes.isEmpty( ) ) outerNode = eliminateHoles( holes, outer.size, outerNode );
+
+        double minX = 0;
+        double minY = 0;
+        double invSize = 0;
+
+        if ( outer.size > HASH_THRESHOLD )
+        {
+            minX = outer.minX;
+            minY = outer.minY;
+            invSize = Math.max( outer.maxX - outer.minX, outer.maxY - outer.minY );
+            invSize = invSize != 0 ? 32767 / invSize : 0;
+        }
+
+        earcutLinked( outerNode, triangles, minX, minY, invSize, 0 );
+    }
+
+    ////////////////////////////////////////
+    ///// Ear Clipping                 /////
+    ////////////////////////////////////////
+
+    protected void earcutLinked( Node ear, FloatsArray triangles, double minX, double minY, double invSize, int pass )
+    {
+        if ( ear == null ) return;
+
+        // interlink the polygon nodes in z-order
+        if ( pass == 0 && invSize != 0 ) indexCurve( ear, minX, minY, invSize );
+
+        Node stop = ear;
+
+        // iterate through ears, slicing them one by one
+        while ( ear.prev != ear.next )
+        {
+            Node prev = ear.prev;
+            Node next = ear.next;
+
+            if ( invSize != 0 ? isEarHashed( ear, minX, minY, invSize ) : isEar( ear ) )
+            {
+                addTriangle( triangles, prev, ear, next );
+
+                removeNode( ear );
+
+                // skipping the next vertex leads to fewer sliver triangles
+                ear = next.next;
+                stop = next.next;
+
+                continue;
+            }
+
+            ear = next;
+
+            // if we looped through the whole remaining polygon and can't find any more ears
+            if ( ear == stop )
+            {
+                if ( pass == 0 )
+                {
+                    // try filtering points and slicing again
+                    earcutLinked( filterPoints( ear, null ), triangles, minX, minY, invSize, 1 );
+                }
+                else if ( pass == 1 )
+                {
+                    // if this didn't work, try curing all small self-intersections locally
+                    ear = cureLocalIntersections( filterPoints( ear, null ), triangles );
+                    earcutLinked( ear, triangles, minX, minY, invSize, 2 );
+                }
+                else if ( pass == 2 )
+                {
+                    // as a last resort, try splitting the remaining polygon into two
+                    splitEarcut( ear, triangles, minX, minY, invSize );
+                }
+
+                break;
+            }
+        }
+    }
+
+    protected static void addTriangle( FloatsArray triangles, Node a, Node b, Node c )
+    {
+        triangles.prepForAppend( 6 );
+        float[] t = triangles.a;
+        int i = triangles.n - 6;
+        t[i] = ( float ) a.x;
+        t[i + 1] = ( float ) a.y;
+        t[i + 2] = ( float ) b.x;
+        t[i + 3] = ( float ) b.y;
+        t[i + 4] = ( float ) c.x;
+        t[i + 5] = ( float ) c.y;
+    }
+
+    // check whether a polygon node forms a valid ear with adjacent nodes
+    protected static boolean isEar( Node ear )
+    {
+        Node a = ear.prev;
+        Node b = ear;
+        Node c = ear.next;
+
+        // reflex, can't be an ear
+        if ( area( a, b, c ) >= 0 ) return false;
+
+        double x0 = Math.min( a.x, Math.min( b.x, c.x ) );
+        double y0 = Math.min( a.y, Math.min( b.y, c.y ) );
+        double x1 = Math.max( a.x, Math.max( b.x, c.x ) );
+        double y1 = Math.max( a.y, Math.max( b.y, c.y ) );
+
+        // now make sure we don't have other points inside the potential ear
+        Node p = c.next;
+        while ( p != a )
+        {
+            if ( p.x >= x0 && p.x <= x1 && p.y >= y0 && p.y <= y1 && pointInTriangle( a.x, a.y, b.x, b.y, c.x, c.y, p.x, p.y ) && area( p.prev, p, p.next ) >= 0 ) return false;
+            p = p.next;
+        }
+
+        return true;
+    }
+
+    protected static boolean isEarHashed( Node ear, double minX, double minY, double invSize )
+    {
+        Node a = ear.prev;
+        Node b = ear;
+        Node c = ear.next;
+
+        // reflex, can't be an ear
+        if ( area( a, b, c ) >= 0 ) return false;
+
+        double x0 = Math.min( a.x, Math.min( b.x, c.x ) );
+        double y0 = Math.min( a.y, Math.min( b.y, c.y ) );
+        double x1 = Math.max( a.x, Math.max( b.x, c.x ) );
+        double y1 = Math.max( a.y, Math.max( b.y, c.y ) );
+
+        // z-order range for the current triangle bbox
+        int minZ = zOrder( x0, y0, minX, minY, invSize );
+        int maxZ = zOrder( x1, y1, minX, minY, invSize );
+
+        Node p = ear.prevZ;
+        Node n = ear.nextZ;
+
+        // look for points inside the triangle in both directions
+        while ( p != null && p.z >= minZ && n != null && n.z <= maxZ )
+        {
+            if ( blocksEar( p, a, c, x0, y0, x1, y1 ) ) return false;
+            p = p.prevZ;
+
+            if ( blocksEar( n, a, c, x0, y0, x1, y1 ) ) return false;
+            n = n.nextZ;
+        }
+
+        // look for remaining points in decreasing z-order
+        while ( p != null && p.z >= minZ )
+        {
+            if ( blocksEar( p, a, c, x0, y0, x1, y1 ) ) return false;
+            p = p.prevZ;
+        }
+
+        // look for remaining points in increasing z-order
+        while ( n != null && n.z <= maxZ )
+        {
+            if ( blocksEar( n, a, c, x0, y0, x1, y1 ) ) return false;
+            n = n.nextZ;
+        }
+
+        return true;
+    }
+
+    // true if p is a reflex vertex lying inside the triangle (a, a.next, c)
+    protected static boolean blocksEar( Node p, Node a, Node c, double x0, double y0, double x1, double y1 )
+    {
+        Node b = a.next;
+        return p != a && p != c && p.x >= x0 && p.x <= x1 && p.y >= y0 && p.y <= y1 && pointInTriangle( a.x, a.y, b.x, b.y, c.x, c.y, p.x, p.y ) && area( p.prev, p, p.next ) >= 0;
+    }
+
+    // go through all polygon nodes and cure small local self-intersections
+    protected static Node cureLocalIntersections( Node start, FloatsArray triangles )
+    {
+        Node p = start;
+        do
+        {
+            Node a = p.prev;
+            Node b = p.next.next;
+
+            if ( !equals( a, b ) && intersects( a, p, p.next, b ) && locallyInside( a, b ) && locallyInside( b, a ) )
+            {
+                addTriangle( triangles, a, p, b );
+
+                // remove two nodes involved
+                removeNode( p );
+                removeNode( p.next );
+
+                p = start = b;
+            }
+
+            p = p.next;
+        }
+        while ( p != start );
+
+        return filterPoints( p, null );
+    }
+
+    // try splitting the polygon into two and triangulate them independently
+    protected void splitEarcut( Node start, FloatsArray triangles, double minX, double minY, double invSize )
+    {
+        // look for a valid diagonal that divides the polygon into two
+        Node a = start;
+        do
+        {
+            Node b = a.next.next;
+            while ( b != a.prev )
+            {
+                if ( a.i != b.i && isValidDiagonal( a, b ) )
+                {
+                    // split the polygon in two by the diagonal
+                    Node c = splitPolygon( a, b );
+
+                    // filter colinear points around the cuts
+                    a = filterPoints( a, a.next );
+                    c = filterPoints( c, c.next );
+
+                    // run earcut on each half
+                    earcutLinked( a, triangles, minX, minY, invSize, 0 );
+                    earcutLinked( c, triangles, minX, minY, invSize, 0 );
+                    return;
+                }
+
+                b = b.next;
+            }
+
+            a = a.next;
+        }
+        while ( a != start );
+    }
+
+    ////////////////////////////////////////
+    ///// Holes                        /////
+    ////////////////////////////////////////
+
+    // link every hole into the outer loop, producing a single-ring polygon without holes
+    protected static Node eliminateHoles( List<Ring> holes, int indexOffset, Node outerNode )
+    {
+        List<Node> queue = new ArrayList<Node>( holes.size( ) );
+
+        for ( Ring hole : holes )
+        {
+            Node list = linkedList( hole.loop, indexOffset, false );
+            indexOffset += hole.size;
+
+            if ( list == null ) continue;
+            if ( list == list.next ) list.steiner = true;
+            queue.add( getLeftmost( list ) );
+        }
+
+        Collections.sort( queue, new Comparator<Node>( )
+        {
+            @Override
+            public int compare( Node a, Node b )
+            {
+                return Double.compare( a.x, b.x );
+            }
+        } );
+
+        // process holes from left to right
+        for ( Node hole : queue )
+        {
+            outerNode = eliminateHole( hole, outerNode );
+        }
+
+        return outerNode;
+    }
+
+    // find a bridge between vertices that connects hole with an outer ring and link it
+    protected static Node eliminateHole( Node hole, Node outerNode )
+    {
+        Node bridge = findHoleBridge( hole, outerNode );
+        if ( bridge == null ) return outerNode;
+
+        Node bridgeReverse = splitPolygon( bridge, hole );
+
+        // filter collinear points around the cuts
+        filterPoints( bridgeReverse, bridgeReverse.next );
+        return filterPoints( bridge, bridge.next );
+    }
+
+    // David Eberly's algorithm for finding a bridge between hole and outer polygon
+    protected static Node findHoleBridge( Node hole, Node outerNode )
+    {
+        Node p = outerNode;
+        double hx = hole.x;
+        double hy = hole.y;
+        double qx = Double.NEGATIVE_INFINITY;
+        Node m = null;
+
+        // find a segment intersected by a ray from the hole's leftmost point to the left;
+        // segment's endpoint with lesser x will be potential connection point
+        do
+        {
+            if ( hy <= p.y && hy >= p.next.y && p.next.y != p.y )
+            {
+                double x = p.x + ( hy - p.y ) * ( p.next.x - p.x ) / ( p.next.y - p.y );
+                if ( x <= hx && x > qx )
+                {
+                    qx = x;
+                    m = p.x < p.next.x ? p : p.next;
+
+                    // hole touches outer segment, pick leftmost endpoint
+                    if ( x == hx ) return m;
+                }
+            }
+
+            p = p.next;
+        }
+        while ( p != outerNode );
+
+        if ( m == null ) return null;
+
+        // look for points inside the triangle of hole point, segment intersection and endpoint;
+        // if there are no points found, we have a valid connection;
+        // otherwise choose the point of the minimum angle with the ray as connection point
+        Node stop = m;
+        double mx = m.x;
+        double my = m.y;
+        double tanMin = Double.POSITIVE_INFINITY;
+
+        p = m;
+        do
+        {
+            if ( hx >= p.x && p.x >= mx && hx != p.x && pointInTriangle( hy < my ? hx : qx, hy, mx, my, hy < my ? qx : hx, hy, p.x, p.y ) )
+            {
+                double tan = Math.abs( hy - p.y ) / ( hx - p.x );
+
+                if ( locallyInside( p, hole ) && ( tan < tanMin || ( tan == tanMin && ( p.x > m.x || ( p.x == m.x && sectorContainsSector( m, p ) ) ) ) ) )
+                {
+                    m = p;
+                    tanMin = tan;
+                }
+            }
+
+            p = p.next;
+        }
+        while ( p != stop );
+
+        return m;
+    }
+
+    // whether sector in vertex m contains sector in vertex p in the same coordinates
+    protected static boolean sectorContainsSector( Node m, Node p )
+    {
+        return area( m.prev, m, p.prev ) < 0 && area( p.next, m, m.next ) < 0;
+    }
+
+    protected static Node getLeftmost( Node start )
+    {
+        Node p = start;
+        Node leftmost = start;
+        do
+        {
+            if ( p.x < leftmost.x || ( p.x == leftmost.x && p.y < leftmost.y ) ) leftmost = p;
+            p = p.next;
+        }
+        while ( p != start );
+
+        return leftmost;
+    }
+
+    ////////////////////////////////////////
+    ///// Z-Order Index                /////
+    ////////////////////////////////////////
+
+    protected static void indexCurve( Node start, double minX, double minY, double invSize )
+    {
+        Node p = start;
+        do
+        {
+            if ( p.z == 0 ) p.z = zOrder( p.x, p.y, minX, minY, invSize );
+            p.prevZ = p.prev;
+            p.nextZ = p.next;
+            p = p.next;
+        }
+        while ( p != start );
+
+        p.prevZ.nextZ = null;
+        p.prevZ = null;
+
+        sortLinked( p );
+    }
+
+    // Simon Tatham's linked list merge sort algorithm
+    protected static Node sortLinked( Node list )
+    {
+        int inSize = 1;
+        int numMerges;
+
+        do
+        {
+            Node p = list;
+            Node tail = null;
+            list = null;
+            numMerges = 0;
+
+            while ( p != null )
+            {
+                numMerges++;
+
+                Node q = p;
+                int pSize = 0;
+                for ( int i = 0; i < inSize; i++ )
+                {
+                    pSize++;
+                    q = q.nextZ;
+                    if ( q == null ) break;
+                }
+
+                int qSize = inSize;
+
+                while ( pSize > 0 || ( qSize > 0 && q != null ) )
+                {
+                    Node e;
+                    if ( pSize != 0 && ( qSize == 0 || q == null || p.z <= q.z ) )
+                    {
+                        e = p;
+                        p = p.nextZ;
+                        pSize--;
+                    }
+                    else
+                    {
+                        e = q;
+                        q = q.nextZ;
+                        qSize--;
+                    }
+
+                    if ( tail != null ) tail.nextZ = e;
+                    else list = e;
+
+                    e.prevZ = tail;
+                    tail = e;
+                }
+
+                p = q;
+            }
+
+            tail.nextZ = null;
+            inSize *= 2;
+        }
+        while ( numMerges > 1 );
+
+        return list;
+    }
+
+    // z-order of a point given coords and inverse of the longer side of data bbox
+    protected static int zOrder( double px, double py, double minX, double minY, double invSize )
+    {
+        // coords are transformed into non-negative 15-bit integer range
+        int x = ( int ) ( ( px - minX ) * invSize );
+        int y = ( int ) ( ( py - minY ) * invSize );
+
+        x = ( x | ( x << 8 ) ) & 0x00FF00FF;
+        x = ( x | ( x << 4 ) ) & 0x0F0F0F0F;
+        x = ( x | ( x << 2 ) ) & 0x33333333;
+        x = ( x | ( x << 1 ) ) & 0x55555555;
+
+        y = ( y | ( y << 8 ) ) & 0x00FF00FF;
+        y = ( y | ( y << 4 ) ) & 0x0F0F0F0F;
+        y = ( y | ( y << 2 ) ) & 0x33333333;
+        y = ( y | ( y << 1 ) ) & 0x55555555;
+
+        return x | ( y << 1 );
+    }
+
+    ////////////////////////////////////////
+    ///// Geometry Utilities           /////
+    ////////////////////////////////////////
+
+    // check if a point lies within a convex triangle
+    protected static boolean pointInTriangle( double ax, double ay, double bx, double by, double cx, double cy, double px, double py )
+    {
+        return ( cx - px ) * ( ay - py ) >= ( ax - px ) * ( cy - py ) && ( ax - px ) * ( by - py ) >= ( bx - px ) * ( ay - py ) && ( bx - px ) * ( cy - py ) >= ( cx - px ) * ( by - py );
+    }
+
+    // check if a diagonal between two polygon nodes is valid (lies in polygon interior)
+    protected static boolean isValidDiagonal( Node a, Node b )
+    {
+        if ( a.next.i == b.i || a.prev.i == b.i || intersectsPolygon( a, b ) ) return false;
+
+        // locally visible, does not create opposite-facing sectors
+        if ( locallyInside( a, b ) && locallyInside( b, a ) && middleInside( a, b ) && ( area( a.prev, a, b.prev ) != 0 || area( a, b.prev, b ) != 0 ) ) return true;
+
+        // special zero-length case
+        return equals( a, b ) && area( a.prev, a, a.next ) > 0 && area( b.prev, b, b.next ) > 0;
+    }
+
+    // signed area of a triangle
+    protected static double area( Node p, Node q, Node r )
+    {
+        return ( q.y - p.y ) * ( r.x - q.x ) - ( q.x - p.x ) * ( r.y - q.y );
+    }
+
+    protected static boolean equals( Node p1, Node p2 )
+    {
+        return p1.x == p2.x && p1.y == p2.y;
+    }
+
+    // check if two segments intersect
+    protected static boolean intersects( Node p1, Node q1, Node p2, Node q2 )
+    {
+        int o1 = sign( area( p1, q1, p2 ) );
+        int o2 = sign( area( p1, q1, q2 ) );
+        int o3 = sign( area( p2, q2, p1 ) );
+        int o4 = sign( area( p2, q2, q1 ) );
+
+        // general case
+        if ( o1 != o2 && o3 != o4 ) return true;
+
+        // p1, q1 and p2 are collinear and p2 lies on p1q1
+        if ( o1 == 0 && onSegment( p1, p2, q1 ) ) return true;
+        // p1, q1 and q2 are collinear and q2 lies on p1q1
+        if ( o2 == 0 && onSegment( p1, q2, q1 ) ) return true;
+        // p2, q2 and p1 are collinear and p1 lies on p2q2
+        if ( o3 == 0 && onSegment( p2, p1, q2 ) ) return true;
+        // p2, q2 and q1 are collinear and q1 lies on p2q2
+        if ( o4 == 0 && onSegment( p2, q1, q2 ) ) return true;
+
+        return false;
+    }
+
+    // for collinear points p, q, r, check if point q lies on segment pr
+    protected static boolean onSegment( Node p, Node q, Node r )
+    {
+        return q.x <= Math.max( p.x, r.x ) && q.x >= Math.min( p.x, r.x ) && q.y <= Math.max( p.y, r.y ) && q.y >= Math.min( p.y, r.y );
+    }
+
+    protected static int sign( double value )
+    {
+        return value > 0 ? 1 : value < 0 ? -1 : 0;
+    }
+
+    // check if a polygon diagonal intersects any polygon segments
+    protected static boolean intersectsPolygon( Node a, Node b )
+    {
+        Node p = a;
+        do
+        {
+            if ( p.i != a.i && p.next.i != a.i && p.i != b.i && p.next.i != b.i && intersects( p, p.next, a, b ) ) return true;
+            p = p.next;
+        }
+        while ( p != a );
+
+        return false;
+    }
+
+    // check if a polygon diagonal is locally inside the polygon
+    protected static boolean locallyInside( Node a, Node b )
+    {
+        if ( area( a.prev, a, a.next ) < 0 )
+        {
+            return area( a, b, a.next ) >= 0 && area( a, a.prev, b ) >= 0;
+        }
+        else
+        {
+            return area( a, b, a.prev ) < 0 || area( a, a.next, b ) < 0;
+        }
+    }
+
+    // check if the middle point of a polygon diagonal is inside the polygon
+    protected static boolean middleInside( Node a, Node b )
+    {
+        Node p = a;
+        boolean inside = false;
+        double px = ( a.x + b.x ) / 2;
+        double py = ( a.y + b.y ) / 2;
+
+        do
+        {
+            if ( ( ( p.y > py ) != ( p.next.y > py ) ) && p.next.y != p.y && ( px < ( p.next.x - p.x ) * ( py - p.y ) / ( p.next.y - p.y ) + p.x ) ) inside = !inside;
+            p = p.next;
+        }
+        while ( p != a );
+
+        return inside;
+    }
+
+    ////////////////////////////////////////
+    ///// Linked List Utilities        /////
+    ////////////////////////////////////////
+
+    // create a circular doubly linked list from loop points in the specified winding order
+    // node indices start at indexOffset, so that they are unique across the outer loop and its holes
+    protected static Node linkedList( Loop loop, int indexOffset, boolean clockwise )
+    {
+        int size = loop.size( );
+        Node last = null;
+
+        if ( clockwise == ( signedArea( loop ) > 0 ) )
+        {
+            for ( int i = 0; i < size; i++ )
+                last = insertNode( indexOffset + i, loop.getX( i ), loop.getY( i ), last );
+        }
+        else
+        {
+            for ( int i = size - 1; i >= 0; i-- )
+                last = insertNode( indexOffset + i, loop.getX( i ), loop.getY( i ), last );
+        }
+
+        if ( last != null && equals( last, last.next ) )
+        {
+            removeNode( last );
+            last = last.next;
+        }
+
+        return last;
+    }
+
+    // eliminate colinear or duplicate points
+    protected static Node filterPoints( Node start, Node end )
+    {
+        if ( start == null ) return start;
+        if ( end == null ) end = start;
+
+        Node p = start;
+        boolean again;
+        do
+        {
+            again = false;
+
+            if ( !p.steiner && ( equals( p, p.next ) || area( p.prev, p, p.next ) == 0 ) )
+            {
+                removeNode( p );
+                p = end = p.prev;
+                if ( p == p.next ) break;
+                again = true;
+            }
+            else
+            {
+                p = p.next;
+            }
+        }
+        while ( again || p != end );
+
+        return end;
+    }
+
+    // link two polygon vertices with a bridge; if the vertices belong to the same ring, it splits
+    // the polygon into two; if one belongs to the outer ring and another to a hole, it merges it
+    // into a single ring
+    protected static Node splitPolygon( Node a, Node b )
+    {
+        Node a2 = new Node( a.i, a.x, a.y );
+        Node b2 = new Node( b.i, b.x, b.y );
+        Node an = a.next;
+        Node bp = b.prev;
+
+        a.next = b;
+        b.prev = a;
+
+        a2.next = an;
+        an.prev = a2;
+
+        b2.next = a2;
+        a2.prev = b2;
+
+        bp.next = b2;
+        b2.prev = bp;
+
+        return b2;
+    }
+
+    // create a node and optionally link it with previous one (in a circular doubly linked list)
+    protected static Node insertNode( int i, double x, double y, Node last )
+    {
+        Node p = new Node( i, x, y );
+
+        if ( last == null )
+        {
+            p.prev = p;
+            p.next = p;
+        }
+        else
+        {
+            p.next = last.next;
+            p.prev = last;
+            last.next.prev = p;
+            last.next = p;
+        }
+
+        return p;
+    }
+
+    protected static void removeNode( Node p )
+    {
+        p.next.prev = p.prev;
+        p.prev.next = p.next;
+
+        if ( p.prevZ != null ) p.prevZ.nextZ = p.nextZ;
+        if ( p.nextZ != null ) p.nextZ.prevZ = p.prevZ;
+    }
+
+    protected static double signedArea( Loop loop )
+    {
+        int size = loop.size( );
+        double sum = 0;
+        for ( int i = 0, j = size - 1; i < size; j = i++ )
+        {
+            sum += ( loop.getX( j ) - loop.getX( i ) ) * ( loop.getY( i ) + loop.getY( j ) );
+        }
+
+        return sum;
+    }
+
+    ////////////////////////////////////////
+    ///// Internal Data Structures     /////
+    ////////////////////////////////////////
+
+    // a vertex in a circular doubly linked list of polygon vertices
+    protected static class Node
+    {
+        // vertex index (unique within a polygon, shared by bridge copies)
+        int i;
+        double x;
+        double y;
+
+        // previous and next vertex nodes in a polygon ring
+        Node prev;
+        Node next;
+
+        // z-order curve value
+        int z;
+
+        // previous and next nodes in z-order
+        Node prevZ;
+        Node nextZ;
+
+        // indicates whether this is a steiner point
+        boolean steiner;
+
+        public Node( int i, double x, double y )
+        {
+            this.i = i;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    // a loop along with its bounding box and position in the loop nesting hierarchy
+    protected static class Ring
+    {
+        Loop loop;
+        int size;
+
+        double minX;
+        double maxX;
+        double minY;
+        double maxY;
+        double area;
+
+        // the number of other rings containing this ring
+        int depth;
+        // the smallest ring containing this ring
+        Ring parent;
+
+        public Ring( Loop loop )
+        {
+            this.loop = loop;
+            this.size = loop.size( );
+
+            minX = minY = Double.POSITIVE_INFINITY;
+            maxX = maxY = Double.NEGATIVE_INFINITY;
+
+            for ( int i = 0; i < size; i++ )
+            {
+                double x = loop.getX( i );
+                double y = loop.getY( i );
+                if ( x < minX ) minX = x;
+                if ( x > maxX ) maxX = x;
+                if ( y < minY ) minY = y;
+                if ( y > maxY ) maxY = y;
+            }
+
+            area = Math.abs( signedArea( loop ) ) / 2;
+        }
+
+        // even-odd point in polygon test
+        public boolean contains( double x, double y )
+        {
+            if ( x < minX || x > maxX || y < minY || y > maxY ) return false;
+
+            boolean inside = false;
+            for ( int i = 0, j = size - 1; i < size; j = i++ )
+            {
+                double xi = loop.getX( i );
+                double yi = loop.getY( i );
+                double xj = loop.getX( j );
+                double yj = loop.getY( j );
+
+                if ( ( yi > y ) != ( yj > y ) && x < ( xj - xi ) * ( y - yi ) / ( yj - yi ) + xi ) inside = !inside;
+            }
+
+            return inside;
+        }
+    }
+}
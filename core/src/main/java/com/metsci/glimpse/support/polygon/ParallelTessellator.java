@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.support.polygon;
+
+import static com.metsci.glimpse.util.logging.LoggerUtils.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import com.metsci.glimpse.support.polygon.PolygonTessellator.TessellationException;
+
+/**
+ * Tessellates (and optionally simplifies, see {@link SimplifiedPolygon}) large batches of
+ * polygons in parallel using an {@link EarClippingTessellator}. Polygons are divided into
+ * chunks which are handed out to a fixed pool of worker threads.
+ *
+ * The output for each polygon is a plain array of triangle vertices, which may be stored
+ * (in memory or on disk) and passed back to
+ * {@link com.metsci.glimpse.painter.shape.PolygonPainter} later to skip tessellation.
+ */
+public class ParallelTessellator
+{
+    public static final Logger logger = Logger.getLogger( ParallelTessellator.class.getName( ) );
+
+    // chunks per thread, allows threads which finish early to pick up more work
+    protected static final int CHUNKS_PER_THREAD = 4;
+
+    protected EarClippingTessellator tessellator;
+    protected ExecutorService executor;
+    protected int parallelism;
+
+    public ParallelTessellator( )
+    {
+        this( Runtime.getRuntime( ).availableProcessors( ) );
+    }
+
+    public ParallelTessellator( int threads )
+    {
+        this( newExecutor( threads ), threads );
+    }
+
+    /**
+     * @param executor the executor which runs tessellation tasks
+     * @param parallelism the number of tasks the executor can run at once
+     */
+    public ParallelTessellator( ExecutorService executor, int parallelism )
+    {
+        this.tessellator = new EarClippingTessellator( );
+        this.executor = executor;
+        this.parallelism = Math.max( 1, parallelism );
+    }
+
+    /**
+     * Tessellates each polygon in the list. Polygons which cannot be tessellated produce an empty array.
+     *
+     * @return the triangles for each polygon, as (x,y) float pairs in the same order as the input list
+     */
+    public float[][] tessellate( final List<Polygon> polygons ) throws InterruptedException
+    {
+        final float[][] results = new float[polygons.size( )][];
+
+        invokeChunks( polygons.size( ), new Chunk( )
+        {
+            @Override
+            public void run( int from, int to )
+            {
+                tessellate( polygons, results, from, to );
+            }
+        }, "Problem tessellating polygons." );
+
+        return results;
+    }
+
+    /**
+     * Tessellates and simplifies each polygon in the list, producing the levels of detail used
+     * by {@link com.metsci.glimpse.painter.shape.PolygonPainter} to draw zoomed out polygons.
+     *
+     * @return the simplified polygons, in the same order as the input list
+     */
+    public SimplifiedPolygon[] simplify( final List<Polygon> polygons ) throws InterruptedException
+    {
+        final SimplifiedPolygon[] results = new SimplifiedPolygon[polygons.size( )];
+
+        invokeChunks( polygons.size( ), new Chunk( )
+        {
+            @Override
+            public void run( int from, int to )
+            {
+                simplify( polygons, results, from, to );
+            }
+        }, "Problem simplifying polygons." );
+
+        return results;
+    }
+
+    protected void tessellate( List<Polygon> polygons, float[][] results, int from, int to )
+    {
+        for ( int i = from; i < to; i++ )
+        {
+            results[i] = tessellate( polygons.get( i ) );
+        }
+    }
+
+    protected void simplify( List<Polygon> polygons, SimplifiedPolygon[] results, int from, int to )
+    {
+        for ( int i = from; i < to; i++ )
+        {
+            Polygon polygon = polygons.get( i );
+            results[i] = new SimplifiedPolygon( polygon, tessellate( polygon ), tessellator );
+        }
+    }
+
+    protected float[] tessellate( Polygon polygon )
+    {
+        try
+        {
+            return tessellator.tessellate( polygon );
+        }
+        catch ( TessellationException e )
+        {
+            logWarning( logger, "Problem tessellating polygon.", e );
+            return new float[0];
+        }
+    }
+
+    /**
+     * A range of work items, run by a single worker thread.
+     */
+    protected static interface Chunk
+    {
+        void run( int from, int to );
+    }
+
+    // divides size work items into chunks, and waits for the worker threads to run them all
+    protected void invokeChunks( int size, final Chunk chunk, String errorMessage ) throws InterruptedException
+    {
+        int chunkCount = Math.min( size, parallelism * CHUNKS_PER_THREAD );
+        if ( chunkCount <= 1 || parallelism == 1 )
+        {
+            chunk.run( 0, size );
+            return;
+        }
+
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>( chunkCount );
+        for ( int i = 0; i < chunkCount; i++ )
+        {
+            final int from = ( int ) ( ( long ) size * i / chunkCount );
+            final int to = ( int ) ( ( long ) size * ( i + 1 ) / chunkCount );
+
+            tasks.add( new Callable<Object>( )
+            {
+                @Override
+                public Object call( )
+                {
+                    chunk.run( from, to );
+                    return null;
+                }
+            } );
+        }
+
+        for ( Future<Object> future : executor.invokeAll( tasks ) )
+        {
+            try
+            {
+                future.get( );
+            }
+            catch ( ExecutionException e )
+            {
+                throw new RuntimeException( errorMessage, e.getCause( ) );
+            }
+        }
+    }
+
+    /**
+     * Shuts down the worker threads. The tessellator may not be used afterwards.
+     */
+    public void dispose( )
+    {
+        executor.shutdown( );
+    }
+
+    protected static ExecutorService newExecutor( int threads )
+    {
+        final AtomicInteger count = new AtomicInteger( );
+
+        return Executors.newFixedThreadPool( Math.max( 1, threads ), new ThreadFactory( )
+        {
+            @Override
+            public Thread newThread( Runnable runnable )
+            {
+                Thread thread = new Thread( runnable );
+                thread.setName( "tessellator-" + count.incrementAndGet( ) );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+    }
+}
@@ -86,6 +86,16 @@ public class Polygon
             return new double[] { data[2 * i], data[2 * i + 1], 0.0 };
         }
 
+        public final double getX( int i )
+        {
+            return data[2 * i];
+        }
+
+        public final double getY( int i )
+        {
+            return data[2 * i + 1];
+        }
+
         public final static class LoopBuilder implements VertexAccumulator
         {
             PrimitiveVector.Double data = new PrimitiveVector.Double( );
@@ -0,0 +1,673 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.support.polygon;
+
+import java.util.Iterator;
+
+import com.metsci.glimpse.support.polygon.Polygon.Loop;
+import com.metsci.glimpse.support.polygon.Polygon.Loop.LoopBuilder;
+import com.metsci.glimpse.support.polygon.PolygonTessellator.TessellationException;
+
+/**
+ * A polygon along with a series of progressively simplified versions of it, for drawing
+ * when the polygon is zoomed out far enough that its full detail would be lost.
+ *
+ * Each vertex is assigned a tolerance by running Douglas-Peucker over its loop: a simplification
+ * with tolerance t keeps exactly the vertices whose tolerances are at least t. Levels are taken
+ * at power of two tolerances, so every level is a subset of the level before it. A level is only
+ * kept if it has at most half as many vertices as the previous kept level, so all the levels
+ * together hold no more vertices than the original polygon. Loops left with fewer than three
+ * vertices are dropped from a level entirely.
+ *
+ * Levels are tessellated as long as simplification has not changed the topology of the polygon:
+ * no edges of a level may cross or touch, and each loop must lie inside the same loops as before.
+ * Levels past the last one which passes these checks (see {@link #getFillLevelCount()}) should be
+ * filled using the triangles of that last level.
+ *
+ * Level 0 is always the original polygon.
+ */
+public class SimplifiedPolygon
+{
+    // the topology of polygons with more loops than this is not checked, and their fills are not simplified
+    protected static final int MAX_TOPOLOGY_CHECK_LOOPS = 64;
+
+    // used to index tolerance exponents from zero, Math.getExponent( 0f ) is Float.MIN_EXPONENT - 1
+    protected static final int EXPONENT_BIAS = -( Float.MIN_EXPONENT - 1 );
+    protected static final int EXPONENT_COUNT = Float.MAX_EXPONENT + 2 + EXPONENT_BIAS;
+
+    protected final Polygon geometry;
+    protected final Loop[] loops;
+    protected final float[] triangles;
+
+    // the Douglas-Peucker tolerance of each vertex of each loop
+    protected final float[][] vertexTolerances;
+
+    // level i (for i > 0) keeps the vertices whose tolerance exponents are at least levelExponents[i-1]
+    protected int[] levelExponents;
+    // the number of vertices of each loop kept at each level (zero for dropped loops)
+    protected int[][] levelLoopSizes;
+    // the fill triangles of each level (level i is at index i-1)
+    protected float[][] levelTriangles;
+    protected int fillLevelCount;
+
+    /**
+     * Simplifies the polygon, and tessellates its simplified levels.
+     *
+     * @param geometry the original polygon
+     * @param triangles the triangles covering the original polygon, as (x,y) float pairs
+     * @param tessellator used to tessellate each level
+     */
+    public SimplifiedPolygon( Polygon geometry, float[] triangles, EarClippingTessellator tessellator )
+    {
+        this.geometry = geometry;
+        this.triangles = triangles;
+        this.loops = toArray( geometry );
+
+        this.vertexTolerances = new float[loops.length][];
+        for ( int i = 0; i < loops.length; i++ )
+        {
+            vertexTolerances[i] = calculateTolerances( loops[i] );
+        }
+
+        this.calculateLevels( );
+        this.tessellateLevels( tessellator );
+    }
+
+    public Polygon getGeometry( )
+    {
+        return geometry;
+    }
+
+    /**
+     * @return the triangles covering the original polygon, as (x,y) float pairs
+     */
+    public float[] getTriangles( )
+    {
+        return triangles;
+    }
+
+    public int getLoopCount( )
+    {
+        return loops.length;
+    }
+
+    public Loop getLoop( int loop )
+    {
+        return loops[loop];
+    }
+
+    /**
+     * @return the Douglas-Peucker tolerance of each vertex of the loop
+     */
+    public float[] getVertexTolerances( int loop )
+    {
+        return vertexTolerances[loop];
+    }
+
+    /**
+     * @return the number of simplified levels, not counting the original polygon at level 0
+     */
+    public int getLevelCount( )
+    {
+        return levelExponents.length;
+    }
+
+    /**
+     * @return the number of simplified levels which have fill triangles
+     */
+    public int getFillLevelCount( )
+    {
+        return fillLevelCount;
+    }
+
+    /**
+     * @return the maximum distance between the outline of the level and the original outline
+     */
+    public double getLevelTolerance( int level )
+    {
+        return level == 0 ? 0 : Math.scalb( 1.0, levelExponents[level - 1] );
+    }
+
+    /**
+     * @return the coarsest level whose tolerance does not exceed the given tolerance
+     */
+    public int getLevel( double tolerance )
+    {
+        if ( !( tolerance > 0 ) ) return 0;
+
+        int exponent = Math.getExponent( tolerance );
+
+        int level = 0;
+        while ( level < levelExponents.length && levelExponents[level] <= exponent )
+        {
+            level++;
+        }
+
+        return level;
+    }
+
+    /**
+     * @return the number of vertices of the loop kept at the given level, or zero if the loop is dropped
+     */
+    public int getLevelLoopSize( int level, int loop )
+    {
+        return level == 0 ? loops[loop].size( ) : levelLoopSizes[level - 1][loop];
+    }
+
+    /**
+     * @return the total number of vertices kept at the given level
+     */
+    public int getLevelVertexCount( int level )
+    {
+        int count = 0;
+        for ( int loop = 0; loop < loops.length; loop++ )
+        {
+            count += getLevelLoopSize( level, loop );
+        }
+
+        return count;
+    }
+
+    /**
+     * @return true if the vertex is part of the given level
+     */
+    public boolean isKept( int level, int loop, int vertex )
+    {
+        if ( level == 0 ) return true;
+
+        return levelLoopSizes[level - 1][loop] > 0 && Math.getExponent( vertexTolerances[loop][vertex] ) >= levelExponents[level - 1];
+    }
+
+    /**
+     * @return the fill triangles of the level, as (x,y) float pairs, or null for levels past {@link #getFillLevelCount()}
+     */
+    public float[] getLevelTriangles( int level )
+    {
+        if ( level == 0 ) return triangles;
+
+        return level <= fillLevelCount ? levelTriangles[level - 1] : null;
+    }
+
+    /**
+     * @return a new polygon containing the loops (and vertices) kept at the given level
+     */
+    public Polygon getLevelGeometry( int level )
+    {
+        if ( level == 0 ) return geometry;
+
+        Polygon p = new Polygon( );
+        double[] vertex = new double[2];
+
+        for ( int loop = 0; loop < loops.length; loop++ )
+        {
+            if ( getLevelLoopSize( level, loop ) == 0 ) continue;
+
+            LoopBuilder b = new LoopBuilder( );
+            for ( int i = 0; i < loops[loop].size( ); i++ )
+            {
+                if ( !isKept( level, loop, i ) ) continue;
+
+                vertex[0] = loops[loop].getX( i );
+                vertex[1] = loops[loop].getY( i );
+                b.addVertices( vertex, 1 );
+            }
+
+            p.add( b.complete( loops[loop].getSide( ) ) );
+        }
+
+        return p;
+    }
+
+    /**
+     * Assigns each vertex of a closed loop the largest Douglas-Peucker tolerance at which it
+     * would still be kept. The loop is split at its first vertex and the vertex farthest from it,
+     * and those two vertices get the distance between them, so loops smaller than the tolerance
+     * disappear altogether.
+     */
+    protected static float[] calculateTolerances( Loop loop )
+    {
+        int n = loop.size( );
+        float[] tolerances = new float[n];
+        if ( n == 0 ) return tolerances;
+
+        double x0 = loop.getX( 0 );
+        double y0 = loop.getY( 0 );
+
+        int far = 0;
+        double farDistance = 0;
+        for ( int i = 1; i < n; i++ )
+        {
+            double distance = Math.hypot( loop.getX( i ) - x0, loop.getY( i ) - y0 );
+            if ( distance > farDistance )
+            {
+                far = i;
+                farDistance = distance;
+            }
+        }
+
+        tolerances[0] = ( float ) farDistance;
+        tolerances[far] = ( float ) farDistance;
+        if ( far == 0 ) return tolerances;
+
+        // pending (start, end) index pairs, index n refers to vertex 0 at the end of the loop
+        int[] stack = new int[2 * n + 4];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = far;
+        stack[top++] = far;
+        stack[top++] = n;
+
+        while ( top > 0 )
+        {
+            int end = stack[--top];
+            int start = stack[--top];
+            if ( end - start < 2 ) continue;
+
+            double ax = loop.getX( start );
+            double ay = loop.getY( start );
+            double bx = loop.getX( end % n );
+            double by = loop.getY( end % n );
+
+            int split = start + 1;
+            double splitDistance = -1;
+            for ( int i = start + 1; i < end; i++ )
+            {
+                double distance = segmentDistance( loop.getX( i ), loop.getY( i ), ax, ay, bx, by );
+                if ( distance > splitDistance )
+                {
+                    split = i;
+                    splitDistance = distance;
+                }
+            }
+
+            // a vertex is only kept if the vertices splitting off its segment are kept, so its
+            // tolerance can be no larger than theirs (the smaller of the two is the most recent)
+            float parentTolerance = Math.min( tolerances[start], tolerances[end % n] );
+            tolerances[split] = Math.min( ( float ) splitDistance, parentTolerance );
+
+            stack[top++] = start;
+            stack[top++] = split;
+            stack[top++] = split;
+            stack[top++] = end;
+        }
+
+        return tolerances;
+    }
+
+    protected static double segmentDistance( double x, double y, double ax, double ay, double bx, double by )
+    {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+
+        double t = lengthSquared > 0 ? ( ( x - ax ) * dx + ( y - ay ) * dy ) / lengthSquared : 0;
+        t = Math.max( 0, Math.min( 1, t ) );
+
+        return Math.hypot( x - ( ax + t * dx ), y - ( ay + t * dy ) );
+    }
+
+    protected void calculateLevels( )
+    {
+        // keptCounts[loop][e] is the number of vertices in the loop with tolerance exponents of at least e
+        int[][] keptCounts = new int[loops.length][];
+        int previousCount = 0;
+        int minExponent = EXPONENT_COUNT;
+
+        for ( int loop = 0; loop < loops.length; loop++ )
+        {
+            int[] counts = new int[EXPONENT_COUNT + 1];
+            for ( float tolerance : vertexTolerances[loop] )
+            {
+                int e = Math.getExponent( tolerance ) + EXPONENT_BIAS;
+                counts[e]++;
+                minExponent = Math.min( minExponent, e );
+            }
+
+            for ( int e = EXPONENT_COUNT - 1; e >= 0; e-- )
+            {
+                counts[e] += counts[e + 1];
+            }
+
+            keptCounts[loop] = counts;
+            previousCount += loops[loop].size( );
+        }
+
+        int[] exponents = new int[0];
+        int[][] loopSizes = new int[0][];
+
+        // the smallest exponent which drops any vertices is one above the smallest tolerance
+        for ( int e = minExponent + 1; e < EXPONENT_COUNT && previousCount > 0; e++ )
+        {
+            int count = 0;
+            int[] sizes = new int[loops.length];
+            for ( int loop = 0; loop < loops.length; loop++ )
+            {
+                int kept = keptCounts[loop][e];
+                sizes[loop] = kept >= 3 ? kept : 0;
+                count += sizes[loop];
+            }
+
+            if ( count <= previousCount / 2 )
+            {
+                exponents = append( exponents, e - EXPONENT_BIAS );
+                loopSizes = append( loopSizes, sizes );
+                previousCount = count;
+            }
+        }
+
+        this.levelExponents = exponents;
+        this.levelLoopSizes = loopSizes;
+    }
+
+    protected void tessellateLevels( EarClippingTessellator tessellator )
+    {
+        this.levelTriangles = new float[levelExponents.length][];
+        this.fillLevelCount = 0;
+
+        // no point simplifying fills if the original polygon could not be tessellated
+        if ( triangles == null || triangles.length == 0 || loops.length > MAX_TOPOLOGY_CHECK_LOOPS ) return;
+
+        boolean[][] originalContains = null;
+
+        for ( int level = 1; level <= levelExponents.length; level++ )
+        {
+            Polygon levelGeometry = getLevelGeometry( level );
+            Loop[] levelLoops = toArray( levelGeometry );
+
+            if ( hasCrossings( levelLoops ) ) return;
+
+            if ( originalContains == null ) originalContains = calculateContainment( );
+            if ( !isNestingPreserved( level, levelLoops, originalContains ) ) return;
+
+            try
+            {
+                levelTriangles[level - 1] = tessellator.tessellate( levelGeometry );
+            }
+            catch ( TessellationException e )
+            {
+                return;
+            }
+
+            fillLevelCount = level;
+        }
+    }
+
+    // originalContains[i][j] is true if the first vertex of loop i is inside loop j
+    protected boolean[][] calculateContainment( )
+    {
+        boolean[][] contains = new boolean[loops.length][loops.length];
+        for ( int i = 0; i < loops.length; i++ )
+        {
+            if ( loops[i].size( ) == 0 ) continue;
+
+            for ( int j = 0; j < loops.length; j++ )
+            {
+                if ( i != j ) contains[i][j] = contains( loops[j], loops[i].getX( 0 ), loops[i].getY( 0 ) );
+            }
+        }
+
+        return contains;
+    }
+
+    // checks that the first vertex of each kept loop (which is always kept along with the loop)
+    // is inside the same loops as it was originally, treating dropped loops as empty
+    protected boolean isNestingPreserved( int level, Loop[] levelLoops, boolean[][] originalContains )
+    {
+        int[] levelIndex = new int[loops.length];
+        for ( int loop = 0, kept = 0; loop < loops.length; loop++ )
+        {
+            levelIndex[loop] = getLevelLoopSize( level, loop ) > 0 ? kept++ : -1;
+        }
+
+        for ( int i = 0; i < loops.length; i++ )
+        {
+            if ( levelIndex[i] < 0 ) continue;
+
+            double x = loops[i].getX( 0 );
+            double y = loops[i].getY( 0 );
+
+            for ( int j = 0; j < loops.length; j++ )
+            {
+                if ( i == j ) continue;
+
+                boolean inside = levelIndex[j] >= 0 && contains( levelLoops[levelIndex[j]], x, y );
+                if ( inside != originalContains[i][j] ) return false;
+            }
+        }
+
+        return true;
+    }
+
+    // even-odd point in polygon test
+    protected static boolean contains( Loop loop, double x, double y )
+    {
+        int size = loop.size( );
+
+        boolean inside = false;
+        for ( int i = 0, j = size - 1; i < size; j = i++ )
+        {
+            double xi = loop.getX( i );
+            double yi = loop.getY( i );
+            double xj = loop.getX( j );
+            double yj = loop.getY( j );
+
+            if ( ( yi > y ) != ( yj > y ) && x < ( xj - xi ) * ( y - yi ) / ( yj - yi ) + xi ) inside = !inside;
+        }
+
+        return inside;
+    }
+
+    /**
+     * @return true if any two edges of the loops (other than consecutive edges of the same loop) cross or touch
+     */
+    protected static boolean hasCrossings( Loop[] loops )
+    {
+        // edge e of loop l goes from vertex e to vertex e + 1 (wrapping around)
+        int edgeCount = 0;
+        for ( Loop loop : loops )
+        {
+            edgeCount += loop.size( );
+        }
+
+        int[] edgeLoops = new int[edgeCount];
+        int[] edgeStarts = new int[edgeCount];
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+
+        for ( int l = 0, edge = 0; l < loops.length; l++ )
+        {
+            for ( int i = 0; i < loops[l].size( ); i++, edge++ )
+            {
+                edgeLoops[edge] = l;
+                edgeStarts[edge] = i;
+
+                double x = loops[l].getX( i );
+                double y = loops[l].getY( i );
+                if ( x < minX ) minX = x;
+                if ( x > maxX ) maxX = x;
+                if ( y < minY ) minY = y;
+                if ( y > maxY ) maxY = y;
+            }
+        }
+
+        // bucket edges into a uniform grid with about one edge per cell, and only test pairs
+        // of edges sharing a cell
+        int gridSize = Math.max( 1, ( int ) Math.sqrt( edgeCount ) );
+        double cellWidth = ( maxX - minX ) / gridSize;
+        double cellHeight = ( maxY - minY ) / gridSize;
+
+        int[][] edgeCells = new int[edgeCount][];
+        int[] cellCounts = new int[gridSize * gridSize + 1];
+        for ( int edge = 0; edge < edgeCount; edge++ )
+        {
+            Loop loop = loops[edgeLoops[edge]];
+            int i = edgeStarts[edge];
+            int j = ( i + 1 ) % loop.size( );
+
+            int cellMinX = cell( Math.min( loop.getX( i ), loop.getX( j ) ), minX, cellWidth, gridSize );
+            int cellMaxX = cell( Math.max( loop.getX( i ), loop.getX( j ) ), minX, cellWidth, gridSize );
+            int cellMinY = cell( Math.min( loop.getY( i ), loop.getY( j ) ), minY, cellHeight, gridSize );
+            int cellMaxY = cell( Math.max( loop.getY( i ), loop.getY( j ) ), minY, cellHeight, gridSize );
+
+            edgeCells[edge] = new int[] { cellMinX, cellMaxX, cellMinY, cellMaxY };
+            for ( int cx = cellMinX; cx <= cellMaxX; cx++ )
+            {
+                for ( int cy = cellMinY; cy <= cellMaxY; cy++ )
+                {
+                    cellCounts[cx * gridSize + cy + 1]++;
+                }
+            }
+        }
+
+        // cellCounts[c] becomes the start of cell c in cellEdges
+        for ( int c = 1; c < cellCounts.length; c++ )
+        {
+            cellCounts[c] += cellCounts[c - 1];
+        }
+
+        int[] cellEdges = new int[cellCounts[cellCounts.length - 1]];
+        int[] cellFill = new int[gridSize * gridSize];
+        for ( int edge = 0; edge < edgeCount; edge++ )
+        {
+            int[] cells = edgeCells[edge];
+            for ( int cx = cells[0]; cx <= cells[1]; cx++ )
+            {
+                for ( int cy = cells[2]; cy <= cells[3]; cy++ )
+                {
+                    int c = cx * gridSize + cy;
+                    cellEdges[cellCounts[c] + cellFill[c]++] = edge;
+                }
+            }
+        }
+
+        for ( int c = 0; c < cellFill.length; c++ )
+        {
+            int from = cellCounts[c];
+            int to = cellCounts[c + 1];
+
+            for ( int a = from; a < to; a++ )
+            {
+                for ( int b = a + 1; b < to; b++ )
+                {
+                    if ( edgesCross( loops, edgeLoops, edgeStarts, cellEdges[a], cellEdges[b] ) ) return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    protected static int cell( double v, double min, double cellSize, int gridSize )
+    {
+        if ( !( cellSize > 0 ) ) return 0;
+        return Math.max( 0, Math.min( gridSize - 1, ( int ) ( ( v - min ) / cellSize ) ) );
+    }
+
+    protected static boolean edgesCross( Loop[] loops, int[] edgeLoops, int[] edgeStarts, int edgeA, int edgeB )
+    {
+        Loop loopA = loops[edgeLoops[edgeA]];
+        Loop loopB = loops[edgeLoops[edgeB]];
+        int sizeA = loopA.size( );
+        int sizeB = loopB.size( );
+
+        int a0 = edgeStarts[edgeA];
+        int a1 = ( a0 + 1 ) % sizeA;
+        int b0 = edgeStarts[edgeB];
+        int b1 = ( b0 + 1 ) % sizeB;
+
+        // consecutive edges share a vertex
+        if ( loopA == loopB && ( a1 == b0 || b1 == a0 ) ) return false;
+
+        return segmentsIntersect( loopA.getX( a0 ), loopA.getY( a0 ), loopA.getX( a1 ), loopA.getY( a1 ), loopB.getX( b0 ), loopB.getY( b0 ), loopB.getX( b1 ), loopB.getY( b1 ) );
+    }
+
+    protected static boolean segmentsIntersect( double ax, double ay, double bx, double by, double cx, double cy, double dx, double dy )
+    {
+        double d1 = orientation( cx, cy, dx, dy, ax, ay );
+        double d2 = orientation( cx, cy, dx, dy, bx, by );
+        double d3 = orientation( ax, ay, bx, by, cx, cy );
+        double d4 = orientation( ax, ay, bx, by, dx, dy );
+
+        if ( ( ( d1 > 0 && d2 < 0 ) || ( d1 < 0 && d2 > 0 ) ) && ( ( d3 > 0 && d4 < 0 ) || ( d3 < 0 && d4 > 0 ) ) ) return true;
+
+        if ( d1 == 0 && inBounds( cx, cy, dx, dy, ax, ay ) ) return true;
+        if ( d2 == 0 && inBounds( cx, cy, dx, dy, bx, by ) ) return true;
+        if ( d3 == 0 && inBounds( ax, ay, bx, by, cx, cy ) ) return true;
+        if ( d4 == 0 && inBounds( ax, ay, bx, by, dx, dy ) ) return true;
+
+        return false;
+    }
+
+    protected static double orientation( double ax, double ay, double bx, double by, double cx, double cy )
+    {
+        return ( bx - ax ) * ( cy - ay ) - ( by - ay ) * ( cx - ax );
+    }
+
+    // true if (x,y), which is collinear with the segment, lies within it
+    protected static boolean inBounds( double ax, double ay, double bx, double by, double x, double y )
+    {
+        return Math.min( ax, bx ) <= x && x <= Math.max( ax, bx ) && Math.min( ay, by ) <= y && y <= Math.max( ay, by );
+    }
+
+    protected static Loop[] toArray( Polygon polygon )
+    {
+        int count = 0;
+        Iterator<Loop> iter = polygon.getIterator( );
+        while ( iter.hasNext( ) )
+        {
+            iter.next( );
+            count++;
+        }
+
+        Loop[] loops = new Loop[count];
+        iter = polygon.getIterator( );
+        for ( int i = 0; i < count; i++ )
+        {
+            loops[i] = iter.next( );
+        }
+
+        return loops;
+    }
+
+    protected static int[] append( int[] array, int value )
+    {
+        int[] result = new int[array.length + 1];
+        System.arraycopy( array, 0, result, 0, array.length );
+        result[array.length] = value;
+        return result;
+    }
+
+    protected static int[][] append( int[][] array, int[] value )
+    {
+        int[][] result = new int[array.length + 1][];
+        System.arraycopy( array, 0, result, 0, array.length );
+        result[array.length] = value;
+        return result;
+    }
+}
@@ -1,7 +1,8 @@
 /**
  * Tessellation of polygons into collections of triangles which
  * can be easily drawn by the graphics card. Provides a simple
- * wraper around OpenGL and GLUT tesselation utilities.
+ * wraper around OpenGL and GLUT tesselation utilities, as well
+ * as a pure Java ear clipping tessellator which can be run in
+ * parallel off the OpenGL thread.
  */
 package com.metsci.glimpse.support.polygon;
-
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.support.queue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A multi-producer queue of update commands which is drained in a single batch
+ * by the OpenGL display thread. Producers never block: {@link #add(Command)} is
+ * backed by a non-blocking {@link ConcurrentLinkedQueue}.
+ *
+ * When the queue is drained, commands which are overwritten by a later command
+ * with the same coalesce key are discarded. For example, if a user sets the line
+ * color of a track five times between frames, only the last color is applied.
+ */
+public class UpdateQueue<C extends UpdateQueue.Command>
+{
+    /**
+     * A single update to a painter.
+     */
+    public static interface Command
+    {
+        /**
+         * Commands with equal, non-null coalesce keys completely overwrite one another,
+         * so only the most recently added one needs to be applied.
+         *
+         * @return the coalesce key for this command, or null if it should never be discarded
+         */
+        Object getCoalesceKey( );
+    }
+
+    protected Queue<C> queue;
+
+    protected List<C> drainBuffer;
+    protected Set<Object> drainKeys;
+
+    protected long addedCount;
+    protected long coalescedCount;
+
+    public UpdateQueue( )
+    {
+        this.queue = new ConcurrentLinkedQueue<C>( );
+        this.drainBuffer = new ArrayList<C>( );
+        this.drainKeys = new HashSet<Object>( );
+    }
+
+    /**
+     * Adds a command to the end of the queue. May be called from any thread.
+     */
+    public void add( C command )
+    {
+        queue.add( command );
+    }
+
+    public boolean isEmpty( )
+    {
+        return queue.isEmpty( );
+    }
+
+    /**
+     * Removes all commands currently in the queue, discards those which are overwritten
+     * by later commands, and appends the remainder to {@code result} in the order they
+     * were added. Should only be called by a single consumer thread.
+     *
+     * @return the number of commands appended to {@code result}
+     */
+    public int drain( List<C> result )
+    {
+        List<C> buffer = this.drainBuffer;
+        Set<Object> keys = this.drainKeys;
+
+        C command;
+        while ( ( command = queue.poll( ) ) != null )
+        {
+            buffer.add( command );
+        }
+
+        int size = buffer.size( );
+        int kept = 0;
+
+        // walk backward so that the last command for each key is the one kept
+        for ( int i = size - 1; i >= 0; i-- )
+        {
+            command = buffer.get( i );
+            Object key = command.getCoalesceKey( );
+
+            if ( key == null || keys.add( key ) )
+            {
+                buffer.set( size - 1 - kept, command );
+                kept++;
+            }
+        }
+
+        result.addAll( buffer.subList( size - kept, size ) );
+
+        addedCount += size;
+        coalescedCount += size - kept;
+
+        buffer.clear( );
+        keys.clear( );
+
+        return kept;
+    }
+
+    /**
+     * @return the total number of commands drained from this queue
+     */
+    public long getDrainedCount( )
+    {
+        return addedCount;
+    }
+
+    /**
+     * @return the total number of drained commands which were discarded because they were overwritten
+     */
+    public long getCoalescedCount( )
+    {
+        return coalescedCount;
+    }
+
+    /**
+     * A convenience coalesce key made up of an integer id (for example a track id)
+     * and a command type.
+     */
+    public static class Key
+    {
+        protected final int id;
+        protected final Object type;
+
+        public Key( int id, Object type )
+        {
+            this.id = id;
+            this.type = type;
+        }
+
+        @Override
+        public int hashCode( )
+        {
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + id;
+            result = prime * result + ( ( type == null ) ? 0 : type.hashCode( ) );
+            return result;
+        }
+
+        @Override
+        public boolean equals( Object obj )
+        {
+            if ( this == obj ) return true;
+            if ( obj == null ) return false;
+            if ( getClass( ) != obj.getClass( ) ) return false;
+            Key other = ( Key ) obj;
+            if ( id != other.id ) return false;
+            if ( type == null ) return other.type == null;
+            return type.equals( other.type );
+        }
+    }
+}
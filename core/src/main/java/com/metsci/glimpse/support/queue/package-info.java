@@ -0,0 +1,6 @@
+/**
+ * Lock-free queues which allow user threads to submit updates to
+ * {@link com.metsci.glimpse.painter.base.GlimpsePainter}s without
+ * contending with the OpenGL display thread.
+ */
+package com.metsci.glimpse.support.queue;
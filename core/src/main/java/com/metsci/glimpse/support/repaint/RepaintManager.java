@@ -28,17 +28,26 @@ package com.metsci.glimpse.support.repaint;
 
 import static com.metsci.glimpse.util.logging.LoggerUtils.*;
 
+import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
+import com.metsci.glimpse.axis.Axis1D;
+import com.metsci.glimpse.axis.Axis2D;
+import com.metsci.glimpse.axis.listener.AxisListener1D;
 import com.metsci.glimpse.canvas.GlimpseCanvas;
+import com.metsci.glimpse.painter.base.GlimpsePainterImpl;
 
 /**
  * Manages repainting of an arbitrary number of
@@ -47,6 +56,12 @@ import com.metsci.glimpse.canvas.GlimpseCanvas;
  * and attach all {@link com.metsci.glimpse.canvas.GlimpseCanvas}
  * which it creates to that single {@code RepaintManager}.
  *
+ * By default, every canvas is repainted every {@link #DELAY} milliseconds.
+ * In demand driven mode (see {@link #setDemandDriven(boolean)}), canvases
+ * are only repainted after they have been marked dirty, either explicitly
+ * via {@link #markDirty(GlimpseCanvas)} or by the painters and axes registered
+ * with {@code repaintOnChange}. Repaints are coalesced so that no more than
+ * one occurs per frame interval (see {@link #setMaxFrameRate(double)}).
  *
  * @author ulman
  */
@@ -56,6 +71,8 @@ public class RepaintManager
 
     public static final int DELAY = 10;
 
+    public static final double DEFAULT_MAX_FRAME_RATE = 60.0;
+
     public static RepaintManager newRepaintManager( GlimpseCanvas canvas )
     {
         RepaintManager manager = new RepaintManager( canvas );
@@ -64,7 +81,7 @@ public class RepaintManager
     }
 
     protected ScheduledExecutorService executor;
-    protected boolean started;
+    protected volatile boolean started;
     protected boolean shutdown;
     protected boolean paused;
     protected ReentrantLock lock;
@@ -72,6 +89,28 @@ public class RepaintManager
 
     protected Set<GlimpseCanvas> canvasList;
 
+    // the periodic repaint task (null in demand driven mode)
+    protected ScheduledFuture<?> pollingFuture;
+
+    // if true, only dirty canvases are repainted, and only when marked dirty
+    protected volatile boolean demandDriven;
+    // canvases which have changed since they were last painted
+    protected Set<GlimpseCanvas> dirtyCanvases;
+    // true if a demand driven repaint is scheduled but has not yet started
+    protected AtomicBoolean repaintScheduled;
+    // the minimum time between the start of successive demand driven repaints
+    protected volatile long minFrameIntervalNanos;
+    // the start time of the last demand driven repaint
+    protected volatile long lastFrameNanos;
+    protected DirtyRepaintRunnable dirtyRepaintRunnable;
+
+    // repaint statistics since the last call to resetMetrics( )
+    protected AtomicLong dirtyCount;
+    protected AtomicLong frameCount;
+    protected AtomicLong paintCount;
+    protected AtomicLong busyNanos;
+    protected volatile long metricsStartNanos;
+
     public RepaintManager( GlimpseCanvas canvas )
     {
         this( );
@@ -82,6 +121,18 @@ public class RepaintManager
     public RepaintManager( )
     {
         this.canvasList = new CopyOnWriteArraySet<GlimpseCanvas>( );
+        this.dirtyCanvases = Collections.newSetFromMap( new ConcurrentHashMap<GlimpseCanvas, Boolean>( ) );
+
+        this.demandDriven = false;
+        this.repaintScheduled = new AtomicBoolean( false );
+        this.dirtyRepaintRunnable = new DirtyRepaintRunnable( );
+        this.setMaxFrameRate( DEFAULT_MAX_FRAME_RATE );
+
+        this.dirtyCount = new AtomicLong( );
+        this.frameCount = new AtomicLong( );
+        this.paintCount = new AtomicLong( );
+        this.busyNanos = new AtomicLong( );
+        this.metricsStartNanos = System.nanoTime( );
 
         this.started = false;
         this.shutdown = false;
@@ -114,6 +165,9 @@ public class RepaintManager
         {
             lock.unlock( );
         }
+
+        // ensure that the new canvas is painted at least once
+        markDirty( canvas );
     }
 
     public void removeGlimpseCanvas( GlimpseCanvas canvas )
@@ -122,6 +176,7 @@ public class RepaintManager
         try
         {
             this.canvasList.remove( canvas );
+            this.dirtyCanvases.remove( canvas );
         }
         finally
         {
@@ -136,8 +191,272 @@ public class RepaintManager
         {
             if ( !started )
             {
-                executor.scheduleWithFixedDelay( new RepaintRunnable( ), 0, DELAY, TimeUnit.MILLISECONDS );
                 started = true;
+
+                if ( demandDriven )
+                {
+                    markAllDirty( );
+                }
+                else
+                {
+                    pollingFuture = executor.scheduleWithFixedDelay( new RepaintRunnable( ), 0, DELAY, TimeUnit.MILLISECONDS );
+                }
+            }
+        }
+        finally
+        {
+            lock.unlock( );
+        }
+    }
+
+    /**
+     * Switches between repainting all canvases every {@link #DELAY} milliseconds (the default)
+     * and repainting only canvases which have been marked dirty.
+     *
+     * In demand driven mode, canvases must be marked dirty whenever their contents change. Use
+     * {@link #repaintOnChange(GlimpseCanvas, GlimpsePainterImpl)} and
+     * {@link #repaintOnChange(GlimpseCanvas, Axis1D)} to mark a canvas dirty automatically when
+     * a painter's data or an axis changes, and {@link #markDirty(GlimpseCanvas)} for anything else.
+     *
+     * Marking painters dirty is opt-in: only painters which call
+     * {@link GlimpsePainterImpl#markDirty()} when their data changes trigger repaints
+     * through {@code repaintOnChange}. Currently these are
+     * {@link com.metsci.glimpse.painter.track.TrackPainter},
+     * {@link com.metsci.glimpse.painter.shape.PolygonPainter},
+     * {@link com.metsci.glimpse.painter.plot.XYLinePainter},
+     * {@link com.metsci.glimpse.painter.info.AnnotationPainter},
+     * {@link com.metsci.glimpse.painter.texture.ShadedTexturePainter} and its subclasses
+     * (including {@link com.metsci.glimpse.painter.texture.HeatMapPainter}), which also
+     * repaint when their textures are mutated, and
+     * {@link com.metsci.glimpse.painter.shape.ShadedPointPainter}, which also repaints when
+     * its position and attribute buffers are mutated, appended to, or trimmed. Every painter marks itself dirty when its
+     * visibility changes. Changes to any other painter require an explicit call to
+     * {@link #markDirty(GlimpseCanvas)}.
+     */
+    public void setDemandDriven( boolean demandDriven )
+    {
+        lock.lock( );
+        try
+        {
+            if ( this.demandDriven == demandDriven ) return;
+
+            this.demandDriven = demandDriven;
+
+            if ( !started ) return;
+
+            if ( demandDriven )
+            {
+                if ( pollingFuture != null )
+                {
+                    pollingFuture.cancel( false );
+                    pollingFuture = null;
+                }
+
+                markAllDirty( );
+            }
+            else
+            {
+                pollingFuture = executor.scheduleWithFixedDelay( new RepaintRunnable( ), 0, DELAY, TimeUnit.MILLISECONDS );
+            }
+        }
+        finally
+        {
+            lock.unlock( );
+        }
+    }
+
+    public boolean isDemandDriven( )
+    {
+        return demandDriven;
+    }
+
+    /**
+     * Sets the maximum rate at which canvases are repainted in demand driven mode. Any number
+     * of changes made within one frame interval result in a single repaint.
+     *
+     * @param framesPerSecond the maximum frame rate, or a non-positive value for no limit
+     */
+    public void setMaxFrameRate( double framesPerSecond )
+    {
+        this.minFrameIntervalNanos = framesPerSecond > 0 ? ( long ) ( 1e9 / framesPerSecond ) : 0;
+    }
+
+    public double getMaxFrameRate( )
+    {
+        long interval = minFrameIntervalNanos;
+        return interval > 0 ? 1e9 / interval : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Indicates that the contents of a canvas have changed. In demand driven mode, a repaint
+     * of the canvas is scheduled (unless one is already pending). This method may be called
+     * from any thread.
+     */
+    public void markDirty( GlimpseCanvas canvas )
+    {
+        dirtyCanvases.add( canvas );
+
+        // a listener may outlive its canvas; removeGlimpseCanvas removes the canvas from
+        // canvasList before dirtyCanvases, so checking after the add cannot miss a removal
+        if ( !canvasList.contains( canvas ) )
+        {
+            dirtyCanvases.remove( canvas );
+            return;
+        }
+
+        dirtyCount.incrementAndGet( );
+
+        if ( demandDriven ) scheduleRepaint( );
+    }
+
+    public void markAllDirty( )
+    {
+        for ( GlimpseCanvas canvas : canvasList )
+        {
+            markDirty( canvas );
+        }
+    }
+
+    /**
+     * @return a listener which marks the provided canvas dirty
+     */
+    public DirtyListener getDirtyListener( final GlimpseCanvas canvas )
+    {
+        return new DirtyListener( )
+        {
+            @Override
+            public void markDirty( )
+            {
+                RepaintManager.this.markDirty( canvas );
+            }
+        };
+    }
+
+    /**
+     * Marks the canvas dirty whenever the painter's data or display settings change.
+     */
+    public void repaintOnChange( GlimpseCanvas canvas, GlimpsePainterImpl painter )
+    {
+        painter.addDirtyListener( getDirtyListener( canvas ) );
+    }
+
+    /**
+     * Marks the canvas dirty whenever the bounds of the axis change.
+     */
+    public void repaintOnChange( final GlimpseCanvas canvas, Axis1D axis )
+    {
+        axis.addAxisListener( new AxisListener1D( )
+        {
+            @Override
+            public void axisUpdated( Axis1D axis )
+            {
+                markDirty( canvas );
+            }
+        } );
+    }
+
+    /**
+     * Marks the canvas dirty whenever the bounds of either axis change.
+     */
+    public void repaintOnChange( GlimpseCanvas canvas, Axis2D axis )
+    {
+        repaintOnChange( canvas, axis.getAxisX( ) );
+        repaintOnChange( canvas, axis.getAxisY( ) );
+    }
+
+    /**
+     * @return the number of times a canvas was marked dirty
+     */
+    public long getDirtyCount( )
+    {
+        return dirtyCount.get( );
+    }
+
+    /**
+     * @return the number of repaint passes run (each may paint several canvases)
+     */
+    public long getFrameCount( )
+    {
+        return frameCount.get( );
+    }
+
+    /**
+     * @return the number of times an individual canvas was painted
+     */
+    public long getPaintCount( )
+    {
+        return paintCount.get( );
+    }
+
+    /**
+     * @return the total time spent painting canvases, in milliseconds
+     */
+    public double getBusyTimeMillis( )
+    {
+        return busyNanos.get( ) / 1e6;
+    }
+
+    /**
+     * @return the time since the metrics were last reset during which no canvas was being painted, in milliseconds
+     */
+    public double getIdleTimeMillis( )
+    {
+        return Math.max( 0, System.nanoTime( ) - metricsStartNanos - busyNanos.get( ) ) / 1e6;
+    }
+
+    /**
+     * @return the fraction of the time since the metrics were last reset during which no canvas was being painted
+     */
+    public double getIdleFraction( )
+    {
+        long elapsed = System.nanoTime( ) - metricsStartNanos;
+        if ( elapsed <= 0 ) return 1.0;
+        return Math.max( 0, elapsed - busyNanos.get( ) ) / ( double ) elapsed;
+    }
+
+    public void resetMetrics( )
+    {
+        dirtyCount.set( 0 );
+        frameCount.set( 0 );
+        paintCount.set( 0 );
+        busyNanos.set( 0 );
+        metricsStartNanos = System.nanoTime( );
+    }
+
+    protected void scheduleRepaint( )
+    {
+        if ( !started || executor.isShutdown( ) ) return;
+
+        // only one repaint may be pending at a time, later changes are picked up by it
+        if ( repaintScheduled.compareAndSet( false, true ) )
+        {
+            long delay = Math.max( 0, lastFrameNanos + minFrameIntervalNanos - System.nanoTime( ) );
+            executor.schedule( dirtyRepaintRunnable, delay, TimeUnit.NANOSECONDS );
+        }
+    }
+
+    protected void paint( GlimpseCanvas canvas )
+    {
+        long start = System.nanoTime( );
+        try
+        {
+            canvas.paint( );
+        }
+        finally
+        {
+            busyNanos.addAndGet( System.nanoTime( ) - start );
+            paintCount.incrementAndGet( );
+        }
+    }
+
+    protected void awaitPlay( ) throws InterruptedException
+    {
+        lock.lock( );
+        try
+        {
+            while ( paused )
+            {
+                pause.await( );
             }
         }
         finally
@@ -185,22 +504,46 @@ public class RepaintManager
         {
             try
             {
-                lock.lock( );
-                try
-                {
-                    while ( paused )
-                    {
-                        pause.await( );
-                    }
-                }
-                finally
+                awaitPlay( );
+
+                frameCount.incrementAndGet( );
+
+                for ( GlimpseCanvas canvas : canvasList )
                 {
-                    lock.unlock( );
+                    dirtyCanvases.remove( canvas );
+                    paint( canvas );
                 }
+            }
+            catch ( Exception e )
+            {
+                logWarning( logger, "Problem Repainting...", e );
+            }
+        }
+    }
+
+    public class DirtyRepaintRunnable implements Runnable
+    {
+        @Override
+        public void run( )
+        {
+            try
+            {
+                awaitPlay( );
+
+                // changes made from this point on schedule another repaint
+                repaintScheduled.set( false );
+                lastFrameNanos = System.nanoTime( );
+
+                if ( !demandDriven ) return;
+
+                frameCount.incrementAndGet( );
 
                 for ( GlimpseCanvas canvas : canvasList )
                 {
-                    canvas.paint( );
+                    if ( dirtyCanvases.remove( canvas ) )
+                    {
+                        paint( canvas );
+                    }
                 }
             }
             catch ( Exception e )
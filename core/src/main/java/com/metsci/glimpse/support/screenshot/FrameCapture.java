@@ -0,0 +1,575 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.support.screenshot;
+
+import static com.metsci.glimpse.gl.util.GLPBufferUtils.*;
+import static com.metsci.glimpse.util.logging.LoggerUtils.*;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageIO;
+import javax.media.opengl.GL;
+import javax.media.opengl.GLContext;
+import javax.media.opengl.GLException;
+
+import com.metsci.glimpse.canvas.FrameBufferGlimpseCanvas;
+import com.metsci.glimpse.context.GlimpseContext;
+import com.metsci.glimpse.gl.GLSimpleFrameBufferObject;
+import com.metsci.glimpse.layout.GlimpseLayout;
+
+/**
+ * Captures a sequence of frames from a {@link FrameBufferGlimpseCanvas} without
+ * stalling the GL thread, for recording replays or animations.
+ *
+ * Where {@link ScreenshotUtil#captureScreenshot(GlimpseLayout, File, int, int)} reads
+ * the pixels back and encodes the image before returning, each call to
+ * {@link #captureFrame(GlimpseLayout, File, int, int)} only queues an asynchronous
+ * read into the next of a ring of pixel pack buffers. A frame's pixels are copied out
+ * of its buffer when the ring comes back around to it, by which time the transfer
+ * has long since finished, and are then written to disk on a pool of writer threads.
+ *
+ * At most {@code maxPendingFrames} frames may be waiting to be written. Once that many
+ * are queued, capturing blocks until a writer catches up, so a slow disk or encoder
+ * throttles the capture loop instead of exhausting memory.
+ *
+ * Frames are not guaranteed to be on disk until {@link #flush()} returns. Errors
+ * from the writer threads are rethrown by the next call to {@code captureFrame} or
+ * {@code flush}. Instances are not thread safe: capture, flush, and dispose should
+ * all be called from the same thread.
+ */
+public class FrameCapture
+{
+    private static final Logger logger = Logger.getLogger( FrameCapture.class.getName( ) );
+
+    public static enum Format
+    {
+        /**
+         * An opaque PNG image, the same as {@link ScreenshotUtil} writes.
+         */
+        PNG,
+        /**
+         * The pixels exactly as read back, with no header: 4 bytes per pixel
+         * in BGRA order, rows from the bottom of the frame to the top. This
+         * is much cheaper to write than PNG, for converting to video later.
+         */
+        RAW
+    }
+
+    public static final int DEFAULT_RING_SIZE = 3;
+    public static final int DEFAULT_MAX_PENDING_FRAMES = 8;
+
+    protected static final int BYTES_PER_PIXEL = 4;
+
+    protected FrameBufferGlimpseCanvas frameBuffer;
+    protected boolean ownsFrameBuffer;
+    protected Format format;
+
+    // pixel pack buffers which frames are read back into, used round robin
+    protected int[] pixelBufferHandles;
+    // the frame whose pixels are in flight in each pixel buffer, or null
+    protected Frame[] ringFrames;
+    protected int ringIndex;
+    protected int bufferWidth;
+    protected int bufferHeight;
+
+    protected ExecutorService executor;
+    protected int maxPendingFrames;
+    // one permit per frame which may be copied out of the ring but not yet written
+    protected Semaphore pendingPermits;
+    // pixel arrays from frames which have been written, for reuse
+    protected Queue<byte[]> freePixels;
+
+    // the first writer error not yet reported to the caller
+    protected AtomicReference<IOException> writeError;
+
+    // capture statistics since the last call to resetMetrics( )
+    protected AtomicLong capturedCount;
+    protected AtomicLong writtenCount;
+    protected AtomicLong droppedCount;
+    protected AtomicLong blockedNanos;
+    protected AtomicLong writeNanos;
+
+    protected static class Frame
+    {
+        public final File outputFile;
+        public final int width;
+        public final int height;
+
+        public Frame( File outputFile, int width, int height )
+        {
+            this.outputFile = outputFile;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    public FrameCapture( Format format )
+    {
+        this( new FrameBufferGlimpseCanvas( 1, 1, createPixelBuffer( 1, 1 ).getContext( ) ), format, DEFAULT_RING_SIZE, DEFAULT_MAX_PENDING_FRAMES, defaultWriterThreads( ) );
+        this.ownsFrameBuffer = true;
+    }
+
+    public FrameCapture( GLContext context, Format format )
+    {
+        this( new FrameBufferGlimpseCanvas( 1, 1, createPixelBuffer( 1, 1, context ).getContext( ) ), format, DEFAULT_RING_SIZE, DEFAULT_MAX_PENDING_FRAMES, defaultWriterThreads( ) );
+        this.ownsFrameBuffer = true;
+    }
+
+    public FrameCapture( FrameBufferGlimpseCanvas frameBuffer, Format format )
+    {
+        this( frameBuffer, format, DEFAULT_RING_SIZE, DEFAULT_MAX_PENDING_FRAMES, defaultWriterThreads( ) );
+    }
+
+    /**
+     * @param ringSize the number of pixel pack buffers; frames are copied out of the ring
+     *                 this many captures after they were read back
+     * @param maxPendingFrames the number of frames which may be waiting for a writer
+     *                         before capturing blocks
+     * @param writerThreads the number of threads encoding and writing frames
+     */
+    public FrameCapture( FrameBufferGlimpseCanvas frameBuffer, Format format, int ringSize, int maxPendingFrames, int writerThreads )
+    {
+        this.frameBuffer = frameBuffer;
+        this.ownsFrameBuffer = false;
+        this.format = format;
+
+        this.ringFrames = new Frame[Math.max( 1, ringSize )];
+        this.ringIndex = 0;
+
+        this.executor = newExecutor( writerThreads );
+        this.maxPendingFrames = Math.max( 1, maxPendingFrames );
+        this.pendingPermits = new Semaphore( this.maxPendingFrames );
+        this.freePixels = new ConcurrentLinkedQueue<byte[]>( );
+
+        this.writeError = new AtomicReference<IOException>( );
+
+        this.capturedCount = new AtomicLong( );
+        this.writtenCount = new AtomicLong( );
+        this.droppedCount = new AtomicLong( );
+        this.blockedNanos = new AtomicLong( );
+        this.writeNanos = new AtomicLong( );
+    }
+
+    public FrameBufferGlimpseCanvas getGlimpseCanvas( )
+    {
+        return this.frameBuffer;
+    }
+
+    public Format getFormat( )
+    {
+        return this.format;
+    }
+
+    /**
+     * Paints the layout into the frame buffer and queues its pixels to be written to
+     * the output file. Returns without waiting for the readback or the write.
+     */
+    public void captureFrame( GlimpseLayout layout, File outputFile, int width, int height ) throws GLException, IOException
+    {
+        rethrowWriteError( );
+
+        // resize the frame buffer canvas if necessary
+        frameBuffer.resize( width, height );
+
+        GlimpseContext context = frameBuffer.getGlimpseContext( );
+        GLSimpleFrameBufferObject fbo = frameBuffer.getFrameBuffer( );
+        GLContext glContext = context.getGLContext( );
+
+        glContext.makeCurrent( );
+        try
+        {
+            fbo.bind( glContext );
+            try
+            {
+                layout.paintTo( context );
+
+                GL gl = glContext.getGL( );
+
+                if ( pixelBufferHandles == null || bufferWidth != width || bufferHeight != height )
+                {
+                    allocatePixelBuffers( gl, width, height );
+                }
+
+                // the buffer about to be reused still holds the oldest frame in the ring
+                ringIndex = ( ringIndex + 1 ) % ringFrames.length;
+                if ( ringFrames[ringIndex] != null )
+                {
+                    retireFrame( gl, ringIndex );
+                }
+
+                gl.glBindBuffer( GL.GL_PIXEL_PACK_BUFFER_ARB, pixelBufferHandles[ringIndex] );
+                gl.glReadPixels( 0, 0, width, height, GL.GL_BGRA, GL.GL_UNSIGNED_BYTE, 0L );
+                gl.glBindBuffer( GL.GL_PIXEL_PACK_BUFFER_ARB, 0 );
+
+                ringFrames[ringIndex] = new Frame( outputFile, width, height );
+                capturedCount.incrementAndGet( );
+            }
+            finally
+            {
+                fbo.unbind( glContext );
+            }
+        }
+        finally
+        {
+            glContext.release( );
+        }
+    }
+
+    /**
+     * Blocks until every frame captured so far has been written.
+     */
+    public void flush( ) throws GLException, IOException
+    {
+        if ( pixelBufferHandles != null )
+        {
+            GLContext glContext = frameBuffer.getGLContext( );
+            glContext.makeCurrent( );
+            try
+            {
+                retireAllFrames( glContext.getGL( ) );
+            }
+            finally
+            {
+                glContext.release( );
+            }
+        }
+
+        // every permit is back once every queued frame has been written
+        pendingPermits.acquireUninterruptibly( maxPendingFrames );
+        pendingPermits.release( maxPendingFrames );
+
+        rethrowWriteError( );
+    }
+
+    /**
+     * Writes any frames still pending, then releases the pixel buffers and writer threads,
+     * and the frame buffer canvas if it was created by this {@code FrameCapture}.
+     */
+    public void dispose( ) throws IOException
+    {
+        try
+        {
+            flush( );
+        }
+        finally
+        {
+            if ( pixelBufferHandles != null )
+            {
+                GLContext glContext = frameBuffer.getGLContext( );
+                glContext.makeCurrent( );
+                try
+                {
+                    glContext.getGL( ).glDeleteBuffers( pixelBufferHandles.length, pixelBufferHandles, 0 );
+                    pixelBufferHandles = null;
+                }
+                finally
+                {
+                    glContext.release( );
+                }
+            }
+
+            executor.shutdown( );
+            freePixels.clear( );
+
+            if ( ownsFrameBuffer ) frameBuffer.dispose( );
+        }
+    }
+
+    /**
+     * @return the number of frames read back since the last call to {@link #resetMetrics()}
+     */
+    public long getCapturedCount( )
+    {
+        return capturedCount.get( );
+    }
+
+    /**
+     * @return the number of frames successfully written
+     */
+    public long getWrittenCount( )
+    {
+        return writtenCount.get( );
+    }
+
+    /**
+     * @return the number of frames lost because their pixel buffer could not be read
+     */
+    public long getDroppedCount( )
+    {
+        return droppedCount.get( );
+    }
+
+    /**
+     * @return the total time capturing spent waiting for writers to catch up, in milliseconds
+     */
+    public double getBlockedTimeMillis( )
+    {
+        return blockedNanos.get( ) * 1e-6;
+    }
+
+    /**
+     * @return the total time spent encoding and writing frames, summed over all writer threads,
+     *         in milliseconds
+     */
+    public double getWriteTimeMillis( )
+    {
+        return writeNanos.get( ) * 1e-6;
+    }
+
+    public void resetMetrics( )
+    {
+        capturedCount.set( 0 );
+        writtenCount.set( 0 );
+        droppedCount.set( 0 );
+        blockedNanos.set( 0 );
+        writeNanos.set( 0 );
+    }
+
+    protected void allocatePixelBuffers( GL gl, int width, int height )
+    {
+        // frames already in the ring were read at the old size
+        if ( pixelBufferHandles != null )
+        {
+            retireAllFrames( gl );
+        }
+        else
+        {
+            pixelBufferHandles = new int[ringFrames.length];
+            gl.glGenBuffers( pixelBufferHandles.length, pixelBufferHandles, 0 );
+        }
+
+        int bytes = width * height * BYTES_PER_PIXEL;
+        for ( int i = 0; i < pixelBufferHandles.length; i++ )
+        {
+            gl.glBindBuffer( GL.GL_PIXEL_PACK_BUFFER_ARB, pixelBufferHandles[i] );
+            gl.glBufferData( GL.GL_PIXEL_PACK_BUFFER_ARB, bytes, null, GL.GL_STREAM_READ );
+        }
+        gl.glBindBuffer( GL.GL_PIXEL_PACK_BUFFER_ARB, 0 );
+
+        bufferWidth = width;
+        bufferHeight = height;
+    }
+
+    protected void retireAllFrames( GL gl )
+    {
+        // oldest first, so frames are handed to the writers in capture order
+        for ( int i = 1; i <= ringFrames.length; i++ )
+        {
+            int index = ( ringIndex + i ) % ringFrames.length;
+            if ( ringFrames[index] != null )
+            {
+                retireFrame( gl, index );
+            }
+        }
+    }
+
+    /**
+     * Copies a frame's pixels out of its pixel buffer and hands them to a writer thread,
+     * first waiting for a free slot if {@code maxPendingFrames} frames are already queued.
+     */
+    protected void retireFrame( GL gl, int index )
+    {
+        Frame frame = ringFrames[index];
+        ringFrames[index] = null;
+
+        if ( !pendingPermits.tryAcquire( ) )
+        {
+            long start = System.nanoTime( );
+            pendingPermits.acquireUninterruptibly( );
+            blockedNanos.addAndGet( System.nanoTime( ) - start );
+        }
+
+        int bytes = frame.width * frame.height * BYTES_PER_PIXEL;
+        byte[] pixels = freePixels.poll( );
+        if ( pixels == null || pixels.length != bytes )
+        {
+            pixels = new byte[bytes];
+        }
+
+        gl.glBindBuffer( GL.GL_PIXEL_PACK_BUFFER_ARB, pixelBufferHandles[index] );
+        try
+        {
+            ByteBuffer mapped = gl.glMapBuffer( GL.GL_PIXEL_PACK_BUFFER_ARB, GL.GL_READ_ONLY );
+            if ( mapped == null )
+            {
+                dropFrame( frame, pixels );
+                return;
+            }
+
+            mapped.rewind( );
+            mapped.get( pixels, 0, bytes );
+
+            if ( !gl.glUnmapBuffer( GL.GL_PIXEL_PACK_BUFFER_ARB ) )
+            {
+                // buffer contents were lost (for example on a display mode change)
+                dropFrame( frame, pixels );
+                return;
+            }
+        }
+        finally
+        {
+            gl.glBindBuffer( GL.GL_PIXEL_PACK_BUFFER_ARB, 0 );
+        }
+
+        executor.execute( new WriteTask( frame, pixels ) );
+    }
+
+    protected void dropFrame( Frame frame, byte[] pixels )
+    {
+        logWarning( logger, "Unable to read back pixels for %s, frame dropped.", frame.outputFile );
+        droppedCount.incrementAndGet( );
+        freePixels.offer( pixels );
+        pendingPermits.release( );
+    }
+
+    protected void rethrowWriteError( ) throws IOException
+    {
+        IOException e = writeError.getAndSet( null );
+        if ( e != null ) throw e;
+    }
+
+    protected class WriteTask implements Runnable
+    {
+        protected Frame frame;
+        protected byte[] pixels;
+
+        public WriteTask( Frame frame, byte[] pixels )
+        {
+            this.frame = frame;
+            this.pixels = pixels;
+        }
+
+        @Override
+        public void run( )
+        {
+            long start = System.nanoTime( );
+            try
+            {
+                writeFrame( frame, pixels, format );
+                writtenCount.incrementAndGet( );
+            }
+            catch ( IOException e )
+            {
+                logWarning( logger, "Unable to write frame to %s", e, frame.outputFile );
+                writeError.compareAndSet( null, e );
+            }
+            finally
+            {
+                writeNanos.addAndGet( System.nanoTime( ) - start );
+                freePixels.offer( pixels );
+                pendingPermits.release( );
+            }
+        }
+    }
+
+    protected static void writeFrame( Frame frame, byte[] pixels, Format format ) throws IOException
+    {
+        switch ( format )
+        {
+        case PNG:
+            if ( !ImageIO.write( toImage( pixels, frame.width, frame.height ), "png", frame.outputFile ) )
+            {
+                throw new IOException( "No PNG writer available" );
+            }
+            break;
+        case RAW:
+            OutputStream out = new FileOutputStream( frame.outputFile );
+            try
+            {
+                out.write( pixels, 0, frame.width * frame.height * BYTES_PER_PIXEL );
+            }
+            finally
+            {
+                out.close( );
+            }
+            break;
+        }
+    }
+
+    /**
+     * Converts bottom-up BGRA pixels to a top-down RGB image, dropping alpha.
+     */
+    protected static BufferedImage toImage( byte[] pixels, int width, int height )
+    {
+        BufferedImage image = new BufferedImage( width, height, BufferedImage.TYPE_INT_RGB );
+        int[] data = ( ( DataBufferInt ) image.getRaster( ).getDataBuffer( ) ).getData( );
+
+        for ( int y = 0; y < height; y++ )
+        {
+            int i = ( height - 1 - y ) * width * BYTES_PER_PIXEL;
+            int j = y * width;
+            for ( int x = 0; x < width; x++ )
+            {
+                int b = pixels[i++] & 0xff;
+                int g = pixels[i++] & 0xff;
+                int r = pixels[i++] & 0xff;
+                i++;
+                data[j++] = ( r << 16 ) | ( g << 8 ) | b;
+            }
+        }
+
+        return image;
+    }
+
+    protected static int defaultWriterThreads( )
+    {
+        return Runtime.getRuntime( ).availableProcessors( );
+    }
+
+    protected static ExecutorService newExecutor( int threads )
+    {
+        final AtomicInteger count = new AtomicInteger( );
+
+        return Executors.newFixedThreadPool( Math.max( 1, threads ), new ThreadFactory( )
+        {
+            @Override
+            public Thread newThread( Runnable runnable )
+            {
+                Thread thread = new Thread( runnable );
+                thread.setName( "frame-writer-" + count.incrementAndGet( ) );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+    }
+}
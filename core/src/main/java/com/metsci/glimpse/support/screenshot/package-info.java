@@ -1,6 +1,8 @@
 /**
  * Utilities for capturing {@link com.metsci.glimpse.layout.GlimpseLayout}
  * areas and saving them as an image file or {@link java.awt.image.BufferedImage}.
+ * {@link com.metsci.glimpse.support.screenshot.FrameCapture} records frame sequences,
+ * reading back and writing images without stalling rendering.
  */
 package com.metsci.glimpse.support.screenshot;
 
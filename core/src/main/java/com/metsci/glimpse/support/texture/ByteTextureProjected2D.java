@@ -92,6 +92,24 @@ public class ByteTextureProjected2D extends TextureProjected2D
         return dataSizeX * dataSizeY;
     }
 
+    @Override
+    protected int getBytesPerPixel( )
+    {
+        return 1;
+    }
+
+    @Override
+    protected int getGLPixelFormat( )
+    {
+        return GL.GL_LUMINANCE_INTEGER_EXT;
+    }
+
+    @Override
+    protected int getGLPixelType( )
+    {
+        return GL.GL_BYTE;
+    }
+
     @Override
     protected float getData( int index )
     {
@@ -139,6 +157,34 @@ public class ByteTextureProjected2D extends TextureProjected2D
         }
     }
 
+    /**
+     * Like {@link #mutate(MutatorByte2D)}, but the mutator promises to modify only the
+     * given rectangle of texels. Only that region is uploaded on the next call
+     * to prepare( ), which is much cheaper than a full upload when a small
+     * portion of a large texture changes.
+     *
+     * @param mutator a class defining the operation which should be applied to
+     *        the texture data.
+     * @param x the index of the first texel modified in the x dimension
+     * @param y the index of the first texel modified in the y dimension
+     * @param sizeX the number of texels modified in the x dimension
+     * @param sizeY the number of texels modified in the y dimension
+     */
+    public void mutate( MutatorByte2D mutator, int x, int y, int sizeX, int sizeY )
+    {
+        lock.lock( );
+        try
+        {
+            data.rewind( );
+            mutator.mutate( data, dataSizeX, dataSizeY );
+            makeDirty( x, y, sizeX, sizeY );
+        }
+        finally
+        {
+            lock.unlock( );
+        }
+    }
+
     public static interface MutatorByte2D
     {
         public void mutate( ByteBuffer data, int dataSizeX, int dataSizeY );
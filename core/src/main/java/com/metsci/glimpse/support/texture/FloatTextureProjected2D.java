@@ -93,6 +93,24 @@ public class FloatTextureProjected2D extends TextureProjected2D
         return dataSizeX * dataSizeY * BYTES_PER_FLOAT;
     }
 
+    @Override
+    protected int getBytesPerPixel( )
+    {
+        return BYTES_PER_FLOAT;
+    }
+
+    @Override
+    protected int getGLPixelFormat( )
+    {
+        return GL.GL_LUMINANCE;
+    }
+
+    @Override
+    protected int getGLPixelType( )
+    {
+        return GL.GL_FLOAT;
+    }
+
     @Override
     protected float getData( int index )
     {
@@ -157,6 +175,34 @@ public class FloatTextureProjected2D extends TextureProjected2D
         }
     }
 
+    /**
+     * Like {@link #mutate(MutatorFloat2D)}, but the mutator promises to modify only the
+     * given rectangle of texels. Only that region is uploaded on the next call
+     * to prepare( ), which is much cheaper than a full upload when a small
+     * portion of a large texture changes.
+     *
+     * @param mutator a class defining the operation which should be applied to
+     *        the texture data.
+     * @param x the index of the first texel modified in the x dimension
+     * @param y the index of the first texel modified in the y dimension
+     * @param sizeX the number of texels modified in the x dimension
+     * @param sizeY the number of texels modified in the y dimension
+     */
+    public void mutate( MutatorFloat2D mutator, int x, int y, int sizeX, int sizeY )
+    {
+        lock.lock( );
+        try
+        {
+            data.rewind( );
+            mutator.mutate( data.asFloatBuffer( ), dataSizeX, dataSizeY );
+            makeDirty( x, y, sizeX, sizeY );
+        }
+        finally
+        {
+            lock.unlock( );
+        }
+    }
+
     public static interface MutatorFloat2D
     {
         public void mutate( FloatBuffer data, int dataSizeX, int dataSizeY );
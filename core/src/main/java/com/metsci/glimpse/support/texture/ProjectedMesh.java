@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.support.texture;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.metsci.glimpse.support.projection.Projection;
+import com.sun.opengl.util.BufferUtil;
+
+/**
+ * The vertex and texture coordinates for every sub-texture tile of a {@link TextureProjected2D},
+ * computed for a particular {@link Projection} and tile layout.
+ *
+ * Each tile is divided into columns of quads, and groups of columns are generated concurrently
+ * on a shared pool of daemon threads (plus the calling thread). The projection is evaluated once
+ * per grid point rather than once per quad corner, and each group writes its quads directly into
+ * a direct buffer ready to be handed to glBufferData.
+ *
+ * Projections are called from several threads at once, so their getVertexXY and getVertexXYZ
+ * methods must be safe for concurrent use. All the projections in
+ * {@link com.metsci.glimpse.support.projection} are.
+ */
+public class ProjectedMesh
+{
+    public static final int VERTICES_PER_QUAD = 4;
+    public static final int TEX_COORDS_PER_VERTEX = 2;
+
+    // chunks per thread, allows threads which finish early to pick up more work
+    protected static final int CHUNKS_PER_THREAD = 4;
+
+    private static ExecutorService sharedExecutor;
+
+    protected int numTextures;
+    protected int floatsPerVertex;
+
+    protected int[] quadCountsX;
+    protected int[] quadCountsY;
+
+    protected FloatBuffer[] vertexCoords;
+    protected FloatBuffer[] texCoords;
+
+    protected ProjectedMesh( int numTextures, int floatsPerVertex )
+    {
+        this.numTextures = numTextures;
+        this.floatsPerVertex = floatsPerVertex;
+        this.quadCountsX = new int[numTextures];
+        this.quadCountsY = new int[numTextures];
+        this.vertexCoords = new FloatBuffer[numTextures];
+        this.texCoords = new FloatBuffer[numTextures];
+    }
+
+    public int getNumTextures( )
+    {
+        return numTextures;
+    }
+
+    public int getQuadCount( int texIndex )
+    {
+        return quadCountsX[texIndex] * quadCountsY[texIndex];
+    }
+
+    /**
+     * @return the vertex coordinates for the given tile, rewound and ready to be uploaded
+     */
+    public FloatBuffer getVertexCoords( int texIndex )
+    {
+        return ( FloatBuffer ) vertexCoords[texIndex].rewind( );
+    }
+
+    /**
+     * @return the texture coordinates for the given tile, rewound and ready to be uploaded
+     */
+    public FloatBuffer getTexCoords( int texIndex )
+    {
+        return ( FloatBuffer ) texCoords[texIndex].rewind( );
+    }
+
+    /**
+     * @return the number of bytes of direct memory held by this mesh
+     */
+    public long getSizeBytes( )
+    {
+        long floats = 0;
+        for ( int i = 0; i < numTextures; i++ )
+        {
+            floats += vertexCoords[i].capacity( ) + texCoords[i].capacity( );
+        }
+        return floats * BufferUtil.SIZEOF_FLOAT;
+    }
+
+    /**
+     * Generates the mesh for the given tile layout using the shared worker pool.
+     */
+    public static ProjectedMesh build( Projection projection, int dataSizeX, int dataSizeY, int[] texStartsX, int[] texStartsY, int[] texSizesX, int[] texSizesY, boolean useVertexZCoord ) throws InterruptedException
+    {
+        return build( projection, dataSizeX, dataSizeY, texStartsX, texStartsY, texSizesX, texSizesY, useVertexZCoord, getSharedExecutor( ), Runtime.getRuntime( ).availableProcessors( ) );
+    }
+
+    /**
+     * Generates the mesh for the given tile layout. The calling thread works alongside the
+     * executor, so this completes even if the executor is saturated (including when it is
+     * called from one of the executor's own threads).
+     *
+     * @param executor the executor which runs generation tasks, or null to generate on the calling thread
+     * @param parallelism the number of tasks the executor can run at once
+     */
+    public static ProjectedMesh build( final Projection projection, final int dataSizeX, final int dataSizeY, final int[] texStartsX, final int[] texStartsY, final int[] texSizesX, final int[] texSizesY, boolean useVertexZCoord, ExecutorService executor, int parallelism ) throws InterruptedException
+    {
+        int numTextures = texStartsX.length;
+        final ProjectedMesh mesh = new ProjectedMesh( numTextures, useVertexZCoord ? 3 : 2 );
+
+        int totalColumns = 0;
+        for ( int i = 0; i < numTextures; i++ )
+        {
+            int quadCountX = projection.getSizeX( texSizesX[i] );
+            int quadCountY = projection.getSizeY( texSizesY[i] );
+            int quadCount = quadCountX * quadCountY;
+
+            mesh.quadCountsX[i] = quadCountX;
+            mesh.quadCountsY[i] = quadCountY;
+            mesh.vertexCoords[i] = BufferUtil.newFloatBuffer( quadCount * VERTICES_PER_QUAD * mesh.floatsPerVertex );
+            mesh.texCoords[i] = BufferUtil.newFloatBuffer( quadCount * VERTICES_PER_QUAD * TEX_COORDS_PER_VERTEX );
+
+            totalColumns += quadCountX;
+        }
+
+        int threads = executor == null ? 1 : Math.max( 1, parallelism );
+        int columnsPerChunk = Math.max( 1, totalColumns / ( threads * CHUNKS_PER_THREAD ) );
+
+        // divide each tile's columns into chunks of roughly columnsPerChunk columns
+        final List<int[]> chunks = new ArrayList<int[]>( );
+        for ( int i = 0; i < numTextures; i++ )
+        {
+            int quadCountX = mesh.quadCountsX[i];
+            for ( int from = 0; from < quadCountX; from += columnsPerChunk )
+            {
+                chunks.add( new int[] { i, from, Math.min( quadCountX, from + columnsPerChunk ) } );
+            }
+        }
+
+        final AtomicInteger nextChunk = new AtomicInteger( );
+        final Runnable worker = new Runnable( )
+        {
+            @Override
+            public void run( )
+            {
+                int index;
+                while ( ( index = nextChunk.getAndIncrement( ) ) < chunks.size( ) )
+                {
+                    int[] chunk = chunks.get( index );
+                    int i = chunk[0];
+                    mesh.fillColumns( projection, i, texStartsX[i] / ( double ) dataSizeX, texStartsY[i] / ( double ) dataSizeY, texSizesX[i] / ( double ) dataSizeX, texSizesY[i] / ( double ) dataSizeY, chunk[1], chunk[2] );
+                }
+            }
+        };
+
+        if ( threads == 1 || chunks.size( ) <= 1 )
+        {
+            worker.run( );
+            return mesh;
+        }
+
+        List<Future<?>> futures = new ArrayList<Future<?>>( threads - 1 );
+        for ( int t = 0; t < threads - 1; t++ )
+        {
+            futures.add( executor.submit( worker ) );
+        }
+
+        worker.run( );
+
+        // every chunk has been claimed, so helpers which have not started yet have
+        // nothing left to do and can be cancelled instead of waited for
+        for ( Future<?> future : futures )
+        {
+            future.cancel( false );
+        }
+
+        for ( Future<?> future : futures )
+        {
+            try
+            {
+                future.get( );
+            }
+            catch ( CancellationException e )
+            {
+                // never started
+            }
+            catch ( ExecutionException e )
+            {
+                throw new RuntimeException( "Problem generating projected texture mesh.", e.getCause( ) );
+            }
+        }
+
+        return mesh;
+    }
+
+    /**
+     * Writes the vertex and texture coordinates of quad columns [fromX,toX) of one tile. Quads
+     * are stored column by column, so the range occupies a contiguous span of each buffer.
+     */
+    protected void fillColumns( Projection projection, int texIndex, double startFracX, double startFracY, double sizeFracX, double sizeFracY, int fromX, int toX )
+    {
+        int quadCountX = quadCountsX[texIndex];
+        int quadCountY = quadCountsY[texIndex];
+        int gridSizeY = quadCountY + 1;
+        int columnCount = toX - fromX;
+
+        // project each grid point shared by the quads in this range exactly once
+        float[] temp = new float[floatsPerVertex];
+        float[] grid = new float[( columnCount + 1 ) * gridSizeY * floatsPerVertex];
+        int g = 0;
+        for ( int x = fromX; x <= toX; x++ )
+        {
+            double dataFracX = startFracX + sizeFracX * ( x / ( double ) quadCountX );
+
+            for ( int y = 0; y < gridSizeY; y++ )
+            {
+                double dataFracY = startFracY + sizeFracY * ( y / ( double ) quadCountY );
+
+                if ( floatsPerVertex == 3 )
+                    projection.getVertexXYZ( dataFracX, dataFracY, temp );
+                else
+                    projection.getVertexXY( dataFracX, dataFracY, temp );
+
+                for ( int k = 0; k < floatsPerVertex; k++ )
+                {
+                    grid[g++] = temp[k];
+                }
+            }
+        }
+
+        float[] vertices = new float[columnCount * quadCountY * VERTICES_PER_QUAD * floatsPerVertex];
+        float[] texs = new float[columnCount * quadCountY * VERTICES_PER_QUAD * TEX_COORDS_PER_VERTEX];
+        int v = 0;
+        int t = 0;
+        for ( int x = 0; x < columnCount; x++ )
+        {
+            float texFracX0 = ( float ) ( ( fromX + x ) / ( double ) quadCountX );
+            float texFracX1 = ( float ) ( ( fromX + x + 1 ) / ( double ) quadCountX );
+
+            for ( int y = 0; y < quadCountY; y++ )
+            {
+                float texFracY0 = ( float ) ( y / ( double ) quadCountY );
+                float texFracY1 = ( float ) ( ( y + 1 ) / ( double ) quadCountY );
+
+                v = putGridVertex( grid, x, y, gridSizeY, vertices, v );
+                v = putGridVertex( grid, x + 1, y, gridSizeY, vertices, v );
+                v = putGridVertex( grid, x + 1, y + 1, gridSizeY, vertices, v );
+                v = putGridVertex( grid, x, y + 1, gridSizeY, vertices, v );
+
+                texs[t++] = texFracX0;
+                texs[t++] = texFracY0;
+                texs[t++] = texFracX1;
+                texs[t++] = texFracY0;
+                texs[t++] = texFracX1;
+                texs[t++] = texFracY1;
+                texs[t++] = texFracX0;
+                texs[t++] = texFracY1;
+            }
+        }
+
+        // duplicates have independent positions, so concurrent chunks do not interfere
+        FloatBuffer vertexBuffer = vertexCoords[texIndex].duplicate( );
+        vertexBuffer.position( fromX * quadCountY * VERTICES_PER_QUAD * floatsPerVertex );
+        vertexBuffer.put( vertices );
+
+        FloatBuffer texBuffer = texCoords[texIndex].duplicate( );
+        texBuffer.position( fromX * quadCountY * VERTICES_PER_QUAD * TEX_COORDS_PER_VERTEX );
+        texBuffer.put( texs );
+    }
+
+    protected int putGridVertex( float[] grid, int x, int y, int gridSizeY, float[] vertices, int v )
+    {
+        int g = ( x * gridSizeY + y ) * floatsPerVertex;
+        for ( int k = 0; k < floatsPerVertex; k++ )
+        {
+            vertices[v++] = grid[g + k];
+        }
+        return v;
+    }
+
+    /**
+     * @return a pool of daemon threads shared by all projected textures
+     */
+    public static synchronized ExecutorService getSharedExecutor( )
+    {
+        if ( sharedExecutor == null )
+        {
+            final AtomicInteger count = new AtomicInteger( );
+
+            sharedExecutor = Executors.newFixedThreadPool( Runtime.getRuntime( ).availableProcessors( ), new ThreadFactory( )
+            {
+                @Override
+                public Thread newThread( Runnable runnable )
+                {
+                    Thread thread = new Thread( runnable );
+                    thread.setName( "projected-mesh-" + count.incrementAndGet( ) );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            } );
+        }
+
+        return sharedExecutor;
+    }
+}
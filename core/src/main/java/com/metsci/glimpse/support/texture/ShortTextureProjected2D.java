@@ -95,6 +95,24 @@ public class ShortTextureProjected2D extends TextureProjected2D
         return dataSizeX * dataSizeY * BYTES_PER_SHORT;
     }
 
+    @Override
+    protected int getBytesPerPixel( )
+    {
+        return BYTES_PER_SHORT;
+    }
+
+    @Override
+    protected int getGLPixelFormat( )
+    {
+        return GL.GL_LUMINANCE_INTEGER_EXT;
+    }
+
+    @Override
+    protected int getGLPixelType( )
+    {
+        return GL.GL_SHORT;
+    }
+
     @Override
     protected float getData( int index )
     {
@@ -142,6 +160,34 @@ public class ShortTextureProjected2D extends TextureProjected2D
         }
     }
 
+    /**
+     * Like {@link #mutate(MutatorShort2D)}, but the mutator promises to modify only the
+     * given rectangle of texels. Only that region is uploaded on the next call
+     * to prepare( ), which is much cheaper than a full upload when a small
+     * portion of a large texture changes.
+     *
+     * @param mutator a class defining the operation which should be applied to
+     *        the texture data.
+     * @param x the index of the first texel modified in the x dimension
+     * @param y the index of the first texel modified in the y dimension
+     * @param sizeX the number of texels modified in the x dimension
+     * @param sizeY the number of texels modified in the y dimension
+     */
+    public void mutate( MutatorShort2D mutator, int x, int y, int sizeX, int sizeY )
+    {
+        lock.lock( );
+        try
+        {
+            data.rewind( );
+            mutator.mutate( data.asShortBuffer( ), dataSizeX, dataSizeY );
+            makeDirty( x, y, sizeX, sizeY );
+        }
+        finally
+        {
+            lock.unlock( );
+        }
+    }
+
     public static interface MutatorShort2D
     {
         public void mutate( ShortBuffer data, int dataSizeX, int dataSizeY );
@@ -30,7 +30,14 @@ import static com.metsci.glimpse.gl.util.GLUtils.*;
 import static java.util.logging.Level.WARNING;
 
 import java.nio.ByteBuffer;
-import java.nio.FloatBuffer;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.locks.ReentrantLock;
 
 import javax.media.opengl.GL;
@@ -39,6 +46,7 @@ import javax.media.opengl.GLContext;
 import com.metsci.glimpse.gl.texture.DrawableTexture;
 import com.metsci.glimpse.support.projection.InvertibleProjection;
 import com.metsci.glimpse.support.projection.Projection;
+import com.metsci.glimpse.support.repaint.DirtyListener;
 import java.util.logging.Logger;
 import com.sun.opengl.util.BufferUtil;
 
@@ -48,6 +56,8 @@ public abstract class TextureProjected2D implements DrawableTexture
     public static final int VERTICES_PER_QUAD = 4;
     public static final int BYTES_PER_FLOAT = 4;
 
+    public static final int DEFAULT_MESH_CACHE_SIZE = 4;
+
     private static final Logger logger = Logger.getLogger( TextureProjected2D.class.getName( ) );
 
     // projection defining the mapping from texel (texture index) to vertex coordinate
@@ -56,9 +66,6 @@ public abstract class TextureProjected2D implements DrawableTexture
     // buffer to store texture data
     protected ByteBuffer data;
 
-    // buffer to store vertex and texture coordinate data
-    protected FloatBuffer coordBuffer;
-
     // whether to compute and use a z coordinate for each vertex
     protected boolean useVertexZCoord;
 
@@ -95,8 +102,35 @@ public abstract class TextureProjected2D implements DrawableTexture
 
     protected boolean dirty;
 
+    protected final Collection<DirtyListener> dirtyListeners = new CopyOnWriteArrayList<DirtyListener>( );
+
+    // when set, only the texels in [dirtyMinX,dirtyMaxX) x [dirtyMinY,dirtyMaxY)
+    // have changed since the last upload and may be sent with glTexSubImage2D
+    protected boolean dirtyRegion;
+    protected int dirtyMinX;
+    protected int dirtyMinY;
+    protected int dirtyMaxX;
+    protected int dirtyMaxY;
+
+    // whether dirty regions are staged through a pair of pixel unpack buffers
+    protected boolean usePixelBuffers;
+    // OpenGL pixel unpack buffer handles (length 2, allocated lazily)
+    protected int[] pixelBufferHandles;
+    // the pixel buffer most recently written to
+    protected int pixelBufferIndex;
+
+    // number of texel bytes handed to OpenGL since the last resetUploadedBytes( )
+    protected long uploadedBytes;
+
     protected boolean projectionDirty;
 
+    // GL_MAX_TEXTURE_SIZE, or 0 if it has not yet been queried
+    protected int maxTextureSize;
+
+    // recently used projection meshes, most recently used last
+    protected Map<MeshKey, FutureTask<ProjectedMesh>> meshCache;
+    protected int meshCacheSize;
+
     protected int dataSizeX;
     protected int dataSizeY;
 
@@ -108,6 +142,21 @@ public abstract class TextureProjected2D implements DrawableTexture
         this.dataSizeX = dataSizeX;
         this.dataSizeY = dataSizeY;
         this.data = newByteBuffer( );
+
+        this.meshCacheSize = DEFAULT_MESH_CACHE_SIZE;
+        this.meshCache = new LinkedHashMap<MeshKey, FutureTask<ProjectedMesh>>( 16, 0.75f, true )
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<MeshKey, FutureTask<ProjectedMesh>> eldest )
+            {
+                if ( size( ) <= meshCacheSize ) return false;
+
+                eldest.getValue( ).cancel( false );
+                return true;
+            }
+        };
     }
 
     protected abstract void prepare_setData( GL gl );
@@ -116,6 +165,12 @@ public abstract class TextureProjected2D implements DrawableTexture
 
     protected abstract float getData( int index );
 
+    protected abstract int getBytesPerPixel( );
+
+    protected abstract int getGLPixelFormat( );
+
+    protected abstract int getGLPixelType( );
+
     public double getDataValue( double coordX, double coordY )
     {
         lock.lock( );
@@ -161,15 +216,212 @@ public abstract class TextureProjected2D implements DrawableTexture
         }
     }
 
+    /**
+     * Indicates that the current projection has changed in place. Any cached mesh
+     * for the projection is discarded and regenerated on the next call to prepare( ).
+     */
     public void makeProjectionDirty( )
     {
-        this.projectionDirty = true;
+        lock.lock( );
+        try
+        {
+            Iterator<MeshKey> iter = meshCache.keySet( ).iterator( );
+            while ( iter.hasNext( ) )
+            {
+                if ( iter.next( ).projection == projection ) iter.remove( );
+            }
+
+            this.projectionDirty = true;
+        }
+        finally
+        {
+            lock.unlock( );
+        }
+    }
+
+    /**
+     * Sets the number of projection meshes to keep. Meshes are keyed by projection
+     * instance and tile layout, so switching back to a recently used projection or
+     * data size reuses the stored vertex data instead of evaluating the projection.
+     */
+    public void setMeshCacheSize( int meshCacheSize )
+    {
+        lock.lock( );
+        try
+        {
+            this.meshCacheSize = Math.max( 1, meshCacheSize );
+
+            Iterator<FutureTask<ProjectedMesh>> iter = meshCache.values( ).iterator( );
+            while ( meshCache.size( ) > this.meshCacheSize && iter.hasNext( ) )
+            {
+                iter.next( ).cancel( false );
+                iter.remove( );
+            }
+        }
+        finally
+        {
+            lock.unlock( );
+        }
+    }
+
+    public int getMeshCacheSize( )
+    {
+        lock.lock( );
+        try
+        {
+            return meshCacheSize;
+        }
+        finally
+        {
+            lock.unlock( );
+        }
     }
 
     @Override
     public void makeDirty( )
     {
         this.dirty = true;
+        this.dirtyRegion = false;
+        notifyDirtyListeners( );
+    }
+
+    /**
+     * Marks a rectangle of texels as modified. On the next call to prepare( ), only
+     * the portions of each sub-texture tile which intersect the union of all rectangles
+     * marked since the last upload are sent to OpenGL. If the whole texture is already
+     * dirty, this has no effect.
+     *
+     * @param x the index of the first modified texel in the x dimension
+     * @param y the index of the first modified texel in the y dimension
+     * @param sizeX the number of modified texels in the x dimension
+     * @param sizeY the number of modified texels in the y dimension
+     */
+    public void makeDirty( int x, int y, int sizeX, int sizeY )
+    {
+        int minX = Math.max( 0, x );
+        int minY = Math.max( 0, y );
+        int maxX = Math.min( dataSizeX, x + sizeX );
+        int maxY = Math.min( dataSizeY, y + sizeY );
+
+        if ( minX >= maxX || minY >= maxY ) return;
+
+        // the entire texture is already scheduled for upload
+        if ( dirty && !dirtyRegion ) return;
+
+        if ( dirtyRegion )
+        {
+            this.dirtyMinX = Math.min( dirtyMinX, minX );
+            this.dirtyMinY = Math.min( dirtyMinY, minY );
+            this.dirtyMaxX = Math.max( dirtyMaxX, maxX );
+            this.dirtyMaxY = Math.max( dirtyMaxY, maxY );
+        }
+        else
+        {
+            this.dirtyMinX = minX;
+            this.dirtyMinY = minY;
+            this.dirtyMaxX = maxX;
+            this.dirtyMaxY = maxY;
+        }
+
+        this.dirtyRegion = true;
+        this.dirty = true;
+        notifyDirtyListeners( );
+    }
+
+    /**
+     * Adds a listener which is notified whenever the texture is marked dirty, including
+     * by mutate( ). Used by {@link com.metsci.glimpse.painter.texture.ShadedTexturePainter}
+     * to mark itself dirty when the data in its textures changes.
+     */
+    public void addDirtyListener( DirtyListener listener )
+    {
+        this.dirtyListeners.add( listener );
+    }
+
+    public void removeDirtyListener( DirtyListener listener )
+    {
+        this.dirtyListeners.remove( listener );
+    }
+
+    protected void notifyDirtyListeners( )
+    {
+        for ( DirtyListener listener : dirtyListeners )
+        {
+            listener.markDirty( );
+        }
+    }
+
+    /**
+     * Marks a band of full rows as modified.
+     *
+     * @see #makeDirty(int, int, int, int)
+     */
+    public void makeDirtyRows( int y, int sizeY )
+    {
+        makeDirty( 0, y, dataSizeX, sizeY );
+    }
+
+    /**
+     * If enabled, dirty regions are copied into one of two alternating pixel unpack
+     * buffer objects and the sub-texture uploads are sourced from that buffer. The
+     * glTexSubImage2D calls then return without waiting for the transfer to complete,
+     * so the texture lock (and any thread blocked in mutate( )) is only held for the
+     * time it takes to copy the dirty rows. Full texture uploads are not affected.
+     */
+    public void setPixelBufferUpload( boolean usePixelBuffers )
+    {
+        lock.lock( );
+        try
+        {
+            this.usePixelBuffers = usePixelBuffers;
+        }
+        finally
+        {
+            lock.unlock( );
+        }
+    }
+
+    public boolean isPixelBufferUpload( )
+    {
+        lock.lock( );
+        try
+        {
+            return usePixelBuffers;
+        }
+        finally
+        {
+            lock.unlock( );
+        }
+    }
+
+    /**
+     * @return the number of texel bytes sent to OpenGL by full and partial uploads
+     *         since this texture was created or resetUploadedBytes( ) was last called
+     */
+    public long getUploadedBytes( )
+    {
+        lock.lock( );
+        try
+        {
+            return uploadedBytes;
+        }
+        finally
+        {
+            lock.unlock( );
+        }
+    }
+
+    public void resetUploadedBytes( )
+    {
+        lock.lock( );
+        try
+        {
+            uploadedBytes = 0;
+        }
+        finally
+        {
+            lock.unlock( );
+        }
     }
 
     @Override
@@ -218,8 +470,18 @@ public abstract class TextureProjected2D implements DrawableTexture
 
             if ( glAllocated && dirty )
             {
-                prepare_setData( gl );
+                if ( dirtyRegion )
+                {
+                    prepare_setSubData( gl );
+                }
+                else
+                {
+                    prepare_setData( gl );
+                    uploadedBytes += getRequiredCapacityBytes( );
+                }
+
                 dirty = false;
+                dirtyRegion = false;
             }
 
             if ( glAllocated && projectionDirty )
@@ -287,6 +549,8 @@ public abstract class TextureProjected2D implements DrawableTexture
         if ( vertexCoordHandles != null ) gl.glDeleteBuffers( numTextures, vertexCoordHandles, 0 );
 
         if ( texCoordHandles != null ) gl.glDeleteBuffers( numTextures, texCoordHandles, 0 );
+
+        if ( pixelBufferHandles != null ) gl.glDeleteBuffers( pixelBufferHandles.length, pixelBufferHandles, 0 );
     }
 
     protected void allocate_genHandles( GL gl )
@@ -297,15 +561,11 @@ public abstract class TextureProjected2D implements DrawableTexture
 
         if ( texCoordHandles != null ) gl.glDeleteBuffers( numTextures, texCoordHandles, 0 );
 
-        int maxTextureSize = getMaxGLTextureSize( gl );
-
-        int textureCountX = dataSizeX / maxTextureSize;
-        int textureCountY = dataSizeY / maxTextureSize;
+        maxTextureSize = getMaxGLTextureSize( gl );
 
-        if ( dataSizeX % maxTextureSize != 0 ) textureCountX++;
-        if ( dataSizeY % maxTextureSize != 0 ) textureCountY++;
+        int[][] layout = getTileLayout( dataSizeX, dataSizeY, maxTextureSize );
 
-        numTextures = textureCountX * textureCountY;
+        numTextures = layout[0].length;
 
         if ( numTextures == 0 || projection == null ) return;
 
@@ -318,12 +578,43 @@ public abstract class TextureProjected2D implements DrawableTexture
         texCoordHandles = new int[numTextures];
         gl.glGenBuffers( numTextures, texCoordHandles, 0 );
 
-        texStartsX = new int[numTextures];
-        texStartsY = new int[numTextures];
-        texSizesX = new int[numTextures];
-        texSizesY = new int[numTextures];
+        texStartsX = layout[0];
+        texStartsY = layout[1];
+        texSizesX = layout[2];
+        texSizesY = layout[3];
         texQuadCounts = new int[numTextures];
 
+        for ( int i = 0; i < numTextures; i++ )
+        {
+            texQuadCounts[i] = getQuadCountForTexture( i, texStartsX[i], texStartsY[i], texSizesX[i], texSizesY[i] );
+        }
+
+        glAllocated = true;
+
+        makeDirty( );
+        projectionDirty = true;
+    }
+
+    /**
+     * Splits the data into tiles no larger than maxTextureSize on a side.
+     *
+     * @return the x starts, y starts, x sizes, and y sizes of the tiles
+     */
+    protected static int[][] getTileLayout( int dataSizeX, int dataSizeY, int maxTextureSize )
+    {
+        int textureCountX = dataSizeX / maxTextureSize;
+        int textureCountY = dataSizeY / maxTextureSize;
+
+        if ( dataSizeX % maxTextureSize != 0 ) textureCountX++;
+        if ( dataSizeY % maxTextureSize != 0 ) textureCountY++;
+
+        int numTextures = textureCountX * textureCountY;
+
+        int[] startsX = new int[numTextures];
+        int[] startsY = new int[numTextures];
+        int[] sizesX = new int[numTextures];
+        int[] sizesY = new int[numTextures];
+
         int index = 0;
         for ( int x = 0; x < textureCountX; x++ )
         {
@@ -333,25 +624,18 @@ public abstract class TextureProjected2D implements DrawableTexture
                 int startY = y * maxTextureSize;
                 int endX = Math.min( startX + maxTextureSize, dataSizeX );
                 int endY = Math.min( startY + maxTextureSize, dataSizeY );
-                int sizeX = endX - startX;
-                int sizeY = endY - startY;
 
-                texStartsX[index] = startX;
-                texStartsY[index] = startY;
+                startsX[index] = startX;
+                startsY[index] = startY;
 
-                texSizesX[index] = sizeX;
-                texSizesY[index] = sizeY;
-
-                texQuadCounts[index] = getQuadCountForTexture( index, startX, startY, sizeX, sizeY );
+                sizesX[index] = endX - startX;
+                sizesY[index] = endY - startY;
 
                 index++;
             }
         }
 
-        glAllocated = true;
-
-        makeDirty( );
-        makeProjectionDirty( );
+        return new int[][] { startsX, startsY, sizesX, sizesY };
     }
 
     public static int getMaxGLTextureSize( GL gl )
@@ -370,91 +654,198 @@ public abstract class TextureProjected2D implements DrawableTexture
 
     protected void prepare_setCoords( GL gl )
     {
-        float[] temp = new float[floatsPerVertex];
+        ProjectedMesh mesh;
+        try
+        {
+            mesh = getMesh( projection, dataSizeX, dataSizeY, maxTextureSize ).get( );
+        }
+        catch ( InterruptedException e )
+        {
+            // leave the projection dirty and try again next frame
+            Thread.currentThread( ).interrupt( );
+            logger.log( WARNING, "Interrupted while generating projection mesh." );
+            return;
+        }
+        catch ( ExecutionException e )
+        {
+            meshCache.remove( new MeshKey( projection, dataSizeX, dataSizeY, maxTextureSize ) );
+            throw new RuntimeException( "Problem generating projection mesh.", e.getCause( ) );
+        }
 
         for ( int i = 0; i < numTextures; i++ )
         {
-            int projectFloats = texQuadCounts[i] * VERTICES_PER_QUAD * floatsPerVertex;
-            if ( coordBuffer == null || coordBuffer.capacity( ) < projectFloats ) coordBuffer = BufferUtil.newFloatBuffer( projectFloats );
+            // the projection may have changed since the tiles were allocated
+            texQuadCounts[i] = mesh.getQuadCount( i );
 
-            coordBuffer.rewind( );
-            putVerticesCoords( i, texStartsX[i], texStartsY[i], texSizesX[i], texSizesY[i], temp );
+            int vertexFloats = mesh.getQuadCount( i ) * VERTICES_PER_QUAD * floatsPerVertex;
             gl.glBindBuffer( GL.GL_ARRAY_BUFFER, vertexCoordHandles[i] );
-            gl.glBufferData( GL.GL_ARRAY_BUFFER, projectFloats * BYTES_PER_FLOAT, coordBuffer.rewind( ), GL.GL_STATIC_DRAW );
+            gl.glBufferData( GL.GL_ARRAY_BUFFER, vertexFloats * BYTES_PER_FLOAT, mesh.getVertexCoords( i ), GL.GL_STATIC_DRAW );
 
-            coordBuffer.rewind( );
-            putVerticesTexCoords( i, texStartsX[i], texStartsY[i], texSizesX[i], texSizesY[i] );
+            int texFloats = mesh.getQuadCount( i ) * VERTICES_PER_QUAD * ProjectedMesh.TEX_COORDS_PER_VERTEX;
             gl.glBindBuffer( GL.GL_ARRAY_BUFFER, texCoordHandles[i] );
-            gl.glBufferData( GL.GL_ARRAY_BUFFER, projectFloats * BYTES_PER_FLOAT, coordBuffer.rewind( ), GL.GL_STATIC_DRAW );
+            gl.glBufferData( GL.GL_ARRAY_BUFFER, texFloats * BYTES_PER_FLOAT, mesh.getTexCoords( i ), GL.GL_STATIC_DRAW );
         }
     }
 
-    protected void putVerticesCoords( int texIndex, int texStartX, int texStartY, int texSizeX, int texSizeY, float[] temp )
+    /**
+     * Returns the (possibly still running) mesh generation task for the given projection and
+     * data size, creating one if none is cached. If the task has not been picked up by a worker
+     * thread yet, the calling thread runs it, so waiting on the result never depends on a free
+     * worker.
+     */
+    protected FutureTask<ProjectedMesh> getMesh( Projection projection, int dataSizeX, int dataSizeY, int maxTextureSize )
     {
-        int quadCountX = projection.getSizeX( texSizeX );
-        int quadCountY = projection.getSizeY( texSizeY );
+        FutureTask<ProjectedMesh> task = getMeshTask( projection, dataSizeX, dataSizeY, maxTextureSize );
+        task.run( );
+        return task;
+    }
 
-        for ( int x = 0; x < quadCountX; x++ )
-        {
-            double texFracX0 = x / ( double ) quadCountX;
-            double texFracX1 = ( x + 1 ) / ( double ) quadCountX;
+    /**
+     * Starts generating the mesh for the current projection and data size in the background,
+     * so that it is usually ready by the time the GL thread needs it. Does nothing until the
+     * maximum texture size (and therefore the tile layout) is known.
+     */
+    protected void prefetchMesh( )
+    {
+        if ( projection == null || maxTextureSize <= 0 || dataSizeX <= 0 || dataSizeY <= 0 ) return;
 
-            for ( int y = 0; y < quadCountY; y++ )
-            {
-                double texFracY0 = y / ( double ) quadCountY;
-                double texFracY1 = ( y + 1 ) / ( double ) quadCountY;
+        MeshKey key = new MeshKey( projection, dataSizeX, dataSizeY, maxTextureSize );
+        if ( meshCache.containsKey( key ) ) return;
 
-                putVertexCoords( texIndex, texFracX0, texFracY0, temp );
-                putVertexCoords( texIndex, texFracX1, texFracY0, temp );
-                putVertexCoords( texIndex, texFracX1, texFracY1, temp );
-                putVertexCoords( texIndex, texFracX0, texFracY1, temp );
-            }
-        }
+        ProjectedMesh.getSharedExecutor( ).execute( getMeshTask( projection, dataSizeX, dataSizeY, maxTextureSize ) );
     }
 
-    protected void putVertexCoords( int texIndex, double texFracX, double texFracY, float[] temp )
+    protected FutureTask<ProjectedMesh> getMeshTask( final Projection projection, final int dataSizeX, final int dataSizeY, final int maxTextureSize )
     {
-        double dataFracX = ( texStartsX[texIndex] + texSizesX[texIndex] * texFracX ) / dataSizeX;
-        double dataFracY = ( texStartsY[texIndex] + texSizesY[texIndex] * texFracY ) / dataSizeY;
+        MeshKey key = new MeshKey( projection, dataSizeX, dataSizeY, maxTextureSize );
 
-        if ( useVertexZCoord )
-        {
-            projection.getVertexXYZ( dataFracX, dataFracY, temp );
-            coordBuffer.put( temp[0] ).put( temp[1] ).put( temp[2] );
-        }
-        else
+        FutureTask<ProjectedMesh> task = meshCache.get( key );
+        if ( task == null || task.isCancelled( ) )
         {
-            projection.getVertexXY( dataFracX, dataFracY, temp );
-            coordBuffer.put( temp[0] ).put( temp[1] );
+            task = new FutureTask<ProjectedMesh>( new Callable<ProjectedMesh>( )
+            {
+                @Override
+                public ProjectedMesh call( ) throws Exception
+                {
+                    int[][] layout = getTileLayout( dataSizeX, dataSizeY, maxTextureSize );
+                    return ProjectedMesh.build( projection, dataSizeX, dataSizeY, layout[0], layout[1], layout[2], layout[3], useVertexZCoord );
+                }
+            } );
+
+            meshCache.put( key, task );
         }
+
+        return task;
     }
 
-    protected void putVerticesTexCoords( int texIndex, int texStartX, int texStartY, int texSizeX, int texSizeY )
+    /**
+     * Uploads the current dirty region to each sub-texture tile which it intersects
+     * using glTexSubImage2D. The tiles must already have been specified by a full
+     * prepare_setData( ) call, which allocate_genHandles( ) guarantees by dirtying
+     * the entire texture.
+     */
+    protected void prepare_setSubData( GL gl )
     {
-        int quadCountX = projection.getSizeX( texSizeX );
-        int quadCountY = projection.getSizeY( texSizeY );
+        int bytesPerPixel = getBytesPerPixel( );
+        int regionSizeX = dirtyMaxX - dirtyMinX;
+        int regionSizeY = dirtyMaxY - dirtyMinY;
+
+        boolean staged = usePixelBuffers && prepare_stagePixelBuffer( gl, regionSizeX, regionSizeY, bytesPerPixel );
+
+        gl.glPixelStorei( GL.GL_UNPACK_ALIGNMENT, 1 );
+        gl.glPixelStorei( GL.GL_UNPACK_SKIP_PIXELS, 0 );
+        gl.glPixelStorei( GL.GL_UNPACK_SKIP_ROWS, 0 );
+        gl.glPixelStorei( GL.GL_UNPACK_ROW_LENGTH, staged ? regionSizeX : dataSizeX );
 
-        for ( int x = 0; x < quadCountX; x++ )
+        for ( int i = 0; i < numTextures; i++ )
         {
-            double texFracX0 = x / ( double ) quadCountX;
-            double texFracX1 = ( x + 1 ) / ( double ) quadCountX;
+            int minX = Math.max( dirtyMinX, texStartsX[i] );
+            int minY = Math.max( dirtyMinY, texStartsY[i] );
+            int maxX = Math.min( dirtyMaxX, texStartsX[i] + texSizesX[i] );
+            int maxY = Math.min( dirtyMaxY, texStartsY[i] + texSizesY[i] );
 
-            for ( int y = 0; y < quadCountY; y++ )
-            {
-                double texFracY0 = y / ( double ) quadCountY;
-                double texFracY1 = ( y + 1 ) / ( double ) quadCountY;
+            if ( minX >= maxX || minY >= maxY ) continue;
+
+            int offsetX = minX - texStartsX[i];
+            int offsetY = minY - texStartsY[i];
+            int sizeX = maxX - minX;
+            int sizeY = maxY - minY;
+
+            gl.glBindTexture( getGLTextureDim( NUM_DIMENSIONS ), textureHandles[i] );
 
-                putVertexTexCoords( texIndex, texFracX0, texFracY0 );
-                putVertexTexCoords( texIndex, texFracX1, texFracY0 );
-                putVertexTexCoords( texIndex, texFracX1, texFracY1 );
-                putVertexTexCoords( texIndex, texFracX0, texFracY1 );
+            if ( staged )
+            {
+                long offset = ( ( long ) ( minY - dirtyMinY ) * regionSizeX + ( minX - dirtyMinX ) ) * bytesPerPixel;
+                gl.glTexSubImage2D( GL.GL_TEXTURE_2D, 0, offsetX, offsetY, sizeX, sizeY, getGLPixelFormat( ), getGLPixelType( ), offset );
+            }
+            else
+            {
+                data.limit( data.capacity( ) );
+                data.position( ( minY * dataSizeX + minX ) * bytesPerPixel );
+                gl.glTexSubImage2D( GL.GL_TEXTURE_2D, 0, offsetX, offsetY, sizeX, sizeY, getGLPixelFormat( ), getGLPixelType( ), data );
             }
+
+            uploadedBytes += ( long ) sizeX * sizeY * bytesPerPixel;
         }
+
+        if ( staged ) gl.glBindBuffer( GL.GL_PIXEL_UNPACK_BUFFER_ARB, 0 );
+
+        gl.glPixelStorei( GL.GL_UNPACK_ROW_LENGTH, 0 );
+        data.rewind( );
     }
 
-    protected void putVertexTexCoords( int texIndex, double texFracX, double texFracY )
+    /**
+     * Copies the rows of the dirty region into the next of two pixel unpack buffers and
+     * leaves that buffer bound. The buffer storage is orphaned before mapping so the
+     * driver can hand back fresh memory instead of waiting on a transfer still in flight.
+     *
+     * @return false if the buffer could not be mapped, in which case nothing is left bound
+     */
+    protected boolean prepare_stagePixelBuffer( GL gl, int regionSizeX, int regionSizeY, int bytesPerPixel )
     {
-        coordBuffer.put( ( float ) texFracX ).put( ( float ) texFracY );
+        if ( pixelBufferHandles == null )
+        {
+            pixelBufferHandles = new int[2];
+            gl.glGenBuffers( pixelBufferHandles.length, pixelBufferHandles, 0 );
+        }
+
+        pixelBufferIndex = ( pixelBufferIndex + 1 ) % pixelBufferHandles.length;
+
+        int rowBytes = regionSizeX * bytesPerPixel;
+        int stagedBytes = rowBytes * regionSizeY;
+
+        gl.glBindBuffer( GL.GL_PIXEL_UNPACK_BUFFER_ARB, pixelBufferHandles[pixelBufferIndex] );
+        gl.glBufferData( GL.GL_PIXEL_UNPACK_BUFFER_ARB, stagedBytes, null, GL.GL_STREAM_DRAW );
+
+        ByteBuffer mapped = gl.glMapBuffer( GL.GL_PIXEL_UNPACK_BUFFER_ARB, GL.GL_WRITE_ONLY );
+        if ( mapped == null )
+        {
+            logger.log( WARNING, "Unable to map pixel unpack buffer, uploading from client memory." );
+            gl.glBindBuffer( GL.GL_PIXEL_UNPACK_BUFFER_ARB, 0 );
+            return false;
+        }
+
+        ByteBuffer source = data.duplicate( );
+        int dataRowBytes = dataSizeX * bytesPerPixel;
+        int start = dirtyMinY * dataRowBytes + dirtyMinX * bytesPerPixel;
+
+        mapped.clear( );
+        for ( int y = 0; y < regionSizeY; y++ )
+        {
+            int rowStart = start + y * dataRowBytes;
+            source.limit( rowStart + rowBytes );
+            source.position( rowStart );
+            mapped.put( source );
+        }
+
+        if ( !gl.glUnmapBuffer( GL.GL_PIXEL_UNPACK_BUFFER_ARB ) )
+        {
+            // buffer contents were lost (for example on a display mode change)
+            gl.glBindBuffer( GL.GL_PIXEL_UNPACK_BUFFER_ARB, 0 );
+            return false;
+        }
+
+        return true;
     }
 
     protected void prepare_setTexParameters( GL gl )
@@ -518,7 +909,9 @@ public abstract class TextureProjected2D implements DrawableTexture
             if ( this.data == null || this.data.capacity( ) < getRequiredCapacityBytes( ) ) this.data = newByteBuffer( );
 
             makeDirty( );
-            makeProjectionDirty( );
+            this.projectionDirty = true;
+
+            prefetchMesh( );
         }
         finally
         {
@@ -532,7 +925,9 @@ public abstract class TextureProjected2D implements DrawableTexture
         try
         {
             this.projection = projection;
-            makeProjectionDirty( );
+            this.projectionDirty = true;
+
+            prefetchMesh( );
         }
         finally
         {
@@ -552,4 +947,41 @@ public abstract class TextureProjected2D implements DrawableTexture
             lock.unlock( );
         }
     }
+
+    protected static class MeshKey
+    {
+        protected Projection projection;
+        protected int dataSizeX;
+        protected int dataSizeY;
+        protected int maxTextureSize;
+
+        public MeshKey( Projection projection, int dataSizeX, int dataSizeY, int maxTextureSize )
+        {
+            this.projection = projection;
+            this.dataSizeX = dataSizeX;
+            this.dataSizeY = dataSizeY;
+            this.maxTextureSize = maxTextureSize;
+        }
+
+        @Override
+        public int hashCode( )
+        {
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + System.identityHashCode( projection );
+            result = prime * result + dataSizeX;
+            result = prime * result + dataSizeY;
+            result = prime * result + maxTextureSize;
+            return result;
+        }
+
+        @Override
+        public boolean equals( Object obj )
+        {
+            if ( this == obj ) return true;
+            if ( obj == null || getClass( ) != obj.getClass( ) ) return false;
+            MeshKey other = ( MeshKey ) obj;
+            return projection == other.projection && dataSizeX == other.dataSizeX && dataSizeY == other.dataSizeY && maxTextureSize == other.maxTextureSize;
+        }
+    }
 }
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.support.polygon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.metsci.glimpse.support.polygon.Polygon.Interior;
+import com.metsci.glimpse.support.polygon.Polygon.Loop;
+import com.metsci.glimpse.support.polygon.Polygon.Loop.LoopBuilder;
+import com.metsci.glimpse.support.polygon.PolygonTessellator.TessellationException;
+
+public class EarClippingTessellatorTest
+{
+    protected static final double TOLERANCE = 1e-4;
+
+    protected final EarClippingTessellator tessellator = new EarClippingTessellator( );
+
+    @Test
+    public void square( ) throws TessellationException
+    {
+        float[] triangles = tessellator.tessellate( polygon( loop( 0, 0, 1, 0, 1, 1, 0, 1 ) ) );
+
+        assertEquals( 2 * 3 * 2, triangles.length );
+        assertEquals( 1.0, area( triangles ), TOLERANCE );
+        assertNoDegenerateTriangles( triangles );
+    }
+
+    @Test
+    public void windingDoesNotMatter( ) throws TessellationException
+    {
+        float[] ccw = tessellator.tessellate( polygon( loop( 0, 0, 2, 0, 2, 3, 0, 3 ) ) );
+        float[] cw = tessellator.tessellate( polygon( loop( 0, 0, 0, 3, 2, 3, 2, 0 ) ) );
+
+        assertEquals( 6.0, area( ccw ), TOLERANCE );
+        assertEquals( 6.0, area( cw ), TOLERANCE );
+    }
+
+    @Test
+    public void concave( ) throws TessellationException
+    {
+        // an L shape, whose reflex vertex at (1,1) can't be an ear
+        float[] triangles = tessellator.tessellate( polygon( loop( 0, 0, 2, 0, 2, 1, 1, 1, 1, 2, 0, 2 ) ) );
+
+        assertEquals( 4 * 3 * 2, triangles.length );
+        assertEquals( 3.0, area( triangles ), TOLERANCE );
+        assertNoDegenerateTriangles( triangles );
+        assertFalse( covers( triangles, 1.5, 1.5 ) );
+    }
+
+    @Test
+    public void hole( ) throws TessellationException
+    {
+        Polygon polygon = polygon( loop( 0, 0, 10, 0, 10, 10, 0, 10 ), loop( 4, 4, 6, 4, 6, 6, 4, 6 ) );
+        float[] triangles = tessellator.tessellate( polygon );
+
+        assertEquals( 96.0, area( triangles ), TOLERANCE );
+        assertNoDegenerateTriangles( triangles );
+        assertFalse( covers( triangles, 5, 5 ) );
+        assertTrue( covers( triangles, 2, 2 ) );
+    }
+
+    @Test
+    public void islandInsideHole( ) throws TessellationException
+    {
+        // odd winding rule: the innermost loop is filled again
+        Polygon polygon = polygon( loop( 0, 0, 10, 0, 10, 10, 0, 10 ), loop( 3, 3, 7, 3, 7, 7, 3, 7 ), loop( 4, 4, 6, 4, 6, 6, 4, 6 ) );
+        float[] triangles = tessellator.tessellate( polygon );
+
+        assertEquals( 100.0 - 16.0 + 4.0, area( triangles ), TOLERANCE );
+        assertTrue( covers( triangles, 5, 5 ) );
+        assertFalse( covers( triangles, 3.5, 5 ) );
+        assertTrue( covers( triangles, 1, 5 ) );
+    }
+
+    @Test
+    public void separateLoops( ) throws TessellationException
+    {
+        Polygon polygon = polygon( loop( 0, 0, 1, 0, 1, 1, 0, 1 ), loop( 5, 5, 7, 5, 7, 7, 5, 7 ) );
+        float[] triangles = tessellator.tessellate( polygon );
+
+        assertEquals( 5.0, area( triangles ), TOLERANCE );
+        assertFalse( covers( triangles, 3, 3 ) );
+    }
+
+    @Test
+    public void largeLoopUsesIndex( ) throws TessellationException
+    {
+        // enough vertices to go through the z-order index, with every other vertex pulled inward
+        int n = 400;
+        double[] coords = new double[2 * n];
+        for ( int i = 0; i < n; i++ )
+        {
+            double angle = 2 * Math.PI * i / n;
+            double radius = ( i % 2 == 0 ) ? 10 : 8;
+            coords[2 * i] = radius * Math.cos( angle );
+            coords[2 * i + 1] = radius * Math.sin( angle );
+        }
+
+        float[] triangles = tessellator.tessellate( polygon( loop( coords ) ) );
+
+        assertEquals( ( n - 2 ) * 3 * 2, triangles.length );
+        assertEquals( Math.abs( signedArea( coords ) ), area( triangles ), 1e-2 );
+        assertTrue( covers( triangles, 0, 0 ) );
+    }
+
+    @Test
+    public void degenerateLoopsAreSkipped( ) throws TessellationException
+    {
+        Polygon polygon = polygon( loop( 0, 0, 1, 1 ), loop( 0, 0, 1, 0, 1, 1, 0, 1 ) );
+        float[] triangles = tessellator.tessellate( polygon );
+
+        assertEquals( 1.0, area( triangles ), TOLERANCE );
+        assertEquals( 0, tessellator.tessellate( new Polygon( ) ).length );
+    }
+
+    @Test(expected = TessellationException.class)
+    public void nanVertex( ) throws TessellationException
+    {
+        tessellator.tessellate( polygon( loop( 0, 0, 1, 0, Double.NaN, 1, 0, 1 ) ) );
+    }
+
+    @Test
+    public void accumulatorGetsSameTriangles( ) throws TessellationException
+    {
+        Polygon polygon = polygon( loop( 0, 0, 2, 0, 2, 1, 1, 1, 1, 2, 0, 2 ) );
+
+        final float[][] received = new float[1][];
+        int count = tessellator.tessellate( polygon, new VertexAccumulator( )
+        {
+            @Override
+            public void addVertices( double[] vertexData, int nVertices )
+            {
+                throw new UnsupportedOperationException( );
+            }
+
+            @Override
+            public void addVertices( float[] vertexData, int nVertices )
+            {
+                float[] copy = new float[2 * nVertices];
+                System.arraycopy( vertexData, 0, copy, 0, copy.length );
+                received[0] = copy;
+            }
+        } );
+
+        assertEquals( 4, count );
+        assertEquals( 3.0, area( received[0] ), TOLERANCE );
+    }
+
+    protected static Polygon polygon( Loop... loops )
+    {
+        Polygon polygon = new Polygon( );
+        for ( Loop loop : loops )
+        {
+            polygon.add( loop );
+        }
+        return polygon;
+    }
+
+    protected static Loop loop( double... coords )
+    {
+        LoopBuilder builder = Loop.start( );
+        builder.addVertices( coords, coords.length / 2 );
+        return builder.complete( Interior.onLeft );
+    }
+
+    protected static double signedArea( double[] coords )
+    {
+        double sum = 0;
+        int n = coords.length / 2;
+        for ( int i = 0, j = n - 1; i < n; j = i++ )
+        {
+            sum += coords[2 * j] * coords[2 * i + 1] - coords[2 * i] * coords[2 * j + 1];
+        }
+        return sum / 2;
+    }
+
+    protected static double triangleArea( float[] t, int i )
+    {
+        double ax = t[i], ay = t[i + 1];
+        double bx = t[i + 2], by = t[i + 3];
+        double cx = t[i + 4], cy = t[i + 5];
+        return ( ( bx - ax ) * ( cy - ay ) - ( cx - ax ) * ( by - ay ) ) / 2;
+    }
+
+    // total unsigned area; overlapping triangles would show up as excess area
+    protected static double area( float[] triangles )
+    {
+        double sum = 0;
+        for ( int i = 0; i < triangles.length; i += 6 )
+        {
+            sum += Math.abs( triangleArea( triangles, i ) );
+        }
+        return sum;
+    }
+
+    protected static void assertNoDegenerateTriangles( float[] triangles )
+    {
+        for ( int i = 0; i < triangles.length; i += 6 )
+        {
+            assertTrue( Math.abs( triangleArea( triangles, i ) ) > 1e-9 );
+        }
+    }
+
+    protected static boolean covers( float[] t, double x, double y )
+    {
+        for ( int i = 0; i < t.length; i += 6 )
+        {
+            double d1 = ( x - t[i + 2] ) * ( t[i + 1] - t[i + 3] ) - ( t[i] - t[i + 2] ) * ( y - t[i + 3] );
+            double d2 = ( x - t[i + 4] ) * ( t[i + 3] - t[i + 5] ) - ( t[i + 2] - t[i + 4] ) * ( y - t[i + 5] );
+            double d3 = ( x - t[i] ) * ( t[i + 5] - t[i + 1] ) - ( t[i + 4] - t[i] ) * ( y - t[i + 1] );
+
+            boolean negative = ( d1 < 0 ) || ( d2 < 0 ) || ( d3 < 0 );
+            boolean positive = ( d1 > 0 ) || ( d2 > 0 ) || ( d3 > 0 );
+            if ( !( negative && positive ) ) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.support.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class UpdateQueueTest
+{
+    protected static class TestCommand implements UpdateQueue.Command
+    {
+        protected final Object key;
+        protected final int producer;
+        protected final int sequence;
+
+        public TestCommand( Object key, int producer, int sequence )
+        {
+            this.key = key;
+            this.producer = producer;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public Object getCoalesceKey( )
+        {
+            return key;
+        }
+
+        @Override
+        public String toString( )
+        {
+            return key + ":" + producer + ":" + sequence;
+        }
+    }
+
+    @Test
+    public void drainKeepsInsertionOrder( )
+    {
+        UpdateQueue<TestCommand> queue = new UpdateQueue<TestCommand>( );
+        for ( int i = 0; i < 100; i++ )
+        {
+            queue.add( new TestCommand( null, 0, i ) );
+        }
+
+        List<TestCommand> result = new ArrayList<TestCommand>( );
+        assertEquals( 100, queue.drain( result ) );
+        assertTrue( queue.isEmpty( ) );
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            assertEquals( i, result.get( i ).sequence );
+        }
+    }
+
+    @Test
+    public void drainAppendsToResult( )
+    {
+        UpdateQueue<TestCommand> queue = new UpdateQueue<TestCommand>( );
+        List<TestCommand> result = new ArrayList<TestCommand>( );
+
+        queue.add( new TestCommand( null, 0, 0 ) );
+        queue.drain( result );
+        queue.add( new TestCommand( null, 0, 1 ) );
+        queue.drain( result );
+
+        assertEquals( 2, result.size( ) );
+        assertEquals( 0, result.get( 0 ).sequence );
+        assertEquals( 1, result.get( 1 ).sequence );
+    }
+
+    @Test
+    public void coalesceKeepsLastCommandForEachKey( )
+    {
+        UpdateQueue<TestCommand> queue = new UpdateQueue<TestCommand>( );
+        Object color = new UpdateQueue.Key( 1, "color" );
+        Object width = new UpdateQueue.Key( 1, "width" );
+
+        queue.add( new TestCommand( color, 0, 0 ) );
+        queue.add( new TestCommand( width, 0, 1 ) );
+        queue.add( new TestCommand( null, 0, 2 ) );
+        queue.add( new TestCommand( new UpdateQueue.Key( 1, "color" ), 0, 3 ) );
+        queue.add( new TestCommand( null, 0, 4 ) );
+        queue.add( new TestCommand( new UpdateQueue.Key( 2, "color" ), 0, 5 ) );
+
+        List<TestCommand> result = new ArrayList<TestCommand>( );
+        assertEquals( 5, queue.drain( result ) );
+
+        // the surviving command for a key takes the position of the last command with that key
+        int[] expected = { 1, 2, 3, 4, 5 };
+        for ( int i = 0; i < expected.length; i++ )
+        {
+            assertEquals( expected[i], result.get( i ).sequence );
+        }
+
+        assertEquals( 6, queue.getDrainedCount( ) );
+        assertEquals( 1, queue.getCoalescedCount( ) );
+    }
+
+    @Test
+    public void coalesceOnlyWithinOneDrain( )
+    {
+        UpdateQueue<TestCommand> queue = new UpdateQueue<TestCommand>( );
+        Object key = new UpdateQueue.Key( 7, "color" );
+        List<TestCommand> result = new ArrayList<TestCommand>( );
+
+        queue.add( new TestCommand( key, 0, 0 ) );
+        queue.drain( result );
+        queue.add( new TestCommand( key, 0, 1 ) );
+        queue.drain( result );
+
+        assertEquals( 2, result.size( ) );
+        assertEquals( 0, queue.getCoalescedCount( ) );
+    }
+
+    @Test
+    public void concurrentProducersKeepTheirOwnOrder( ) throws InterruptedException
+    {
+        final int numProducers = 4;
+        final int numCommands = 20000;
+
+        final UpdateQueue<TestCommand> queue = new UpdateQueue<TestCommand>( );
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final CountDownLatch done = new CountDownLatch( numProducers );
+
+        for ( int p = 0; p < numProducers; p++ )
+        {
+            final int producer = p;
+            Thread thread = new Thread( )
+            {
+                @Override
+                public void run( )
+                {
+                    try
+                    {
+                        start.await( );
+                        for ( int i = 0; i < numCommands; i++ )
+                        {
+                            queue.add( new TestCommand( null, producer, i ) );
+                        }
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        Thread.currentThread( ).interrupt( );
+                    }
+                    finally
+                    {
+                        done.countDown( );
+                    }
+                }
+            };
+            thread.setDaemon( true );
+            thread.start( );
+        }
+
+        // drain while the producers are still adding, as the display thread would
+        List<TestCommand> result = new ArrayList<TestCommand>( );
+        start.countDown( );
+        while ( done.getCount( ) > 0 )
+        {
+            queue.drain( result );
+        }
+        done.await( );
+        queue.drain( result );
+
+        assertEquals( numProducers * numCommands, result.size( ) );
+
+        int[] next = new int[numProducers];
+        for ( TestCommand command : result )
+        {
+            assertEquals( next[command.producer], command.sequence );
+            next[command.producer]++;
+        }
+    }
+}
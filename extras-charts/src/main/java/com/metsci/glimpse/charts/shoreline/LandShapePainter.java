@@ -26,6 +26,8 @@
  */
 package com.metsci.glimpse.charts.shoreline;
 
+import static com.metsci.glimpse.util.logging.LoggerUtils.*;
+
 import java.awt.Shape;
 import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D.Double;
@@ -34,6 +36,9 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
 
 import javax.media.opengl.GLContext;
 
@@ -64,12 +69,16 @@ import com.metsci.glimpse.util.vector.Vector2d;
  * Coast Format: Mapgen
  * Coast Preview: No Preview
  * 
+ * Shorelines are simplified when loaded, and drawn at a level of detail matching the
+ * current zoom (see {@link #setSimplifyTolerance(float)}).
  * 
  * @author ulman
  * @author cunningham
  */
 public class LandShapePainter extends GlimpsePainter2D
 {
+    public static final Logger logger = Logger.getLogger( LandShapePainter.class.getName( ) );
+
     protected static final int LAND_GROUP_ID = 1337;
 
     protected PolygonPainter polygonPainter;
@@ -205,6 +214,7 @@ public class LandShapePainter extends GlimpsePainter2D
 
         //XXX Here we load every Shape segment as a different polygon
         //XXX This won't work for shapes with holes, still need to figure this out
+        List<Polygon> polygons = new ArrayList<Polygon>( );
         Polygon p = new Polygon( );
         PathIterator iter = shape.getPathIterator( null );
         double[] vertices = new double[6];
@@ -219,7 +229,7 @@ public class LandShapePainter extends GlimpsePainter2D
             if ( type == PathIterator.SEG_CLOSE )
             {
                 p.add( b.complete( Interior.onRight ) );
-                addPolygon( p );
+                polygons.add( p );
                 p = new Polygon( );
                 b = new LoopBuilder( );
             }
@@ -230,7 +240,7 @@ public class LandShapePainter extends GlimpsePainter2D
             else if ( type == PathIterator.SEG_MOVETO )
             {
                 p.add( b.complete( Interior.onRight ) );
-                addPolygon( p );
+                polygons.add( p );
                 p = new Polygon( );
                 b = new LoopBuilder( );
                 b.addVertices( vertices, 1 );
@@ -241,6 +251,8 @@ public class LandShapePainter extends GlimpsePainter2D
             }
         }
 
+        addPolygons( polygons );
+
         return shape;
     }
 
@@ -249,6 +261,45 @@ public class LandShapePainter extends GlimpsePainter2D
         polygonPainter.addPolygon( LAND_GROUP_ID, landPolygonCounter++, Long.MIN_VALUE, Long.MAX_VALUE, p, 0.0f );
     }
 
+    /**
+     * Simplifies the polygons in parallel and adds them to the painter.
+     */
+    protected void addPolygons( List<Polygon> polygons )
+    {
+        int[] ids = new int[polygons.size( )];
+        for ( int i = 0; i < ids.length; i++ )
+        {
+            ids[i] = landPolygonCounter++;
+        }
+
+        try
+        {
+            polygonPainter.addSimplifiedPolygons( LAND_GROUP_ID, ids, polygons, 0.0f );
+        }
+        catch ( InterruptedException e )
+        {
+            // still load the shoreline, just without levels of detail
+            logWarning( logger, "Interrupted while simplifying shoreline.", e );
+            Thread.currentThread( ).interrupt( );
+
+            for ( int i = 0; i < ids.length; i++ )
+            {
+                polygonPainter.addPolygon( LAND_GROUP_ID, ids[i], Long.MIN_VALUE, Long.MAX_VALUE, polygons.get( i ), 0.0f );
+            }
+        }
+    }
+
+    /**
+     * Sets the largest distance, in pixels, between the drawn shoreline and the full resolution
+     * shoreline. Zero always draws the full resolution shoreline.
+     *
+     * @see PolygonPainter#setSimplifyTolerance(float)
+     */
+    public void setSimplifyTolerance( float pixels )
+    {
+        polygonPainter.setSimplifyTolerance( pixels );
+    }
+
     public void setLineColor( float r, float g, float b, float a )
     {
         polygonPainter.setLineColor( LAND_GROUP_ID, r, g, b, a );
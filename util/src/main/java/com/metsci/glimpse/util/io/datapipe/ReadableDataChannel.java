@@ -41,7 +41,7 @@ import java.nio.channels.ReadableByteChannel;
  */
 public class ReadableDataChannel extends AbstractChannel implements ReadableDataPipe
 {
-    private final DataInputStream _stream;
+    private DataInputStream _stream;
     private long _totalBytesRead;
 
     protected final ReadableByteChannel _channel;
@@ -52,8 +52,6 @@ public class ReadableDataChannel extends AbstractChannel implements ReadableData
 
         _channel = channel;
 
-        _stream = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
-
         _byteBuffer.flip();
     }
 
@@ -225,8 +223,15 @@ public class ReadableDataChannel extends AbstractChannel implements ReadableData
         return new String(bytes, STRING_ENCODING);
     }
 
+    /**
+     * Note: the returned stream reads directly from the underlying channel, so any bytes
+     * already buffered by this pipe are skipped. It is created on first use.
+     */
     public DataInputStream getInputStream()
     {
+        if (_stream == null)
+            _stream = new DataInputStream(new BufferedInputStream(Channels.newInputStream(_channel)));
+
         return _stream;
     }
 }
@@ -0,0 +1,546 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.util.io.datapipe;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+
+/**
+ * An implementation of {@link ReadableDataPipe} that reads a file through read-only memory
+ * mappings instead of copying it through an intermediate buffer.
+ *
+ * The file is mapped in windows of at most {@link #DEFAULT_WINDOW_SIZE} bytes, so files larger
+ * than 2GB are supported. When a read runs off the end of the current window, a new window is
+ * mapped starting at the current position. Array reads are single bulk gets from the mapping
+ * (split only where they cross a window boundary), and the <code>read*Buffer</code> methods
+ * return views of the mapped data, which can be handed directly to OpenGL without copying.
+ *
+ * By default values are read big-endian, for compatibility with {@link WritableDataChannel} and
+ * {@link WritableDataStream}. Views intended for OpenGL must be in native order, so files meant
+ * to be uploaded directly should be written, and read, in {@link ByteOrder#nativeOrder()}.
+ */
+public class ReadableDataMappedFile implements ReadableDataPipe
+{
+    /**
+     * Default size (bytes) of each mapped window. Must not exceed Integer.MAX_VALUE.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 1 << 30;
+
+    protected static final String STRING_ENCODING = "UTF-8";
+
+    protected final FileChannel _channel;
+    protected final ByteOrder   _order;
+    protected final int         _windowSize;
+
+    // absolute file positions of the readable range
+    protected final long        _start;
+    protected final long        _end;
+
+    // current mapping and the absolute file position of its first byte
+    protected MappedByteBuffer  _window;
+    protected long              _windowStart;
+
+    private DataInputStream     _stream;
+
+    public ReadableDataMappedFile(File file) throws IOException
+    {
+        this(file, ByteOrder.BIG_ENDIAN);
+    }
+
+    public ReadableDataMappedFile(File file, ByteOrder order) throws IOException
+    {
+        // The channel is opened here, so no caller could close it if construction fails
+        this(new RandomAccessFile(file, "r").getChannel(), order, 0, Long.MAX_VALUE, DEFAULT_WINDOW_SIZE, true);
+    }
+
+    public ReadableDataMappedFile(FileChannel channel) throws IOException
+    {
+        this(channel, ByteOrder.BIG_ENDIAN);
+    }
+
+    public ReadableDataMappedFile(FileChannel channel, ByteOrder order) throws IOException
+    {
+        this(channel, order, channel.position(), channel.size() - channel.position(), DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param channel    the file to read; closed when this pipe is closed
+     * @param order      the byte order of values in the file
+     * @param position   the file position to start reading from
+     * @param size       the number of bytes which may be read
+     * @param windowSize the maximum number of bytes to map at once
+     */
+    public ReadableDataMappedFile(FileChannel channel, ByteOrder order, long position, long size, int windowSize) throws IOException
+    {
+        this(channel, order, position, size, windowSize, false);
+    }
+
+    /**
+     * @param closeOnFailure whether to close the channel if this constructor throws; true
+     *                       when the channel was opened by this class rather than the caller
+     */
+    private ReadableDataMappedFile(FileChannel channel, ByteOrder order, long position, long size, int windowSize, boolean closeOnFailure) throws IOException
+    {
+        boolean success = false;
+        try
+        {
+            if (windowSize < 8)
+                throw new IllegalArgumentException("Window size must be at least 8 bytes: " + windowSize);
+
+            _channel = channel;
+            _order = order;
+            _windowSize = windowSize;
+            _start = position;
+            _end = position + Math.min(size, channel.size() - position);
+
+            map(_start, 0);
+            success = true;
+        }
+        finally
+        {
+            if (!success && closeOnFailure) closeAfterFailure(channel);
+        }
+    }
+
+    private static void closeAfterFailure(FileChannel channel)
+    {
+        try
+        {
+            channel.close();
+        }
+        catch (IOException e)
+        {
+            // Let the exception that caused the failure propagate instead
+        }
+    }
+
+    /**
+     * @return the number of bytes read (or skipped) since the start of the readable range
+     */
+    public long getPosition()
+    {
+        return _windowStart + _window.position() - _start;
+    }
+
+    /**
+     * Moves to the given offset from the start of the readable range.
+     */
+    public void seek(long position) throws IOException
+    {
+        if (position < 0 || _start + position > _end)
+            throw new EOFException("Position out of range: " + position);
+
+        long absolute = _start + position;
+        if (absolute >= _windowStart && absolute <= _windowStart + _window.limit())
+        {
+            _window.position((int) (absolute - _windowStart));
+        }
+        else
+        {
+            map(absolute, 0);
+        }
+    }
+
+    public void skip(long bytes) throws IOException
+    {
+        seek(getPosition() + bytes);
+    }
+
+    /**
+     * @return the total size of the readable range, in bytes
+     */
+    public long size()
+    {
+        return _end - _start;
+    }
+
+    public long remaining()
+    {
+        return _end - _windowStart - _window.position();
+    }
+
+    public ByteOrder getByteOrder()
+    {
+        return _order;
+    }
+
+    /**
+     * Maps a new window starting at the given absolute file position, which is guaranteed
+     * to contain at least <code>required</code> bytes.
+     */
+    protected void map(long position, int required) throws IOException
+    {
+        if (position + required > _end)
+            throw new EOFException();
+
+        long size = Math.min(Math.max(_windowSize, required), _end - position);
+
+        _window = _channel.map(MapMode.READ_ONLY, position, size);
+        _window.order(_order);
+        _windowStart = position;
+    }
+
+    /**
+     * Ensures that the current window has at least <code>required</code> bytes remaining
+     * and returns it.
+     */
+    protected ByteBuffer require(int required) throws IOException
+    {
+        if (_window.remaining() < required)
+            map(_windowStart + _window.position(), required);
+
+        return _window;
+    }
+
+    /**
+     * Ensures that the current window has at least one byte remaining, mapping the
+     * next window if needed, and returns it.
+     */
+    protected ByteBuffer next() throws IOException
+    {
+        return require(1);
+    }
+
+    /**
+     * Returns a view of the next <code>bytes</code> bytes of the file and advances past them.
+     * The view has the byte order of this pipe.
+     */
+    protected ByteBuffer slice(long bytes) throws IOException
+    {
+        if (bytes > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Slice too large: " + bytes);
+
+        ByteBuffer window = require((int) bytes);
+
+        int position = window.position();
+        int limit = window.limit();
+
+        window.limit(position + (int) bytes);
+        ByteBuffer slice = window.slice().order(_order);
+        window.limit(limit);
+        window.position(position + (int) bytes);
+
+        return slice;
+    }
+
+    public boolean readBoolean() throws IOException
+    {
+        return readByte() != 0;
+    }
+
+    public byte readByte() throws IOException
+    {
+        return require(1).get();
+    }
+
+    public short readShort() throws IOException
+    {
+        return require(2).getShort();
+    }
+
+    public int readInt() throws IOException
+    {
+        return require(4).getInt();
+    }
+
+    public long readLong() throws IOException
+    {
+        return require(8).getLong();
+    }
+
+    public float readFloat() throws IOException
+    {
+        return require(4).getFloat();
+    }
+
+    public double readDouble() throws IOException
+    {
+        return require(8).getDouble();
+    }
+
+    public String readString() throws IOException
+    {
+        byte[] bytes = new byte[readInt()];
+        readByteArray(bytes);
+
+        return new String(bytes, STRING_ENCODING);
+    }
+
+    public boolean[] readBooleanArray(boolean[] values) throws IOException
+    {
+        byte[] values2 = readByteArray(new byte[values.length]);
+
+        for (int i = 0, ni = values.length; i < ni; i++)
+        {
+            values[i] = values2[i] != 0;
+        }
+
+        return values;
+    }
+
+    public byte[] readByteArray(byte[] values) throws IOException
+    {
+        checkRemaining(values.length, 0);
+
+        for (int i = 0, ni = values.length; i < ni;)
+        {
+            ByteBuffer window = next();
+            int length = Math.min(ni - i, window.remaining());
+            window.get(values, i, length);
+            i += length;
+        }
+
+        return values;
+    }
+
+    public short[] readShortArray(short[] values) throws IOException
+    {
+        checkRemaining(values.length, 1);
+
+        for (int i = 0, ni = values.length; i < ni;)
+        {
+            ByteBuffer window = require(2);
+            int length = Math.min(ni - i, window.remaining() >> 1);
+            window.asShortBuffer().get(values, i, length);
+            window.position(window.position() + (length << 1));
+            i += length;
+        }
+
+        return values;
+    }
+
+    public int[] readIntArray(int[] values) throws IOException
+    {
+        checkRemaining(values.length, 2);
+
+        for (int i = 0, ni = values.length; i < ni;)
+        {
+            ByteBuffer window = require(4);
+            int length = Math.min(ni - i, window.remaining() >> 2);
+            window.asIntBuffer().get(values, i, length);
+            window.position(window.position() + (length << 2));
+            i += length;
+        }
+
+        return values;
+    }
+
+    public long[] readLongArray(long[] values) throws IOException
+    {
+        checkRemaining(values.length, 3);
+
+        for (int i = 0, ni = values.length; i < ni;)
+        {
+            ByteBuffer window = require(8);
+            int length = Math.min(ni - i, window.remaining() >> 3);
+            window.asLongBuffer().get(values, i, length);
+            window.position(window.position() + (length << 3));
+            i += length;
+        }
+
+        return values;
+    }
+
+    public float[] readFloatArray(float[] values) throws IOException
+    {
+        checkRemaining(values.length, 2);
+
+        for (int i = 0, ni = values.length; i < ni;)
+        {
+            ByteBuffer window = require(4);
+            int length = Math.min(ni - i, window.remaining() >> 2);
+            window.asFloatBuffer().get(values, i, length);
+            window.position(window.position() + (length << 2));
+            i += length;
+        }
+
+        return values;
+    }
+
+    public double[] readDoubleArray(double[] values) throws IOException
+    {
+        checkRemaining(values.length, 3);
+
+        for (int i = 0, ni = values.length; i < ni;)
+        {
+            ByteBuffer window = require(8);
+            int length = Math.min(ni - i, window.remaining() >> 3);
+            window.asDoubleBuffer().get(values, i, length);
+            window.position(window.position() + (length << 3));
+            i += length;
+        }
+
+        return values;
+    }
+
+    /**
+     * Throws an EOFException (without consuming anything) if fewer than
+     * <code>count &lt;&lt; shift</code> bytes remain.
+     */
+    protected void checkRemaining(int count, int shift) throws EOFException
+    {
+        if (((long) count << shift) > remaining())
+            throw new EOFException();
+    }
+
+    /**
+     * Returns a read-only view of the next <code>count</code> bytes without copying,
+     * and advances past them.
+     */
+    public ByteBuffer readByteBuffer(int count) throws IOException
+    {
+        return slice(count);
+    }
+
+    /**
+     * Returns a read-only view of the next <code>count</code> shorts without copying,
+     * and advances past them.
+     */
+    public ShortBuffer readShortBuffer(int count) throws IOException
+    {
+        return slice((long) count << 1).asShortBuffer();
+    }
+
+    /**
+     * Returns a read-only view of the next <code>count</code> ints without copying,
+     * and advances past them.
+     */
+    public IntBuffer readIntBuffer(int count) throws IOException
+    {
+        return slice((long) count << 2).asIntBuffer();
+    }
+
+    /**
+     * Returns a read-only view of the next <code>count</code> longs without copying,
+     * and advances past them.
+     */
+    public LongBuffer readLongBuffer(int count) throws IOException
+    {
+        return slice((long) count << 3).asLongBuffer();
+    }
+
+    /**
+     * Returns a read-only view of the next <code>count</code> floats without copying,
+     * and advances past them. If this pipe uses native byte order, the view can be
+     * passed directly to OpenGL.
+     */
+    public FloatBuffer readFloatBuffer(int count) throws IOException
+    {
+        return slice((long) count << 2).asFloatBuffer();
+    }
+
+    /**
+     * Returns a read-only view of the next <code>count</code> doubles without copying,
+     * and advances past them.
+     */
+    public DoubleBuffer readDoubleBuffer(int count) throws IOException
+    {
+        return slice((long) count << 3).asDoubleBuffer();
+    }
+
+    /**
+     * Closes the underlying channel. Mapped memory is released once the mappings
+     * (and any views returned by this pipe) are garbage collected.
+     */
+    public void close() throws IOException
+    {
+        _channel.close();
+    }
+
+    public FileChannel getChannel()
+    {
+        return _channel;
+    }
+
+    /**
+     * @return a stream which reads from the current position of this pipe. Reads from
+     *         the stream and from this pipe may be freely interleaved.
+     */
+    public DataInputStream getInputStream()
+    {
+        if (_stream == null)
+            _stream = new DataInputStream(new MappedInputStream());
+
+        return _stream;
+    }
+
+    protected class MappedInputStream extends InputStream
+    {
+        @Override
+        public int read() throws IOException
+        {
+            if (remaining() <= 0)
+                return -1;
+
+            return next().get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException
+        {
+            if (length == 0)
+                return 0;
+
+            if (remaining() <= 0)
+                return -1;
+
+            ByteBuffer window = next();
+            int n = Math.min(length, window.remaining());
+            window.get(bytes, offset, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            long skipped = Math.max(0, Math.min(n, remaining()));
+            ReadableDataMappedFile.this.skip(skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException
+        {
+            return (int) Math.min(Integer.MAX_VALUE, remaining());
+        }
+    }
+}
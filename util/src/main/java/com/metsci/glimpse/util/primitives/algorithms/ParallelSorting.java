@@ -0,0 +1,570 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.util.primitives.algorithms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Stable parallel merge sorts for primitive keys, carrying along an {@code int[]} permutation.
+ *
+ * The range is split into one chunk per available processor, each chunk is radix sorted
+ * (see {@link RadixSorting}) on its own task, and then the sorted chunks are merged pairwise
+ * in rounds. Every merge is itself split into independent pieces (by binary searching for
+ * the point where each piece's output begins), so all processors stay busy through the
+ * final round.
+ *
+ * Ranges too small to be worth splitting, or calls without an executor, fall back to a
+ * single-threaded radix sort. Floating-point keys are ordered as in {@link RadixSorting}.
+ *
+ * Each sort allocates scratch arrays as large as the range being sorted (plus a key array,
+ * for floating-point keys).
+ */
+public class ParallelSorting
+{
+    /**
+     * Ranges shorter than this are sorted on the calling thread.
+     */
+    public static final int PARALLEL_SORT_THRESHOLD = 1 << 16;
+
+    /**
+     * Ranges are not split into chunks smaller than this.
+     */
+    public static final int MIN_CHUNK_SIZE = 1 << 14;
+
+    public static void mergesort( long[] x, int[] aux, ExecutorService executor )
+    {
+        mergesort( x, aux, 0, x.length, executor );
+    }
+
+    /**
+     * @param executor if non-null, chunks are sorted and merged in parallel on this executor.
+     *                 This method does not return until the sort is complete.
+     */
+    public static void mergesort( long[] x, int[] aux, int fromIndex, int toIndex, ExecutorService executor )
+    {
+        int n = toIndex - fromIndex;
+        int chunks = chooseChunkCount( n, executor );
+        if ( chunks == 1 )
+        {
+            RadixSorting.radixsort( x, aux, fromIndex, toIndex );
+            return;
+        }
+
+        sort( x, fromIndex, aux, fromIndex, n, chunks, executor );
+    }
+
+    public static void mergesort( double[] x, int[] aux, ExecutorService executor )
+    {
+        mergesort( x, aux, 0, x.length, executor );
+    }
+
+    public static void mergesort( final double[] x, int[] aux, final int fromIndex, int toIndex, ExecutorService executor )
+    {
+        final int n = toIndex - fromIndex;
+        final int chunks = chooseChunkCount( n, executor );
+        if ( chunks == 1 )
+        {
+            RadixSorting.radixsort( x, aux, fromIndex, toIndex );
+            return;
+        }
+
+        final long[] keys = new long[n];
+
+        List<Runnable> tasks = new ArrayList<Runnable>( chunks );
+        for ( int c = 0; c < chunks; c++ )
+        {
+            final int start = chunkStart( c, chunks, n );
+            final int end = chunkStart( c + 1, chunks, n );
+            tasks.add( new Runnable( )
+            {
+                public void run( )
+                {
+                    RadixSorting.encode( x, fromIndex + start, keys, start, end - start );
+                }
+            } );
+        }
+        runAll( tasks, executor );
+
+        sort( keys, 0, aux, fromIndex, n, chunks, executor );
+
+        tasks.clear( );
+        for ( int c = 0; c < chunks; c++ )
+        {
+            final int start = chunkStart( c, chunks, n );
+            final int end = chunkStart( c + 1, chunks, n );
+            tasks.add( new Runnable( )
+            {
+                public void run( )
+                {
+                    RadixSorting.decode( keys, start, x, fromIndex + start, end - start );
+                }
+            } );
+        }
+        runAll( tasks, executor );
+    }
+
+    public static void mergesort( float[] x, int[] aux, ExecutorService executor )
+    {
+        mergesort( x, aux, 0, x.length, executor );
+    }
+
+    public static void mergesort( final float[] x, int[] aux, final int fromIndex, int toIndex, ExecutorService executor )
+    {
+        final int n = toIndex - fromIndex;
+        final int chunks = chooseChunkCount( n, executor );
+        if ( chunks == 1 )
+        {
+            RadixSorting.radixsort( x, aux, fromIndex, toIndex );
+            return;
+        }
+
+        final int[] keys = new int[n];
+
+        List<Runnable> tasks = new ArrayList<Runnable>( chunks );
+        for ( int c = 0; c < chunks; c++ )
+        {
+            final int start = chunkStart( c, chunks, n );
+            final int end = chunkStart( c + 1, chunks, n );
+            tasks.add( new Runnable( )
+            {
+                public void run( )
+                {
+                    RadixSorting.encode( x, fromIndex + start, keys, start, end - start );
+                }
+            } );
+        }
+        runAll( tasks, executor );
+
+        sort( keys, 0, aux, fromIndex, n, chunks, executor );
+
+        tasks.clear( );
+        for ( int c = 0; c < chunks; c++ )
+        {
+            final int start = chunkStart( c, chunks, n );
+            final int end = chunkStart( c + 1, chunks, n );
+            tasks.add( new Runnable( )
+            {
+                public void run( )
+                {
+                    RadixSorting.decode( keys, start, x, fromIndex + start, end - start );
+                }
+            } );
+        }
+        runAll( tasks, executor );
+    }
+
+    protected static int chooseChunkCount( int n, ExecutorService executor )
+    {
+        if ( executor == null || n < PARALLEL_SORT_THRESHOLD ) return 1;
+
+        int processors = Runtime.getRuntime( ).availableProcessors( );
+        return Math.max( 1, Math.min( processors, n / MIN_CHUNK_SIZE ) );
+    }
+
+    protected static int chunkStart( int chunk, int chunks, int n )
+    {
+        return ( int ) ( ( long ) chunk * n / chunks );
+    }
+
+    ////////////////////////////////////////
+    ///// Long Keys                    /////
+    ////////////////////////////////////////
+
+    protected static void sort( final long[] x, final int xOffset, final int[] aux, final int auxOffset, final int n, final int chunks, ExecutorService executor )
+    {
+        final long[] xTemp = new long[n];
+        final int[] auxTemp = new int[n];
+
+        // radix sort each chunk in place, each using its own slice of the scratch arrays
+        List<Runnable> tasks = new ArrayList<Runnable>( 2 * chunks );
+        for ( int c = 0; c < chunks; c++ )
+        {
+            final int start = chunkStart( c, chunks, n );
+            final int end = chunkStart( c + 1, chunks, n );
+            tasks.add( new Runnable( )
+            {
+                public void run( )
+                {
+                    RadixSorting.radixsort( x, xOffset + start, aux, auxOffset + start, end - start, xTemp, auxTemp, start );
+                }
+            } );
+        }
+        runAll( tasks, executor );
+
+        // merge runs of sorted chunks pairwise, alternating between the input and scratch arrays
+        long[] srcX = x;
+        int[] srcAux = aux;
+        int srcXOffset = xOffset;
+        int srcAuxOffset = auxOffset;
+
+        long[] dstX = xTemp;
+        int[] dstAux = auxTemp;
+        int dstXOffset = 0;
+        int dstAuxOffset = 0;
+
+        for ( int width = 1; width < chunks; width *= 2 )
+        {
+            tasks.clear( );
+
+            int pairs = ( chunks + 2 * width - 1 ) / ( 2 * width );
+            int pieces = Math.max( 1, chunks / pairs );
+
+            for ( int c = 0; c < chunks; c += 2 * width )
+            {
+                int lo = chunkStart( c, chunks, n );
+                int mid = chunkStart( Math.min( c + width, chunks ), chunks, n );
+                int hi = chunkStart( Math.min( c + 2 * width, chunks ), chunks, n );
+
+                for ( int p = 0; p < pieces; p++ )
+                {
+                    int k0 = lo + chunkStart( p, pieces, hi - lo );
+                    int k1 = lo + chunkStart( p + 1, pieces, hi - lo );
+                    tasks.add( new LongMergeTask( srcX, srcXOffset, srcAux, srcAuxOffset, dstX, dstXOffset, dstAux, dstAuxOffset, lo, mid, hi, k0, k1 ) );
+                }
+            }
+            runAll( tasks, executor );
+
+            long[] tempX = srcX;
+            srcX = dstX;
+            dstX = tempX;
+
+            int[] tempAux = srcAux;
+            srcAux = dstAux;
+            dstAux = tempAux;
+
+            int tempXOffset = srcXOffset;
+            srcXOffset = dstXOffset;
+            dstXOffset = tempXOffset;
+
+            int tempAuxOffset = srcAuxOffset;
+            srcAuxOffset = dstAuxOffset;
+            dstAuxOffset = tempAuxOffset;
+        }
+
+        if ( srcX != x )
+        {
+            System.arraycopy( srcX, srcXOffset, x, xOffset, n );
+            System.arraycopy( srcAux, srcAuxOffset, aux, auxOffset, n );
+        }
+    }
+
+    /**
+     * Writes elements {@code [k0, k1)} of the stable merge of the sorted runs {@code [lo, mid)}
+     * and {@code [mid, hi)}. Positions are relative to the array offsets.
+     */
+    protected static class LongMergeTask implements Runnable
+    {
+        protected final long[] srcX;
+        protected final int srcXOffset;
+        protected final int[] srcAux;
+        protected final int srcAuxOffset;
+        protected final long[] dstX;
+        protected final int dstXOffset;
+        protected final int[] dstAux;
+        protected final int dstAuxOffset;
+        protected final int lo;
+        protected final int mid;
+        protected final int hi;
+        protected final int k0;
+        protected final int k1;
+
+        public LongMergeTask( long[] srcX, int srcXOffset, int[] srcAux, int srcAuxOffset, long[] dstX, int dstXOffset, int[] dstAux, int dstAuxOffset, int lo, int mid, int hi, int k0, int k1 )
+        {
+            this.srcX = srcX;
+            this.srcXOffset = srcXOffset;
+            this.srcAux = srcAux;
+            this.srcAuxOffset = srcAuxOffset;
+            this.dstX = dstX;
+            this.dstXOffset = dstXOffset;
+            this.dstAux = dstAux;
+            this.dstAuxOffset = dstAuxOffset;
+            this.lo = lo;
+            this.mid = mid;
+            this.hi = hi;
+            this.k0 = k0;
+            this.k1 = k1;
+        }
+
+        public void run( )
+        {
+            int a = lo + coRank( k0 - lo );
+            int aEnd = lo + coRank( k1 - lo );
+            int b = mid + ( k0 - lo ) - ( a - lo );
+            int bEnd = mid + ( k1 - lo ) - ( aEnd - lo );
+
+            long[] x = srcX;
+            int xOff = srcXOffset;
+            int auxOff = srcAuxOffset;
+            for ( int k = k0; k < k1; k++ )
+            {
+                // take from the left run on ties, to keep the merge stable
+                if ( b >= bEnd || ( a < aEnd && x[xOff + a] <= x[xOff + b] ) )
+                {
+                    dstX[dstXOffset + k] = x[xOff + a];
+                    dstAux[dstAuxOffset + k] = srcAux[auxOff + a];
+                    a++;
+                }
+                else
+                {
+                    dstX[dstXOffset + k] = x[xOff + b];
+                    dstAux[dstAuxOffset + k] = srcAux[auxOff + b];
+                    b++;
+                }
+            }
+        }
+
+        /**
+         * @return how many of the first {@code k} merged elements come from the left run
+         */
+        protected int coRank( int k )
+        {
+            int nLeft = mid - lo;
+            int nRight = hi - mid;
+
+            int min = Math.max( 0, k - nRight );
+            int max = Math.min( k, nLeft );
+            while ( min < max )
+            {
+                int i = ( min + max ) >>> 1;
+                int j = k - i;
+
+                // the left element at i belongs in the first k if it does not sort after right element j-1
+                if ( srcX[srcXOffset + lo + i] <= srcX[srcXOffset + mid + j - 1] )
+                    min = i + 1;
+                else
+                    max = i;
+            }
+            return min;
+        }
+    }
+
+    ////////////////////////////////////////
+    ///// Int Keys                     /////
+    ////////////////////////////////////////
+
+    protected static void sort( final int[] x, final int xOffset, final int[] aux, final int auxOffset, final int n, final int chunks, ExecutorService executor )
+    {
+        final int[] xTemp = new int[n];
+        final int[] auxTemp = new int[n];
+
+        List<Runnable> tasks = new ArrayList<Runnable>( 2 * chunks );
+        for ( int c = 0; c < chunks; c++ )
+        {
+            final int start = chunkStart( c, chunks, n );
+            final int end = chunkStart( c + 1, chunks, n );
+            tasks.add( new Runnable( )
+            {
+                public void run( )
+                {
+                    RadixSorting.radixsort( x, xOffset + start, aux, auxOffset + start, end - start, xTemp, auxTemp, start );
+                }
+            } );
+        }
+        runAll( tasks, executor );
+
+        int[] srcX = x;
+        int[] srcAux = aux;
+        int srcXOffset = xOffset;
+        int srcAuxOffset = auxOffset;
+
+        int[] dstX = xTemp;
+        int[] dstAux = auxTemp;
+        int dstXOffset = 0;
+        int dstAuxOffset = 0;
+
+        for ( int width = 1; width < chunks; width *= 2 )
+        {
+            tasks.clear( );
+
+            int pairs = ( chunks + 2 * width - 1 ) / ( 2 * width );
+            int pieces = Math.max( 1, chunks / pairs );
+
+            for ( int c = 0; c < chunks; c += 2 * width )
+            {
+                int lo = chunkStart( c, chunks, n );
+                int mid = chunkStart( Math.min( c + width, chunks ), chunks, n );
+                int hi = chunkStart( Math.min( c + 2 * width, chunks ), chunks, n );
+
+                for ( int p = 0; p < pieces; p++ )
+                {
+                    int k0 = lo + chunkStart( p, pieces, hi - lo );
+                    int k1 = lo + chunkStart( p + 1, pieces, hi - lo );
+                    tasks.add( new IntMergeTask( srcX, srcXOffset, srcAux, srcAuxOffset, dstX, dstXOffset, dstAux, dstAuxOffset, lo, mid, hi, k0, k1 ) );
+                }
+            }
+            runAll( tasks, executor );
+
+            int[] tempX = srcX;
+            srcX = dstX;
+            dstX = tempX;
+
+            int[] tempAux = srcAux;
+            srcAux = dstAux;
+            dstAux = tempAux;
+
+            int tempXOffset = srcXOffset;
+            srcXOffset = dstXOffset;
+            dstXOffset = tempXOffset;
+
+            int tempAuxOffset = srcAuxOffset;
+            srcAuxOffset = dstAuxOffset;
+            dstAuxOffset = tempAuxOffset;
+        }
+
+        if ( srcX != x )
+        {
+            System.arraycopy( srcX, srcXOffset, x, xOffset, n );
+            System.arraycopy( srcAux, srcAuxOffset, aux, auxOffset, n );
+        }
+    }
+
+    /**
+     * Same as {@link LongMergeTask}, for int keys.
+     */
+    protected static class IntMergeTask implements Runnable
+    {
+        protected final int[] srcX;
+        protected final int srcXOffset;
+        protected final int[] srcAux;
+        protected final int srcAuxOffset;
+        protected final int[] dstX;
+        protected final int dstXOffset;
+        protected final int[] dstAux;
+        protected final int dstAuxOffset;
+        protected final int lo;
+        protected final int mid;
+        protected final int hi;
+        protected final int k0;
+        protected final int k1;
+
+        public IntMergeTask( int[] srcX, int srcXOffset, int[] srcAux, int srcAuxOffset, int[] dstX, int dstXOffset, int[] dstAux, int dstAuxOffset, int lo, int mid, int hi, int k0, int k1 )
+        {
+            this.srcX = srcX;
+            this.srcXOffset = srcXOffset;
+            this.srcAux = srcAux;
+            this.srcAuxOffset = srcAuxOffset;
+            this.dstX = dstX;
+            this.dstXOffset = dstXOffset;
+            this.dstAux = dstAux;
+            this.dstAuxOffset = dstAuxOffset;
+            this.lo = lo;
+            this.mid = mid;
+            this.hi = hi;
+            this.k0 = k0;
+            this.k1 = k1;
+        }
+
+        public void run( )
+        {
+            int a = lo + coRank( k0 - lo );
+            int aEnd = lo + coRank( k1 - lo );
+            int b = mid + ( k0 - lo ) - ( a - lo );
+            int bEnd = mid + ( k1 - lo ) - ( aEnd - lo );
+
+            int[] x = srcX;
+            int xOff = srcXOffset;
+            int auxOff = srcAuxOffset;
+            for ( int k = k0; k < k1; k++ )
+            {
+                if ( b >= bEnd || ( a < aEnd && x[xOff + a] <= x[xOff + b] ) )
+                {
+                    dstX[dstXOffset + k] = x[xOff + a];
+                    dstAux[dstAuxOffset + k] = srcAux[auxOff + a];
+                    a++;
+                }
+                else
+                {
+                    dstX[dstXOffset + k] = x[xOff + b];
+                    dstAux[dstAuxOffset + k] = srcAux[auxOff + b];
+                    b++;
+                }
+            }
+        }
+
+        protected int coRank( int k )
+        {
+            int nLeft = mid - lo;
+            int nRight = hi - mid;
+
+            int min = Math.max( 0, k - nRight );
+            int max = Math.min( k, nLeft );
+            while ( min < max )
+            {
+                int i = ( min + max ) >>> 1;
+                int j = k - i;
+
+                if ( srcX[srcXOffset + lo + i] <= srcX[srcXOffset + mid + j - 1] )
+                    min = i + 1;
+                else
+                    max = i;
+            }
+            return min;
+        }
+    }
+
+    ////////////////////////////////////////
+    ///// Task Execution               /////
+    ////////////////////////////////////////
+
+    /**
+     * Runs all the tasks, the last one on the calling thread, and waits for them to finish.
+     */
+    protected static void runAll( List<Runnable> tasks, ExecutorService executor )
+    {
+        int last = tasks.size( ) - 1;
+        if ( last < 0 ) return;
+
+        List<Future<?>> futures = new ArrayList<Future<?>>( last );
+        for ( int i = 0; i < last; i++ )
+        {
+            futures.add( executor.submit( tasks.get( i ) ) );
+        }
+
+        tasks.get( last ).run( );
+
+        for ( Future<?> future : futures )
+        {
+            try
+            {
+                future.get( );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread( ).interrupt( );
+                throw new RuntimeException( "Interrupted while sorting", e );
+            }
+            catch ( ExecutionException e )
+            {
+                throw new RuntimeException( "Failed to sort", e.getCause( ) );
+            }
+        }
+    }
+}
@@ -259,4 +259,46 @@ public class Partitioning
             dst[i] = src[index[i]];
     }
 
+
+    /////////////
+    /////////////
+    /////////////
+
+    /**
+     * Reorders {@code keys[from,to)} so that keys less than {@code divider} come before keys
+     * that are not, applying the same swaps to the parallel arrays {@code coKeys} and
+     * {@code values}. The relative order within each side is not preserved.
+     *
+     * Moving the data itself, rather than an index into it, keeps later passes over each
+     * side sequential in memory.
+     *
+     * @return The first position in {@code [from,to]} whose key is not less than {@code divider}
+     */
+    public static int partition( float[] keys, float[] coKeys, Object[] values, int from, int to, float divider )
+    {
+        int lo = from;
+        int hi = to - 1;
+        while( true )
+        {
+            while( lo <= hi && keys[lo] < divider ) lo++;
+            while( lo <= hi && !( keys[hi] < divider ) ) hi--;
+            if( lo >= hi ) return lo;
+
+            float key = keys[lo];
+            keys[lo] = keys[hi];
+            keys[hi] = key;
+
+            float coKey = coKeys[lo];
+            coKeys[lo] = coKeys[hi];
+            coKeys[hi] = coKey;
+
+            Object value = values[lo];
+            values[lo] = values[hi];
+            values[hi] = value;
+
+            lo++;
+            hi--;
+        }
+    }
+
 }
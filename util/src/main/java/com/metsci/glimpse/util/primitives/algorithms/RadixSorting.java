@@ -0,0 +1,386 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.util.primitives.algorithms;
+
+/**
+ * Stable LSD radix sorts for primitive keys, carrying along an {@code int[]} permutation
+ * (typically the original indices of the keys).
+ *
+ * Unlike {@link Sorting#mergesort(long[], int[], int, int)}, these make no virtual calls per
+ * element. Keys are sorted 8 bits at a time, and passes over bytes that are the same for every
+ * key (for example the high bytes of timestamps from a single day) are skipped entirely, so a
+ * long sort usually takes far fewer than 8 passes.
+ *
+ * Floating-point keys are ordered as by {@link java.util.Arrays#sort(double[])}: -0.0 sorts
+ * before 0.0, and NaNs sort to the end (and are canonicalized).
+ *
+ * Each sort allocates scratch arrays as large as the range being sorted.
+ */
+public class RadixSorting
+{
+    /**
+     * Ranges shorter than this are insertion sorted instead.
+     */
+    public static final int INSERTION_SORT_THRESHOLD = 64;
+
+    public static void radixsort( long[] x, int[] aux )
+    {
+        radixsort( x, aux, 0, x.length );
+    }
+
+    public static void radixsort( long[] x, int[] aux, int fromIndex, int toIndex )
+    {
+        int n = toIndex - fromIndex;
+        if ( n < INSERTION_SORT_THRESHOLD )
+        {
+            insertionsort( x, aux, fromIndex, toIndex );
+            return;
+        }
+
+        radixsort( x, fromIndex, aux, fromIndex, n, new long[n], new int[n], 0 );
+    }
+
+    public static void radixsort( double[] x, int[] aux )
+    {
+        radixsort( x, aux, 0, x.length );
+    }
+
+    public static void radixsort( double[] x, int[] aux, int fromIndex, int toIndex )
+    {
+        int n = toIndex - fromIndex;
+        long[] keys = new long[n];
+        encode( x, fromIndex, keys, 0, n );
+
+        if ( n < INSERTION_SORT_THRESHOLD )
+        {
+            insertionsort( keys, 0, aux, fromIndex, n );
+        }
+        else
+        {
+            radixsort( keys, 0, aux, fromIndex, n, new long[n], new int[n], 0 );
+        }
+
+        decode( keys, 0, x, fromIndex, n );
+    }
+
+    public static void radixsort( float[] x, int[] aux )
+    {
+        radixsort( x, aux, 0, x.length );
+    }
+
+    public static void radixsort( float[] x, int[] aux, int fromIndex, int toIndex )
+    {
+        int n = toIndex - fromIndex;
+        int[] keys = new int[n];
+        encode( x, fromIndex, keys, 0, n );
+
+        if ( n < INSERTION_SORT_THRESHOLD )
+        {
+            insertionsort( keys, 0, aux, fromIndex, n );
+        }
+        else
+        {
+            radixsort( keys, 0, aux, fromIndex, n, new int[n], new int[n], 0 );
+        }
+
+        decode( keys, 0, x, fromIndex, n );
+    }
+
+    public static void insertionsort( long[] x, int[] aux, int fromIndex, int toIndex )
+    {
+        insertionsort( x, fromIndex, aux, fromIndex, toIndex - fromIndex );
+    }
+
+    ////////////////////////////////////////
+    ///// Key Encoding                 /////
+    ////////////////////////////////////////
+
+    // Maps doubles to longs with the same (signed) order: negative values have all
+    // bits but the sign flipped. The mapping is its own inverse.
+    static long toSortableBits( double v )
+    {
+        long bits = Double.doubleToLongBits( v );
+        return bits ^ ( ( bits >> 63 ) & Long.MAX_VALUE );
+    }
+
+    static double fromSortableBits( long bits )
+    {
+        return Double.longBitsToDouble( bits ^ ( ( bits >> 63 ) & Long.MAX_VALUE ) );
+    }
+
+    static int toSortableBits( float v )
+    {
+        int bits = Float.floatToIntBits( v );
+        return bits ^ ( ( bits >> 31 ) & Integer.MAX_VALUE );
+    }
+
+    static float fromSortableBits( int bits )
+    {
+        return Float.intBitsToFloat( bits ^ ( ( bits >> 31 ) & Integer.MAX_VALUE ) );
+    }
+
+    static void encode( double[] x, int xOffset, long[] keys, int keysOffset, int n )
+    {
+        for ( int i = 0; i < n; i++ )
+            keys[keysOffset + i] = toSortableBits( x[xOffset + i] );
+    }
+
+    static void decode( long[] keys, int keysOffset, double[] x, int xOffset, int n )
+    {
+        for ( int i = 0; i < n; i++ )
+            x[xOffset + i] = fromSortableBits( keys[keysOffset + i] );
+    }
+
+    static void encode( float[] x, int xOffset, int[] keys, int keysOffset, int n )
+    {
+        for ( int i = 0; i < n; i++ )
+            keys[keysOffset + i] = toSortableBits( x[xOffset + i] );
+    }
+
+    static void decode( int[] keys, int keysOffset, float[] x, int xOffset, int n )
+    {
+        for ( int i = 0; i < n; i++ )
+            x[xOffset + i] = fromSortableBits( keys[keysOffset + i] );
+    }
+
+    ////////////////////////////////////////
+    ///// Sort Kernels                 /////
+    ////////////////////////////////////////
+
+    /**
+     * Sorts {@code n} keys starting at {@code x[xOffset]}, permuting the {@code n} values
+     * starting at {@code aux[auxOffset]} to match. The scratch arrays must have room for
+     * {@code n} values starting at {@code tempOffset}.
+     */
+    static void radixsort( long[] x, int xOffset, int[] aux, int auxOffset, int n, long[] xTemp, int[] auxTemp, int tempOffset )
+    {
+        if ( n < INSERTION_SORT_THRESHOLD )
+        {
+            insertionsort( x, xOffset, aux, auxOffset, n );
+            return;
+        }
+
+        // histograms for all 8 digits, in one pass; the sign bit is flipped so that
+        // negative keys sort first
+        int[] counts = new int[8 * 256];
+        for ( int i = xOffset; i < xOffset + n; i++ )
+        {
+            long v = x[i];
+            counts[( int ) ( v & 0xFF )]++;
+            counts[256 + ( int ) ( ( v >>> 8 ) & 0xFF )]++;
+            counts[512 + ( int ) ( ( v >>> 16 ) & 0xFF )]++;
+            counts[768 + ( int ) ( ( v >>> 24 ) & 0xFF )]++;
+            counts[1024 + ( int ) ( ( v >>> 32 ) & 0xFF )]++;
+            counts[1280 + ( int ) ( ( v >>> 40 ) & 0xFF )]++;
+            counts[1536 + ( int ) ( ( v >>> 48 ) & 0xFF )]++;
+            counts[1792 + ( ( int ) ( v >>> 56 ) ^ 0x80 )]++;
+        }
+
+        long first = x[xOffset];
+        int[] offsets = new int[256];
+
+        long[] srcX = x;
+        int[] srcAux = aux;
+        int srcXOffset = xOffset;
+        int srcAuxOffset = auxOffset;
+
+        long[] dstX = xTemp;
+        int[] dstAux = auxTemp;
+        int dstXOffset = tempOffset;
+        int dstAuxOffset = tempOffset;
+
+        for ( int digit = 0; digit < 8; digit++ )
+        {
+            int shift = 8 * digit;
+            int flip = ( digit == 7 ? 0x80 : 0 );
+            int base = 256 * digit;
+
+            // every key has the same value for this digit, so this pass would not move anything
+            if ( counts[base + ( ( ( int ) ( first >>> shift ) & 0xFF ) ^ flip )] == n ) continue;
+
+            int sum = 0;
+            for ( int b = 0; b < 256; b++ )
+            {
+                offsets[b] = sum;
+                sum += counts[base + b];
+            }
+
+            for ( int i = 0; i < n; i++ )
+            {
+                long v = srcX[srcXOffset + i];
+                int j = offsets[( ( int ) ( v >>> shift ) & 0xFF ) ^ flip]++;
+                dstX[dstXOffset + j] = v;
+                dstAux[dstAuxOffset + j] = srcAux[srcAuxOffset + i];
+            }
+
+            long[] tempX = srcX;
+            srcX = dstX;
+            dstX = tempX;
+
+            int[] tempAux = srcAux;
+            srcAux = dstAux;
+            dstAux = tempAux;
+
+            int tempXOffset = srcXOffset;
+            srcXOffset = dstXOffset;
+            dstXOffset = tempXOffset;
+
+            int tempAuxOffset = srcAuxOffset;
+            srcAuxOffset = dstAuxOffset;
+            dstAuxOffset = tempAuxOffset;
+        }
+
+        // an odd number of passes leaves the result in the scratch arrays
+        if ( srcX != x )
+        {
+            System.arraycopy( srcX, srcXOffset, x, xOffset, n );
+            System.arraycopy( srcAux, srcAuxOffset, aux, auxOffset, n );
+        }
+    }
+
+    /**
+     * Same as {@link #radixsort(long[], int, int[], int, int, long[], int[], int)}, for
+     * int keys.
+     */
+    static void radixsort( int[] x, int xOffset, int[] aux, int auxOffset, int n, int[] xTemp, int[] auxTemp, int tempOffset )
+    {
+        if ( n < INSERTION_SORT_THRESHOLD )
+        {
+            insertionsort( x, xOffset, aux, auxOffset, n );
+            return;
+        }
+
+        int[] counts = new int[4 * 256];
+        for ( int i = xOffset; i < xOffset + n; i++ )
+        {
+            int v = x[i];
+            counts[v & 0xFF]++;
+            counts[256 + ( ( v >>> 8 ) & 0xFF )]++;
+            counts[512 + ( ( v >>> 16 ) & 0xFF )]++;
+            counts[768 + ( ( v >>> 24 ) ^ 0x80 )]++;
+        }
+
+        int first = x[xOffset];
+        int[] offsets = new int[256];
+
+        int[] srcX = x;
+        int[] srcAux = aux;
+        int srcXOffset = xOffset;
+        int srcAuxOffset = auxOffset;
+
+        int[] dstX = xTemp;
+        int[] dstAux = auxTemp;
+        int dstXOffset = tempOffset;
+        int dstAuxOffset = tempOffset;
+
+        for ( int digit = 0; digit < 4; digit++ )
+        {
+            int shift = 8 * digit;
+            int flip = ( digit == 3 ? 0x80 : 0 );
+            int base = 256 * digit;
+
+            if ( counts[base + ( ( ( first >>> shift ) & 0xFF ) ^ flip )] == n ) continue;
+
+            int sum = 0;
+            for ( int b = 0; b < 256; b++ )
+            {
+                offsets[b] = sum;
+                sum += counts[base + b];
+            }
+
+            for ( int i = 0; i < n; i++ )
+            {
+                int v = srcX[srcXOffset + i];
+                int j = offsets[( ( v >>> shift ) & 0xFF ) ^ flip]++;
+                dstX[dstXOffset + j] = v;
+                dstAux[dstAuxOffset + j] = srcAux[srcAuxOffset + i];
+            }
+
+            int[] tempX = srcX;
+            srcX = dstX;
+            dstX = tempX;
+
+            int[] tempAux = srcAux;
+            srcAux = dstAux;
+            dstAux = tempAux;
+
+            int tempXOffset = srcXOffset;
+            srcXOffset = dstXOffset;
+            dstXOffset = tempXOffset;
+
+            int tempAuxOffset = srcAuxOffset;
+            srcAuxOffset = dstAuxOffset;
+            dstAuxOffset = tempAuxOffset;
+        }
+
+        if ( srcX != x )
+        {
+            System.arraycopy( srcX, srcXOffset, x, xOffset, n );
+            System.arraycopy( srcAux, srcAuxOffset, aux, auxOffset, n );
+        }
+    }
+
+    static void insertionsort( long[] x, int xOffset, int[] aux, int auxOffset, int n )
+    {
+        for ( int i = 1; i < n; i++ )
+        {
+            long v = x[xOffset + i];
+            int a = aux[auxOffset + i];
+
+            int j = i;
+            while ( j > 0 && x[xOffset + j - 1] > v )
+            {
+                x[xOffset + j] = x[xOffset + j - 1];
+                aux[auxOffset + j] = aux[auxOffset + j - 1];
+                j--;
+            }
+
+            x[xOffset + j] = v;
+            aux[auxOffset + j] = a;
+        }
+    }
+
+    static void insertionsort( int[] x, int xOffset, int[] aux, int auxOffset, int n )
+    {
+        for ( int i = 1; i < n; i++ )
+        {
+            int v = x[xOffset + i];
+            int a = aux[auxOffset + i];
+
+            int j = i;
+            while ( j > 0 && x[xOffset + j - 1] > v )
+            {
+                x[xOffset + j] = x[xOffset + j - 1];
+                aux[auxOffset + j] = aux[auxOffset + j - 1];
+                j--;
+            }
+
+            x[xOffset + j] = v;
+            aux[auxOffset + j] = a;
+        }
+    }
+}
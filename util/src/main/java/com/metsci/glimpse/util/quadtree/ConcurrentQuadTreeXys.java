@@ -0,0 +1,567 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.util.quadtree;
+
+import static com.metsci.glimpse.util.quadtree.QuadTree.quadrant;
+import static com.metsci.glimpse.util.quadtree.QuadTree.truncInf;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Like {@link QuadTreeXys}, but safe for one or more writer threads to modify
+ * while other threads search.
+ *
+ * Searches never block. Each search runs against an immutable {@link Snapshot}
+ * of the tree, so a reader sees either all or none of a given modification,
+ * and a slow reader never holds up a writer.
+ *
+ * Writers copy the nodes along the path from the root to the leaf they modify,
+ * and then publish a new snapshot. Nodes that have not yet been published are
+ * modified in place, so wrapping many modifications in {@link #startBatch()} and
+ * {@link #endBatch()} avoids most of the copying, and makes the whole batch
+ * visible to readers at once.
+ *
+ * Writers are serialized with a single lock. Writes are short compared to the
+ * searches they would otherwise contend with, so finer-grained locking among
+ * writers has not been worth its complexity.
+ */
+public class ConcurrentQuadTreeXys<V extends Xy>
+{
+
+    protected static abstract class Node
+    {
+        // Nodes belonging to the writer's current generation have not been published
+        // yet, and may be modified in place. All other nodes are immutable.
+        public final long generation;
+
+        public Node(long generation)
+        {
+            this.generation = generation;
+        }
+    }
+
+
+    protected static class InternalNode extends Node
+    {
+        public final float xDivider;
+        public final float yDivider;
+
+        /**
+         * Indexed using {@link QuadTree#quadrant(float, float, float, float)}
+         */
+        public final Node[] children;
+
+        public InternalNode(long generation, float xDivider, float yDivider, Node[] children)
+        {
+            super(generation);
+            this.xDivider = xDivider;
+            this.yDivider = yDivider;
+            this.children = children;
+        }
+    }
+
+
+    protected static class LeafNode extends Node
+    {
+        public Object[] values;
+        public int size;
+
+        public final float xMin;
+        public final float xMax;
+        public final float yMin;
+        public final float yMax;
+
+        public LeafNode(long generation, Object[] values, int size, float xMin, float xMax, float yMin, float yMax)
+        {
+            super(generation);
+            this.values = values;
+            this.size = size;
+            this.xMin = xMin;
+            this.xMax = xMax;
+            this.yMin = yMin;
+            this.yMax = yMax;
+        }
+
+        public void add(Object v)
+        {
+            if (size == values.length)
+            {
+                Object[] newValues = new Object[Math.max(4, 2 * size)];
+                System.arraycopy(values, 0, newValues, 0, size);
+                values = newValues;
+            }
+            values[size++] = v;
+        }
+
+        public int indexOf(Object v)
+        {
+            for (int i = 0; i < size; i++)
+            {
+                if (v.equals(values[i])) return i;
+            }
+            return -1;
+        }
+
+        public void remove(int i)
+        {
+            size--;
+            values[i] = values[size];
+            values[size] = null;
+        }
+    }
+
+
+    /**
+     * An immutable view of the tree as of a particular point in time. Searching
+     * a snapshot requires no locking, and is unaffected by later modifications
+     * to the tree.
+     */
+    public static class Snapshot<V extends Xy>
+    {
+        protected final Node root;
+        protected final int size;
+
+        protected Snapshot(Node root, int size)
+        {
+            this.root = root;
+            this.size = size;
+        }
+
+        public int size()
+        {
+            return size;
+        }
+
+        public Collection<V> search(float xMin, float xMax, float yMin, float yMax)
+        {
+            Collection<V> results = new ArrayList<V>();
+            search(xMin, xMax, yMin, yMax, null, results);
+            return results;
+        }
+
+        /**
+         * @return The number of elements appended to {@code results}.
+         */
+        public int search(float xMin, float xMax, float yMin, float yMax, Collection<V> results)
+        {
+            return search(xMin, xMax, yMin, yMax, null, results);
+        }
+
+        public Collection<V> search(float xMin, float xMax, float yMin, float yMax, FilterObject<V> vFilter)
+        {
+            Collection<V> results = new ArrayList<V>();
+            search(xMin, xMax, yMin, yMax, vFilter, results);
+            return results;
+        }
+
+        /**
+         * @param vFilter may be null, in which case no values are filtered out
+         * @return The number of elements appended to {@code results}.
+         */
+        public int search(float xMin, float xMax, float yMin, float yMax, FilterObject<V> vFilter, Collection<V> results)
+        {
+            int nBefore = results.size();
+            accumulate(root, xMin, xMax, yMin, yMax, vFilter, results);
+            return results.size() - nBefore;
+        }
+
+        protected void accumulate(Node node, float xMin, float xMax, float yMin, float yMax, FilterObject<V> vFilter, Collection<V> results)
+        {
+            if (node instanceof InternalNode)
+            {
+                InternalNode internal = (InternalNode) node;
+                float xDivider = internal.xDivider;
+                float yDivider = internal.yDivider;
+                Node[] children = internal.children;
+
+                boolean includeSmallX = (xMin < xDivider);
+                boolean includeLargeX = (xMax >= xDivider);
+                boolean includeSmallY = (yMin < yDivider);
+                boolean includeLargeY = (yMax >= yDivider);
+
+                if (includeSmallX && includeSmallY) accumulate(children[0], xMin, xMax, yMin, yMax, vFilter, results);
+                if (includeLargeX && includeSmallY) accumulate(children[1], xMin, xMax, yMin, yMax, vFilter, results);
+                if (includeSmallX && includeLargeY) accumulate(children[2], xMin, xMax, yMin, yMax, vFilter, results);
+                if (includeLargeX && includeLargeY) accumulate(children[3], xMin, xMax, yMin, yMax, vFilter, results);
+            }
+            else
+            {
+                LeafNode leaf = (LeafNode) node;
+                Object[] values = leaf.values;
+                int size = leaf.size;
+
+                // Skip the per-value bounds checks along any axis the leaf lies entirely inside of
+                boolean xAll = (xMin <= leaf.xMin && leaf.xMax <= xMax);
+                boolean yAll = (yMin <= leaf.yMin && leaf.yMax <= yMax);
+
+                for (int i = 0; i < size; i++)
+                {
+                    @SuppressWarnings("unchecked")
+                    V v = (V) values[i];
+
+                    if (!xAll)
+                    {
+                        float x = v.x();
+                        if (x < xMin || x > xMax) continue;
+                    }
+
+                    if (!yAll)
+                    {
+                        float y = v.y();
+                        if (y < yMin || y > yMax) continue;
+                    }
+
+                    if (vFilter != null && !vFilter.include(v)) continue;
+
+                    results.add(v);
+                }
+            }
+        }
+    }
+
+
+
+    protected final int maxBucketSize;
+
+    // Guards all fields below, except for the volatile snapshot field
+    protected final ReentrantLock writeLock;
+
+    protected Node root;
+    protected int size;
+    protected long generation;
+    protected int batchDepth;
+
+    protected volatile Snapshot<V> snapshot;
+
+
+    public ConcurrentQuadTreeXys(int maxBucketSize)
+    {
+        this.maxBucketSize = maxBucketSize;
+        this.writeLock = new ReentrantLock();
+
+        this.generation = 0;
+        this.root = newRootLeaf();
+        this.size = 0;
+        this.batchDepth = 0;
+        publish();
+    }
+
+    /**
+     * Returns the most recently published snapshot. Searches on the returned
+     * snapshot will not reflect later modifications.
+     */
+    public Snapshot<V> snapshot()
+    {
+        return snapshot;
+    }
+
+    public int size()
+    {
+        return snapshot.size();
+    }
+
+    public Collection<V> search(float xMin, float xMax, float yMin, float yMax)
+    {
+        return snapshot.search(xMin, xMax, yMin, yMax);
+    }
+
+    /**
+     * @return The number of elements appended to {@code results}.
+     */
+    public int search(float xMin, float xMax, float yMin, float yMax, Collection<V> results)
+    {
+        return snapshot.search(xMin, xMax, yMin, yMax, results);
+    }
+
+    public Collection<V> search(float xMin, float xMax, float yMin, float yMax, FilterObject<V> vFilter)
+    {
+        return snapshot.search(xMin, xMax, yMin, yMax, vFilter);
+    }
+
+    /**
+     * @return The number of elements appended to {@code results}.
+     */
+    public int search(float xMin, float xMax, float yMin, float yMax, FilterObject<V> vFilter, Collection<V> results)
+    {
+        return snapshot.search(xMin, xMax, yMin, yMax, vFilter, results);
+    }
+
+    /**
+     * Defers publishing modifications until the matching call to {@link #endBatch()}.
+     * Batches may be nested, in which case nothing is published until the outermost
+     * batch ends. The calling thread holds the write lock for the duration of the
+     * batch, so other writers will block until then; readers are unaffected.
+     */
+    public void startBatch()
+    {
+        writeLock.lock();
+        batchDepth++;
+    }
+
+    public void endBatch()
+    {
+        // Only a thread inside a batch holds the write lock; checking the lock first also
+        // keeps the unlock below from replacing this exception with a monitor exception
+        if (!writeLock.isHeldByCurrentThread()) throw new IllegalStateException("No batch in progress");
+
+        try
+        {
+            batchDepth--;
+            if (batchDepth == 0) publish();
+        }
+        finally
+        {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * If {@code v.x()} or {@code v.y()} returns {@code NaN}, this method returns
+     * immediately without adding {@code v} to the tree.
+     */
+    public void add(V v)
+    {
+        float x = v.x();
+        if (Float.isNaN(x)) return;
+
+        float y = v.y();
+        if (Float.isNaN(y)) return;
+
+        writeLock.lock();
+        try
+        {
+            root = add(own(root), x, y, v);
+            size++;
+
+            if (batchDepth == 0) publish();
+        }
+        finally
+        {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Removes one value equal to {@code v}, if the tree contains one.
+     *
+     * @return Whether a value was removed.
+     */
+    public boolean remove(V v)
+    {
+        float x = v.x();
+        float y = v.y();
+
+        writeLock.lock();
+        try
+        {
+            // Avoid copying the path to a leaf that doesn't contain v
+            if (leaf(root, x, y).indexOf(v) < 0) return false;
+
+            root = own(root);
+            LeafNode leaf = ownLeaf(root, x, y);
+            leaf.remove(leaf.indexOf(v));
+            size--;
+
+            if (batchDepth == 0) publish();
+            return true;
+        }
+        finally
+        {
+            writeLock.unlock();
+        }
+    }
+
+    public void clear()
+    {
+        writeLock.lock();
+        try
+        {
+            root = newRootLeaf();
+            size = 0;
+
+            if (batchDepth == 0) publish();
+        }
+        finally
+        {
+            writeLock.unlock();
+        }
+    }
+
+    // Must be called while holding the write lock
+    protected void publish()
+    {
+        snapshot = new Snapshot<V>(root, size);
+
+        // Everything reachable from the snapshot is now shared with readers,
+        // so the next modification must copy anything it touches
+        generation++;
+    }
+
+    protected LeafNode newRootLeaf()
+    {
+        return new LeafNode(generation, new Object[0], 0, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Returns a node that may be modified in place: either {@code node} itself, if it
+     * has not been published yet, or else a shallow copy of it.
+     */
+    protected Node own(Node node)
+    {
+        if (node.generation == generation) return node;
+
+        if (node instanceof InternalNode)
+        {
+            InternalNode internal = (InternalNode) node;
+            return new InternalNode(generation, internal.xDivider, internal.yDivider, internal.children.clone());
+        }
+        else
+        {
+            LeafNode leaf = (LeafNode) node;
+            Object[] values = new Object[Math.max(4, leaf.size + (leaf.size >> 1))];
+            System.arraycopy(leaf.values, 0, values, 0, leaf.size);
+            return new LeafNode(generation, values, leaf.size, leaf.xMin, leaf.xMax, leaf.yMin, leaf.yMax);
+        }
+    }
+
+    protected static LeafNode leaf(Node node, float x, float y)
+    {
+        while (node instanceof InternalNode)
+        {
+            InternalNode internal = (InternalNode) node;
+            node = internal.children[quadrant(internal.xDivider, internal.yDivider, x, y)];
+        }
+        return (LeafNode) node;
+    }
+
+    /**
+     * Walks from {@code node}, which must already be owned, down to the leaf containing
+     * {@code (x,y)}, taking ownership of each node along the way.
+     */
+    protected LeafNode ownLeaf(Node node, float x, float y)
+    {
+        while (node instanceof InternalNode)
+        {
+            InternalNode internal = (InternalNode) node;
+            int q = quadrant(internal.xDivider, internal.yDivider, x, y);
+            node = own(internal.children[q]);
+            internal.children[q] = node;
+        }
+        return (LeafNode) node;
+    }
+
+    /**
+     * Adds {@code v} below {@code node}, which must already be owned, splitting the
+     * destination leaf if it gets full. Returns the node that should replace {@code node}.
+     */
+    protected Node add(Node node, float x, float y, V v)
+    {
+        InternalNode parent = null;
+        int q = -1;
+
+        Node current = node;
+        while (current instanceof InternalNode)
+        {
+            parent = (InternalNode) current;
+            q = quadrant(parent.xDivider, parent.yDivider, x, y);
+            current = own(parent.children[q]);
+            parent.children[q] = current;
+        }
+
+        LeafNode leaf = (LeafNode) current;
+        leaf.add(v);
+        if (leaf.size <= maxBucketSize) return node;
+
+        Node replacement = splitLeaf(leaf);
+        if (parent == null) return replacement;
+
+        parent.children[q] = replacement;
+        return node;
+    }
+
+    /**
+     * Same splitting rules as {@link QuadTree#splitLeaf(QuadTree.LeafNode)}. Returns the
+     * node that should replace {@code leaf}, which will be {@code leaf} itself if it
+     * could not be usefully split.
+     */
+    protected Node splitLeaf(LeafNode leaf)
+    {
+        float xMin = leaf.xMin;
+        float xMax = leaf.xMax;
+        float yMin = leaf.yMin;
+        float yMax = leaf.yMax;
+
+        // 2 * machine epsilon for 32-bit floats
+        float minDividerSpacing = (float) Math.pow(2.0, -23.0);
+        boolean xSplittable = (xMax - xMin > minDividerSpacing);
+        boolean ySplittable = (yMax - yMin > minDividerSpacing);
+        if (!xSplittable && !ySplittable) return leaf;
+
+        double oneOverSize = 1.0 / leaf.size;
+        double xMean = 0;
+        double yMean = 0;
+        for (int i = 0; i < leaf.size; i++)
+        {
+            Xy v = (Xy) leaf.values[i];
+            xMean += truncInf(v.x()) * oneOverSize;
+            yMean += truncInf(v.y()) * oneOverSize;
+        }
+
+        float xDivider = (xSplittable ? truncInf((float) xMean) : xMin);
+        float yDivider = (ySplittable ? truncInf((float) yMean) : yMin);
+
+        int[] counts = new int[4];
+        for (int i = 0; i < leaf.size; i++)
+        {
+            Xy v = (Xy) leaf.values[i];
+            counts[quadrant(xDivider, yDivider, v.x(), v.y())]++;
+        }
+
+        // If everything landed in one quadrant, splitting would just add depth
+        int numNonEmpty = 0;
+        for (int c : counts) if (c > 0) numNonEmpty++;
+        if (numNonEmpty < 2) return leaf;
+
+        Node[] children = new Node[4];
+        children[0] = new LeafNode(generation, new Object[counts[0]], 0, xMin, xDivider, yMin, yDivider); // [0] small-x small-y
+        children[1] = new LeafNode(generation, new Object[counts[1]], 0, xDivider, xMax, yMin, yDivider); // [1] large-x small-y
+        children[2] = new LeafNode(generation, new Object[counts[2]], 0, xMin, xDivider, yDivider, yMax); // [2] small-x large-y
+        children[3] = new LeafNode(generation, new Object[counts[3]], 0, xDivider, xMax, yDivider, yMax); // [3] large-x large-y
+
+        for (int i = 0; i < leaf.size; i++)
+        {
+            Xy v = (Xy) leaf.values[i];
+            ((LeafNode) children[quadrant(xDivider, yDivider, v.x(), v.y())]).add(v);
+        }
+
+        return new InternalNode(generation, xDivider, yDivider, children);
+    }
+
+}
@@ -0,0 +1,452 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.util.quadtree;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * A spatio-temporal index: answers queries for values within a box and a time window,
+ * in time roughly proportional to the number of values returned, no matter how much
+ * history the index holds.
+ *
+ * Values are grouped into fixed-duration time slices, and each slice gets its own
+ * {@link ConcurrentQuadTreeXys}. A query searches only the slices that overlap its time
+ * window; slices that lie entirely inside the window need no per-value time checks,
+ * so only the (at most two) slices at the ends of the window examine values outside it.
+ * Choose a slice duration comparable to the shortest time windows that will be queried.
+ *
+ * Concurrency works as in {@link ConcurrentQuadTreeXys}: searches run lock-free against
+ * an immutable {@link Snapshot}, and a batch of modifications bracketed by {@link #startBatch()}
+ * and {@link #endBatch()} becomes visible to readers all at once, across all slices.
+ *
+ * Publishing is copy-on-write per slice: when a modification touches only slices that
+ * already exist, the new snapshot shares every untouched slice with the old one, and only
+ * the touched slices are re-published. Creating a slice, or emptying one out, rebuilds the
+ * list of slices, which costs time proportional to the number of slices. Adding values in
+ * time order creates a new slice only once per slice duration, so this is rare; but when
+ * making many modifications at once, bracket them in a batch anyway, so that each touched
+ * slice is published once rather than once per modification.
+ *
+ * A value's time must not change while it is in the index.
+ */
+public class ConcurrentQuadTreeXyts<V extends Xyt>
+{
+
+    /**
+     * An immutable view of the index as of a particular point in time.
+     */
+    public static class Snapshot<V extends Xyt>
+    {
+        protected final long sliceDuration;
+
+        // Parallel arrays, sorted by slice number
+        protected final long[] slices;
+        protected final ConcurrentQuadTreeXys.Snapshot<V>[] trees;
+
+        protected final int size;
+
+        protected Snapshot(long sliceDuration, long[] slices, ConcurrentQuadTreeXys.Snapshot<V>[] trees, int size)
+        {
+            this.sliceDuration = sliceDuration;
+            this.slices = slices;
+            this.trees = trees;
+            this.size = size;
+        }
+
+        public int size()
+        {
+            return size;
+        }
+
+        public Collection<V> search(float xMin, float xMax, float yMin, float yMax)
+        {
+            Collection<V> results = new ArrayList<V>();
+            search(xMin, xMax, yMin, yMax, results);
+            return results;
+        }
+
+        /**
+         * Searches all times.
+         *
+         * @return The number of elements appended to {@code results}.
+         */
+        public int search(float xMin, float xMax, float yMin, float yMax, Collection<V> results)
+        {
+            int n = 0;
+            for (int i = 0; i < trees.length; i++)
+            {
+                n += trees[i].search(xMin, xMax, yMin, yMax, results);
+            }
+            return n;
+        }
+
+        public Collection<V> search(long tMin, long tMax, float xMin, float xMax, float yMin, float yMax)
+        {
+            Collection<V> results = new ArrayList<V>();
+            search(tMin, tMax, xMin, xMax, yMin, yMax, results);
+            return results;
+        }
+
+        /**
+         * Finds values with {@code t} in {@code [tMin,tMax]}, {@code x} in {@code [xMin,xMax]},
+         * and {@code y} in {@code [yMin,yMax]}.
+         *
+         * @return The number of elements appended to {@code results}.
+         */
+        public int search(final long tMin, final long tMax, float xMin, float xMax, float yMin, float yMax, Collection<V> results)
+        {
+            if (tMin > tMax) return 0;
+
+            long firstSlice = slice(tMin, sliceDuration);
+            long lastSlice = slice(tMax, sliceDuration);
+
+            FilterObject<V> tFilter = new FilterObject<V>()
+            {
+                public boolean include(V v)
+                {
+                    long t = v.t();
+                    return (tMin <= t && t <= tMax);
+                }
+            };
+
+            int n = 0;
+            for (int i = firstIndexAtOrAfter(firstSlice); i < slices.length && slices[i] <= lastSlice; i++)
+            {
+                long slice = slices[i];
+                boolean tAll = (slice > firstSlice || isSliceStart(tMin, slice)) && (slice < lastSlice || isSliceEnd(tMax, slice));
+
+                if (tAll)
+                {
+                    n += trees[i].search(xMin, xMax, yMin, yMax, results);
+                }
+                else
+                {
+                    n += trees[i].search(xMin, xMax, yMin, yMax, tFilter, results);
+                }
+            }
+            return n;
+        }
+
+        protected int firstIndexAtOrAfter(long slice)
+        {
+            int lo = 0;
+            int hi = slices.length;
+            while (lo < hi)
+            {
+                int mid = (lo + hi) >>> 1;
+                if (slices[mid] < slice) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+        protected boolean isSliceStart(long t, long slice)
+        {
+            return (t == slice * sliceDuration);
+        }
+
+        protected boolean isSliceEnd(long t, long slice)
+        {
+            return (t == slice * sliceDuration + (sliceDuration - 1));
+        }
+    }
+
+
+
+    protected final int maxBucketSize;
+    protected final long sliceDuration;
+
+    // Guards all fields below, except for the volatile snapshot field
+    protected final ReentrantLock writeLock;
+
+    protected final TreeMap<Long, ConcurrentQuadTreeXys<V>> trees;
+    protected final List<ConcurrentQuadTreeXys<V>> batchedTrees;
+    protected final List<Long> batchedSlices;
+    protected boolean slicesChanged;
+    protected int batchDepth;
+
+    protected volatile Snapshot<V> snapshot;
+
+
+    /**
+     * @param sliceDuration the length of each time slice, in the same units as {@link Xyt#t()}
+     */
+    public ConcurrentQuadTreeXyts(int maxBucketSize, long sliceDuration)
+    {
+        if (sliceDuration <= 0) throw new IllegalArgumentException("Slice duration must be positive: " + sliceDuration);
+
+        this.maxBucketSize = maxBucketSize;
+        this.sliceDuration = sliceDuration;
+        this.writeLock = new ReentrantLock();
+
+        this.trees = new TreeMap<Long, ConcurrentQuadTreeXys<V>>();
+        this.batchedTrees = new ArrayList<ConcurrentQuadTreeXys<V>>();
+        this.batchedSlices = new ArrayList<Long>();
+        this.slicesChanged = true;
+        this.batchDepth = 0;
+        publish();
+    }
+
+    public long getSliceDuration()
+    {
+        return sliceDuration;
+    }
+
+    /**
+     * Returns the most recently published snapshot. Searches on the returned
+     * snapshot will not reflect later modifications.
+     */
+    public Snapshot<V> snapshot()
+    {
+        return snapshot;
+    }
+
+    public int size()
+    {
+        return snapshot.size();
+    }
+
+    public Collection<V> search(float xMin, float xMax, float yMin, float yMax)
+    {
+        return snapshot.search(xMin, xMax, yMin, yMax);
+    }
+
+    /**
+     * @return The number of elements appended to {@code results}.
+     */
+    public int search(float xMin, float xMax, float yMin, float yMax, Collection<V> results)
+    {
+        return snapshot.search(xMin, xMax, yMin, yMax, results);
+    }
+
+    public Collection<V> search(long tMin, long tMax, float xMin, float xMax, float yMin, float yMax)
+    {
+        return snapshot.search(tMin, tMax, xMin, xMax, yMin, yMax);
+    }
+
+    /**
+     * @return The number of elements appended to {@code results}.
+     */
+    public int search(long tMin, long tMax, float xMin, float xMax, float yMin, float yMax, Collection<V> results)
+    {
+        return snapshot.search(tMin, tMax, xMin, xMax, yMin, yMax, results);
+    }
+
+    /**
+     * Defers publishing modifications until the matching call to {@link #endBatch()}.
+     * See {@link ConcurrentQuadTreeXys#startBatch()}.
+     */
+    public void startBatch()
+    {
+        writeLock.lock();
+        batchDepth++;
+    }
+
+    public void endBatch()
+    {
+        // Only a thread inside a batch holds the write lock; checking the lock first also
+        // keeps the unlock below from replacing this exception with a monitor exception
+        if (!writeLock.isHeldByCurrentThread()) throw new IllegalStateException("No batch in progress");
+
+        try
+        {
+            batchDepth--;
+            if (batchDepth == 0) publish();
+        }
+        finally
+        {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * If {@code v.x()} or {@code v.y()} returns {@code NaN}, this method returns
+     * immediately without adding {@code v} to the index.
+     */
+    public void add(V v)
+    {
+        if (Float.isNaN(v.x()) || Float.isNaN(v.y())) return;
+
+        startBatch();
+        try
+        {
+            Long slice = slice(v.t(), sliceDuration);
+
+            ConcurrentQuadTreeXys<V> tree = trees.get(slice);
+            if (tree == null)
+            {
+                tree = new ConcurrentQuadTreeXys<V>(maxBucketSize);
+                trees.put(slice, tree);
+                slicesChanged = true;
+            }
+
+            batched(slice, tree).add(v);
+        }
+        finally
+        {
+            endBatch();
+        }
+    }
+
+    /**
+     * Removes one value equal to {@code v}, if the index contains one.
+     *
+     * @return Whether a value was removed.
+     */
+    public boolean remove(V v)
+    {
+        startBatch();
+        try
+        {
+            Long slice = slice(v.t(), sliceDuration);
+            ConcurrentQuadTreeXys<V> tree = trees.get(slice);
+            return (tree != null && batched(slice, tree).remove(v));
+        }
+        finally
+        {
+            endBatch();
+        }
+    }
+
+    public void clear()
+    {
+        startBatch();
+        try
+        {
+            // Trees already in the batch get published empty, and are then dropped
+            for (ConcurrentQuadTreeXys<V> tree : batchedTrees) tree.clear();
+            trees.clear();
+            slicesChanged = true;
+        }
+        finally
+        {
+            endBatch();
+        }
+    }
+
+    // Must be called while holding the write lock, inside a batch
+    protected ConcurrentQuadTreeXys<V> batched(Long slice, ConcurrentQuadTreeXys<V> tree)
+    {
+        // Each slice tree has only a few writes per batch, so the linear scan is cheap
+        if (!batchedTrees.contains(tree))
+        {
+            tree.startBatch();
+            batchedTrees.add(tree);
+            batchedSlices.add(slice);
+        }
+        return tree;
+    }
+
+    // Must be called while holding the write lock
+    protected void publish()
+    {
+        for (ConcurrentQuadTreeXys<V> tree : batchedTrees)
+        {
+            tree.endBatch();
+
+            // Only a tree touched by this batch can have emptied out
+            if (tree.size() == 0) slicesChanged = true;
+        }
+
+        if (slicesChanged)
+        {
+            publishAll();
+        }
+        else if (!batchedTrees.isEmpty())
+        {
+            publishBatched();
+        }
+
+        batchedTrees.clear();
+        batchedSlices.clear();
+        slicesChanged = false;
+    }
+
+    // Must be called while holding the write lock; the set of slices must be
+    // unchanged since the last publish, and every batched tree non-empty
+    protected void publishBatched()
+    {
+        Snapshot<V> old = snapshot;
+        ConcurrentQuadTreeXys.Snapshot<V>[] snapshots = old.trees.clone();
+        int size = old.size;
+
+        for (int j = 0; j < batchedTrees.size(); j++)
+        {
+            int i = old.firstIndexAtOrAfter(batchedSlices.get(j));
+            ConcurrentQuadTreeXys.Snapshot<V> treeSnapshot = batchedTrees.get(j).snapshot();
+            size += treeSnapshot.size() - snapshots[i].size();
+            snapshots[i] = treeSnapshot;
+        }
+
+        // The slices array is never modified, so it can be shared
+        snapshot = new Snapshot<V>(sliceDuration, old.slices, snapshots, size);
+    }
+
+    // Must be called while holding the write lock
+    protected void publishAll()
+    {
+        // Drop slices that have emptied out, so that history trimmed from the
+        // front of the index doesn't leave a trail of empty trees behind
+        for (Iterator<ConcurrentQuadTreeXys<V>> it = trees.values().iterator(); it.hasNext();)
+        {
+            if (it.next().size() == 0) it.remove();
+        }
+
+        int n = trees.size();
+        long[] slices = new long[n];
+        @SuppressWarnings("unchecked")
+        ConcurrentQuadTreeXys.Snapshot<V>[] snapshots = new ConcurrentQuadTreeXys.Snapshot[n];
+        int size = 0;
+
+        int i = 0;
+        for (Map.Entry<Long, ConcurrentQuadTreeXys<V>> en : trees.entrySet())
+        {
+            slices[i] = en.getKey();
+            snapshots[i] = en.getValue().snapshot();
+            size += snapshots[i].size();
+            i++;
+        }
+
+        snapshot = new Snapshot<V>(sliceDuration, slices, snapshots, size);
+    }
+
+    /**
+     * Floor of {@code t / sliceDuration}, rounding toward negative infinity.
+     */
+    protected static long slice(long t, long sliceDuration)
+    {
+        return (t >= 0 ? t / sliceDuration : -1 - (-(t + 1)) / sliceDuration);
+    }
+
+}
@@ -28,6 +28,11 @@ package com.metsci.glimpse.util.quadtree;
 
 import static java.lang.Math.max;
 import static java.lang.Math.min;
+import static java.util.Arrays.copyOf;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * @author hogye
@@ -45,6 +50,21 @@ public abstract class QuadTree<B>
     }
 
 
+    public static interface NearestAccumulator<B>
+    {
+        /**
+         * Called for buckets in order of increasing distance from the query point to the
+         * bucket's bounds. Buckets whose bounds are farther than {@code sqrt(maxDistSq)}
+         * from the query point are never passed in.
+         *
+         * @return The squared distance beyond which no further buckets are of interest --
+         *         typically the squared distance to the k-th nearest value found so far,
+         *         or {@code maxDistSq} if fewer than k values have been found.
+         */
+        double accumulate(B bucket, double maxDistSq);
+    }
+
+
     public static interface Node<B>
     {
         LeafNode<B> leaf(float x, float y);
@@ -135,6 +155,226 @@ public abstract class QuadTree<B>
     }
 
 
+    /**
+     * Min-heap of nodes keyed on squared distance from the query point, used for best-first
+     * traversal by {@link QuadTree#accumulateNearest(float, float, double, NearestAccumulator)}.
+     * Internal nodes don't know their own bounds, so the bounds are kept alongside each node.
+     */
+    protected static class NodeQueue
+    {
+        public double[] distSqs = new double[64];
+        public float[] bounds = new float[4 * 64];
+        public Object[] nodes = new Object[64];
+        public int n = 0;
+
+        // Set while a traversal is using this queue, so that a nested traversal on
+        // the same thread gets a queue of its own
+        public boolean inUse = false;
+
+        public void push(Object node, double distSq, float xMin, float xMax, float yMin, float yMax)
+        {
+            if (n == nodes.length)
+            {
+                int capacity = 2 * n;
+                distSqs = copyOf(distSqs, capacity);
+                bounds = copyOf(bounds, 4 * capacity);
+                nodes = copyOf(nodes, capacity);
+            }
+
+            // Sift up
+            int i = n++;
+            while (i > 0)
+            {
+                int parent = (i - 1) >> 1;
+                if (distSqs[parent] <= distSq) break;
+                move(parent, i);
+                i = parent;
+            }
+            set(i, node, distSq, xMin, xMax, yMin, yMax);
+        }
+
+        /**
+         * Removes the head of the queue. Its contents must be read beforehand, from index 0.
+         */
+        public void pop()
+        {
+            n--;
+            nodes[0] = null;
+            if (n == 0) return;
+
+            // Sift the last entry down from the root
+            int last = n;
+            double distSq = distSqs[last];
+            Object node = nodes[last];
+            float xMin = bounds[4*last+0];
+            float xMax = bounds[4*last+1];
+            float yMin = bounds[4*last+2];
+            float yMax = bounds[4*last+3];
+            nodes[last] = null;
+
+            int i = 0;
+            while (true)
+            {
+                int child = 2*i + 1;
+                if (child >= n) break;
+                if (child + 1 < n && distSqs[child + 1] < distSqs[child]) child++;
+                if (distSq <= distSqs[child]) break;
+                move(child, i);
+                i = child;
+            }
+            set(i, node, distSq, xMin, xMax, yMin, yMax);
+        }
+
+        public void clear()
+        {
+            for (int i = 0; i < n; i++) nodes[i] = null;
+            n = 0;
+        }
+
+        protected void move(int from, int to)
+        {
+            distSqs[to] = distSqs[from];
+            nodes[to] = nodes[from];
+            System.arraycopy(bounds, 4*from, bounds, 4*to, 4);
+        }
+
+        protected void set(int i, Object node, double distSq, float xMin, float xMax, float yMin, float yMax)
+        {
+            distSqs[i] = distSq;
+            nodes[i] = node;
+            bounds[4*i+0] = xMin;
+            bounds[4*i+1] = xMax;
+            bounds[4*i+2] = yMin;
+            bounds[4*i+3] = yMax;
+        }
+    }
+
+
+    /**
+     * Bounded max-heap of the k nearest values found so far, keyed on squared distance.
+     * Subclasses hold the values themselves, in arrays parallel to {@code distSqs}, and
+     * implement {@link NearestAccumulator#accumulate(Object, double)} by calling
+     * {@link #claimSlot(double)}, storing the value at the returned index, and then
+     * calling {@link #fixSlot(int, double)}.
+     *
+     * Instances are reused across queries to avoid allocating on every query.
+     */
+    protected static abstract class NearestHeap<B> implements NearestAccumulator<B>
+    {
+        public float x;
+        public float y;
+        public int k;
+
+        public double[] distSqs = new double[16];
+        public int n = 0;
+
+        // Set while a query is using this heap, so that a nested query on
+        // the same thread gets a heap of its own
+        public boolean inUse = false;
+
+        public void reset(float x, float y, int k)
+        {
+            this.x = x;
+            this.y = y;
+            this.k = k;
+            this.n = 0;
+        }
+
+        /**
+         * @return The index at which to store a value at distance {@code sqrt(distSq)},
+         *         or -1 if the heap is full and the value is no closer than any already in it.
+         */
+        protected int claimSlot(double distSq)
+        {
+            if (n < k)
+            {
+                if (n == distSqs.length)
+                {
+                    int capacity = (int) Math.min(2L * n, Integer.MAX_VALUE);
+                    distSqs = copyOf(distSqs, capacity);
+                    growValues(capacity);
+                }
+                distSqs[n] = distSq;
+                return n++;
+            }
+            else if (distSq < distSqs[0])
+            {
+                distSqs[0] = distSq;
+                return 0;
+            }
+            else
+            {
+                return -1;
+            }
+        }
+
+        /**
+         * Restores the heap ordering after a value has been stored at index {@code i}.
+         *
+         * @return The squared distance beyond which values are no longer of interest.
+         */
+        protected double fixSlot(int i, double maxDistSq)
+        {
+            if (i > 0)
+            {
+                // Newly appended value
+                while (i > 0)
+                {
+                    int parent = (i - 1) >> 1;
+                    if (distSqs[parent] >= distSqs[i]) break;
+                    swap(parent, i);
+                    i = parent;
+                }
+            }
+            else
+            {
+                // Replaced root, or first value
+                siftDown(0, n);
+            }
+
+            return (n < k ? maxDistSq : distSqs[0]);
+        }
+
+        protected void siftDown(int i, int size)
+        {
+            while (true)
+            {
+                int child = 2*i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && distSqs[child + 1] > distSqs[child]) child++;
+                if (distSqs[i] >= distSqs[child]) break;
+                swap(i, child);
+                i = child;
+            }
+        }
+
+        /**
+         * Sorts the values in order of increasing distance. Destroys the heap ordering,
+         * so no values may be added afterwards without a call to {@link #reset(float, float, int)}.
+         */
+        public void sortAscending()
+        {
+            for (int end = n - 1; end > 0; end--)
+            {
+                swap(0, end);
+                siftDown(0, end);
+            }
+        }
+
+        protected void swap(int i, int j)
+        {
+            double distSq = distSqs[i];
+            distSqs[i] = distSqs[j];
+            distSqs[j] = distSq;
+            swapValues(i, j);
+        }
+
+        protected abstract void swapValues(int i, int j);
+
+        protected abstract void growValues(int capacity);
+    }
+
+
     /**
      * 0 = small-x small-y
      * 1 = large-x small-y
@@ -153,6 +393,33 @@ public abstract class QuadTree<B>
         return max( min( x, Float.MAX_VALUE ), -Float.MAX_VALUE );
     }
 
+    public static double distSq(float x, float y, float xv, float yv)
+    {
+        double dx = (double) xv - x;
+        double dy = (double) yv - y;
+        return dx*dx + dy*dy;
+    }
+
+    /**
+     * Squared distance from {@code (x,y)} to the nearest point in the given box, or zero if
+     * the box contains {@code (x,y)}. Works with infinite bounds.
+     */
+    public static double boxDistSq(float x, float y, float xMin, float xMax, float yMin, float yMax)
+    {
+        double dx = (x < xMin ? (double) xMin - x : (x > xMax ? (double) x - xMax : 0));
+        double dy = (y < yMin ? (double) yMin - y : (y > yMax ? (double) y - yMax : 0));
+        return dx*dx + dy*dy;
+    }
+
+    protected static final ThreadLocal<NodeQueue> nodeQueues = new ThreadLocal<NodeQueue>()
+    {
+        @Override
+        protected NodeQueue initialValue()
+        {
+            return new NodeQueue();
+        }
+    };
+
 
 
     @SuppressWarnings("unchecked")
@@ -174,6 +441,70 @@ public abstract class QuadTree<B>
         root[0].accumulate(xMin, xMax, yMin, yMax, accumulator);
     }
 
+    /**
+     * Best-first traversal: passes buckets to {@code accumulator} in order of increasing
+     * distance from {@code (x,y)}, stopping once the next bucket is farther away than the
+     * squared distance most recently returned by the accumulator. Nodes are pruned on their
+     * bounds, so only buckets near {@code (x,y)} are visited.
+     *
+     * Does not allocate, except when called re-entrantly from within an accumulator.
+     */
+    public void accumulateNearest(float x, float y, double maxDistSq, NearestAccumulator<B> accumulator)
+    {
+        if (Float.isNaN(x) || Float.isNaN(y)) return;
+
+        NodeQueue queue = nodeQueues.get();
+        if (queue.inUse) queue = new NodeQueue();
+
+        queue.inUse = true;
+        try
+        {
+            queue.push(root[0], 0, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY);
+
+            while (queue.n > 0)
+            {
+                if (queue.distSqs[0] > maxDistSq) break;
+
+                @SuppressWarnings("unchecked")
+                Node<B> node = (Node<B>) queue.nodes[0];
+                float[] bounds = queue.bounds;
+                float xMin = bounds[0];
+                float xMax = bounds[1];
+                float yMin = bounds[2];
+                float yMax = bounds[3];
+                queue.pop();
+
+                if (node instanceof LeafNode)
+                {
+                    maxDistSq = accumulator.accumulate(((LeafNode<B>) node).bucket, maxDistSq);
+                }
+                else
+                {
+                    InternalNode<B> internal = (InternalNode<B>) node;
+                    Node<B>[] children = internal.children;
+                    float xDivider = internal.xDivider;
+                    float yDivider = internal.yDivider;
+
+                    pushIfNear(queue, children[0], x, y, maxDistSq, xMin, xDivider, yMin, yDivider); // [0] small-x small-y
+                    pushIfNear(queue, children[1], x, y, maxDistSq, xDivider, xMax, yMin, yDivider); // [1] large-x small-y
+                    pushIfNear(queue, children[2], x, y, maxDistSq, xMin, xDivider, yDivider, yMax); // [2] small-x large-y
+                    pushIfNear(queue, children[3], x, y, maxDistSq, xDivider, xMax, yDivider, yMax); // [3] large-x large-y
+                }
+            }
+        }
+        finally
+        {
+            queue.clear();
+            queue.inUse = false;
+        }
+    }
+
+    protected static void pushIfNear(NodeQueue queue, Object node, float x, float y, double maxDistSq, float xMin, float xMax, float yMin, float yMax)
+    {
+        double distSq = boxDistSq(x, y, xMin, xMax, yMin, yMax);
+        if (distSq <= maxDistSq) queue.push(node, distSq, xMin, xMax, yMin, yMax);
+    }
+
     /**
      * For subclasses to call when a leaf's bucket gets full.
      *
@@ -269,6 +600,96 @@ public abstract class QuadTree<B>
         leaf.referringArray[leaf.referringIndex] = replacement;
     }
 
+    /**
+     * For subclasses to call after removing values from the leaf containing {@code (x,y)}.
+     *
+     * Walks back up the path from that leaf, replacing each internal node whose children
+     * are all leaves, holding no more than {@link QuadTree#maxCoalescedSize()} values in
+     * total, with a single leaf. Without this, a tree that sees heavy churn accumulates
+     * empty and nearly-empty leaves that every search has to visit.
+     */
+    protected void coalesce(float x, float y)
+    {
+        coalesce(root, 0, x, y);
+    }
+
+    protected void coalesce(Node<B>[] referringArray, int referringIndex, float x, float y)
+    {
+        Node<B> node = referringArray[referringIndex];
+        if (!(node instanceof InternalNode)) return;
+
+        InternalNode<B> internal = (InternalNode<B>) node;
+        Node<B>[] children = internal.children;
+        coalesce(children, quadrant(internal.xDivider, internal.yDivider, x, y), x, y);
+
+        int total = 0;
+        for (int q = 0; q < 4; q++)
+        {
+            if (!(children[q] instanceof LeafNode)) return;
+            total += bucketSize(((LeafNode<B>) children[q]).bucket);
+        }
+        if (total > maxCoalescedSize()) return;
+
+        List<B> buckets = new ArrayList<B>(4);
+        for (int q = 0; q < 4; q++) buckets.add(((LeafNode<B>) children[q]).bucket);
+
+        B merged = mergeBuckets(buckets);
+        if (merged == null) return;
+
+        // Quadrant 0 holds the small corner of the internal node's bounds, quadrant 3 the large corner
+        LeafNode<B> small = (LeafNode<B>) children[0];
+        LeafNode<B> large = (LeafNode<B>) children[3];
+        referringArray[referringIndex] = new LeafNode<B>(merged, referringArray, referringIndex, small.xMin, large.xMax, small.yMin, large.yMax);
+    }
+
+    /**
+     * Removes one element equal to {@code v} from {@code bucket}. If {@code bucket} is a
+     * {@link List}, the last element is moved into the vacated position, instead of shifting
+     * everything after it; buckets are unordered, so this is safe.
+     *
+     * @return Whether an element was removed.
+     */
+    protected static <V> boolean removeUnordered(Collection<V> bucket, Object v)
+    {
+        if (bucket instanceof List)
+        {
+            List<V> list = (List<V>) bucket;
+            int i = list.indexOf(v);
+            if (i < 0) return false;
+
+            int last = list.size() - 1;
+            if (i < last) list.set(i, list.get(last));
+            list.remove(last);
+            return true;
+        }
+        else
+        {
+            return bucket.remove(v);
+        }
+    }
+
+    /**
+     * Sibling leaves holding this many values or fewer, in total, get merged by
+     * {@link QuadTree#coalesce(float, float)}. Should be well below the size at which
+     * a leaf gets split, so that a leaf near that size doesn't bounce between being
+     * split and merged.
+     *
+     * The default of zero only merges empty leaves.
+     */
+    protected int maxCoalescedSize()
+    {
+        return 0;
+    }
+
+    /**
+     * Combines the buckets of four sibling leaves into one. The default implementation
+     * returns null, which disables coalescing.
+     */
+    protected B mergeBuckets(List<B> buckets)
+    {
+        return null;
+    }
+
     protected abstract void chooseDividers(float xMin, float xMax, float yMin, float yMax, B bucket, float[] result);
 
     protected abstract B[] splitBucket(B bucket, float xDivider, float yDivider);
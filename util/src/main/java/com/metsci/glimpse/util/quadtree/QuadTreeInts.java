@@ -29,6 +29,7 @@ package com.metsci.glimpse.util.quadtree;
 import static java.lang.Float.floatToRawIntBits;
 import static java.lang.Float.intBitsToFloat;
 import static java.lang.Math.max;
+import static java.util.Arrays.copyOf;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap.Entry;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 
@@ -313,6 +314,142 @@ public abstract class QuadTreeInts extends QuadTree<Bucket>
         return results.n() - nBefore;
     }
 
+    public Ints searchNearest(float x, float y, int k)
+    {
+        IntsModifiable results = new IntsArray();
+        searchNearest(x, y, k, Float.POSITIVE_INFINITY, results);
+        return results;
+    }
+
+    /**
+     * Appends the {@code k} values nearest to {@code (x,y)} to {@code results}, in order of
+     * increasing distance. Does not allocate, apart from growing {@code results}.
+     *
+     * @return The number of elements appended to {@code results}.
+     */
+    public int searchNearest(float x, float y, int k, IntsModifiable results)
+    {
+        return searchNearest(x, y, k, Float.POSITIVE_INFINITY, results);
+    }
+
+    /**
+     * Like {@link #searchNearest(float, float, int, IntsModifiable)}, but ignores values
+     * farther than {@code maxDistance} from {@code (x,y)}.
+     *
+     * @return The number of elements appended to {@code results}.
+     */
+    public int searchNearest(float x, float y, int k, float maxDistance, IntsModifiable results)
+    {
+        if (k <= 0) return 0;
+
+        NearestInts heap = nearestHeaps.get();
+        if (heap.inUse) heap = new NearestInts();
+
+        heap.inUse = true;
+        try
+        {
+            heap.reset(x, y, k);
+            accumulateNearest(x, y, (double) maxDistance * maxDistance, heap);
+            heap.sortAscending();
+            results.append(heap.values, 0, heap.n);
+            return heap.n;
+        }
+        finally
+        {
+            heap.inUse = false;
+        }
+    }
+
+    public Ints searchRadius(float x, float y, float radius)
+    {
+        IntsModifiable results = new IntsArray();
+        searchRadius(x, y, radius, results);
+        return results;
+    }
+
+    /**
+     * Appends all values within {@code radius} of {@code (x,y)} to {@code results}, in order
+     * of increasing distance.
+     *
+     * @return The number of elements appended to {@code results}.
+     */
+    public int searchRadius(float x, float y, float radius, IntsModifiable results)
+    {
+        return searchNearest(x, y, Integer.MAX_VALUE, radius, results);
+    }
+
+    protected final ThreadLocal<NearestInts> nearestHeaps = new ThreadLocal<NearestInts>()
+    {
+        @Override
+        protected NearestInts initialValue()
+        {
+            return new NearestInts();
+        }
+    };
+
+    protected class NearestInts extends NearestHeap<Bucket>
+    {
+        public int[] values = new int[distSqs.length];
+
+        @Override
+        public double accumulate(Bucket bucket, double maxDistSq)
+        {
+            int[] a = bucket.singles.a;
+            int n = bucket.singles.n;
+            for (int i = 0; i < n; i++)
+            {
+                int v = a[i];
+
+                double distSq = distSq(x, y, x(v), y(v));
+                if (distSq > maxDistSq) continue;
+
+                int slot = claimSlot(distSq);
+                if (slot < 0) continue;
+
+                values[slot] = v;
+                maxDistSq = fixSlot(slot, maxDistSq);
+            }
+
+            // Avoid allocating an iterator in the common case
+            Long2ObjectOpenHashMap<IntsArray> dupes = bucket.dupes;
+            if (dupes.isEmpty()) return maxDistSq;
+
+            for (Entry<IntsArray> en : dupes.long2ObjectEntrySet())
+            {
+                long xyKey = en.getLongKey();
+
+                double distSq = distSq(x, y, xFromKey(xyKey), yFromKey(xyKey));
+                if (distSq > maxDistSq) continue;
+
+                IntsArray vs = en.getValue();
+                for (int i = 0; i < vs.n; i++)
+                {
+                    int slot = claimSlot(distSq);
+                    if (slot < 0) break;
+
+                    values[slot] = vs.a[i];
+                    maxDistSq = fixSlot(slot, maxDistSq);
+                }
+            }
+
+            return maxDistSq;
+        }
+
+        @Override
+        protected void swapValues(int i, int j)
+        {
+            int v = values[i];
+            values[i] = values[j];
+            values[j] = v;
+        }
+
+        @Override
+        protected void growValues(int capacity)
+        {
+            values = copyOf(values, capacity);
+        }
+    }
+
     /**
      * If {@code x(v)} or {@code y(v)} returns {@code NaN}, this method returns
      * immediately without adding {@code v} to the tree.
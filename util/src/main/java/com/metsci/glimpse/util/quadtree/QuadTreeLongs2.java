@@ -29,6 +29,7 @@ package com.metsci.glimpse.util.quadtree;
 import static java.lang.Float.floatToRawIntBits;
 import static java.lang.Float.intBitsToFloat;
 import static java.lang.Math.max;
+import static java.util.Arrays.copyOf;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap.Entry;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 
@@ -319,6 +320,149 @@ public abstract class QuadTreeLongs2 extends QuadTree<Bucket>
         return (results.n() - nBefore) / 2;
     }
 
+    public Longs searchNearest(float x, float y, int k)
+    {
+        LongsModifiable results = new LongsArray();
+        searchNearest(x, y, k, Float.POSITIVE_INFINITY, results);
+        return results;
+    }
+
+    /**
+     * Appends the {@code k} value pairs nearest to {@code (x,y)} to {@code results}, in order
+     * of increasing distance. Does not allocate, apart from growing {@code results}.
+     *
+     * @return The number of pairs appended to {@code results}.
+     */
+    public int searchNearest(float x, float y, int k, LongsModifiable results)
+    {
+        return searchNearest(x, y, k, Float.POSITIVE_INFINITY, results);
+    }
+
+    /**
+     * Like {@link #searchNearest(float, float, int, LongsModifiable)}, but ignores value
+     * pairs farther than {@code maxDistance} from {@code (x,y)}.
+     *
+     * @return The number of pairs appended to {@code results}.
+     */
+    public int searchNearest(float x, float y, int k, float maxDistance, LongsModifiable results)
+    {
+        if (k <= 0) return 0;
+
+        NearestLongs2 heap = nearestHeaps.get();
+        if (heap.inUse) heap = new NearestLongs2();
+
+        heap.inUse = true;
+        try
+        {
+            heap.reset(x, y, k);
+            accumulateNearest(x, y, (double) maxDistance * maxDistance, heap);
+            heap.sortAscending();
+            results.append(heap.values, 0, 2*heap.n);
+            return heap.n;
+        }
+        finally
+        {
+            heap.inUse = false;
+        }
+    }
+
+    public Longs searchRadius(float x, float y, float radius)
+    {
+        LongsModifiable results = new LongsArray();
+        searchRadius(x, y, radius, results);
+        return results;
+    }
+
+    /**
+     * Appends all value pairs within {@code radius} of {@code (x,y)} to {@code results}, in
+     * order of increasing distance.
+     *
+     * @return The number of pairs appended to {@code results}.
+     */
+    public int searchRadius(float x, float y, float radius, LongsModifiable results)
+    {
+        return searchNearest(x, y, Integer.MAX_VALUE, radius, results);
+    }
+
+    protected final ThreadLocal<NearestLongs2> nearestHeaps = new ThreadLocal<NearestLongs2>()
+    {
+        @Override
+        protected NearestLongs2 initialValue()
+        {
+            return new NearestLongs2();
+        }
+    };
+
+    protected class NearestLongs2 extends NearestHeap<Bucket>
+    {
+        // Pairs: v1 at 2*i, v2 at 2*i+1
+        public long[] values = new long[2 * distSqs.length];
+
+        @Override
+        public double accumulate(Bucket bucket, double maxDistSq)
+        {
+            long[] a = bucket.singles.a;
+            int n = bucket.singles.n;
+            for (int i = 0; i < n; i += 2)
+            {
+                long v1 = a[i];
+                long v2 = a[i+1];
+
+                double distSq = distSq(x, y, x(v1, v2), y(v1, v2));
+                if (distSq > maxDistSq) continue;
+
+                int slot = claimSlot(distSq);
+                if (slot < 0) continue;
+
+                values[2*slot] = v1;
+                values[2*slot+1] = v2;
+                maxDistSq = fixSlot(slot, maxDistSq);
+            }
+
+            // Avoid allocating an iterator in the common case
+            Long2ObjectOpenHashMap<LongsArray> dupes = bucket.dupes;
+            if (dupes.isEmpty()) return maxDistSq;
+
+            for (Entry<LongsArray> en : dupes.long2ObjectEntrySet())
+            {
+                long xyKey = en.getLongKey();
+
+                double distSq = distSq(x, y, xFromKey(xyKey), yFromKey(xyKey));
+                if (distSq > maxDistSq) continue;
+
+                LongsArray vs = en.getValue();
+                for (int i = 0; i < vs.n; i += 2)
+                {
+                    int slot = claimSlot(distSq);
+                    if (slot < 0) break;
+
+                    values[2*slot] = vs.a[i];
+                    values[2*slot+1] = vs.a[i+1];
+                    maxDistSq = fixSlot(slot, maxDistSq);
+                }
+            }
+
+            return maxDistSq;
+        }
+
+        @Override
+        protected void swapValues(int i, int j)
+        {
+            long v1 = values[2*i];
+            long v2 = values[2*i+1];
+            values[2*i] = values[2*j];
+            values[2*i+1] = values[2*j+1];
+            values[2*j] = v1;
+            values[2*j+1] = v2;
+        }
+
+        @Override
+        protected void growValues(int capacity)
+        {
+            values = copyOf(values, 2 * capacity);
+        }
+    }
+
     /**
      * If {@code x(v1,v2)} or {@code y(v1,v2)} returns {@code NaN}, this method returns
      * immediately without adding {@code v1,v2} to the tree.
@@ -26,8 +26,11 @@
  */
 package com.metsci.glimpse.util.quadtree;
 
+import static java.util.Arrays.copyOf;
+
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * @author hogye
@@ -187,6 +190,125 @@ public abstract class QuadTreeObjects<V> extends QuadTree<Collection<V>>
         return results.size() - nBefore;
     }
 
+    public Collection<V> searchNearest(float x, float y, int k)
+    {
+        Collection<V> results = new ArrayList<V>();
+        searchNearest(x, y, k, Float.POSITIVE_INFINITY, results);
+        return results;
+    }
+
+    /**
+     * Appends the {@code k} values nearest to {@code (x,y)} to {@code results}, in order of
+     * increasing distance. Does not allocate, apart from growing {@code results}.
+     *
+     * @return The number of elements appended to {@code results}.
+     */
+    public int searchNearest(float x, float y, int k, Collection<V> results)
+    {
+        return searchNearest(x, y, k, Float.POSITIVE_INFINITY, results);
+    }
+
+    /**
+     * Like {@link #searchNearest(float, float, int, Collection)}, but ignores values
+     * farther than {@code maxDistance} from {@code (x,y)}.
+     *
+     * @return The number of elements appended to {@code results}.
+     */
+    public int searchNearest(float x, float y, int k, float maxDistance, Collection<V> results)
+    {
+        if (k <= 0) return 0;
+
+        NearestObjects heap = nearestHeaps.get();
+        if (heap.inUse) heap = new NearestObjects();
+
+        heap.inUse = true;
+        try
+        {
+            heap.reset(x, y, k);
+            accumulateNearest(x, y, (double) maxDistance * maxDistance, heap);
+            heap.sortAscending();
+
+            Object[] values = heap.values;
+            int n = heap.n;
+            for (int i = 0; i < n; i++)
+            {
+                @SuppressWarnings("unchecked")
+                V v = (V) values[i];
+                results.add(v);
+                values[i] = null;
+            }
+            return n;
+        }
+        finally
+        {
+            heap.inUse = false;
+        }
+    }
+
+    public Collection<V> searchRadius(float x, float y, float radius)
+    {
+        Collection<V> results = new ArrayList<V>();
+        searchRadius(x, y, radius, results);
+        return results;
+    }
+
+    /**
+     * Appends all values within {@code radius} of {@code (x,y)} to {@code results}, in order
+     * of increasing distance.
+     *
+     * @return The number of elements appended to {@code results}.
+     */
+    public int searchRadius(float x, float y, float radius, Collection<V> results)
+    {
+        return searchNearest(x, y, Integer.MAX_VALUE, radius, results);
+    }
+
+    protected final ThreadLocal<NearestObjects> nearestHeaps = new ThreadLocal<NearestObjects>()
+    {
+        @Override
+        protected NearestObjects initialValue()
+        {
+            return new NearestObjects();
+        }
+    };
+
+    protected class NearestObjects extends NearestHeap<Collection<V>>
+    {
+        public Object[] values = new Object[distSqs.length];
+
+        @Override
+        public double accumulate(Collection<V> bucket, double maxDistSq)
+        {
+            for (V v : bucket)
+            {
+                double distSq = distSq(x, y, x(v), y(v));
+                if (distSq > maxDistSq) continue;
+
+                int slot = claimSlot(distSq);
+                if (slot < 0) continue;
+
+                values[slot] = v;
+                maxDistSq = fixSlot(slot, maxDistSq);
+            }
+
+            return maxDistSq;
+        }
+
+        @Override
+        protected void swapValues(int i, int j)
+        {
+            Object v = values[i];
+            values[i] = values[j];
+            values[j] = v;
+        }
+
+        @Override
+        protected void growValues(int capacity)
+        {
+            values = copyOf(values, capacity);
+        }
+    }
+
     /**
      * If {@code x(v)} or {@code y(v)} returns {@code NaN}, this method returns
      * immediately without adding {@code v} to the tree.
@@ -244,11 +366,37 @@ public abstract class QuadTreeObjects<V> extends QuadTree<Collection<V>>
         return bucket.size();
     }
 
+    @Override
+    protected int maxCoalescedSize()
+    {
+        return maxBucketSize / 4;
+    }
+
+    @Override
+    protected Collection<V> mergeBuckets(List<Collection<V>> buckets)
+    {
+        int size = 0;
+        for (Collection<V> bucket : buckets) size += bucket.size();
+
+        Collection<V> merged = new ArrayList<V>(size);
+        for (Collection<V> bucket : buckets) merged.addAll(bucket);
+        return merged;
+    }
+
+    /**
+     * Removes one value equal to {@code v}, then merges the leaf it was in with its
+     * siblings, if together they have become small enough.
+     */
     public void remove(V v)
     {
         float x = x(v);
         float y = y(v);
-        leaf(x, y).bucket.remove(v);
+
+        LeafNode<Collection<V>> leaf = leaf(x, y);
+        if (removeUnordered(leaf.bucket, v) && leaf.bucket.size() <= maxCoalescedSize())
+        {
+            coalesce(x, y);
+        }
     }
 
 }
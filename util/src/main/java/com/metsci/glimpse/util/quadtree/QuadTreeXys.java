@@ -26,8 +26,18 @@
  */
 package com.metsci.glimpse.util.quadtree;
 
+import static java.util.Arrays.copyOf;
+
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.metsci.glimpse.util.primitives.algorithms.Partitioning;
 
 
 /**
@@ -192,6 +202,125 @@ public class QuadTreeXys<V extends Xy> extends QuadTree<Collection<V>>
         return results.size() - nBefore;
     }
 
+    public Collection<V> searchNearest(float x, float y, int k)
+    {
+        Collection<V> results = new ArrayList<V>();
+        searchNearest(x, y, k, Float.POSITIVE_INFINITY, results);
+        return results;
+    }
+
+    /**
+     * Appends the {@code k} values nearest to {@code (x,y)} to {@code results}, in order of
+     * increasing distance. Does not allocate, apart from growing {@code results}.
+     *
+     * @return The number of elements appended to {@code results}.
+     */
+    public int searchNearest(float x, float y, int k, Collection<V> results)
+    {
+        return searchNearest(x, y, k, Float.POSITIVE_INFINITY, results);
+    }
+
+    /**
+     * Like {@link #searchNearest(float, float, int, Collection)}, but ignores values
+     * farther than {@code maxDistance} from {@code (x,y)}.
+     *
+     * @return The number of elements appended to {@code results}.
+     */
+    public int searchNearest(float x, float y, int k, float maxDistance, Collection<V> results)
+    {
+        if (k <= 0) return 0;
+
+        NearestObjects heap = nearestHeaps.get();
+        if (heap.inUse) heap = new NearestObjects();
+
+        heap.inUse = true;
+        try
+        {
+            heap.reset(x, y, k);
+            accumulateNearest(x, y, (double) maxDistance * maxDistance, heap);
+            heap.sortAscending();
+
+            Object[] values = heap.values;
+            int n = heap.n;
+            for (int i = 0; i < n; i++)
+            {
+                @SuppressWarnings("unchecked")
+                V v = (V) values[i];
+                results.add(v);
+                values[i] = null;
+            }
+            return n;
+        }
+        finally
+        {
+            heap.inUse = false;
+        }
+    }
+
+    public Collection<V> searchRadius(float x, float y, float radius)
+    {
+        Collection<V> results = new ArrayList<V>();
+        searchRadius(x, y, radius, results);
+        return results;
+    }
+
+    /**
+     * Appends all values within {@code radius} of {@code (x,y)} to {@code results}, in order
+     * of increasing distance.
+     *
+     * @return The number of elements appended to {@code results}.
+     */
+    public int searchRadius(float x, float y, float radius, Collection<V> results)
+    {
+        return searchNearest(x, y, Integer.MAX_VALUE, radius, results);
+    }
+
+    protected final ThreadLocal<NearestObjects> nearestHeaps = new ThreadLocal<NearestObjects>()
+    {
+        @Override
+        protected NearestObjects initialValue()
+        {
+            return new NearestObjects();
+        }
+    };
+
+    protected class NearestObjects extends NearestHeap<Collection<V>>
+    {
+        public Object[] values = new Object[distSqs.length];
+
+        @Override
+        public double accumulate(Collection<V> bucket, double maxDistSq)
+        {
+            for (V v : bucket)
+            {
+                double distSq = distSq(x, y, v.x(), v.y());
+                if (distSq > maxDistSq) continue;
+
+                int slot = claimSlot(distSq);
+                if (slot < 0) continue;
+
+                values[slot] = v;
+                maxDistSq = fixSlot(slot, maxDistSq);
+            }
+
+            return maxDistSq;
+        }
+
+        @Override
+        protected void swapValues(int i, int j)
+        {
+            Object v = values[i];
+            values[i] = values[j];
+            values[j] = v;
+        }
+
+        @Override
+        protected void growValues(int capacity)
+        {
+            values = copyOf(values, capacity);
+        }
+    }
+
     /**
      * If {@code v.x()} or {@code v.y()} returns {@code NaN}, this method returns
      * immediately without adding {@code v} to the tree.
@@ -212,6 +341,213 @@ public class QuadTreeXys<V extends Xy> extends QuadTree<Collection<V>>
         if (bucket.size() > maxBucketSize) splitLeaf(leaf);
     }
 
+    /**
+     * Subtrees with at least this many values get built on a separate task, when
+     * {@link #addAll(Collection, ExecutorService)} is given an executor.
+     */
+    public static final int PARALLEL_BUILD_THRESHOLD = 1 << 15;
+
+    /**
+     * When bulk-loading a node with more values than this, its dividers are chosen from
+     * the mean of an evenly spaced sample of about this many values, instead of all of them.
+     */
+    public static final int BULK_MEAN_SAMPLES = 1 << 12;
+
+    public boolean isEmpty()
+    {
+        Node<Collection<V>> node = root[0];
+        return (node instanceof LeafNode && ((LeafNode<Collection<V>>) node).bucket.isEmpty());
+    }
+
+    public void addAll(Collection<? extends V> values)
+    {
+        addAll(values, null);
+    }
+
+    /**
+     * Adds all of {@code values} to the tree. Values with {@code NaN} coordinates are skipped,
+     * as in {@link #add(Xy)}.
+     *
+     * If the tree is empty, it is built top-down in one pass: each node's dividers are chosen
+     * the same way {@link #add(Xy)} would choose them, and the values are partitioned among
+     * the node's quadrants in place, without any intermediate buckets. Otherwise the values
+     * are added one at a time.
+     *
+     * @param executor if non-null, large subtrees are built in parallel on this executor.
+     *                 This method does not return until all such subtrees are complete.
+     */
+    public void addAll(Collection<? extends V> values, ExecutorService executor)
+    {
+        if (!isEmpty())
+        {
+            for (V v : values) add(v);
+            return;
+        }
+
+        int capacity = values.size();
+        Object[] vs = new Object[capacity];
+        float[] xs = new float[capacity];
+        float[] ys = new float[capacity];
+
+        int n = 0;
+        for (V v : values)
+        {
+            float x = v.x();
+            if (Float.isNaN(x)) continue;
+
+            float y = v.y();
+            if (Float.isNaN(y)) continue;
+
+            vs[n] = v;
+            xs[n] = x;
+            ys[n] = y;
+            n++;
+        }
+
+        BulkLoad load = new BulkLoad(vs, xs, ys, executor);
+        load.build(root, 0, 0, n, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY);
+        load.await();
+    }
+
+    protected class BulkLoad
+    {
+        // Parallel arrays, partitioned in place as the tree is built
+        protected final Object[] values;
+        protected final float[] xs;
+        protected final float[] ys;
+
+        protected final ExecutorService executor;
+        protected final Queue<Future<?>> pending;
+
+        public BulkLoad(Object[] values, float[] xs, float[] ys, ExecutorService executor)
+        {
+            this.values = values;
+            this.xs = xs;
+            this.ys = ys;
+            this.executor = executor;
+            this.pending = new ConcurrentLinkedQueue<Future<?>>();
+        }
+
+        /**
+         * Builds a subtree holding {@code values[from,to)}, and stores it at {@code referringArray[referringIndex]}.
+         */
+        public void build(Node<Collection<V>>[] referringArray, int referringIndex, int from, int to, float xMin, float xMax, float yMin, float yMax)
+        {
+            int n = to - from;
+            if (n <= maxBucketSize)
+            {
+                referringArray[referringIndex] = newLeaf(referringArray, referringIndex, from, to, xMin, xMax, yMin, yMax);
+                return;
+            }
+
+            // Same rules as splitLeaf
+            float minDividerSpacing = (float) Math.pow(2.0, -23.0);
+            boolean xSplittable = (xMax - xMin > minDividerSpacing);
+            boolean ySplittable = (yMax - yMin > minDividerSpacing);
+            if (!xSplittable && !ySplittable)
+            {
+                referringArray[referringIndex] = newLeaf(referringArray, referringIndex, from, to, xMin, xMax, yMin, yMax);
+                return;
+            }
+
+            // For large nodes, a strided sample gives a good enough mean in a fraction of a pass
+            int stride = Math.max(1, n / BULK_MEAN_SAMPLES);
+            int numSamples = (n + stride - 1) / stride;
+            double oneOverSize = 1.0 / numSamples;
+            double xMean = 0;
+            double yMean = 0;
+            for (int i = from; i < to; i += stride)
+            {
+                xMean += truncInf(xs[i]) * oneOverSize;
+                yMean += truncInf(ys[i]) * oneOverSize;
+            }
+            float xDivider = (xSplittable ? truncInf((float) xMean) : xMin);
+            float yDivider = (ySplittable ? truncInf((float) yMean) : yMin);
+
+            // Partition into quadrants: [0] from-ySplitSmall, [2] ySplitSmall-xSplit, [1] xSplit-ySplitLarge, [3] ySplitLarge-to
+            int xSplit = Partitioning.partition(xs, ys, values, from, to, xDivider);
+            int ySplitSmall = Partitioning.partition(ys, xs, values, from, xSplit, yDivider);
+            int ySplitLarge = Partitioning.partition(ys, xs, values, xSplit, to, yDivider);
+
+            // If everything landed in one quadrant, splitting would just add depth
+            int numNonEmpty = 0;
+            if (ySplitSmall > from) numNonEmpty++;
+            if (xSplit > ySplitSmall) numNonEmpty++;
+            if (ySplitLarge > xSplit) numNonEmpty++;
+            if (to > ySplitLarge) numNonEmpty++;
+            if (numNonEmpty < 2)
+            {
+                referringArray[referringIndex] = newLeaf(referringArray, referringIndex, from, to, xMin, xMax, yMin, yMax);
+                return;
+            }
+
+            InternalNode<Collection<V>> internal = new InternalNode<Collection<V>>(xDivider, yDivider);
+            Node<Collection<V>>[] children = internal.children;
+            buildChild(children, 0, from, ySplitSmall, xMin, xDivider, yMin, yDivider); // [0] small-x small-y
+            buildChild(children, 1, xSplit, ySplitLarge, xDivider, xMax, yMin, yDivider); // [1] large-x small-y
+            buildChild(children, 2, ySplitSmall, xSplit, xMin, xDivider, yDivider, yMax); // [2] small-x large-y
+            buildChild(children, 3, ySplitLarge, to, xDivider, xMax, yDivider, yMax); // [3] large-x large-y
+
+            referringArray[referringIndex] = internal;
+        }
+
+        protected void buildChild(final Node<Collection<V>>[] referringArray, final int referringIndex, final int from, final int to, final float xMin, final float xMax, final float yMin, final float yMax)
+        {
+            if (executor != null && to - from >= PARALLEL_BUILD_THRESHOLD)
+            {
+                // Tasks never wait on each other, so a bounded executor can't deadlock
+                pending.add(executor.submit(new Runnable()
+                {
+                    public void run()
+                    {
+                        build(referringArray, referringIndex, from, to, xMin, xMax, yMin, yMax);
+                    }
+                }));
+            }
+            else
+            {
+                build(referringArray, referringIndex, from, to, xMin, xMax, yMin, yMax);
+            }
+        }
+
+        protected LeafNode<Collection<V>> newLeaf(Node<Collection<V>>[] referringArray, int referringIndex, int from, int to, float xMin, float xMax, float yMin, float yMax)
+        {
+            ArrayList<V> bucket = new ArrayList<V>(to - from);
+            for (int i = from; i < to; i++)
+            {
+                @SuppressWarnings("unchecked")
+                V v = (V) values[i];
+                bucket.add(v);
+            }
+            return new LeafNode<Collection<V>>(bucket, referringArray, referringIndex, xMin, xMax, yMin, yMax);
+        }
+
+        /**
+         * Waits for all parallel subtrees. A task only finishes after queueing any tasks it
+         * spawns, so once the queue is empty, every task is done.
+         */
+        public void await()
+        {
+            Future<?> future;
+            while ((future = pending.poll()) != null)
+            {
+                try
+                {
+                    future.get();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while building quadtree", e);
+                }
+                catch (ExecutionException e)
+                {
+                    throw new RuntimeException("Failed to build quadtree", e.getCause());
+                }
+            }
+        }
+    }
+
     @Override
     protected void chooseDividers(float xMin, float xMax, float yMin, float yMax, Collection<V> bucket, float[] result)
     {
@@ -249,11 +585,37 @@ public class QuadTreeXys<V extends Xy> extends QuadTree<Collection<V>>
         return bucket.size();
     }
 
+    @Override
+    protected int maxCoalescedSize()
+    {
+        return maxBucketSize / 4;
+    }
+
+    @Override
+    protected Collection<V> mergeBuckets(List<Collection<V>> buckets)
+    {
+        int size = 0;
+        for (Collection<V> bucket : buckets) size += bucket.size();
+
+        Collection<V> merged = new ArrayList<V>(size);
+        for (Collection<V> bucket : buckets) merged.addAll(bucket);
+        return merged;
+    }
+
+    /**
+     * Removes one value equal to {@code v}, then merges the leaf it was in with its
+     * siblings, if together they have become small enough.
+     */
     public void remove(V v)
     {
         float x = v.x();
         float y = v.y();
-        leaf(x, y).bucket.remove(v);
+
+        LeafNode<Collection<V>> leaf = leaf(x, y);
+        if (removeUnordered(leaf.bucket, v) && leaf.bucket.size() <= maxCoalescedSize())
+        {
+            coalesce(x, y);
+        }
     }
 
 }
@@ -28,11 +28,13 @@ package com.metsci.glimpse.util.units.time;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.Calendar;
 import java.util.Date;
 
 import com.metsci.glimpse.util.GeneralUtils;
 import com.metsci.glimpse.util.units.time.format.TimeStampFormat;
+import com.metsci.glimpse.util.units.time.format.TimeStampFormatStandard;
 import com.metsci.glimpse.util.units.time.format.TimeStampParseException;
 
 /**
@@ -129,7 +131,12 @@ public class TimeStampPosixMicrosInt64 extends TimeStamp implements Serializable
 
         public TimeStampPosixMicrosInt64 fromString(String string, TimeStampFormat format) throws TimeStampParseException
         {
-            long posixMicros = secondsToMicros(format.parse(string));
+            long posixMicros;
+            if (format instanceof TimeStampFormatStandard)
+                posixMicros = ((TimeStampFormatStandard) format).parsePosixMicros(string);
+            else
+                posixMicros = secondsToMicros(format.parse(string));
+
             return new TimeStampPosixMicrosInt64(posixMicros);
         }
 
@@ -266,7 +273,16 @@ public class TimeStampPosixMicrosInt64 extends TimeStamp implements Serializable
     protected static final long secondsToMicros(BigDecimal seconds)
     {
         BigDecimal micros = seconds.scaleByPowerOfTen(microsDecimalScale);
-        return micros.setScale(0, BigDecimal.ROUND_HALF_UP).longValue();
+        return micros.setScale(0, RoundingMode.HALF_UP).longValue();
+    }
+
+    @Override
+    public String toString(TimeStampFormat format)
+    {
+        if (format instanceof TimeStampFormatStandard)
+            return ((TimeStampFormatStandard) format).formatPosixMicros(posixMicros, new StringBuilder()).toString();
+
+        return super.toString(format);
     }
 
     @Override
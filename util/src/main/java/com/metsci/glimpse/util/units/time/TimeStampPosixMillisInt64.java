@@ -28,11 +28,13 @@ package com.metsci.glimpse.util.units.time;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.Calendar;
 import java.util.Date;
 
 import com.metsci.glimpse.util.GeneralUtils;
 import com.metsci.glimpse.util.units.time.format.TimeStampFormat;
+import com.metsci.glimpse.util.units.time.format.TimeStampFormatStandard;
 import com.metsci.glimpse.util.units.time.format.TimeStampParseException;
 
 /**
@@ -129,7 +131,12 @@ public class TimeStampPosixMillisInt64 extends TimeStamp implements Serializable
 
         public TimeStampPosixMillisInt64 fromString(String string, TimeStampFormat format) throws TimeStampParseException
         {
-            long posixMillis = secondsToMillis(format.parse(string));
+            long posixMillis;
+            if (format instanceof TimeStampFormatStandard)
+                posixMillis = ((TimeStampFormatStandard) format).parsePosixMillis(string);
+            else
+                posixMillis = secondsToMillis(format.parse(string));
+
             return new TimeStampPosixMillisInt64(posixMillis);
         }
 
@@ -263,7 +270,16 @@ public class TimeStampPosixMillisInt64 extends TimeStamp implements Serializable
     protected static final long secondsToMillis(BigDecimal seconds)
     {
         BigDecimal millis = seconds.scaleByPowerOfTen(millisDecimalScale);
-        return millis.setScale(0, BigDecimal.ROUND_HALF_UP).longValue();
+        return millis.setScale(0, RoundingMode.HALF_UP).longValue();
+    }
+
+    @Override
+    public String toString(TimeStampFormat format)
+    {
+        if (format instanceof TimeStampFormatStandard)
+            return ((TimeStampFormatStandard) format).formatPosixMillis(posixMillis, new StringBuilder()).toString();
+
+        return super.toString(format);
     }
 
     @Override
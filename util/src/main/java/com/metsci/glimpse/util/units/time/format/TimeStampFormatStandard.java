@@ -29,12 +29,17 @@ package com.metsci.glimpse.util.units.time.format;
 import static java.util.Arrays.asList;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.text.DateFormatSymbols;
+import java.text.DecimalFormatSymbols;
 import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.SimpleTimeZone;
 import java.util.TimeZone;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -118,6 +123,18 @@ import com.metsci.glimpse.util.GeneralUtils;
  * </ul>
  * If, for some strange reason, a format string contains multiple %S fields, the precision of
  * the rightmost one is used for figuring rollover.
+ *
+ *
+ * <h4>Integer Timestamps</h4>
+ * <p>
+ * {@link #formatPosixMillis(long, StringBuilder)} and {@link #formatPosixMicros(long, StringBuilder)}
+ * give the same output as {@link #format(BigDecimal)}, but compute the calendar fields arithmetically,
+ * and append them directly to the caller's buffer, without going through BigDecimal, Calendar, or
+ * String.format. Likewise {@link #parsePosixMillis(CharSequence)} and {@link #parsePosixMicros(CharSequence)}
+ * scan the string directly, instead of going through a regex. Both fall back to the general
+ * implementations for the cases they don't cover: dates before the Gregorian cutover, parsing in
+ * time-zones with daylight-savings or historical offset changes, and format strings whose parse
+ * regex would have to backtrack.
  */
 public class TimeStampFormatStandard implements TimeStampFormat
 {
@@ -128,6 +145,14 @@ public class TimeStampFormatStandard implements TimeStampFormat
     private final String formatString;
     private final int precision;
 
+    // For the integer-timestamp fast paths
+    private static final ThreadLocal<CivilTime> civilTimes = new ThreadLocal<CivilTime>() { public CivilTime initialValue() { return new CivilTime(); } };
+    private final TimeZone timeZone;
+    private final char decimalSeparator;
+    private final boolean fastFormat;
+    private final Object[] elements;
+    private final boolean fastParse;
+
 
     public TimeStampFormatStandard(String format, String timeZoneName)
     {
@@ -139,6 +164,7 @@ public class TimeStampFormatStandard implements TimeStampFormat
         calendars = new ThreadLocal<Calendar>() { public Calendar initialValue() { return Calendar.getInstance(timeZone); } };
 
         List<Field> fieldsList = new LinkedList<Field>();
+        List<Object> elementsList = new LinkedList<Object>();
         StringBuilder patternBuilder = new StringBuilder();
         StringBuilder formatBuilder = new StringBuilder();
         int floatSecondsPrecision = -1;
@@ -151,12 +177,14 @@ public class TimeStampFormatStandard implements TimeStampFormat
             {
                 formatBuilder.append(c);
                 patternBuilder.append(c);
+                elementsList.add(c);
             }
             else if (c == '%' && i < format.length() && format.charAt(i) == '%')
             {
                 i++;
                 formatBuilder.append("%%");
                 patternBuilder.append('%');
+                elementsList.add('%');
             }
             else
             {
@@ -181,6 +209,7 @@ public class TimeStampFormatStandard implements TimeStampFormat
 
                 Field field = newField(fieldCode, fieldFlags.toString());
                 fieldsList.add(field);
+                elementsList.add(field);
                 patternBuilder.append(field.getRegexSpecifier());
                 formatBuilder.append(field.getFormatSpecifier());
 
@@ -193,6 +222,54 @@ public class TimeStampFormatStandard implements TimeStampFormat
         parsePattern = Pattern.compile(patternBuilder.toString());
         formatString = formatBuilder.toString();
         precision = floatSecondsPrecision;
+
+        // The fast paths do Gregorian arithmetic, and String.format localizes digits and decimal points
+        DecimalFormatSymbols symbols = new DecimalFormatSymbols();
+        boolean gregorian = (calendars.get().getClass() == GregorianCalendar.class);
+        this.timeZone = timeZone;
+        this.decimalSeparator = symbols.getDecimalSeparator();
+        this.fastFormat = gregorian && (symbols.getZeroDigit() == '0');
+
+        // Parsing converts local to posix time using a single offset
+        boolean fixedOffset = timeZone.hasSameRules(new SimpleTimeZone(timeZone.getRawOffset(), timeZone.getID()));
+        this.elements = elementsList.toArray();
+        this.fastParse = gregorian && fixedOffset && isScannable(elements);
+    }
+
+    /**
+     * The scanner takes each field as far as it can, and never backs up. This matches the
+     * regex as long as a field that can vary in length is followed either by the end of the
+     * string, or by a literal that cannot be part of the field. Literals also have to mean
+     * the same thing in the regex as they do in the format string.
+     */
+    private static boolean isScannable(Object[] elements)
+    {
+        int numFloatSecondFields = 0;
+        for (int i = 0; i < elements.length; i++)
+        {
+            Object element = elements[i];
+            if (element instanceof Character)
+            {
+                if ("\\^$.|?*+()[]{}".indexOf((Character) element) >= 0) return false;
+            }
+            else
+            {
+                Field field = (Field) element;
+                if (!field.isScannable()) return false;
+
+                // Only one sub-milli remainder is kept
+                if (field instanceof FloatSecondField && ++numFloatSecondFields > 1) return false;
+                if (field.isVariableWidth() && i + 1 < elements.length)
+                {
+                    Object next = elements[i + 1];
+                    if (!(next instanceof Character)) return false;
+
+                    char c = (Character) next;
+                    if (isRegexSpace(c) || field.accepts(c)) return false;
+                }
+            }
+        }
+        return true;
     }
 
     public Field newField(char code, String flags)
@@ -215,12 +292,13 @@ public class TimeStampFormatStandard implements TimeStampFormat
     @Override
     public BigDecimal parse(String string)
     {
+        Calendar calendar = calendars.get();
+        boolean zoneChanged = false;
         try
         {
             Matcher matcher = parsePattern.matcher(string);
             if (!matcher.matches()) throw new TimeStampParseException(string);
 
-            Calendar calendar = calendars.get();
             calendar.setTimeInMillis(0);
 
             // Calendar.setTimeZone() recomputes fields based on the new
@@ -231,6 +309,7 @@ public class TimeStampFormatStandard implements TimeStampFormat
                 if (!isTimeZoneField(fields[i])) continue;
 
                 String fieldString = matcher.group(i + 1);
+                zoneChanged = true;
                 fields[i].putValue(fieldString, calendar);
             }
 
@@ -251,6 +330,12 @@ public class TimeStampFormatStandard implements TimeStampFormat
         {
             throw new TimeStampParseException(string, e);
         }
+        finally
+        {
+            // A time-zone field changes the zone of the calendar, which is shared
+            // with format() -- put back the format's own zone
+            if (zoneChanged) calendar.setTimeZone(timeZone);
+        }
     }
 
     private static boolean isTimeZoneField(Field field)
@@ -258,14 +343,190 @@ public class TimeStampFormatStandard implements TimeStampFormat
         return (field instanceof TimeZoneField);
     }
 
+    /**
+     * Same as {@link #parse(String)}, rounded to the nearest millisecond (half up), but without
+     * the intermediate regex, Calendar, and BigDecimal objects.
+     *
+     * @throws TimeStampParseException if the string cannot be parsed according to this format
+     */
+    public long parsePosixMillis(CharSequence string) throws TimeStampParseException
+    {
+        if (fastParse)
+        {
+            CivilTime time = civilTimes.get();
+            if (scan(string, time)) return roundHalfUp(time.posixMillis, time.subMilliRounding());
+        }
+
+        return parse(string.toString()).scaleByPowerOfTen(3).setScale(0, RoundingMode.HALF_UP).longValue();
+    }
+
+    /**
+     * Same as {@link #parse(String)}, rounded to the nearest microsecond (half up), but without
+     * the intermediate regex, Calendar, and BigDecimal objects.
+     *
+     * @throws TimeStampParseException if the string cannot be parsed according to this format
+     */
+    public long parsePosixMicros(CharSequence string) throws TimeStampParseException
+    {
+        if (fastParse)
+        {
+            CivilTime time = civilTimes.get();
+            if (scan(string, time)) return roundHalfUp(1000 * time.posixMillis + time.subMilliMicros(), time.subMicroRounding());
+        }
+
+        return parse(string.toString()).scaleByPowerOfTen(6).setScale(0, RoundingMode.HALF_UP).longValue();
+    }
+
+    /**
+     * Scans the string into time, and computes time.posixMillis from the scanned fields.
+     *
+     * @return false if the scanner could not handle the string; the caller should fall back
+     *         to {@link #parse(String)}, which will throw if the string really is invalid
+     */
+    private boolean scan(CharSequence string, CivilTime time)
+    {
+        // Start from the epoch, as parse() does, so that fields missing from the
+        // format string get their epoch values
+        int offset = timeZone.getRawOffset();
+        time.setLocalMillis(offset);
+        time.fracChars = null;
+
+        int pos = 0;
+        for (int i = 0; i < elements.length; i++)
+        {
+            Object element = elements[i];
+            if (element instanceof Character)
+            {
+                if (pos >= string.length() || string.charAt(pos) != (Character) element) return false;
+                pos++;
+            }
+            else
+            {
+                pos = ((Field) element).scanValue(string, pos, time);
+                if (pos < 0) return false;
+            }
+        }
+        if (pos != string.length()) return false;
+
+        // Calendar is lenient about out-of-range fields, so let them carry over -- but it
+        // picks Julian or Gregorian rules based on the year before carrying
+        long year = time.year + floorDiv(time.month, 12);
+        int month = floorMod(time.month, 12);
+        if (time.year <= gregorianCutoverYear || year <= gregorianCutoverYear || year > 99999) return false;
+
+        long days = daysFromCivil(year, month + 1, 1) + time.day - 1;
+        long localMillis = days * millisPerDay + ((time.hour * 60L + time.minute) * 60L + time.second) * 1000L + time.millis;
+        time.posixMillis = localMillis - offset;
+        return true;
+    }
+
+    /**
+     * Same as {@link #format(BigDecimal)}, appending to the given buffer, but without the
+     * intermediate BigDecimal, Calendar, and String objects.
+     *
+     * @return out
+     */
+    public StringBuilder formatPosixMillis(long posixMillis, StringBuilder out)
+    {
+        if (Math.abs(posixMillis) < maxFastMicros / 1000 && appendFast(1000 * posixMillis, out)) return out;
+
+        return out.append(format(BigDecimal.valueOf(posixMillis, 3)));
+    }
+
+    /**
+     * Same as {@link #format(BigDecimal)}, appending to the given buffer, but without the
+     * intermediate BigDecimal, Calendar, and String objects.
+     *
+     * @return out
+     */
+    public StringBuilder formatPosixMicros(long posixMicros, StringBuilder out)
+    {
+        if (Math.abs(posixMicros) < maxFastMicros && appendFast(posixMicros, out)) return out;
+
+        return out.append(format(BigDecimal.valueOf(posixMicros, 6)));
+    }
+
+    /**
+     * Same as {@link #formatPosixMillis(long, StringBuilder)}, writing into a char array.
+     *
+     * @return the number of chars written
+     * @throws IndexOutOfBoundsException if the array is too small
+     */
+    public int formatPosixMillis(long posixMillis, char[] out, int offset)
+    {
+        StringBuilder buffer = civilTimes.get().buffer;
+        buffer.setLength(0);
+        formatPosixMillis(posixMillis, buffer);
+        return copy(buffer, out, offset);
+    }
+
+    /**
+     * Same as {@link #formatPosixMicros(long, StringBuilder)}, writing into a char array.
+     *
+     * @return the number of chars written
+     * @throws IndexOutOfBoundsException if the array is too small
+     */
+    public int formatPosixMicros(long posixMicros, char[] out, int offset)
+    {
+        StringBuilder buffer = civilTimes.get().buffer;
+        buffer.setLength(0);
+        formatPosixMicros(posixMicros, buffer);
+        return copy(buffer, out, offset);
+    }
+
+    private static int copy(StringBuilder buffer, char[] out, int offset)
+    {
+        int length = buffer.length();
+        if (offset < 0 || offset + length > out.length) throw new IndexOutOfBoundsException("Formatted length " + length + " does not fit at offset " + offset + " in array of length " + out.length);
+        buffer.getChars(0, length, out, offset);
+        return length;
+    }
+
+    /**
+     * @return false, without appending anything, if the time is outside the range handled
+     *         by the arithmetic calendar
+     */
+    private boolean appendFast(long posixMicros, StringBuilder out)
+    {
+        if (!fastFormat) return false;
+
+        // See "Rollover and the %S Field" in the class comment
+        if (precision >= 0 && precision < 6)
+        {
+            long unit = powersOfTen[6 - precision];
+            long quotient = posixMicros / unit;
+            long remainder = posixMicros % unit;
+            if (2 * Math.abs(remainder) >= unit) quotient += (posixMicros < 0 ? -1 : 1);
+            posixMicros = quotient * unit;
+        }
+
+        long posixMillis = floorDiv(posixMicros, 1000);
+        long localMillis = posixMillis + timeZone.getOffset(posixMillis);
+        if (localMillis < gregorianCutoverMillis) return false;
+
+        CivilTime time = civilTimes.get();
+        time.setLocalMillis(localMillis);
+        time.posixMillis = posixMillis;
+        time.posixMicros = posixMicros;
+        time.minuteFloorMicros = 1000 * (posixMillis - 1000 * time.second - time.millis);
+
+        for (int i = 0; i < elements.length; i++)
+        {
+            Object element = elements[i];
+            if (element instanceof Character) out.append((char) (Character) element);
+            else ((Field) element).appendValue(time, this, out);
+        }
+        return true;
+    }
+
     @Override
     public String format(BigDecimal posixSeconds)
     {
         // See "Rollover and the %S Field" in the class comment
-        if (precision >= 0) posixSeconds = posixSeconds.scaleByPowerOfTen(precision).setScale(0, BigDecimal.ROUND_HALF_UP).scaleByPowerOfTen(-precision);
+        if (precision >= 0) posixSeconds = posixSeconds.scaleByPowerOfTen(precision).setScale(0, RoundingMode.HALF_UP).scaleByPowerOfTen(-precision);
 
         Calendar calendar = calendars.get();
-        long posixMillis = posixSeconds.scaleByPowerOfTen(3).setScale(0, BigDecimal.ROUND_FLOOR).longValue();
+        long posixMillis = posixSeconds.scaleByPowerOfTen(3).setScale(0, RoundingMode.FLOOR).longValue();
         calendar.setTimeInMillis(posixMillis);
 
         Object[] fieldValues = new Object[fields.length];
@@ -286,6 +547,26 @@ public class TimeStampFormatStandard implements TimeStampFormat
          * @throws NumberFormatException if valueString cannot be parsed
          */
         BigDecimal putValue(String valueString, Calendar calendar);
+
+        /**
+         * Appends the same text that getFormatSpecifier() would give for getValue().
+         */
+        void appendValue(CivilTime time, TimeStampFormatStandard format, StringBuilder out);
+
+        /**
+         * Scans the field's value, starting at pos, and stores it in time.
+         *
+         * @return the position just past the value, or -1 if the value could not be scanned
+         */
+        int scanValue(CharSequence string, int pos, CivilTime time);
+
+        boolean isScannable();
+        boolean isVariableWidth();
+
+        /**
+         * @return whether the scanner would take c as part of the field (or its padding)
+         */
+        boolean accepts(char c);
     }
 
     private static class CalendarField implements Field
@@ -333,6 +614,76 @@ public class TimeStampFormatStandard implements TimeStampFormat
             calendar.set(calendarField, Integer.parseInt(valueString));
             return BigDecimal.ZERO;
         }
+
+        public int getCivilValue(CivilTime time)
+        {
+            switch (calendarField)
+            {
+                case Calendar.YEAR:         return time.year;
+                case Calendar.MONTH:        return time.month;
+                case Calendar.DAY_OF_MONTH: return time.day;
+                case Calendar.HOUR_OF_DAY:  return time.hour;
+                case Calendar.MINUTE:       return time.minute;
+                default:                    return time.second;
+            }
+        }
+
+        public void putCivilValue(int value, CivilTime time)
+        {
+            switch (calendarField)
+            {
+                case Calendar.YEAR:         time.year = value; break;
+                case Calendar.MONTH:        time.month = value; break;
+                case Calendar.DAY_OF_MONTH: time.day = value; break;
+                case Calendar.HOUR_OF_DAY:  time.hour = value; break;
+                case Calendar.MINUTE:       time.minute = value; break;
+                default:                    time.second = value; break;
+            }
+        }
+
+        public void appendValue(CivilTime time, TimeStampFormatStandard format, StringBuilder out)
+        {
+            int value = getCivilValue(time);
+            int numPadding = numDigits - numDigits(value);
+            if (padding == Padding.ZEROS || padding == Padding.SPACES_ON_LEFT) appendRepeated(out, (padding == Padding.ZEROS ? '0' : ' '), numPadding);
+            out.append(value);
+            if (padding == Padding.SPACES_ON_RIGHT) appendRepeated(out, ' ', numPadding);
+        }
+
+        public int scanValue(CharSequence string, int pos, CivilTime time)
+        {
+            if (padding == Padding.SPACES_ON_LEFT) pos = skipSpaces(string, pos);
+
+            int value = 0;
+            int end = Math.min(string.length(), pos + numDigits);
+            int start = pos;
+            while (pos < end && isDigit(string.charAt(pos)))
+            {
+                value = 10*value + (string.charAt(pos) - '0');
+                pos++;
+            }
+            if (pos == start || (padding == Padding.ZEROS && pos - start < numDigits)) return -1;
+
+            if (padding == Padding.SPACES_ON_RIGHT) pos = skipSpaces(string, pos);
+
+            putCivilValue(value, time);
+            return pos;
+        }
+
+        public boolean isScannable()
+        {
+            return true;
+        }
+
+        public boolean isVariableWidth()
+        {
+            return (padding != Padding.ZEROS);
+        }
+
+        public boolean accepts(char c)
+        {
+            return isDigit(c) || (padding == Padding.SPACES_ON_RIGHT && isRegexSpace(c));
+        }
     }
 
     private static class YearField extends CalendarField
@@ -362,6 +713,16 @@ public class TimeStampFormatStandard implements TimeStampFormat
             calendar.set(calendarField, Integer.parseInt(valueString) - 1);
             return BigDecimal.ZERO;
         }
+
+        public int getCivilValue(CivilTime time)
+        {
+            return time.month + 1;
+        }
+
+        public void putCivilValue(int value, CivilTime time)
+        {
+            time.month = value - 1;
+        }
     }
 
     private static class DayOfMonthField extends CalendarField
@@ -409,11 +770,24 @@ public class TimeStampFormatStandard implements TimeStampFormat
 
         private final boolean abbreviate;
         private final Case capitalization;
+        private final String[] casedMonthNames;
 
         public TextMonthField(String flags)
         {
             abbreviate = flags.contains("3");
             capitalization = getCase(flags);
+
+            String[] monthNames = (abbreviate ? shortMonthNames : longMonthNames);
+            casedMonthNames = new String[monthNames.length];
+            for (int i = 0; i < monthNames.length; i++)
+            {
+                switch (capitalization)
+                {
+                    case UPPERCASE: casedMonthNames[i] = monthNames[i].toUpperCase(); break;
+                    case LOWERCASE: casedMonthNames[i] = monthNames[i].toLowerCase(); break;
+                    default:        casedMonthNames[i] = monthNames[i]; break;
+                }
+            }
         }
 
         public String getFormatSpecifier()
@@ -454,6 +828,52 @@ public class TimeStampFormatStandard implements TimeStampFormat
 
             return BigDecimal.ZERO;
         }
+
+        public void appendValue(CivilTime time, TimeStampFormatStandard format, StringBuilder out)
+        {
+            out.append(casedMonthNames[time.month]);
+        }
+
+        public int scanValue(CharSequence string, int pos, CivilTime time)
+        {
+            pos = skipSpaces(string, pos);
+
+            int start = pos;
+            int end = (abbreviate ? Math.min(string.length(), pos + 3) : string.length());
+            while (pos < end && isAsciiLetter(string.charAt(pos))) pos++;
+            if (pos - start < 3 || (abbreviate && pos - start != 3)) return -1;
+
+            // Same as putValue: a name that doesn't match leaves month -1, which
+            // Calendar leniently treats as December of the previous year
+            int month = -1;
+            String[] monthNames = (abbreviate ? shortMonthNames : longMonthNames);
+            for (int i = 0; i < monthNames.length; i++)
+            {
+                if (equalsIgnoreCase(monthNames[i], string, start, pos))
+                {
+                    month = i;
+                    break;
+                }
+            }
+            time.month = month;
+
+            return skipSpaces(string, pos);
+        }
+
+        public boolean isScannable()
+        {
+            return true;
+        }
+
+        public boolean isVariableWidth()
+        {
+            return true;
+        }
+
+        public boolean accepts(char c)
+        {
+            return isAsciiLetter(c) || isRegexSpace(c);
+        }
     }
 
     private static class TimeZoneField implements Field
@@ -462,6 +882,10 @@ public class TimeStampFormatStandard implements TimeStampFormat
 
         private final Case capitalization;
 
+        // display names for standard and daylight time, looked up on first use
+        private volatile TimeZone cachedZone;
+        private volatile String[] cachedNames;
+
         public TimeZoneField(String flags)
         {
             capitalization = getCase(flags);
@@ -501,6 +925,52 @@ public class TimeStampFormatStandard implements TimeStampFormat
             if (!recognizedTimeZoneIds.contains(id)) throw new IllegalArgumentException("Unrecognized time-zone id: " + id);
             return TimeZone.getTimeZone(id);
         }
+
+        public void appendValue(CivilTime time, TimeStampFormatStandard format, StringBuilder out)
+        {
+            TimeZone tz = format.timeZone;
+            String[] names = cachedNames;
+            if (cachedZone != tz || names == null)
+            {
+                names = new String[2];
+                for (int i = 0; i < 2; i++)
+                {
+                    String tzString = tz.getDisplayName(i == 1, TimeZone.SHORT);
+                    switch (capitalization)
+                    {
+                        case UPPERCASE: names[i] = tzString.toUpperCase(); break;
+                        case LOWERCASE: names[i] = tzString.toLowerCase(); break;
+                        default:        names[i] = tzString; break;
+                    }
+                }
+                cachedNames = names;
+                cachedZone = tz;
+            }
+
+            time.date.setTime(time.posixMillis);
+            out.append(names[tz.inDaylightTime(time.date) ? 1 : 0]);
+        }
+
+        public int scanValue(CharSequence string, int pos, CivilTime time)
+        {
+            // Parsing a time-zone would mean looking it up by name for each string
+            return -1;
+        }
+
+        public boolean isScannable()
+        {
+            return false;
+        }
+
+        public boolean isVariableWidth()
+        {
+            return true;
+        }
+
+        public boolean accepts(char c)
+        {
+            return true;
+        }
     }
 
     private static class FloatSecondField implements Field
@@ -581,16 +1051,116 @@ public class TimeStampFormatStandard implements TimeStampFormat
             if (!isPlainDecimal(valueString)) throw new NumberFormatException("Illegal seconds string: " + valueString);
             BigDecimal valueSeconds = new BigDecimal(valueString);
 
-            BigDecimal calendarSecond = valueSeconds.setScale(0, BigDecimal.ROUND_FLOOR);
+            BigDecimal calendarSecond = valueSeconds.setScale(0, RoundingMode.FLOOR);
             calendar.set(Calendar.SECOND, calendarSecond.intValue());
 
-            BigDecimal calendarMilli = valueSeconds.subtract(calendarSecond).scaleByPowerOfTen(3).setScale(0, BigDecimal.ROUND_FLOOR);
+            BigDecimal calendarMilli = valueSeconds.subtract(calendarSecond).scaleByPowerOfTen(3).setScale(0, RoundingMode.FLOOR);
             calendar.set(Calendar.MILLISECOND, calendarMilli.intValue());
 
-            BigDecimal remainderSeconds = valueSeconds.subtract(valueSeconds.setScale(3, BigDecimal.ROUND_FLOOR));
+            BigDecimal remainderSeconds = valueSeconds.subtract(valueSeconds.setScale(3, RoundingMode.FLOOR));
             return remainderSeconds;
         }
 
+        public void appendValue(CivilTime time, TimeStampFormatStandard format, StringBuilder out)
+        {
+            long micros = time.posixMicros - time.minuteFloorMicros;
+            int whole = (int) (micros / 1000000);
+            int fraction = (int) (micros % 1000000);
+
+            if (whole < 10) out.append('0');
+            out.append(whole);
+
+            if (precision < 0)
+            {
+                // Full precision, with trailing zeros stripped
+                if (fraction != 0)
+                {
+                    int numDigits = 6;
+                    while (fraction % 10 == 0)
+                    {
+                        fraction /= 10;
+                        numDigits--;
+                    }
+                    out.append('.');
+                    appendRepeated(out, '0', numDigits - TimeStampFormatStandard.numDigits(fraction));
+                    out.append(fraction);
+                }
+            }
+            else if (precision > 0)
+            {
+                // Already rounded to precision, so this just drops (or adds) zeros
+                out.append(format.decimalSeparator);
+                if (precision < 6)
+                {
+                    fraction /= powersOfTen[6 - precision];
+                    appendRepeated(out, '0', precision - TimeStampFormatStandard.numDigits(fraction));
+                    out.append(fraction);
+                }
+                else
+                {
+                    appendRepeated(out, '0', 6 - TimeStampFormatStandard.numDigits(fraction));
+                    out.append(fraction);
+                    appendRepeated(out, '0', precision - 6);
+                }
+            }
+        }
+
+        public int scanValue(CharSequence string, int pos, CivilTime time)
+        {
+            pos = skipSpaces(string, pos);
+
+            int n = string.length();
+            int whole = 0;
+            int start = pos;
+            while (pos < n && pos - start < 2 && isDigit(string.charAt(pos)))
+            {
+                whole = 10*whole + (string.charAt(pos) - '0');
+                pos++;
+            }
+            boolean hasWhole = (pos > start);
+
+            int fracStart = pos;
+            int fracEnd = pos;
+            if (pos < n && string.charAt(pos) == '.')
+            {
+                pos++;
+                fracStart = pos;
+                while (pos < n && isDigit(string.charAt(pos))) pos++;
+                fracEnd = pos;
+            }
+            if (!hasWhole && fracEnd == fracStart) return -1;
+
+            // Same as putValue: whole seconds and millis go to the calendar, and
+            // the rest of the fraction is kept separately
+            time.second = whole;
+            time.millis = 0;
+            for (int i = 0; i < 3; i++)
+            {
+                int digit = (fracStart + i < fracEnd ? string.charAt(fracStart + i) - '0' : 0);
+                time.millis = 10*time.millis + digit;
+            }
+            time.fracChars = string;
+            time.fracStart = fracStart;
+            time.fracEnd = fracEnd;
+
+            return skipSpaces(string, pos);
+        }
+
+        public boolean isScannable()
+        {
+            return true;
+        }
+
+        public boolean isVariableWidth()
+        {
+            return true;
+        }
+
+        public boolean accepts(char c)
+        {
+            return isDigit(c) || c == '.' || isRegexSpace(c);
+        }
+
         private static boolean isPlainDecimal(String string)
         {
             boolean seenDecimalPoint = false;
@@ -606,6 +1176,217 @@ public class TimeStampFormatStandard implements TimeStampFormat
 
 
 
+    /**
+     * Scratch space for the integer-timestamp fast paths: calendar fields, computed
+     * arithmetically, plus whatever else the fields need.
+     */
+    private static final class CivilTime
+    {
+        // Local calendar fields; month is 0-based, as in Calendar
+        int year;
+        int month;
+        int day;
+        int hour;
+        int minute;
+        int second;
+        int millis;
+
+        long posixMillis;
+
+        // Formatting only
+        long posixMicros;
+        long minuteFloorMicros;
+        final Date date = new Date();
+        final StringBuilder buffer = new StringBuilder();
+
+        // Parsing only: fractional-second digits, of which the first 3 are in millis
+        CharSequence fracChars;
+        int fracStart;
+        int fracEnd;
+
+        void setLocalMillis(long localMillis)
+        {
+            long days = floorDiv(localMillis, millisPerDay);
+            int millisOfDay = (int) (localMillis - days * millisPerDay);
+
+            // Civil-from-days, for the proleptic Gregorian calendar (era = 400 years)
+            long z = days + 719468;
+            long era = floorDiv(z, 146097);
+            long dayOfEra = z - era * 146097;
+            long yearOfEra = (dayOfEra - dayOfEra/1460 + dayOfEra/36524 - dayOfEra/146096) / 365;
+            long dayOfYear = dayOfEra - (365*yearOfEra + yearOfEra/4 - yearOfEra/100);
+            long marchMonth = (5*dayOfYear + 2) / 153;
+            int monthOneBased = (int) (marchMonth < 10 ? marchMonth + 3 : marchMonth - 9);
+
+            this.year = (int) (yearOfEra + era*400 + (monthOneBased <= 2 ? 1 : 0));
+            this.month = monthOneBased - 1;
+            this.day = (int) (dayOfYear - (153*marchMonth + 2)/5 + 1);
+            this.hour = millisOfDay / 3600000;
+            this.minute = (millisOfDay / 60000) % 60;
+            this.second = (millisOfDay / 1000) % 60;
+            this.millis = millisOfDay % 1000;
+        }
+
+        /**
+         * @return fractional-second digits 4 through 6, as micros
+         */
+        int subMilliMicros()
+        {
+            int micros = 0;
+            for (int i = 3; i < 6; i++)
+            {
+                int k = fracStart + i;
+                micros = 10*micros + (fracChars != null && k < fracEnd ? fracChars.charAt(k) - '0' : 0);
+            }
+            return micros;
+        }
+
+        int subMilliRounding()
+        {
+            return rounding(3);
+        }
+
+        int subMicroRounding()
+        {
+            return rounding(6);
+        }
+
+        /**
+         * Classifies the fraction formed by the fractional-second digits after the first
+         * numDigits: 0 for zero, 1 for less than a half, 2 for exactly a half, 3 for more.
+         */
+        private int rounding(int numDigits)
+        {
+            int k = (fracChars == null ? fracEnd : fracStart + numDigits);
+            if (k >= fracEnd) return 0;
+
+            int first = fracChars.charAt(k) - '0';
+            boolean restNonZero = false;
+            for (int i = k + 1; i < fracEnd; i++)
+            {
+                if (fracChars.charAt(i) != '0')
+                {
+                    restNonZero = true;
+                    break;
+                }
+            }
+
+            if (first > 5 || (first == 5 && restNonZero)) return 3;
+            if (first == 5) return 2;
+            if (first > 0 || restNonZero) return 1;
+            return 0;
+        }
+    }
+
+    private static final long millisPerDay = 24 * 60 * 60 * 1000L;
+
+    // First day of the Gregorian calendar (1582-10-15); Calendar uses the Julian calendar before
+    private static final long gregorianCutoverMillis = -12219292800000L;
+    private static final int gregorianCutoverYear = 1582;
+
+    // Keeps rounding, and the conversion from millis, clear of overflow
+    private static final long maxFastMicros = 1000000L * 1000000L * 1000000L;
+
+    private static final long[] powersOfTen = { 1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L };
+
+    /**
+     * Rounds whole + fraction, where fraction is classified as by CivilTime.rounding(), the way
+     * RoundingMode.HALF_UP would: ties go away from zero.
+     */
+    private static long roundHalfUp(long whole, int fractionClass)
+    {
+        switch (fractionClass)
+        {
+            case 2:  return (whole >= 0 ? whole + 1 : whole);
+            case 3:  return whole + 1;
+            default: return whole;
+        }
+    }
+
+    private static long daysFromCivil(long year, int monthOneBased, int day)
+    {
+        year -= (monthOneBased <= 2 ? 1 : 0);
+        long era = floorDiv(year, 400);
+        long yearOfEra = year - era*400;
+        long dayOfYear = (153*(monthOneBased + (monthOneBased > 2 ? -3 : 9)) + 2)/5 + day - 1;
+        long dayOfEra = yearOfEra*365 + yearOfEra/4 - yearOfEra/100 + dayOfYear;
+        return era*146097 + dayOfEra - 719468;
+    }
+
+    private static long floorDiv(long a, long b)
+    {
+        long q = a / b;
+        return (a % b != 0 && ((a < 0) != (b < 0)) ? q - 1 : q);
+    }
+
+    private static int floorMod(int a, int b)
+    {
+        int m = a % b;
+        return (m < 0 ? m + b : m);
+    }
+
+    private static int numDigits(int value)
+    {
+        int n = 1;
+        while (value >= 10)
+        {
+            value /= 10;
+            n++;
+        }
+        return n;
+    }
+
+    private static void appendRepeated(StringBuilder out, char c, int count)
+    {
+        for (int i = 0; i < count; i++) out.append(c);
+    }
+
+    private static boolean isDigit(char c)
+    {
+        return (c >= '0' && c <= '9');
+    }
+
+    private static boolean isAsciiLetter(char c)
+    {
+        return ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'));
+    }
+
+    /**
+     * Same set of characters as the regex \s
+     */
+    private static boolean isRegexSpace(char c)
+    {
+        return (c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r');
+    }
+
+    private static int skipSpaces(CharSequence string, int pos)
+    {
+        while (pos < string.length() && isRegexSpace(string.charAt(pos))) pos++;
+        return pos;
+    }
+
+    /**
+     * Same comparison as String.equalsIgnoreCase, against part of a CharSequence.
+     */
+    private static boolean equalsIgnoreCase(String a, CharSequence b, int start, int end)
+    {
+        if (a.length() != end - start) return false;
+        for (int i = 0; i < a.length(); i++)
+        {
+            char c1 = a.charAt(i);
+            char c2 = b.charAt(start + i);
+            if (c1 == c2) continue;
+
+            char u1 = Character.toUpperCase(c1);
+            char u2 = Character.toUpperCase(c2);
+            if (u1 == u2) continue;
+            if (Character.toLowerCase(u1) == Character.toLowerCase(u2)) continue;
+
+            return false;
+        }
+        return true;
+    }
+
     private static enum Padding { ZEROS, SPACES_ON_LEFT, SPACES_ON_RIGHT, NONE }
     private static Padding getPadding(String flags)
     {
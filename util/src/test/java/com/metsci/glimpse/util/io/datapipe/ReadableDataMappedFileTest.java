@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.util.io.datapipe;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Reads a small file through tiny mapped windows, so that values, arrays, and buffer
+ * views all land on window boundaries.
+ */
+public class ReadableDataMappedFileTest
+{
+
+    protected File file;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        file = File.createTempFile("ReadableDataMappedFileTest", ".bin");
+
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try
+        {
+            // 0: 16 ints (64 bytes)
+            for (int i = 0; i < 16; i++) out.writeInt(i * 1000 + 7);
+
+            // 64: 1 byte, so that everything after it is misaligned with the windows
+            out.writeByte(42);
+
+            // 65: 10 doubles (80 bytes)
+            for (int i = 0; i < 10; i++) out.writeDouble(i + 0.5);
+
+            // 145: 12 floats (48 bytes)
+            for (int i = 0; i < 12; i++) out.writeFloat(i * 0.25f);
+
+            // 193: 1 long
+            out.writeLong(0x0123456789abcdefL);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    @After
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    protected ReadableDataMappedFile open(int windowSize) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        return new ReadableDataMappedFile(raf.getChannel(), ByteOrder.BIG_ENDIAN, 0, raf.length(), windowSize);
+    }
+
+    @Test
+    public void scalarsAcrossWindows() throws IOException
+    {
+        for (int windowSize = 8; windowSize <= 24; windowSize++)
+        {
+            ReadableDataMappedFile in = open(windowSize);
+            try
+            {
+                for (int i = 0; i < 16; i++) assertEquals(i * 1000 + 7, in.readInt());
+                assertEquals(42, in.readByte());
+                for (int i = 0; i < 10; i++) assertEquals(i + 0.5, in.readDouble(), 0);
+                for (int i = 0; i < 12; i++) assertEquals(i * 0.25f, in.readFloat(), 0);
+                assertEquals(0x0123456789abcdefL, in.readLong());
+                assertEquals(0, in.remaining());
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+    }
+
+    @Test
+    public void arraysAcrossWindows() throws IOException
+    {
+        for (int windowSize = 8; windowSize <= 24; windowSize++)
+        {
+            ReadableDataMappedFile in = open(windowSize);
+            try
+            {
+                int[] ints = in.readIntArray(new int[16]);
+                for (int i = 0; i < 16; i++) assertEquals(i * 1000 + 7, ints[i]);
+
+                in.skip(1);
+
+                double[] doubles = in.readDoubleArray(new double[10]);
+                for (int i = 0; i < 10; i++) assertEquals(i + 0.5, doubles[i], 0);
+
+                float[] floats = in.readFloatArray(new float[12]);
+                for (int i = 0; i < 12; i++) assertEquals(i * 0.25f, floats[i], 0);
+
+                assertEquals(193, in.getPosition());
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+    }
+
+    @Test
+    public void buffersAcrossWindows() throws IOException
+    {
+        for (int windowSize = 8; windowSize <= 24; windowSize++)
+        {
+            ReadableDataMappedFile in = open(windowSize);
+            try
+            {
+                in.seek(65);
+
+                // A view always covers the whole requested range, even when that is larger
+                // than a window or starts near the end of one
+                DoubleBuffer doubles = in.readDoubleBuffer(10);
+                assertEquals(10, doubles.remaining());
+                for (int i = 0; i < 10; i++) assertEquals(i + 0.5, doubles.get(i), 0);
+
+                FloatBuffer floats = in.readFloatBuffer(12);
+                assertEquals(12, floats.remaining());
+                for (int i = 0; i < 12; i++) assertEquals(i * 0.25f, floats.get(i), 0);
+
+                assertEquals(0x0123456789abcdefL, in.readLong());
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+    }
+
+    @Test
+    public void seekBackIntoEarlierWindow() throws IOException
+    {
+        ReadableDataMappedFile in = open(16);
+        try
+        {
+            in.seek(193);
+            assertEquals(0x0123456789abcdefL, in.readLong());
+
+            in.seek(4);
+            assertEquals(1007, in.readInt());
+            assertEquals(8, in.getPosition());
+            assertEquals(in.size() - 8, in.remaining());
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    @Test
+    public void subrangeIsRelativeToStart() throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        ReadableDataMappedFile in = new ReadableDataMappedFile(raf.getChannel(), ByteOrder.BIG_ENDIAN, 8, 12, 8);
+        try
+        {
+            assertEquals(12, in.size());
+            assertArrayEquals(new int[] { 2007, 3007, 4007 }, in.readIntArray(new int[3]));
+            assertEquals(0, in.remaining());
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void readPastEnd() throws IOException
+    {
+        ReadableDataMappedFile in = open(16);
+        try
+        {
+            in.seek(in.size() - 4);
+            in.readLong();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void windowTooSmall() throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            new ReadableDataMappedFile(raf.getChannel(), ByteOrder.BIG_ENDIAN, 0, raf.length(), 4);
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+}
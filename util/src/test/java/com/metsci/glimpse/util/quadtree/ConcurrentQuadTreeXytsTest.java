@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2012, Metron, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Metron, Inc. nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL METRON, INC. BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.metsci.glimpse.util.quadtree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ConcurrentQuadTreeXytsTest
+{
+
+    protected static class Point implements Xyt
+    {
+        public final float x;
+        public final float y;
+        public final long t;
+
+        public Point(float x, float y, long t)
+        {
+            this.x = x;
+            this.y = y;
+            this.t = t;
+        }
+
+        public float x() { return x; }
+        public float y() { return y; }
+        public long t() { return t; }
+    }
+
+
+    @Test
+    public void snapshotIgnoresLaterModifications()
+    {
+        ConcurrentQuadTreeXyts<Point> index = new ConcurrentQuadTreeXyts<Point>(4, 100);
+        Point a = new Point(1, 1, 10);
+        Point b = new Point(2, 2, 20);
+        index.add(a);
+
+        ConcurrentQuadTreeXyts.Snapshot<Point> before = index.snapshot();
+
+        // Same slice as a, so the new snapshot shares the other slices with the old one
+        index.add(b);
+        index.remove(a);
+
+        assertEquals(1, before.size());
+        assertEquals(1, before.search(0, 100, 0, 10, 0, 10).size());
+        assertTrue(before.search(0, 100, 0, 10, 0, 10).contains(a));
+
+        assertEquals(1, index.size());
+        assertTrue(index.search(0, 100, 0, 10, 0, 10).contains(b));
+    }
+
+    @Test
+    public void untouchedSlicesAreShared()
+    {
+        ConcurrentQuadTreeXyts<Point> index = new ConcurrentQuadTreeXyts<Point>(4, 100);
+        index.add(new Point(1, 1, 10));
+        index.add(new Point(1, 1, 510));
+
+        ConcurrentQuadTreeXyts.Snapshot<Point> before = index.snapshot();
+        index.add(new Point(2, 2, 520));
+        ConcurrentQuadTreeXyts.Snapshot<Point> after = index.snapshot();
+
+        assertTrue(before.slices == after.slices);
+        assertTrue(before.trees[0] == after.trees[0]);
+        assertFalse(before.trees[1] == after.trees[1]);
+        assertEquals(3, after.size());
+    }
+
+    @Test
+    public void batchIsPublishedAtEnd()
+    {
+        ConcurrentQuadTreeXyts<Point> index = new ConcurrentQuadTreeXyts<Point>(4, 100);
+        index.add(new Point(1, 1, 10));
+
+        index.startBatch();
+        try
+        {
+            index.add(new Point(2, 2, 20));
+            index.add(new Point(3, 3, 250));
+
+            // Nested batches publish only when the outermost one ends
+            index.startBatch();
+            index.add(new Point(4, 4, 990));
+            index.endBatch();
+
+            assertEquals(1, index.size());
+            assertEquals(1, index.search(0, 10, 0, 10).size());
+        }
+        finally
+        {
+            index.endBatch();
+        }
+
+        assertEquals(4, index.size());
+        assertEquals(4, index.search(0, 10, 0, 10).size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void endBatchWithoutStart()
+    {
+        new ConcurrentQuadTreeXyts<Point>(4, 100).endBatch();
+    }
+
+    @Test
+    public void emptiedSlicesAreDropped()
+    {
+        ConcurrentQuadTreeXyts<Point> index = new ConcurrentQuadTreeXyts<Point>(4, 100);
+        Point a = new Point(1, 1, 10);
+        Point b = new Point(1, 1, 150);
+        index.add(a);
+        index.add(b);
+        assertEquals(2, index.snapshot().slices.length);
+
+        assertTrue(index.remove(a));
+        assertFalse(index.remove(a));
+
+        ConcurrentQuadTreeXyts.Snapshot<Point> snapshot = index.snapshot();
+        assertEquals(1, snapshot.slices.length);
+        assertEquals(1, snapshot.slices[0]);
+        assertEquals(1, snapshot.size());
+    }
+
+    @Test
+    public void clearEmptiesSnapshot()
+    {
+        ConcurrentQuadTreeXyts<Point> index = new ConcurrentQuadTreeXyts<Point>(4, 100);
+        for (int i = 0; i < 50; i++) index.add(new Point(i, i, i * 37));
+
+        ConcurrentQuadTreeXyts.Snapshot<Point> before = index.snapshot();
+        index.clear();
+
+        assertEquals(0, index.size());
+        assertEquals(0, index.snapshot().slices.length);
+        assertEquals(50, before.size());
+    }
+
+    @Test
+    public void nanValuesAreIgnored()
+    {
+        ConcurrentQuadTreeXyts<Point> index = new ConcurrentQuadTreeXyts<Point>(4, 100);
+        index.add(new Point(Float.NaN, 1, 10));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void timeWindowsMatchBruteForce()
+    {
+        Random random = new Random(0);
+        ConcurrentQuadTreeXyts<Point> index = new ConcurrentQuadTreeXyts<Point>(8, 100);
+        List<Point> points = new ArrayList<Point>();
+
+        for (int i = 0; i < 5000; i++)
+        {
+            if (points.isEmpty() || random.nextInt(4) != 0)
+            {
+                Point p = new Point(random.nextFloat(), random.nextFloat(), random.nextInt(3000) - 1000);
+                index.add(p);
+                points.add(p);
+            }
+            else
+            {
+                Point p = points.remove(random.nextInt(points.size()));
+                assertTrue(index.remove(p));
+            }
+
+            assertEquals(points.size(), index.size());
+
+            // Windows that start and end exactly on slice boundaries are searched without a time filter
+            long tMin = (random.nextBoolean() ? random.nextInt(30) * 100L : random.nextInt(3000)) - 1000;
+            long tMax = tMin + (random.nextBoolean() ? random.nextInt(5) * 100L + 99 : random.nextInt(500));
+
+            Collection<Point> results = index.search(tMin, tMax, 0.25f, 0.75f, 0.1f, 0.9f);
+            assertEquals(count(points, tMin, tMax, 0.25f, 0.75f, 0.1f, 0.9f), results.size());
+            for (Point p : results)
+            {
+                assertTrue(tMin <= p.t && p.t <= tMax);
+            }
+        }
+    }
+
+    protected static int count(List<Point> points, long tMin, long tMax, float xMin, float xMax, float yMin, float yMax)
+    {
+        int n = 0;
+        for (Point p : points)
+        {
+            if (tMin <= p.t && p.t <= tMax && xMin <= p.x && p.x <= xMax && yMin <= p.y && p.y <= yMax) n++;
+        }
+        return n;
+    }
+
+}